@@ -0,0 +1,109 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bench.xlwrap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * base class of all benchmarks run by the {@link BenchmarkRunner}
+ * 
+ * One invocation of {@link #invoke()} performs a number of operations (e.g. parsed ranges, 
+ * read rows or materialized mappings), the runner reports the average time per operation.
+ * 
+ * @author dorgon
+ *
+ */
+public abstract class Benchmark {
+	/** results are consumed into this field, so that the JIT cannot eliminate the measured code */
+	private static volatile int blackhole;
+	
+	private final String name;
+	private final Map<String, Object> params = new LinkedHashMap<String, Object>();
+	
+	/**
+	 * @param name benchmark name, e.g. parseRange
+	 */
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * prepare the benchmark, not measured
+	 * @throws Exception
+	 */
+	public void setUp() throws Exception {
+	}
+	
+	/**
+	 * run the measured code once
+	 * 
+	 * @return number of operations performed
+	 * @throws Exception
+	 */
+	public abstract int invoke() throws Exception;
+	
+	/**
+	 * release resources, not measured
+	 * @throws Exception
+	 */
+	public void tearDown() throws Exception {
+	}
+	
+	/**
+	 * @return the operation the score refers to, e.g. row or cell
+	 */
+	public String getOperation() {
+		return "op";
+	}
+	
+	/**
+	 * consume a result
+	 * @param o
+	 */
+	protected static void consume(Object o) {
+		blackhole ^= System.identityHashCode(o);
+	}
+	
+	/**
+	 * @param name
+	 * @param value
+	 * @return this benchmark
+	 */
+	protected Benchmark param(String name, Object value) {
+		params.put(name, value);
+		return this;
+	}
+	
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @return benchmark parameters reported with the results
+	 */
+	public Map<String, Object> getParams() {
+		return params;
+	}
+	
+	@Override
+	public String toString() {
+		return params.isEmpty() ? name : name + params;
+	}
+}
@@ -0,0 +1,344 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bench.xlwrap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import at.jku.xlwrap.map.XLExprDatatype;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+
+/**
+ * Runs the XLWrap benchmarks and writes machine-readable results.
+ * 
+ * Each benchmark is run for a number of warm-up iterations followed by measurement iterations 
+ * of a fixed duration in the same JVM. The score is the average time per operation in nanoseconds, the error 
+ * is the half-width of the 99.9% confidence interval (Student's t) over the measurement iterations. 
+ * The JSON output follows the layout of JMH result files, so existing tooling can compare runs.
+ * 
+ * Syntax: [options], see {@link #usage()}
+ * 
+ * @author dorgon
+ *
+ */
+public class BenchmarkRunner {
+	/** t-distribution quantiles for p=0.9995 and 1..30 degrees of freedom */
+	private static final double[] T_9995 = {
+		636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+		4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+		3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646
+	};
+	
+	private int warmup = 3;
+	private int iterations = 5;
+	private long time = 1000;
+	private int[] sizes = { 1000, 10000 };
+	private String format = "json";
+	private String out = null;
+	private Pattern filter = null;
+	private File dir = new File(System.getProperty("java.io.tmpdir"), "xlwrap-bench");
+	private boolean list = false;
+	
+	static {
+		// register xl:Expr (a custom RDF data type)
+		TypeMapper.getInstance().registerDatatype(XLExprDatatype.instance);
+	}
+	
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		if (!runner.parseArgs(args)) {
+			System.err.println(usage());
+			System.exit(1);
+		}
+		runner.run();
+	}
+
+	/**
+	 * @return usage information
+	 */
+	public static String usage() {
+		return "Syntax: [options]\n"
+			+ "Options:\n"
+			+ "\t-warmup=[n]\tWarm-up iterations per benchmark (default 3)\n"
+			+ "\t-iterations=[n]\tMeasurement iterations per benchmark (default 5)\n"
+			+ "\t-time=[ms]\tDuration of an iteration in milliseconds (default 1000)\n"
+			+ "\t-sizes=[n,...]\tData rows of the generated CSV, XLS and ODS inputs (default 1000,10000)\n"
+			+ "\t-dir=[dir]\tDirectory for generated inputs (default ${java.io.tmpdir}/xlwrap-bench)\n"
+			+ "\t-filter=[regex]\tOnly run benchmarks whose name and parameters match the regular expression\n"
+			+ "\t-format=[json|csv]\tResult format (default json)\n"
+			+ "\t-out=[file]\tResult file (default standard output)\n"
+			+ "\t-list\tList the benchmarks without running them";
+	}
+	
+	/**
+	 * @param args
+	 * @return false if the arguments are invalid
+	 */
+	boolean parseArgs(String[] args) {
+		for (String arg : args) {
+			if ("-list".equals(arg)) {
+				list = true;
+				continue;
+			}
+			int eq = arg.indexOf("=");
+			if (eq < 0)
+				return false;
+			String name = arg.substring(0, eq);
+			String value = arg.substring(eq + 1);
+			if (value.length() == 0 && !"-filter".equals(name))
+				continue; // unset property passed by Ant
+			
+			if ("-warmup".equals(name))
+				warmup = Integer.parseInt(value);
+			else if ("-iterations".equals(name))
+				iterations = Integer.parseInt(value);
+			else if ("-time".equals(name))
+				time = Long.parseLong(value);
+			else if ("-sizes".equals(name)) {
+				String[] s = value.split(",");
+				sizes = new int[s.length];
+				for (int i = 0; i < s.length; i++)
+					sizes[i] = Integer.parseInt(s[i].trim());
+			} else if ("-dir".equals(name))
+				dir = new File(value);
+			else if ("-filter".equals(name))
+				filter = value.length() > 0 ? Pattern.compile(value) : null;
+			else if ("-format".equals(name)) {
+				if (!"json".equals(value) && !"csv".equals(value))
+					return false;
+				format = value;
+			} else if ("-out".equals(name))
+				out = value;
+			else
+				return false;
+		}
+		return iterations > 0;
+	}
+	
+	/**
+	 * @return all benchmarks, generates the input files if required
+	 * @throws IOException
+	 */
+	List<Benchmark> createBenchmarks() throws IOException {
+		List<Benchmark> list = new ArrayList<Benchmark>();
+		list.add(new ParseRangeBenchmark());
+		list.add(new ParseExpressionBenchmark());
+		
+		File testing = new File("testing");
+		for (boolean mapped : new boolean[] { false, true })
+			list.add(new CSVParseBenchmark(new File(testing, "test-data1.csv"), mapped));
+		list.add(new SheetAccessBenchmark(new File(testing, "test-data1.xls"), "Tests 1", Integer.MAX_VALUE));
+		list.add(new SheetAccessBenchmark(new File(testing, "test-data1.ods"), "Tests 1", Integer.MAX_VALUE));
+		String[] files = testing.list();
+		Arrays.sort(files);
+		for (String trig : files) {
+			if (trig.endsWith(".trig"))
+				list.add(new MaterializeBenchmark(new File(testing, trig).getPath()));
+		}
+		
+		InputGenerator gen = new InputGenerator(dir);
+		for (int size : sizes) {
+			File csv = gen.csv(size);
+			for (boolean mapped : new boolean[] { false, true })
+				list.add(new CSVParseBenchmark(csv, mapped));
+			list.add(new CSVParseBenchmark(csv, true, Math.max(2, Runtime.getRuntime().availableProcessors())));
+			list.add(new MaterializeBenchmark(csv, size));
+			
+			if (size <= InputGenerator.MAX_XLS_ROWS) {
+				File xls = gen.xls(size);
+				list.add(new SheetAccessBenchmark(xls, InputGenerator.SHEET_NAME, size + 1));
+				list.add(new SheetAccessBenchmark(xls, InputGenerator.SHEET_NAME, size + 1, false, true));
+				list.add(new MaterializeBenchmark(xls, size));
+			}
+			
+			File xlsx = gen.xlsx(size);
+			list.add(new SheetAccessBenchmark(xlsx, InputGenerator.SHEET_NAME, size + 1, true));
+			list.add(new SheetAccessBenchmark(xlsx, InputGenerator.SHEET_NAME, size + 1, true, true));
+			list.add(new MaterializeBenchmark(xlsx, size));
+			
+			File ods = gen.ods(size);
+			list.add(new SheetAccessBenchmark(ods, InputGenerator.SHEET_NAME, size + 1));
+			list.add(new SheetAccessBenchmark(ods, InputGenerator.SHEET_NAME, size + 1, false, true));
+			list.add(new MaterializeBenchmark(ods, size));
+		}
+		return list;
+	}
+	
+	/**
+	 * run all selected benchmarks and write the results
+	 * @throws Exception
+	 */
+	void run() throws Exception {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		for (Benchmark b : createBenchmarks()) {
+			if (filter == null || filter.matcher(b.toString()).find())
+				benchmarks.add(b);
+		}
+		
+		if (list) {
+			for (Benchmark b : benchmarks)
+				System.out.println(b);
+			return;
+		}
+		
+		JSONArray results = new JSONArray();
+		for (Benchmark b : benchmarks) {
+			System.err.println("# Benchmark: " + b);
+			try {
+				results.put(measure(b));
+			} catch (Exception e) {
+				// report failed benchmarks (e.g. inputs exceeding the CSV cache) and continue
+				System.err.println("# Failed: " + e);
+				JSONObject failed = new JSONObject();
+				failed.put("benchmark", "bench.xlwrap." + b.getName());
+				failed.put("params", params(b));
+				failed.put("error", e.toString());
+				results.put(failed);
+			}
+		}
+		
+		PrintWriter w = (out == null) ? new PrintWriter(new OutputStreamWriter(System.out, "utf-8")) :
+			new PrintWriter(new OutputStreamWriter(new FileOutputStream(out), "utf-8"));
+		try {
+			if ("csv".equals(format))
+				writeCSV(results, w);
+			else
+				w.println(results.toString(4));
+		} finally {
+			w.close();
+		}
+	}
+	
+	/**
+	 * @param b
+	 * @return result in JMH layout
+	 * @throws Exception
+	 */
+	JSONObject measure(Benchmark b) throws Exception {
+		b.setUp();
+		double[] scores = new double[iterations];
+		try {
+			for (int i = 0; i < warmup; i++)
+				System.err.println(String.format("# Warmup Iteration %3d: %.3f ns/%s", i + 1, iteration(b), b.getOperation()));
+			for (int i = 0; i < iterations; i++) {
+				scores[i] = iteration(b);
+				System.err.println(String.format("Iteration %3d: %.3f ns/%s", i + 1, scores[i], b.getOperation()));
+			}
+		} finally {
+			b.tearDown();
+		}
+		
+		double mean = 0;
+		for (double s : scores)
+			mean += s;
+		mean /= scores.length;
+		double error = Double.NaN;
+		if (scores.length > 1) {
+			double var = 0;
+			for (double s : scores)
+				var += (s - mean) * (s - mean);
+			var /= scores.length - 1;
+			int df = scores.length - 1;
+			double t = df <= T_9995.length ? T_9995[df - 1] : 3.291;
+			error = t * Math.sqrt(var / scores.length);
+		}
+		
+		JSONObject metric = new JSONObject();
+		metric.put("score", mean);
+		metric.put("scoreError", Double.isNaN(error) ? "NaN" : error);
+		JSONArray conf = new JSONArray();
+		conf.put(Double.isNaN(error) ? mean : mean - error);
+		conf.put(Double.isNaN(error) ? mean : mean + error);
+		metric.put("scoreConfidence", conf);
+		metric.put("scoreUnit", "ns/" + b.getOperation());
+		JSONArray raw = new JSONArray();
+		for (double s : scores)
+			raw.put(s);
+		metric.put("rawData", new JSONArray().put(raw));
+		
+		JSONObject result = new JSONObject();
+		result.put("benchmark", "bench.xlwrap." + b.getName());
+		result.put("mode", "avgt");
+		result.put("threads", 1);
+		result.put("forks", 0);
+		result.put("jvm", System.getProperty("java.home"));
+		result.put("jdkVersion", System.getProperty("java.version"));
+		result.put("warmupIterations", warmup);
+		result.put("warmupTime", time + " ms");
+		result.put("measurementIterations", iterations);
+		result.put("measurementTime", time + " ms");
+		result.put("params", params(b));
+		result.put("primaryMetric", metric);
+		return result;
+	}
+	
+	private JSONObject params(Benchmark b) throws JSONException {
+		JSONObject params = new JSONObject();
+		for (Map.Entry<String, Object> p : b.getParams().entrySet())
+			params.put(p.getKey(), p.getValue().toString());
+		return params;
+	}
+	
+	/**
+	 * run the benchmark for at least the configured time
+	 * @param b
+	 * @return average nanoseconds per operation
+	 * @throws Exception
+	 */
+	private double iteration(Benchmark b) throws Exception {
+		long limit = time * 1000000L;
+		long ops = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			ops += b.invoke();
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < limit);
+		return (double) elapsed / Math.max(ops, 1);
+	}
+	
+	/**
+	 * write results in JMH CSV layout, parameters are joined into a single column
+	 * @param results
+	 * @param w
+	 * @throws JSONException
+	 */
+	private void writeCSV(JSONArray results, PrintWriter w) throws JSONException {
+		w.println("\"Benchmark\",\"Mode\",\"Threads\",\"Samples\",\"Score\",\"Score Error (99.9%)\",\"Unit\",\"Params\"");
+		for (int i = 0; i < results.length(); i++) {
+			JSONObject r = results.getJSONObject(i);
+			if (r.has("error"))
+				continue;
+			JSONObject m = r.getJSONObject("primaryMetric");
+			w.println("\"" + r.getString("benchmark") + "\",\"" + r.getString("mode") + "\"," + r.getInt("threads") + ","
+					+ r.getInt("measurementIterations") + "," + m.getDouble("score") + "," + m.optDouble("scoreError") + ",\""
+					+ m.getString("scoreUnit") + "\",\"" + r.getJSONObject("params").toString().replace("\"", "\"\"") + "\"");
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bench.xlwrap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+import at.jku.xlwrap.common.Utils;
+import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
+import at.jku.xlwrap.spreadsheet.csv.CSVSheet;
+
+/**
+ * reads a CSV file with {@link CSVSheet} and decodes all cells row by row
+ * 
+ * @author dorgon
+ *
+ */
+public class CSVParseBenchmark extends Benchmark {
+	private static final Charset UTF8 = Charset.forName("utf-8");
+	
+	private final File file;
+	private final boolean mapped;
+	private final int threads;
+	
+	/**
+	 * @param file
+	 * @param mapped use the memory-mapped reader instead of a stream
+	 */
+	public CSVParseBenchmark(File file, boolean mapped) {
+		this(file, mapped, 1);
+	}
+	
+	/**
+	 * @param file
+	 * @param mapped use the memory-mapped reader instead of a stream
+	 * @param threads number of parser threads of the memory-mapped reader
+	 */
+	public CSVParseBenchmark(File file, boolean mapped, int threads) {
+		super("csvParse");
+		this.file = file;
+		this.mapped = mapped;
+		this.threads = threads;
+		param("file", file.getName());
+		param("reader", mapped ? "mapped" : "stream");
+		if (mapped)
+			param("threads", threads);
+	}
+	
+	@Override
+	public void setUp() throws Exception {
+		param("rows", invoke());
+	}
+	
+	@Override
+	public int invoke() throws Exception {
+		BufferedReader in = mapped ? null : new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+		try {
+			CSVSheet sheet = mapped ? new CSVSheet(file, file.getPath(), UTF8, null, 64 * 1024 * 1024, false, threads) : new CSVSheet(in, file.getPath(), null);
+			int cols = sheet.getColumns();
+			int r = 0;
+			try {
+				for (;; r++) {
+					for (int c = 0; c < cols; c++) {
+						Cell cell = sheet.getCell(c, r);
+						if (cell != null)
+							consume(Utils.getXLExprValue(cell));
+					}
+				}
+			} catch (XLWrapEOFException eof) {
+				// done
+			}
+			return r;
+		} finally {
+			if (in != null)
+				in.close();
+		}
+	}
+	
+	@Override
+	public String getOperation() {
+		return "row";
+	}
+}
@@ -0,0 +1,318 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bench.xlwrap;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import jxl.Workbook;
+import jxl.write.Label;
+import jxl.write.WritableSheet;
+import jxl.write.WritableWorkbook;
+import jxl.write.WriteException;
+
+/**
+ * generates synthetic spreadsheets with a header row and a given number of data rows,
+ * columns: id (number), name, email, age (number), salary (number)
+ * 
+ * The data is derived from a fixed seed, so that all runs use the same input.
+ * 
+ * @author dorgon
+ *
+ */
+public class InputGenerator {
+	public static final String[] HEADER = { "id", "name", "email", "age", "salary" };
+	public static final String SHEET_NAME = "Data";
+	
+	/** maximum number of rows of an Excel 97-2003 sheet */
+	public static final int MAX_XLS_ROWS = 65535;
+	
+	private static final String[] NAMES = { "Tom", "Tim", "Anna", "Maria", "John", "Eva", "Paul", "Lisa" };
+	private static final long SEED = 4711;
+	
+	private static final String NS_OFFICE = "urn:oasis:names:tc:opendocument:xmlns:office:1.0";
+	private static final String NS_TABLE = "urn:oasis:names:tc:opendocument:xmlns:table:1.0";
+	private static final String NS_TEXT = "urn:oasis:names:tc:opendocument:xmlns:text:1.0";
+	
+	private static final String NS_SML = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+	private static final String NS_REL = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+	private static final String NS_PKG_REL = "http://schemas.openxmlformats.org/package/2006/relationships";
+	
+	private final File dir;
+	
+	/**
+	 * @param dir target directory
+	 */
+	public InputGenerator(File dir) {
+		this.dir = dir;
+		dir.mkdirs();
+	}
+	
+	private Object[] row(Random rnd, int i) {
+		String name = NAMES[rnd.nextInt(NAMES.length)] + " " + NAMES[rnd.nextInt(NAMES.length)] + i;
+		return new Object[] {
+				i,
+				name,
+				name.replace(' ', '.').toLowerCase() + "@example.org",
+				18 + rnd.nextInt(60),
+				Math.round(rnd.nextDouble() * 10000000) / 100.0
+		};
+	}
+	
+	/**
+	 * @param rows number of data rows
+	 * @return comma-separated file with quoted strings
+	 * @throws IOException
+	 */
+	public File csv(int rows) throws IOException {
+		File f = new File(dir, "bench-" + rows + ".csv");
+		if (f.exists())
+			return f;
+		
+		Random rnd = new Random(SEED);
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), "utf-8"));
+		try {
+			for (int c = 0; c < HEADER.length; c++)
+				out.write((c > 0 ? "," : "") + "\"" + HEADER[c] + "\"");
+			out.write("\n");
+			for (int r = 1; r <= rows; r++) {
+				Object[] values = row(rnd, r);
+				for (int c = 0; c < values.length; c++) {
+					if (c > 0)
+						out.write(",");
+					if (values[c] instanceof String)
+						out.write("\"" + values[c] + "\"");
+					else
+						out.write(values[c].toString());
+				}
+				out.write("\n");
+			}
+		} finally {
+			out.close();
+		}
+		return f;
+	}
+	
+	/**
+	 * @param rows number of data rows, at most {@link #MAX_XLS_ROWS}
+	 * @return Excel file with a single sheet named {@link #SHEET_NAME}
+	 * @throws IOException
+	 */
+	public File xls(int rows) throws IOException {
+		if (rows > MAX_XLS_ROWS)
+			throw new IllegalArgumentException("Excel sheets are limited to " + MAX_XLS_ROWS + " data rows.");
+		
+		File f = new File(dir, "bench-" + rows + ".xls");
+		if (f.exists())
+			return f;
+		
+		Random rnd = new Random(SEED);
+		WritableWorkbook wb = Workbook.createWorkbook(f);
+		try {
+			WritableSheet sheet = wb.createSheet(SHEET_NAME, 0);
+			for (int c = 0; c < HEADER.length; c++)
+				sheet.addCell(new Label(c, 0, HEADER[c]));
+			for (int r = 1; r <= rows; r++) {
+				Object[] values = row(rnd, r);
+				for (int c = 0; c < values.length; c++) {
+					if (values[c] instanceof String)
+						sheet.addCell(new Label(c, r, (String) values[c]));
+					else
+						sheet.addCell(new jxl.write.Number(c, r, ((Number) values[c]).doubleValue()));
+				}
+			}
+			wb.write();
+			wb.close();
+		} catch (WriteException e) {
+			f.delete();
+			throw new IOException("Failed to write " + f + ": " + e.getMessage());
+		}
+		return f;
+	}
+	
+	/**
+	 * @param rows number of data rows
+	 * @return OpenDocument spreadsheet with a single sheet named {@link #SHEET_NAME}, written as plain XML into the package
+	 * @throws IOException
+	 */
+	public File ods(int rows) throws IOException {
+		File f = new File(dir, "bench-" + rows + ".ods");
+		if (f.exists())
+			return f;
+		
+		Random rnd = new Random(SEED);
+		ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(f));
+		try {
+			// the mimetype must be the first entry and stored uncompressed
+			byte[] mimetype = "application/vnd.oasis.opendocument.spreadsheet".getBytes("us-ascii");
+			ZipEntry e = new ZipEntry("mimetype");
+			e.setMethod(ZipEntry.STORED);
+			e.setSize(mimetype.length);
+			CRC32 crc = new CRC32();
+			crc.update(mimetype);
+			e.setCrc(crc.getValue());
+			zip.putNextEntry(e);
+			zip.write(mimetype);
+			zip.closeEntry();
+			
+			Writer out = new OutputStreamWriter(zip, "utf-8");
+			zip.putNextEntry(new ZipEntry("META-INF/manifest.xml"));
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+					"<manifest:manifest xmlns:manifest=\"urn:oasis:names:tc:opendocument:xmlns:manifest:1.0\">\n" +
+					" <manifest:file-entry manifest:media-type=\"application/vnd.oasis.opendocument.spreadsheet\" manifest:full-path=\"/\"/>\n" +
+					" <manifest:file-entry manifest:media-type=\"text/xml\" manifest:full-path=\"content.xml\"/>\n" +
+					" <manifest:file-entry manifest:media-type=\"text/xml\" manifest:full-path=\"styles.xml\"/>\n" +
+					"</manifest:manifest>\n");
+			out.flush();
+			zip.closeEntry();
+			
+			zip.putNextEntry(new ZipEntry("styles.xml"));
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+					"<office:document-styles xmlns:office=\"" + NS_OFFICE + "\" office:version=\"1.1\"/>\n");
+			out.flush();
+			zip.closeEntry();
+			
+			zip.putNextEntry(new ZipEntry("content.xml"));
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+					"<office:document-content xmlns:office=\"" + NS_OFFICE + "\" xmlns:table=\"" + NS_TABLE + "\" xmlns:text=\"" + NS_TEXT + "\" office:version=\"1.1\">" +
+					"<office:body><office:spreadsheet><table:table table:name=\"" + SHEET_NAME + "\">" +
+					"<table:table-column table:number-columns-repeated=\"" + HEADER.length + "\"/>\n");
+			writeODSRow(out, HEADER);
+			for (int r = 1; r <= rows; r++)
+				writeODSRow(out, row(rnd, r));
+			out.write("</table:table></office:spreadsheet></office:body></office:document-content>\n");
+			out.flush();
+			zip.closeEntry();
+		} finally {
+			zip.close();
+		}
+		return f;
+	}
+	
+	/**
+	 * @param rows number of data rows
+	 * @return Office Open XML workbook with a single sheet named {@link #SHEET_NAME}, strings are shared
+	 * @throws IOException
+	 */
+	public File xlsx(int rows) throws IOException {
+		File f = new File(dir, "bench-" + rows + ".xlsx");
+		if (f.exists())
+			return f;
+		
+		Random rnd = new Random(SEED);
+		Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+		ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(f));
+		try {
+			Writer out = new BufferedWriter(new OutputStreamWriter(zip, "utf-8"));
+			zip.putNextEntry(new ZipEntry("[Content_Types].xml"));
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+					"<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">" +
+					"<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>" +
+					"<Default Extension=\"xml\" ContentType=\"application/xml\"/>" +
+					"<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>" +
+					"<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>" +
+					"<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sharedStrings+xml\"/>" +
+					"</Types>\n");
+			out.flush();
+			zip.closeEntry();
+			
+			zip.putNextEntry(new ZipEntry("_rels/.rels"));
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+					"<Relationships xmlns=\"" + NS_PKG_REL + "\">" +
+					"<Relationship Id=\"rId1\" Type=\"" + NS_REL + "/officeDocument\" Target=\"xl/workbook.xml\"/>" +
+					"</Relationships>\n");
+			out.flush();
+			zip.closeEntry();
+			
+			zip.putNextEntry(new ZipEntry("xl/workbook.xml"));
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+					"<workbook xmlns=\"" + NS_SML + "\" xmlns:r=\"" + NS_REL + "\">" +
+					"<sheets><sheet name=\"" + SHEET_NAME + "\" sheetId=\"1\" r:id=\"rId1\"/></sheets></workbook>\n");
+			out.flush();
+			zip.closeEntry();
+			
+			zip.putNextEntry(new ZipEntry("xl/_rels/workbook.xml.rels"));
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+					"<Relationships xmlns=\"" + NS_PKG_REL + "\">" +
+					"<Relationship Id=\"rId1\" Type=\"" + NS_REL + "/worksheet\" Target=\"worksheets/sheet1.xml\"/>" +
+					"<Relationship Id=\"rId2\" Type=\"" + NS_REL + "/sharedStrings\" Target=\"sharedStrings.xml\"/>" +
+					"</Relationships>\n");
+			out.flush();
+			zip.closeEntry();
+			
+			zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+					"<worksheet xmlns=\"" + NS_SML + "\"><dimension ref=\"A1:" + (char) ('A' + HEADER.length - 1) + (rows + 1) + "\"/><sheetData>\n");
+			writeXLSXRow(out, 0, HEADER, strings);
+			for (int r = 1; r <= rows; r++)
+				writeXLSXRow(out, r, row(rnd, r), strings);
+			out.write("</sheetData></worksheet>\n");
+			out.flush();
+			zip.closeEntry();
+			
+			zip.putNextEntry(new ZipEntry("xl/sharedStrings.xml"));
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+					"<sst xmlns=\"" + NS_SML + "\" count=\"" + strings.size() + "\" uniqueCount=\"" + strings.size() + "\">");
+			for (String str : strings.keySet())
+				out.write("<si><t>" + str + "</t></si>");
+			out.write("</sst>\n");
+			out.flush();
+			zip.closeEntry();
+		} finally {
+			zip.close();
+		}
+		return f;
+	}
+	
+	private void writeXLSXRow(Writer out, int r, Object[] values, Map<String, Integer> strings) throws IOException {
+		out.write("<row r=\"" + (r + 1) + "\">");
+		for (int c = 0; c < values.length; c++) {
+			String ref = (char) ('A' + c) + Integer.toString(r + 1);
+			if (values[c] instanceof String) {
+				Integer idx = strings.get(values[c]);
+				if (idx == null) {
+					idx = strings.size();
+					strings.put((String) values[c], idx);
+				}
+				out.write("<c r=\"" + ref + "\" t=\"s\"><v>" + idx + "</v></c>");
+			} else
+				out.write("<c r=\"" + ref + "\"><v>" + values[c] + "</v></c>");
+		}
+		out.write("</row>\n");
+	}
+	
+	private void writeODSRow(Writer out, Object[] values) throws IOException {
+		out.write("<table:table-row>");
+		for (Object v : values) {
+			if (v instanceof String)
+				out.write("<table:table-cell office:value-type=\"string\"><text:p>" + v + "</text:p></table:table-cell>");
+			else
+				out.write("<table:table-cell office:value-type=\"float\" office:value=\"" + v + "\"><text:p>" + v + "</text:p></table:table-cell>");
+		}
+		out.write("</table:table-row>\n");
+	}
+}
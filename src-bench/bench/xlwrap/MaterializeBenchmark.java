@@ -0,0 +1,112 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bench.xlwrap;
+
+import java.io.File;
+
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.exec.ExecutionContext;
+import at.jku.xlwrap.exec.XLWrapMaterializer;
+import at.jku.xlwrap.map.MapTemplate;
+import at.jku.xlwrap.map.MappingParser;
+import at.jku.xlwrap.map.XLWrapMapping;
+import at.jku.xlwrap.map.transf.RowShift;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * end-to-end materialization with {@link XLWrapMaterializer#generateModel(XLWrapMapping)}, 
+ * either of a mapping file or of a generated spreadsheet (see {@link InputGenerator}) wrapped by a single row-shifted template
+ * 
+ * Each invocation uses a new materializer, so opening the spreadsheets is measured as well.
+ * 
+ * @author dorgon
+ *
+ */
+public class MaterializeBenchmark extends Benchmark {
+	private static final String GENERATED_TEMPLATE =
+		"[ xl:uri \"'http://example.org/person/' & A2\"^^xl:Expr ] a foaf:Person ; " +
+		"foaf:name \"B2\"^^xl:Expr ; " +
+		"foaf:mbox \"URI('mailto:' & C2)\"^^xl:Expr ; " +
+		"ex:age \"D2\"^^xl:Expr ; " +
+		"ex:salary \"E2 * 1.0\"^^xl:Expr .";
+	
+	private final String mappingFile;
+	private final File generated;
+	private final int rows;
+	
+	private XLWrapMapping mapping;
+	private long triples;
+	
+	/**
+	 * benchmark for a mapping file
+	 * @param mappingFile
+	 */
+	public MaterializeBenchmark(String mappingFile) {
+		super("materialize");
+		this.mappingFile = mappingFile;
+		this.generated = null;
+		this.rows = 1;
+		param("mapping", mappingFile);
+	}
+	
+	/**
+	 * benchmark for a generated spreadsheet, reported per row
+	 * @param generated
+	 * @param rows number of data rows
+	 */
+	public MaterializeBenchmark(File generated, int rows) {
+		super("materialize");
+		this.mappingFile = null;
+		this.generated = generated;
+		this.rows = rows;
+		param("file", generated.getName());
+		param("rows", rows);
+	}
+	
+	@Override
+	public void setUp() throws Exception {
+		if (mappingFile != null)
+			mapping = MappingParser.parse(mappingFile);
+		else {
+			MapTemplate tmpl = new MapTemplate(generated.getPath(), null, 0, GENERATED_TEMPLATE);
+			tmpl.initAndValidate(new ExecutionContext());
+			tmpl.repeatTransform(new RowShift(1, Integer.MAX_VALUE, "A2:E2", null, "ALLEMPTY(A2:E2)"));
+			mapping = new XLWrapMapping();
+			mapping.add(tmpl);
+		}
+		
+		triples = generate().size();
+		param("triples", triples);
+	}
+	
+	private Model generate() throws XLWrapException {
+		return new XLWrapMaterializer().generateModel(mapping);
+	}
+	
+	@Override
+	public int invoke() throws Exception {
+		Model m = generate();
+		if (m.size() != triples)
+			throw new IllegalStateException("Materialization of " + this + " produced " + m.size() + " instead of " + triples + " triples.");
+		return rows;
+	}
+	
+	@Override
+	public String getOperation() {
+		return mappingFile != null ? "mapping" : "row";
+	}
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bench.xlwrap;
+
+import at.jku.xlwrap.map.expr.parser.XLExpression;
+
+/**
+ * parses typical xl:Expr literals with {@link XLExpression#parse(String)}
+ * 
+ * @author dorgon
+ *
+ */
+public class ParseExpressionBenchmark extends Benchmark {
+	private static final String[] EXPRESSIONS = {
+		"A4",
+		"DOUBLE(C17)",
+		"A4 & ' ' & B4",
+		"TRIM(A4 & ' ' & B4)",
+		"'http://example.org/' & A4 & '_' & B4",
+		"URI(('http://xmlns.com/foaf/0.1/' & A1))",
+		"'http://example.org/' & SUBSTITUTE(H4, ' ', '_')",
+		"FILENAME(A4) & ', Sheet ' & SHEETNUM(A4)",
+		"ALLEMPTY(A4:H4)",
+		"=IF(D4 > 65, 'retired', 'active') & ' ' & (G4 * 1.2 + 100) / 12"
+	};
+	
+	public ParseExpressionBenchmark() {
+		super("parseExpression");
+	}
+	
+	@Override
+	public int invoke() throws Exception {
+		for (String e : EXPRESSIONS)
+			consume(XLExpression.parse(e));
+		return EXPRESSIONS.length;
+	}
+	
+	@Override
+	public String getOperation() {
+		return "expression";
+	}
+}
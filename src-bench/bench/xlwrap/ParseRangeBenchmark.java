@@ -0,0 +1,53 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bench.xlwrap;
+
+import at.jku.xlwrap.common.Utils;
+
+/**
+ * parses typical range references with {@link Utils#parseRange(String)}
+ * 
+ * @author dorgon
+ *
+ */
+public class ParseRangeBenchmark extends Benchmark {
+	private static final String[] RANGES = {
+		"A4",
+		"A4:H4",
+		"Sheet2.A4:B7",
+		"A17; B17:C17",
+		"B15; B17:C20; A14",
+		"'testing/test-data1.xls'#$'Tests 1'.A4:H8",
+		"#2.A1:Z100",
+		"'Tests 1'.A4:Sheet2.H8"
+	};
+	
+	public ParseRangeBenchmark() {
+		super("parseRange");
+	}
+	
+	@Override
+	public int invoke() throws Exception {
+		for (String r : RANGES)
+			consume(Utils.parseRange(r));
+		return RANGES.length;
+	}
+	
+	@Override
+	public String getOperation() {
+		return "range";
+	}
+}
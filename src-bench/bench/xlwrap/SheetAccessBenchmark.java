@@ -0,0 +1,137 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bench.xlwrap;
+
+import java.io.File;
+
+import at.jku.xlwrap.common.Utils;
+import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
+import at.jku.xlwrap.spreadsheet.Sheet;
+import at.jku.xlwrap.spreadsheet.Workbook;
+import at.jku.xlwrap.spreadsheet.WorkbookFactory;
+
+/**
+ * random cell access on an opened Excel or OpenDocument sheet: reads and decodes every cell
+ * of the used area in a fixed pseudo-random order, opening the workbook is not measured
+ * 
+ * Streamed sheets (.xlsx) only keep a window of rows, they are accessed in row-major order instead.
+ * Cells are either decoded from {@link Sheet#getCell(int, int)} or read into a reused {@link CellValueHolder}.
+ * 
+ * @author dorgon
+ *
+ */
+public class SheetAccessBenchmark extends Benchmark {
+	private final File file;
+	private final String sheetName;
+	private final int maxRows;
+	private final boolean sequential;
+	private final boolean holder;
+	
+	private Workbook workbook;
+	private Sheet sheet;
+	private int[] cols;
+	private int[] rows;
+	
+	/**
+	 * @param file
+	 * @param sheetName
+	 * @param maxRows number of rows to access at most
+	 */
+	public SheetAccessBenchmark(File file, String sheetName, int maxRows) {
+		this(file, sheetName, maxRows, false);
+	}
+	
+	/**
+	 * @param file
+	 * @param sheetName
+	 * @param maxRows number of rows to access at most
+	 * @param sequential access cells in row-major order
+	 */
+	public SheetAccessBenchmark(File file, String sheetName, int maxRows, boolean sequential) {
+		this(file, sheetName, maxRows, sequential, false);
+	}
+	
+	/**
+	 * @param file
+	 * @param sheetName
+	 * @param maxRows number of rows to access at most
+	 * @param sequential access cells in row-major order
+	 * @param holder read cells into a holder instead of decoding cell objects
+	 */
+	public SheetAccessBenchmark(File file, String sheetName, int maxRows, boolean sequential, boolean holder) {
+		super("sheetAccess");
+		this.file = file;
+		this.sheetName = sheetName;
+		this.maxRows = maxRows;
+		this.sequential = sequential;
+		this.holder = holder;
+		param("file", file.getName());
+		param("order", sequential ? "rows" : "random");
+		param("read", holder ? "holder" : "cell");
+	}
+	
+	@Override
+	public void setUp() throws Exception {
+		workbook = WorkbookFactory.getWorkbook(file.getPath());
+		sheet = workbook.getSheet(sheetName);
+		
+		int nRows = Math.min(sheet.getRows(), maxRows);
+		int nCols = sheet.getColumns();
+		int n = nRows * nCols;
+		cols = new int[n];
+		rows = new int[n];
+		for (int i = 0; i < n; i++) {
+			// visit all cells exactly once, with a stride co-prime to n
+			int idx = (int) ((i * 7919L) % n);
+			if (sequential || n % 7919 == 0)
+				idx = i;
+			cols[i] = idx % nCols;
+			rows[i] = idx / nCols;
+		}
+		param("rows", nRows);
+		param("columns", nCols);
+	}
+	
+	@Override
+	public int invoke() throws Exception {
+		if (holder) {
+			CellValueHolder value = new CellValueHolder();
+			for (int i = 0; i < cols.length; i++) {
+				sheet.readCell(cols[i], rows[i], value);
+				consume(value.getType());
+			}
+			return cols.length;
+		}
+		
+		for (int i = 0; i < cols.length; i++) {
+			Cell cell = sheet.getCell(cols[i], rows[i]);
+			if (cell != null)
+				consume(Utils.getXLExprValue(cell));
+		}
+		return cols.length;
+	}
+	
+	@Override
+	public void tearDown() throws Exception {
+		workbook.close();
+	}
+	
+	@Override
+	public String getOperation() {
+		return "cell";
+	}
+}
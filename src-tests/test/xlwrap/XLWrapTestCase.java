@@ -15,11 +15,18 @@
  */
 package test.xlwrap;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import at.jku.xlwrap.common.Utils;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.exec.ExecutionContext;
 import at.jku.xlwrap.map.MapTemplate;
 import at.jku.xlwrap.map.XLExprDatatype;
 import at.jku.xlwrap.map.XLWrapMapping;
+import at.jku.xlwrap.map.expr.val.XLExprValue;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
+import at.jku.xlwrap.spreadsheet.Sheet;
+import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 import at.jku.xlwrap.vocab.XLWrap;
 
 import com.hp.hpl.jena.datatypes.TypeMapper;
@@ -80,6 +87,23 @@ public class XLWrapTestCase {
 		return t;
 	}
 	
+	/**
+	 * assert that reading a cell into a holder yields the same value as decoding the cell
+	 */
+	public static void assertSameValue(Sheet sheet, int col, int row) throws XLWrapException, XLWrapEOFException {
+		XLExprValue<?> expected = Utils.getXLExprValue(sheet.getCell(col, row));
+		CellValueHolder holder = new CellValueHolder();
+		sheet.readCell(col, row, holder);
+		XLExprValue<?> actual = Utils.getXLExprValue(holder);
+		String info = sheet.getSheetInfo() + " " + col + "/" + row;
+		if (expected == null)
+			assertNull(info, actual);
+		else {
+			assertEquals(info, expected.getClass(), actual.getClass());
+			assertEquals(info, expected.getValue(), actual.getValue());
+		}
+	}
+	
 	protected XLWrapMapping createMapping(MapTemplate tmpl) {
 		XLWrapMapping m = new XLWrapMapping();
 		m.add(tmpl);
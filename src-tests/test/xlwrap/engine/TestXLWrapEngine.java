@@ -0,0 +1,337 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.xlwrap.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import at.jku.xlwrap.common.Constants;
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.engine.XLWrapEngine;
+import at.jku.xlwrap.exec.MaterializationStats;
+import at.jku.xlwrap.exec.XLWrapMaterializer;
+
+import com.hp.hpl.jena.ontology.OntModel;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.shared.Lock;
+
+/**
+ * @author dorgon
+ *
+ */
+public class TestXLWrapEngine {
+	private File dir;
+	private File watchDir;
+	private File a;
+	private File b;
+	private String mappingUri;
+	private XLWrapEngine engine;
+	
+	/** engine without a SPARQL endpoint */
+	private static class LocalEngine extends XLWrapEngine {
+		public LocalEngine(String cacheDir, String watchDir) {
+			super(cacheDir, watchDir);
+		}
+		
+		@Override
+		protected XLWrapMaterializer createMaterializer(MaterializationStats stats) {
+			return new XLWrapMaterializer(stats);
+		}
+	}
+	
+	private static void copy(String from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+		OutputStream out = new FileOutputStream(to);
+		byte[] buf = new byte[8192];
+		int n;
+		while ((n = in.read(buf)) > 0)
+			out.write(buf, 0, n);
+		in.close();
+		out.close();
+	}
+	
+	/** change the content of a spreadsheet, trailing sectors are ignored by readers */
+	private static void modify(File f) throws IOException {
+		OutputStream out = new FileOutputStream(f, true);
+		out.write(new byte[512]);
+		out.close();
+		f.setLastModified(System.currentTimeMillis());
+	}
+	
+	private static String template(String file, String graph) {
+		return "xl:template [ xl:fileName \"" + file + "\" ; xl:sheetName \"Tests 1\" ; xl:templateGraph :" + graph + " ; " +
+			"xl:transform [ a rdf:Seq ; rdf:_1 [ a xl:RowShift ; xl:restriction \"A4:H4\" ; xl:breakCondition \"ALLEMPTY(A4:H4)\" ; xl:steps \"1\" ] ] ]";
+	}
+	
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("xlwrap-engine-", "");
+		dir.delete();
+		watchDir = new File(dir, "mappings");
+		watchDir.mkdirs();
+		a = new File(dir, "a.xls");
+		b = new File(dir, "b.xls");
+		copy("testing/test-data1.xls", a);
+		copy("testing/test-data1.xls", b);
+		a.setLastModified(System.currentTimeMillis() - 10000);
+		b.setLastModified(System.currentTimeMillis() - 10000);
+		
+		File mapping = new File(watchDir, "test.trig");
+		PrintWriter w = new PrintWriter(mapping, "utf-8");
+		w.println("@prefix rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> .");
+		w.println("@prefix foaf: <http://xmlns.com/foaf/0.1/> .");
+		w.println("@prefix ex: <http://example.org/> .");
+		w.println("@prefix xl: <http://purl.org/NET/xlwrap#> .");
+		w.println("@prefix : <http://example.org/mapping#> .");
+		w.println("{ [] a xl:Mapping ; " + template(a.getAbsolutePath(), "A") + " ; " + template(b.getAbsolutePath(), "B") + " . }");
+		w.println(":A { [ xl:uri \"'http://example.org/a/' & A4\"^^xl:Expr ] foaf:name \"A4 & ' ' & B4\"^^xl:Expr . foaf:name <http://www.w3.org/2000/01/rdf-schema#subPropertyOf> ex:label . }");
+		w.println(":B { [ xl:uri \"'http://example.org/b/' & A4\"^^xl:Expr ] ex:age \"D4\"^^xl:Expr . }");
+		w.close();
+		mapping.setLastModified(System.currentTimeMillis() - 10000); // timestamps are stored in seconds
+		mappingUri = "file:" + mapping.getCanonicalPath();
+		
+		System.setProperty(Constants.SYSTEMPROPERTY_WATCH_INTERVAL, "100");
+		engine = new LocalEngine(new File(dir, "tdb").getAbsolutePath(), watchDir.getAbsolutePath());
+	}
+	
+	@After
+	public void tearDown() {
+		engine.shutdown();
+		System.clearProperty(Constants.SYSTEMPROPERTY_WATCH_INTERVAL);
+		delete(dir);
+	}
+	
+	private static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null)
+			for (File c : children)
+				delete(c);
+		f.delete();
+	}
+	
+	@Test
+	public void testGraphPerTemplate() throws XLWrapException, InterruptedException, IOException {
+		engine.getWatcher().stop(); // check explicitly
+		
+		List<String> graphs = engine.getTemplateGraphs(mappingUri);
+		assertEquals(2, graphs.size());
+		assertTrue(graphs.contains(XLWrapEngine.getTemplateGraphName(mappingUri, 0)));
+		assertTrue(graphs.contains(XLWrapEngine.getTemplateGraphName(mappingUri, 1)));
+		
+		long size0 = engine.getCachedModel(graphs.get(0)).size();
+		long size1 = engine.getCachedModel(graphs.get(1)).size();
+		assertTrue(size0 > 0);
+		assertTrue(size1 > 0);
+		assertTrue(engine.getModel().contains(null, engine.getModel().createProperty("http://example.org/age")));
+		
+		// modify the file of the second template only
+		long t0 = engine.getTimestamp(XLWrapEngine.getTemplateGraphName(mappingUri, 0)).getTimeInMillis();
+		long t1 = engine.getTimestamp(XLWrapEngine.getTemplateGraphName(mappingUri, 1)).getTimeInMillis();
+		String data1 = engine.getDataGraph(XLWrapEngine.getTemplateGraphName(mappingUri, 1));
+		Thread.sleep(1000); // timestamps are stored in seconds
+		modify(b);
+		engine.checkForChanges();
+		
+		assertFalse(data1.equals(engine.getDataGraph(XLWrapEngine.getTemplateGraphName(mappingUri, 1))));
+		assertEquals(t0, engine.getTimestamp(XLWrapEngine.getTemplateGraphName(mappingUri, 0)).getTimeInMillis());
+		assertTrue(t1 < engine.getTimestamp(XLWrapEngine.getTemplateGraphName(mappingUri, 1)).getTimeInMillis());
+		assertEquals(size0, engine.getCachedModel(graphs.get(0)).size());
+		assertEquals(size1, engine.getCachedModel(graphs.get(1)).size());
+	}
+	
+	@Test
+	public void testSnapshot() throws InterruptedException, IOException {
+		engine.getWatcher().stop();
+		OntModel before = engine.getModel();
+		long size = before.size();
+		String graph = XLWrapEngine.getTemplateGraphName(mappingUri, 1);
+		String data = engine.getDataGraph(graph);
+		
+		Thread.sleep(1000);
+		modify(b);
+		engine.checkForChanges();
+		
+		// reloaded into a new data graph and published as a new snapshot
+		assertFalse(data.equals(engine.getDataGraph(graph)));
+		assertNotSame(before, engine.getModel());
+		assertEquals(size, engine.getModel().size());
+		
+		// the old snapshot is unchanged until the next reload
+		assertEquals(size, before.size());
+	}
+	
+	@Test
+	public void testRetiredGraphsWaitForReaders() throws InterruptedException, IOException {
+		engine.getWatcher().stop();
+		OntModel before = engine.getModel();
+		long size = before.size();
+		Thread.sleep(1000);
+		modify(b);
+		engine.checkForChanges();
+		
+		// a query on the replaced snapshot holds the lock while the next reload drops its graph
+		engine.getLock().enterCriticalSection(Lock.READ);
+		Thread.sleep(1000);
+		modify(b);
+		Thread reload = new Thread() {
+			@Override
+			public void run() {
+				engine.checkForChanges();
+			}
+		};
+		reload.start();
+		try {
+			reload.join(1000);
+			assertTrue(reload.isAlive());
+			assertEquals(size, before.size());
+		} finally {
+			engine.getLock().leaveCriticalSection();
+		}
+		
+		reload.join();
+		assertTrue(before.size() < size);
+		assertEquals(size, engine.getModel().size());
+	}
+	
+	@Test
+	public void testMaterializationStats() throws InterruptedException, IOException {
+		engine.getWatcher().stop();
+		MaterializationStats stats = engine.getMaterializationStats();
+		long runs = stats.getRuns();
+		assertTrue(runs > 0);
+		
+		Thread.sleep(1000);
+		modify(b);
+		engine.checkForChanges();
+		
+		// same instance outside reloads, counters accumulate over checks
+		assertSame(stats, engine.getMaterializationStats());
+		assertTrue(stats.getRuns() > runs);
+	}
+	
+	@Test
+	public void testTouched() throws XLWrapException, InterruptedException {
+		engine.getWatcher().stop();
+		File mapping = new File(watchDir, "test.trig");
+		String graph = XLWrapEngine.getTemplateGraphName(mappingUri, 1);
+		String data = engine.getDataGraph(graph);
+		long t = engine.getTimestamp(mappingUri).getTimeInMillis();
+		long t1 = engine.getTimestamp(graph).getTimeInMillis();
+		
+		// modification time changed but same content
+		Thread.sleep(1000);
+		mapping.setLastModified(System.currentTimeMillis());
+		b.setLastModified(System.currentTimeMillis());
+		engine.checkForChanges();
+		
+		assertEquals(data, engine.getDataGraph(graph));
+		assertTrue(t < engine.getTimestamp(mappingUri).getTimeInMillis());
+		assertTrue(t1 < engine.getTimestamp(graph).getTimeInMillis());
+	}
+	
+	@Test
+	public void testRestart() throws XLWrapException {
+		long size = engine.getModel().size();
+		String graph = XLWrapEngine.getTemplateGraphName(mappingUri, 0);
+		String data = engine.getDataGraph(graph);
+		long t0 = engine.getTimestamp(graph).getTimeInMillis();
+		
+		engine.shutdown();
+		engine = new LocalEngine(new File(dir, "tdb").getAbsolutePath(), watchDir.getAbsolutePath());
+		assertEquals(data, engine.getDataGraph(graph));
+		assertEquals(t0, engine.getTimestamp(graph).getTimeInMillis());
+		assertEquals(size, engine.getModel().size());
+	}
+	
+	@Test
+	public void testLeanUnion() {
+		engine.getWatcher().stop();
+		long size = engine.getModel().size();
+		assertSame(engine.getModel().getGraph(), engine.getGraph());
+		
+		// served without the OntModel of getModel()
+		engine.setLeanUnion(true);
+		assertNotSame(engine.getModel().getGraph(), engine.getGraph());
+		assertEquals(size, engine.getGraph().size());
+		assertEquals(size, engine.getModel().size());
+	}
+	
+	@Test
+	public void testRdfsClosure() {
+		engine.getWatcher().stop();
+		Model model = engine.getModel();
+		Property label = model.createProperty("http://example.org/label");
+		assertFalse(model.contains(null, label));
+		
+		engine.setRdfsClosure(true);
+		assertTrue(engine.getDataGraph(XLWrapEngine.CLOSURE_GRAPH) != null);
+		assertTrue(engine.getModel().contains(null, label));
+		assertTrue(engine.getCachedModel(XLWrapEngine.CLOSURE_GRAPH).contains(null, label));
+		
+		engine.setRdfsClosure(false);
+		assertTrue(engine.getDataGraph(XLWrapEngine.CLOSURE_GRAPH) == null);
+		assertFalse(engine.getModel().contains(null, label));
+	}
+	
+	@Test
+	public void testRemovedMapping() {
+		engine.getWatcher().stop();
+		new File(watchDir, "test.trig").delete();
+		engine.checkForChanges();
+		assertEquals(0, engine.getTemplateGraphs(mappingUri).size());
+		assertEquals(0, engine.getCachedModel(XLWrapEngine.getTemplateGraphName(mappingUri, 0)).size());
+	}
+	
+	@Test
+	public void testWatcher() throws XLWrapException, InterruptedException, IOException {
+		assertTrue(engine.getWatcher().isRunning());
+		String graph = XLWrapEngine.getTemplateGraphName(mappingUri, 1);
+		long t1 = engine.getTimestamp(graph).getTimeInMillis();
+		Thread.sleep(1000);
+		modify(b);
+		
+		// reloaded by the watcher thread without calling checkForChanges()
+		boolean reloaded = false;
+		for (int i = 0; i < 100 && !reloaded; i++) {
+			Thread.sleep(100);
+			synchronized (engine) {
+				reloaded = t1 < engine.getTimestamp(graph).getTimeInMillis();
+			}
+		}
+		assertTrue(reloaded);
+		
+		engine.getWatcher().stop();
+		assertFalse(engine.getWatcher().isRunning());
+	}
+	
+}
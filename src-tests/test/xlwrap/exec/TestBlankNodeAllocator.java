@@ -0,0 +1,96 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.xlwrap.exec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import test.xlwrap.XLWrapTestCase;
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.exec.BlankNodeAllocator;
+import at.jku.xlwrap.exec.NTriplesSink;
+import at.jku.xlwrap.exec.XLWrapMaterializer;
+import at.jku.xlwrap.map.MappingParser;
+import at.jku.xlwrap.map.XLWrapMapping;
+
+/**
+ * @author dorgon
+ *
+ */
+public class TestBlankNodeAllocator extends XLWrapTestCase {
+
+	@Test
+	public void testLabels() {
+		BlankNodeAllocator a = new BlankNodeAllocator();
+		a.startTemplate("", 2);
+		a.startIteration("3_1");
+		assertEquals("t2i3_1n0", a.nextId().getLabelString());
+		assertEquals("t2i3_1n1", a.nextId().getLabelString());
+		a.startIteration("3_2");
+		assertEquals("t2i3_2n0", a.nextId().getLabelString());
+		assertEquals("t2c5", a.constant(5).getBlankNodeLabel());
+		assertEquals("id_x", a.forId("x").getBlankNodeLabel());
+		
+		a.startTemplate("m1", 0);
+		assertEquals("m1t0i0n0", a.nextId().getLabelString());
+	}
+	
+	/** mapping with several blank nodes per template, parsing it again yields other blank node IDs */
+	private static final String TEST_MAPPING = "testing/test-blanknodes.trig";
+	
+	private String materialize(XLWrapMapping mapping, int threads) throws XLWrapException {
+		XLWrapMaterializer mat = new XLWrapMaterializer();
+		mat.setThreads(threads);
+		mat.setChunkSize(1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		mat.generate(mapping, new NTriplesSink(out));
+		return out.toString();
+	}
+	
+	@Test
+	public void testDeterministicOutput() throws XLWrapException {
+		String first = materialize(MappingParser.parse(TEST_MAPPING), 1);
+		assertTrue(first.contains("_:"));
+		for (int i = 0; i < 3; i++)
+			assertEquals(first, materialize(MappingParser.parse(TEST_MAPPING), 1));
+	}
+	
+	@Test
+	public void testDeterministicParallelOutput() throws XLWrapException {
+		// templates processed in parallel are interleaved in the output, but labels must be equal
+		String[] seq = materialize(MappingParser.parse(TEST_MAPPING), 1).split("\n");
+		String[] par = materialize(MappingParser.parse(TEST_MAPPING), 3).split("\n");
+		Arrays.sort(seq);
+		Arrays.sort(par);
+		assertArrayEquals(seq, par);
+	}
+	
+	@Test
+	public void testDeterministicChunkedOutput() throws XLWrapException {
+		String seq = materialize(createMapping(MappingParser.parse(TEST_MAPPING).getMapTemplatesIterator().next()), 1);
+		assertFalse(seq.length() == 0);
+		for (int i = 0; i < 3; i++)
+			assertEquals(seq, materialize(createMapping(MappingParser.parse(TEST_MAPPING).getMapTemplatesIterator().next()), 3));
+	}
+	
+}
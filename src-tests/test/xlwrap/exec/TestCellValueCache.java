@@ -0,0 +1,80 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.xlwrap.exec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import test.xlwrap.XLWrapTestCase;
+import at.jku.xlwrap.common.Utils;
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.exec.CellValueCache;
+import at.jku.xlwrap.exec.ExecutionContext;
+import at.jku.xlwrap.map.expr.E_RangeRef;
+import at.jku.xlwrap.map.expr.val.XLExprValue;
+import at.jku.xlwrap.map.range.CellRange;
+import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
+
+/**
+ * @author dorgon
+ *
+ */
+public class TestCellValueCache extends XLWrapTestCase {
+	private ExecutionContext context;
+	
+	@Before
+	public void setUp() throws XLWrapException {
+		context = new ExecutionContext();
+		context.setActiveTemplate(createPersonTemplate());
+	}
+	
+	@Test
+	public void testHitsAndMisses() throws XLWrapException, XLWrapEOFException {
+		CellValueCache cache = context.getCellValueCache();
+		E_RangeRef a4 = new E_RangeRef("A4");
+		E_RangeRef b4 = new E_RangeRef("B4");
+		
+		XLExprValue<?> v = a4.eval(context);
+		assertSame(v, a4.eval(context));
+		b4.eval(context);
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		
+		// same cell from another range object
+		CellRange abs = (CellRange) Utils.parseRange("A4").getAbsoluteRange(context);
+		assertSame(v, context.getCellValue(abs));
+		assertEquals(2, cache.getHits());
+		
+		// cleared for the next iteration
+		cache.clear();
+		assertEquals(v.getValue(), a4.eval(context).getValue());
+		assertEquals(3, cache.getMisses());
+	}
+	
+	@Test
+	public void testClearedByActiveTemplate() throws XLWrapException, XLWrapEOFException {
+		CellValueCache cache = context.getCellValueCache();
+		new E_RangeRef("A4").eval(context);
+		context.setActiveTemplate(createPersonTemplate());
+		new E_RangeRef("A4").eval(context);
+		assertEquals(0, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+}
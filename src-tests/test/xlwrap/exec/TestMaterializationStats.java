@@ -0,0 +1,72 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.xlwrap.exec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import test.xlwrap.XLWrapTestCase;
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.exec.CountingSink;
+import at.jku.xlwrap.exec.MaterializationStats;
+import at.jku.xlwrap.exec.XLWrapMaterializer;
+import at.jku.xlwrap.map.MapTemplate;
+import at.jku.xlwrap.map.transf.RowShift;
+
+/**
+ * @author dorgon
+ *
+ */
+public class TestMaterializationStats extends XLWrapTestCase {
+
+	@Test
+	public void testCounters() throws XLWrapException, JSONException {
+		MapTemplate tmpl = createPersonTemplate();		
+		tmpl.repeatTransform(new RowShift(1, Integer.MAX_VALUE, "A4:H4", null, "ALLEMPTY(A4:H4)"));
+		
+		XLWrapMaterializer mat = new XLWrapMaterializer();
+		MaterializationStats stats = mat.getStats();
+		stats.setExpressionTiming(true);
+		CountingSink sink = new CountingSink();
+		mat.generate(createMapping(tmpl), sink);
+		
+		assertEquals(1, stats.getRuns());
+		assertEquals(sink.getCount(), stats.getTriples());
+		assertTrue(stats.getIterations() > 0);
+		assertEquals(1, stats.getTemplateSummaries().length);
+		
+		JSONObject json = new JSONObject(stats.getJSON());
+		JSONObject t = json.getJSONArray("templates").getJSONObject(0);
+		assertEquals(stats.getTriples(), t.getLong("triples"));
+		assertEquals(stats.getIterations(), t.getLong("iterations"));
+		assertEquals(stats.getIterations() + 1, t.getLong("breakEvaluations")); // the last one breaks
+		assertEquals(stats.getIterations(), t.getLong("skipEvaluations"));
+		assertTrue(t.getJSONArray("expressions").length() > 0);
+		
+		stats.reset();
+		assertEquals(0, stats.getTriples());
+	}
+	
+	@Test
+	public void testRegister() {
+		assertTrue(new XLWrapMaterializer().getStats().register(MaterializationStats.MBEAN_NAME));
+	}
+	
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.xlwrap.exec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import org.junit.Test;
+
+import test.xlwrap.XLWrapTestCase;
+import at.jku.xlwrap.common.Constants;
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.exec.XLWrapMaterializer;
+import at.jku.xlwrap.map.MapTemplate;
+import at.jku.xlwrap.map.XLWrapMapping;
+import at.jku.xlwrap.map.transf.ColumnShift;
+import at.jku.xlwrap.map.transf.RowShift;
+import at.jku.xlwrap.vocab.XLWrap;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * @author dorgon
+ *
+ */
+public class TestParallelMaterialization extends XLWrapTestCase {
+
+	private XLWrapMapping createMapping() throws XLWrapException {
+		MapTemplate persons = createPersonTemplate();
+		persons.repeatTransform(new RowShift(1, 5, "A4:H4", null, null));
+		
+		MapTemplate revenues = createReveneueTemplate();
+		revenues.repeatTransform(new RowShift(1, 4, "A17; B17:C17", null, null));
+		revenues.repeatTransform(new ColumnShift(2, 3, "B15; B17:C20", null, null));
+		
+		XLWrapMapping mapping = new XLWrapMapping();
+		mapping.add(persons);
+		mapping.add(revenues);
+		mapping.add(createPersonTemplate());
+		return mapping;
+	}
+	
+	@Test
+	public void testParallelEqualsSequential() throws XLWrapException {
+		XLWrapMaterializer seq = new XLWrapMaterializer();
+		seq.setThreads(1);
+		Model expected = seq.generateModel(createMapping());
+		
+		XLWrapMaterializer par = new XLWrapMaterializer();
+		par.setThreads(3);
+		Model m = par.generateModel(createMapping());
+		
+		assertEquals(expected.size(), m.size());
+		assertTrue(expected.isIsomorphicWith(m));
+	}
+	
+	private void assertChunkedEqualsSequential(RowShift shift) throws XLWrapException {
+		MapTemplate tmpl = createPersonTemplate();
+		tmpl.repeatTransform(shift);
+		
+		XLWrapMaterializer seq = new XLWrapMaterializer();
+		seq.setThreads(1);
+		Model expected = seq.generateModel(createMapping(tmpl));
+		
+		XLWrapMaterializer par = new XLWrapMaterializer();
+		par.setThreads(3);
+		par.setChunkSize(2);
+		Model m = par.generateModel(createMapping(tmpl));
+		
+		assertTrue(expected.size() > 0);
+		assertEquals(expected.size(), m.size());
+		assertTrue(expected.isIsomorphicWith(m));
+		
+		// chunks cancelled after the end of the template are not counted
+		assertEquals(seq.getStats().getIterations(), par.getStats().getIterations());
+		assertEquals(seq.getStats().getTriples(), par.getStats().getTriples());
+	}
+	
+	@Test
+	public void testChunkedEqualsSequential() throws XLWrapException {
+		assertChunkedEqualsSequential(new RowShift(1, 5, "A4:H4", null, null));
+	}
+	
+	@Test
+	public void testChunkedBreakCondition() throws XLWrapException {
+		assertChunkedEqualsSequential(new RowShift(1, Integer.MAX_VALUE, "A4:H4", null, "ALLEMPTY(A4:H4)"));
+	}
+	
+	@Test
+	public void testChunkedCSVStream() throws XLWrapException, IOException {
+		// the chunks in flight span more rows than the row cache of a CSV stream (40000 rows)
+		int rows = 120000;
+		File f = File.createTempFile("xlwrap-stream", ".csv");
+		f.deleteOnExit();
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(f), "ISO-8859-15"));
+		for (int i = 0; i < rows; i++)
+			out.println("r" + i);
+		out.close();
+		
+		// ISO-8859-15 cannot be scanned at the byte level, so the file is read as a stream
+		System.setProperty(Constants.SYSTEMPROPERTY_CSV_ENCODING, "ISO-8859-15");
+		try {
+			MapTemplate tmpl = new MapTemplate(f.getAbsolutePath(), XLWrap.tab_unquoted, 0, 
+					"[ xl:uri \"'http://example.org/' & A1\"^^xl:Expr ] ex:row \"A1\"^^xl:Expr .");
+			tmpl.repeatTransform(new RowShift(1, rows, "A1", null, null));
+			
+			XLWrapMaterializer seq = new XLWrapMaterializer();
+			seq.setThreads(1);
+			Model expected = seq.generateModel(createMapping(tmpl));
+			
+			XLWrapMaterializer par = new XLWrapMaterializer();
+			par.setThreads(4);
+			par.setChunkSize(30000);
+			Model m = par.generateModel(createMapping(tmpl));
+			
+			assertEquals(rows, expected.size());
+			assertEquals(expected.size(), m.size());
+			assertTrue(expected.isIsomorphicWith(m));
+		} finally {
+			System.clearProperty(Constants.SYSTEMPROPERTY_CSV_ENCODING);
+		}
+	}
+	
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.xlwrap.exec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import test.xlwrap.XLWrapTestCase;
+import at.jku.xlwrap.common.Utils;
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.exec.ExecutionContext;
+import at.jku.xlwrap.exec.SheetValueCache;
+import at.jku.xlwrap.exec.XLWrapMaterializer;
+import at.jku.xlwrap.map.MapTemplate;
+import at.jku.xlwrap.map.XLWrapMapping;
+import at.jku.xlwrap.map.expr.val.XLExprValue;
+import at.jku.xlwrap.map.transf.RowShift;
+import at.jku.xlwrap.spreadsheet.Sheet;
+import at.jku.xlwrap.spreadsheet.WorkbookFactory;
+import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
+import at.jku.xlwrap.vocab.XLWrap;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * @author dorgon
+ *
+ */
+public class TestSheetValueCache extends XLWrapTestCase {
+	/** fixed files, TEST_FILE_DATA1 is reassigned by other test classes running in the same VM */
+	private static final String XLS_FILE = "testing/test-data1.xls";
+	private static final String ODS_FILE = "testing/test-data1.ods";
+	
+	private void assertCachedValues(String file, SheetValueCache cache) throws XLWrapException, XLWrapEOFException {
+		Sheet sheet = WorkbookFactory.getWorkbook(file).getSheet(0);
+		for (int pass = 0; pass < 2; pass++) {
+			for (int row = 0; row < Math.min(sheet.getRows(), 100); row++) {
+				for (int col = 0; col < Math.min(sheet.getColumns(), 20); col++) {
+					XLExprValue<?> expected = Utils.getXLExprValue(sheet.getCell(col, row));
+					XLExprValue<?> v = cache.getValue(sheet, col, row);
+					if (expected == null)
+						assertNull(v);
+					else {
+						assertEquals(expected.getClass(), v.getClass());
+						assertEquals(expected.getValue(), v.getValue());
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testValues() throws XLWrapException, XLWrapEOFException {
+		SheetValueCache cache = new SheetValueCache(1024 * 1024);
+		assertCachedValues(XLS_FILE, cache);
+		long n = cache.getMisses();
+		assertTrue(n > 0);
+		assertEquals(n, cache.getHits());
+		assertEquals(0.5, cache.getHitRate(), 0.0);
+		assertTrue(cache.getUsedBytes() > 0);
+		
+		assertCachedValues(ODS_FILE, cache);
+		assertEquals(cache.getMisses(), cache.getHits());
+		
+		cache.clear();
+		assertEquals(0, cache.getUsedBytes());
+		assertEquals(cache.getMisses(), cache.getHits());
+	}
+	
+	@Test
+	public void testMemoryLimit() throws XLWrapException, XLWrapEOFException {
+		SheetValueCache cache = new SheetValueCache(0);
+		assertCachedValues(XLS_FILE, cache);
+		assertEquals(0, cache.getHits());
+		assertEquals(0, cache.getUsedBytes());
+	}
+	
+	private MapTemplate createTemplate(String graph) throws XLWrapException {
+		MapTemplate t = new MapTemplate(XLS_FILE, XLWrap.tab_unquoted, TEST_SHEET_DATA1_1, graph);
+		t.initAndValidate(new ExecutionContext());
+		return t;
+	}
+	
+	private XLWrapMapping createMapping() throws XLWrapException {
+		MapTemplate persons = createTemplate(TEST_GRAPH_PERSONS);
+		persons.repeatTransform(new RowShift(1, 5, "A4:H4", null, null));
+		
+		XLWrapMapping mapping = new XLWrapMapping();
+		mapping.add(persons);
+		mapping.add(createTemplate(TEST_GRAPH_PERSONS));
+		mapping.add(createTemplate(TEST_GRAPH_REVENUES));
+		return mapping;
+	}
+	
+	@Test
+	public void testSharedAcrossTemplates() throws XLWrapException {
+		Model expected = new XLWrapMaterializer().generateModel(createMapping());
+		
+		for (int threads = 1; threads <= 2; threads++) {
+			XLWrapMaterializer m = new XLWrapMaterializer();
+			m.setThreads(threads);
+			m.setSheetCacheSize(1024 * 1024);
+			Model model = m.generateModel(createMapping());
+			assertEquals(expected.size(), model.size());
+			assertTrue(expected.isIsomorphicWith(model));
+			
+			// the second person template reads the cells of the first iteration again
+			assertTrue(m.getStats().getSheetCacheHits() > 0);
+			assertTrue(m.getStats().getSheetCacheHitRate() > 0);
+		}
+	}
+	
+}
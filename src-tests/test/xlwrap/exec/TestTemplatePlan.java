@@ -0,0 +1,59 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.xlwrap.exec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import org.junit.Test;
+
+import test.xlwrap.XLWrapTestCase;
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.exec.TemplatePlan;
+import at.jku.xlwrap.map.MapTemplate;
+
+/**
+ * @author dorgon
+ *
+ */
+public class TestTemplatePlan extends XLWrapTestCase {
+
+	@Test
+	public void testCompile() throws XLWrapException {
+		MapTemplate tmpl = createPersonTemplate();
+		TemplatePlan plan = tmpl.getTemplatePlan();
+		
+		assertEquals(8, plan.getStatementCount());
+		assertEquals(2, plan.getDeclarationCount()); // two xl:uri
+		
+		// 7 object expressions (including rdf:type) + 2 xl:uri expressions
+		assertEquals(9, plan.getExpressions().length);
+		
+		int blanks = 0;
+		for (int i = 0; i < plan.getSlotCount(); i++)
+			if (plan.getKind(i) == TemplatePlan.BLANK)
+				blanks++;
+		assertEquals(2, blanks);
+	}
+	
+	@Test
+	public void testCopyExpressions() throws XLWrapException {
+		TemplatePlan plan = createReveneueTemplate().getTemplatePlan();
+		assertNotSame(plan.getExpressions()[0], TemplatePlan.copyExpressions(plan.getExpressions())[0]);
+		assertEquals(plan.getExpressions()[0].toString(), TemplatePlan.copyExpressions(plan.getExpressions())[0].toString());
+	}
+	
+}
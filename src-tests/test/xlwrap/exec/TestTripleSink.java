@@ -0,0 +1,70 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.xlwrap.exec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import test.xlwrap.XLWrapTestCase;
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.exec.CountingSink;
+import at.jku.xlwrap.exec.NTriplesSink;
+import at.jku.xlwrap.exec.XLWrapMaterializer;
+import at.jku.xlwrap.map.MapTemplate;
+import at.jku.xlwrap.map.transf.ColumnShift;
+import at.jku.xlwrap.map.transf.RowShift;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * @author dorgon
+ *
+ */
+public class TestTripleSink extends XLWrapTestCase {
+
+	@Test
+	public void testCountingSink() throws XLWrapException {
+		MapTemplate tmpl = createPersonTemplate();		
+		tmpl.repeatTransform(new RowShift(1, 5, "A4:H4", null, null));
+		
+		CountingSink sink = new CountingSink();
+		new XLWrapMaterializer().generate(createMapping(tmpl), sink);
+		assertEquals(34, sink.getCount());
+	}
+	
+	@Test
+	public void testNTriplesSink() throws XLWrapException {
+		MapTemplate tmpl = createReveneueTemplate();
+		tmpl.repeatTransform(new RowShift(1, 4, "A17; B17:C17", null, null));
+		tmpl.repeatTransform(new ColumnShift(2, 3, "B15; B17:C20", null, null));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new XLWrapMaterializer().generate(createMapping(tmpl), new NTriplesSink(out));
+		Model streamed = ModelFactory.createDefaultModel();
+		streamed.read(new ByteArrayInputStream(out.toByteArray()), null, "N-TRIPLE");
+		
+		Model m = new XLWrapMaterializer().generateModel(createMapping(tmpl));
+		assertEquals(m.size(), streamed.size());
+		assertTrue(m.isIsomorphicWith(streamed));
+	}
+	
+}
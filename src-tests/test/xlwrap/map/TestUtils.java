@@ -17,6 +17,10 @@ package test.xlwrap.map;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
 import org.junit.Test;
 
 import at.jku.xlwrap.common.Utils;
@@ -74,4 +78,24 @@ public class TestUtils {
 		for (int i=0; i<orig.length; i++)
 			assertEquals(result[i], Utils.parseRange(orig[i]).toString());
 	}
+	
+	@Test
+	public void testFileDigest() throws XLWrapException, IOException {
+		File f = File.createTempFile("xlwrap-digest-", ".txt");
+		try {
+			// larger than a chunk
+			StringBuilder content = new StringBuilder();
+			while (content.length() < 200000)
+				content.append("xlwrap ").append(content.length()).append('\n');
+			FileOutputStream out = new FileOutputStream(f);
+			out.write(content.toString().getBytes());
+			out.close();
+			assertEquals(Utils.SHA1(content.toString()), Utils.SHA1(f));
+			
+			f.setLastModified(System.currentTimeMillis() + 10000);
+			assertEquals(Utils.SHA1(content.toString()), Utils.SHA1(f));
+		} finally {
+			f.delete();
+		}
+	}
 }
@@ -27,6 +27,10 @@ import test.xlwrap.XLWrapTestCase;
 import at.jku.xlwrap.common.Utils;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.exec.ExecutionContext;
+import at.jku.xlwrap.map.expr.E_RangeRef;
+import at.jku.xlwrap.map.expr.func.math.E_FuncSUM;
+import at.jku.xlwrap.map.expr.func.spreadsheet.E_FuncEMPTY;
+import at.jku.xlwrap.map.expr.val.XLExprValue;
 import at.jku.xlwrap.map.range.AnyRange;
 import at.jku.xlwrap.map.range.BoxRange;
 import at.jku.xlwrap.map.range.CellRange;
@@ -34,6 +38,8 @@ import at.jku.xlwrap.map.range.FullSheetRange;
 import at.jku.xlwrap.map.range.MultiRange;
 import at.jku.xlwrap.map.range.NullRange;
 import at.jku.xlwrap.map.range.Range.CellIterator;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
+import at.jku.xlwrap.spreadsheet.Sheet;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 
 /**
@@ -160,6 +166,38 @@ public class TestBoxRange extends XLWrapTestCase {
 		assertFalse(it.hasNext());
 	}
 	
+	@Test
+	public void testCellIteratorHolder() throws XLWrapException, XLWrapEOFException {
+		BoxRange range = (BoxRange) Utils.parseRange("Sheet2.A2:Sheet3.C3");
+		CellIterator cells = range.getCellIterator(context);
+		CellIterator values = range.getCellIterator(context);
+		CellValueHolder holder = new CellValueHolder();
+		while (cells.hasNext()) {
+			assertTrue(values.hasNext());
+			values.next(holder);
+			XLExprValue<?> expected = Utils.getXLExprValue(cells.next());
+			if (expected == null)
+				assertTrue(holder.isNull());
+			else
+				assertEquals(expected.getValue(), Utils.getXLExprValue(holder).getValue());
+		}
+		assertFalse(values.hasNext());
+		
+		Sheet sheet = context.getSheet(TEST_FILE_DATA1, 0);
+		for (int r = 0; r < 20; r++)
+			for (int c = 0; c < 8; c++)
+				assertSameValue(sheet, c, r);
+	}
+	
+	@Test
+	public void testSumAndEmpty() throws XLWrapException, XLWrapEOFException {
+		// D4:D5 are ages 41 and 66, G4:G5 salaries
+		assertEquals(107L, new E_FuncSUM(new E_RangeRef("D4:D5")).eval(context).getValue());
+		assertEquals(50230.23 + 69234.43, (Double) new E_FuncSUM(new E_RangeRef("G4:G5")).eval(context).getValue(), 1e-9);
+		assertEquals(Boolean.FALSE, new E_FuncEMPTY(new E_RangeRef("A4:H5")).eval(context).getValue());
+		assertEquals(Boolean.TRUE, new E_FuncEMPTY(new E_RangeRef("A2:H2")).eval(context).getValue());
+	}
+	
 	@Test
 	public void testSubsumes() throws XLWrapException {
 		// null range
@@ -17,16 +17,28 @@ package test.xlwrap.spreadsheet;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 
 import org.junit.Test;
 
 import test.xlwrap.XLWrapTestCase;
 import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
 import at.jku.xlwrap.spreadsheet.Sheet;
+import at.jku.xlwrap.spreadsheet.TypeAnnotation;
 import at.jku.xlwrap.spreadsheet.Workbook;
 import at.jku.xlwrap.spreadsheet.WorkbookFactory;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 import at.jku.xlwrap.spreadsheet.csv.CSVParseConfig;
+import at.jku.xlwrap.spreadsheet.csv.CSVSheet;
 
 /**
  * @author dorgon
@@ -44,6 +56,124 @@ public class TestCSVWorkbookLoading {
 		Sheet sh = wb.getSheet(0);
 		assertEquals("Person", sh.getCell(0, 0).getText());
 	}
+	
+	@Test
+	public void testStreamingBeyondCache() throws Exception {
+		StringBuilder sb = new StringBuilder("id,name\n");
+		for (int i = 1; i < 1000; i++)
+			sb.append(i).append(",name").append(i).append(i == 900 ? ",wide\n" : "\n");
+		File f = File.createTempFile("xlwrap-test", ".csv");
+		f.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(sb.toString().getBytes("utf-8"));
+		out.close();
+		
+		Sheet[] sheets = {
+				new CSVSheet(new BufferedReader(new InputStreamReader(new FileInputStream(f), "utf-8")), f.getPath(), 100),
+				new CSVSheet(f, f.getPath(), Charset.forName("utf-8"), 100)
+		};
+		for (Sheet sh : sheets) {
+			// opening reads a bounded sample only, the number of columns grows as rows stream in
+			assertEquals(2, sh.getColumns());
+			for (int i = 1; i < 1000; i++)
+				assertEquals("name" + i, sh.getCell(1, i).getText());
+			assertEquals(3, sh.getColumns());
+			assertEquals("wide", sh.getCell(2, 900).getText());
+		}
+	}
+	
+	@Test
+	public void testRowIndex() throws Exception {
+		StringBuilder sb = new StringBuilder("id,name\n");
+		for (int i = 1; i < 3000; i++)
+			sb.append(i).append(",name").append(i).append("\n");
+		File f = File.createTempFile("xlwrap-test", ".csv");
+		f.deleteOnExit();
+		File idx = new File(f.getPath() + ".xlidx");
+		idx.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(sb.toString().getBytes("utf-8"));
+		out.close();
+		
+		// evicted rows are re-read from their indexed block
+		Sheet sh = new CSVSheet(f, f.getPath(), Charset.forName("utf-8"), 100, 4096, true);
+		for (int i = 1; i < 3000; i++)
+			assertEquals("name" + i, sh.getCell(1, i).getText());
+		assertEquals("name5", sh.getCell(1, 5).getText());
+		assertEquals("name2047", sh.getCell(1, 2047).getText());
+		
+		// the sidecar is saved when the stream reaches EOF
+		try {
+			sh.getCell(1, 3000);
+			fail("EOF expected");
+		} catch (XLWrapEOFException e) {
+		}
+		assertTrue(idx.exists());
+		
+		// a new sheet jumps ahead through the sidecar index
+		sh = new CSVSheet(f, f.getPath(), Charset.forName("utf-8"), 100, 4096, true);
+		assertEquals("name2990", sh.getCell(1, 2990).getText());
+		assertEquals("name7", sh.getCell(1, 7).getText());
+		try {
+			sh.getCell(1, 3000);
+			fail("EOF expected");
+		} catch (XLWrapEOFException e) {
+		}
+		try {
+			sh.getCell(1, 5000);
+			fail("EOF expected");
+		} catch (XLWrapEOFException e) {
+		}
+		idx.delete();
+	}
+
+	@Test
+	public void testReadCell() throws Exception {
+		StringBuilder sb = new StringBuilder("id,name,note\n");
+		for (int i = 1; i < 3000; i++)
+			sb.append(i).append(",n\u00e4me").append(i).append(i % 7 == 0 ? ",\"say \"\"\u65e5\u672c\"\"\"\n" : ",\n");
+		File f = File.createTempFile("xlwrap-test", ".csv");
+		f.deleteOnExit();
+		
+		for (String charset : new String[] { "utf-8", "iso-8859-1" }) {
+			FileOutputStream out = new FileOutputStream(f);
+			out.write(sb.toString().getBytes(charset));
+			out.close();
+			String expected = new String(sb.toString().getBytes(charset), charset);
+			String note = expected.substring(expected.indexOf("say") - 1, expected.indexOf('\n', expected.indexOf("say")));
+			note = note.substring(1, note.length() - 1).replace("\"\"", "\"");
+			
+			Sheet[] sheets = {
+					new CSVSheet(new BufferedReader(new InputStreamReader(new FileInputStream(f), charset)), f.getPath(), 5000),
+					new CSVSheet(f, f.getPath(), Charset.forName(charset), 100)
+			};
+			CellValueHolder holder = new CellValueHolder();
+			for (Sheet sh : sheets) {
+				// the mapped sheet re-reads evicted rows through the row index
+				for (int pass = 0; pass < 2; pass++) {
+					for (int i = 1; i < 3000; i++) {
+						sh.readCell(1, i, holder);
+						assertEquals(TypeAnnotation.TEXT, holder.getType());
+						assertEquals(sh.getCell(1, i).getText(), holder.getString());
+						assertEquals("n\u00e4me" + i, holder.getString());
+						
+						sh.readCell(2, i, holder);
+						if (i % 7 == 0)
+							assertEquals(note, holder.getString());
+						else
+							assertTrue(holder.isNull());
+						sh.readCell(5, i, holder);
+						assertTrue(holder.isNull());
+					}
+				}
+				try {
+					sh.readCell(0, 3000, holder);
+					fail("EOF expected");
+				} catch (XLWrapEOFException e) {
+				}
+			}
+		}
+	}
 
 //	@Test
 //	public void testBigFileLoading() throws XLWrapException {
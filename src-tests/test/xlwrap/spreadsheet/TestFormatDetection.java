@@ -0,0 +1,109 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.xlwrap.spreadsheet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+import test.xlwrap.XLWrapTestCase;
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.spreadsheet.Workbook;
+import at.jku.xlwrap.spreadsheet.WorkbookFactory;
+import at.jku.xlwrap.spreadsheet.WorkbookFactory.Type;
+
+/**
+ * @author dorgon
+ *
+ */
+public class TestFormatDetection {
+	private static final String XLS = "testing/test-data1.xls";
+	private static final String ODS = "testing/test-data1.ods";
+	private static final String CSV = "testing/test-data1.csv";
+	
+	/** copy into a temp file without a known extension */
+	private File copy(String fileName) throws IOException {
+		File f = File.createTempFile("xlwrap-test", ".bin");
+		f.deleteOnExit();
+		InputStream in = new FileInputStream(fileName);
+		OutputStream out = new FileOutputStream(f);
+		byte[] buf = new byte[8192];
+		int n;
+		while ((n = in.read(buf)) > 0)
+			out.write(buf, 0, n);
+		in.close();
+		out.close();
+		return f;
+	}
+	
+	private File write(byte[] content) throws IOException {
+		File f = File.createTempFile("xlwrap-test", ".bin");
+		f.deleteOnExit();
+		OutputStream out = new FileOutputStream(f);
+		out.write(content);
+		out.close();
+		return f;
+	}
+	
+	@Test
+	public void testSpreadsheets() throws IOException, XLWrapException {
+		assertEquals(Type.MSEXCEL, WorkbookFactory.getTypeFromContent(copy(XLS)));
+		assertEquals(Type.OPENDOCUMENT, WorkbookFactory.getTypeFromContent(copy(ODS)));
+		assertEquals(Type.CSV, WorkbookFactory.getTypeFromContent(copy(CSV)));
+		
+		File xlsx = File.createTempFile("xlwrap-test", ".bin");
+		xlsx.deleteOnExit();
+		ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(xlsx));
+		zip.putNextEntry(new ZipEntry("[Content_Types].xml"));
+		zip.write("<Types/>".getBytes("utf-8"));
+		zip.putNextEntry(new ZipEntry("xl/workbook.xml"));
+		zip.write("<workbook/>".getBytes("utf-8"));
+		zip.close();
+		assertEquals(Type.OFFICEOPENXML, WorkbookFactory.getTypeFromContent(xlsx));
+	}
+	
+	@Test
+	public void testOther() throws IOException, XLWrapException {
+		assertEquals(Type.UNKNOWN, WorkbookFactory.getTypeFromContent(write("<html><body>Not found</body></html>".getBytes("utf-8"))));
+		assertEquals(Type.UNKNOWN, WorkbookFactory.getTypeFromContent(write(new byte[] { 0x7f, 'E', 'L', 'F', 0, 0, 1, 2 })));
+		assertEquals(Type.CSV, WorkbookFactory.getTypeFromContent(write("\u00efa;b\n1;2\n".getBytes("utf-8"))));
+	}
+	
+	@Test
+	public void testOpenWithoutExtension() throws IOException, XLWrapException {
+		Workbook wb = WorkbookFactory.getWorkbook(copy(XLS).getPath());
+		assertEquals(XLWrapTestCase.TEST_SHEET_DATA1_1, wb.getSheetNames()[0]);
+		wb.close();
+		
+		// downloaded once into a temp file
+		File ods = copy(ODS);
+		wb = WorkbookFactory.getWorkbook(ods.toURI().toURL().toString());
+		assertTrue(wb.getSheetNames().length > 0);
+		assertEquals(XLWrapTestCase.TEST_SHEET_DATA1_1, wb.getSheetNames()[0]);
+		wb.close();
+	}
+	
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.xlwrap.spreadsheet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import org.junit.Test;
+
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.Sheet;
+import at.jku.xlwrap.spreadsheet.TypeAnnotation;
+import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
+import at.jku.xlwrap.spreadsheet.csv.CSVSheet;
+
+/**
+ * compares the memory-mapped CSV reader with the stream-based line parser
+ * 
+ * @author dorgon
+ *
+ */
+public class TestMappedCSVReader {
+	private static final Charset UTF8 = Charset.forName("utf-8");
+	private static final Charset LATIN1 = Charset.forName("iso-8859-1");
+	
+	private static final String TRICKY =
+		"\"id\",\"name\",\"note\"\n" +
+		"1,\"Tom\",\"says \"\"hi\"\"\"\r\n" +
+		"\r\n" +
+		"2,,\"\"\n" +
+		"3,\"Tim, Jr.\",\"\"\"quoted\"\" start\"\r" +
+		"4,\f\"space\"\f,trailing,\n" +
+		"\n" +
+		"5,\"unterminated\n" +
+		"6,b,\"x\"\"\"\n" +
+		"7,\"Jürgen Österreich\",€ 100\n" +
+		"8\n" +
+		"9,\"a\"\"b,c\",d";
+	
+	private File write(String content, Charset charset) throws IOException {
+		File f = File.createTempFile("xlwrap-test", ".csv");
+		f.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(content.getBytes(charset));
+		out.close();
+		return f;
+	}
+	
+	private Sheet streamed(String content) throws XLWrapException {
+		return new CSVSheet(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content.getBytes(UTF8)), UTF8)), "test.csv", null);
+	}
+	
+	private String text(Cell c) throws XLWrapException {
+		if (c == null)
+			return "<none>";
+		if (c.getType() == TypeAnnotation.NULL)
+			return "<null>";
+		return c.getText();
+	}
+	
+	private int assertSameCells(Sheet expected, Sheet actual) throws XLWrapException {
+		assertEquals(expected.getColumns(), actual.getColumns());
+		int row = 0;
+		for (;; row++) {
+			boolean eofExpected = false, eofActual = false;
+			for (int col = 0; col < expected.getColumns(); col++) {
+				String e = null, a = null;
+				try {
+					e = text(expected.getCell(col, row));
+				} catch (XLWrapEOFException eof) {
+					eofExpected = true;
+				}
+				try {
+					a = text(actual.getCell(col, row));
+				} catch (XLWrapEOFException eof) {
+					eofActual = true;
+				}
+				assertEquals(eofExpected, eofActual);
+				assertEquals("cell " + col + "/" + row, e, a);
+			}
+			if (eofExpected)
+				return row;
+		}
+	}
+	
+	@Test
+	public void testSameAsLineParser() throws Exception {
+		File f = write(TRICKY, UTF8);
+		for (int window : new int[] { 1, 7, 64, 1024 }) {
+			int rows = assertSameCells(streamed(TRICKY), new CSVSheet(f, "test.csv", UTF8, null, window));
+			assertEquals(10, rows);
+		}
+		
+		CSVSheet sheet = new CSVSheet(f, "test.csv", UTF8, null);
+		assertEquals("says \"hi\"", sheet.getCell(2, 1).getText());
+		assertEquals("Tim, Jr.", sheet.getCell(1, 3).getText());
+		assertEquals("\"quoted\" start", sheet.getCell(2, 3).getText());
+		assertEquals("Jürgen Österreich", sheet.getCell(1, 7).getText());
+		assertEquals(TypeAnnotation.NULL, sheet.getCell(1, 2).getType());
+	}
+
+	@Test
+	public void testRandomLines() throws Exception {
+		Random rnd = new Random(42);
+		char[] alphabet = { 'a', 'b', ' ', ',', ';', '"', '\t', '\f', 'ä', '1' };
+		StringBuilder sb = new StringBuilder();
+		int valid = 0;
+		for (int l = 0; l < 500; l++) {
+			StringBuilder line = new StringBuilder();
+			int len = 1 + rnd.nextInt(30);
+			for (int i = 0; i < len; i++)
+				line.append(alphabet[rnd.nextInt(alphabet.length)]);
+			
+			// both readers must reject the same invalid lines
+			String content = "a,b;c\n" + line;
+			boolean rejected = false;
+			try {
+				streamed(content);
+			} catch (XLWrapException e) {
+				rejected = true;
+			}
+			try {
+				new CSVSheet(write(content, UTF8), "test.csv", UTF8, null);
+				assertTrue("mapped reader accepted " + line, !rejected);
+			} catch (XLWrapException e) {
+				assertTrue("mapped reader rejected " + line, rejected);
+			}
+			
+			if (!rejected) {
+				sb.append(line).append(rnd.nextBoolean() ? "\n" : "\r\n");
+				valid++;
+			}
+		}
+		String content = "a,b;c\n" + sb.toString();
+		assertTrue(valid > 100);
+		assertSameCells(streamed(content), new CSVSheet(write(content, UTF8), "test.csv", UTF8, null, 100));
+	}
+	
+	@Test
+	public void testParallelChunks() throws Exception {
+		File f = write(TRICKY, UTF8);
+		for (int window : new int[] { 1, 7, 64, 1024 }) {
+			int rows = assertSameCells(streamed(TRICKY), new CSVSheet(f, "test.csv", UTF8, null, window, false, 3));
+			assertEquals(10, rows);
+		}
+		
+		StringBuilder sb = new StringBuilder("id,name\n");
+		for (int i = 1; i < 5000; i++)
+			sb.append(i).append(",\"name ").append(i).append(i % 3 == 0 ? "\"\r\n" : "\"\n");
+		String content = sb.toString();
+		assertEquals(5000, assertSameCells(streamed(content), new CSVSheet(write(content, UTF8), "test.csv", UTF8, 100, 256, false, 4)));
+	}
+	
+	@Test
+	public void testParallelInvalidLine() throws Exception {
+		String content = "a,b\n1,2\n3,\"x\" y\n4,5\n";
+		Sheet[] sheets = {
+				new CSVSheet(write(content, UTF8), "test.csv", UTF8, 4, 4, false, 1),
+				new CSVSheet(write(content, UTF8), "test.csv", UTF8, 4, 4, false, 2)
+		};
+		String[] messages = new String[2];
+		for (int i = 0; i < sheets.length; i++) {
+			try {
+				sheets[i].getCell(0, 2);
+				assertTrue("invalid line accepted", false);
+			} catch (XLWrapException e) {
+				messages[i] = e.getMessage();
+			}
+			// parsing continues after the invalid line
+			assertEquals("4", sheets[i].getCell(0, 2).getText());
+		}
+		assertEquals(messages[0], messages[1]);
+	}
+	
+	@Test
+	public void testLatin1() throws Exception {
+		File f = write("name;city\n\"Müller\";\"Zürich\"\n", LATIN1);
+		CSVSheet sheet = new CSVSheet(f, "test.csv", LATIN1, null);
+		assertEquals("Müller", sheet.getCell(0, 1).getText());
+		assertEquals("Zürich", sheet.getCell(1, 1).getText());
+		try {
+			sheet.getCell(0, 2);
+			assertTrue("expected EOF", false);
+		} catch (XLWrapEOFException expected) {
+		}
+	}
+}
@@ -16,18 +16,32 @@
 package test.xlwrap.spreadsheet;
 
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.Test;
 
 import test.xlwrap.XLWrapTestCase;
 
 import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.spreadsheet.Cell;
 import at.jku.xlwrap.spreadsheet.Sheet;
+import at.jku.xlwrap.spreadsheet.TypeAnnotation;
 import at.jku.xlwrap.spreadsheet.Workbook;
 import at.jku.xlwrap.spreadsheet.WorkbookFactory;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 import at.jku.xlwrap.spreadsheet.csv.CSVParseConfig;
+import at.jku.xlwrap.spreadsheet.opendoc.OpenDocumentStreamWorkbook;
+import at.jku.xlwrap.spreadsheet.opendoc.OpenDocumentWorkbook;
 
 /**
  * @author dorgon
@@ -42,6 +56,104 @@ public class TestOpenDocumentLoading {
 		assertEquals("Person", sh.getCell(0, 0).getText());		
 	}
 
+	@Test
+	public void testStreamingParity() throws Exception {
+		File f = new File(XLWrapTestCase.TEST_FILE_DATA1_ODS);
+		Workbook dom = new OpenDocumentWorkbook(f, f.getName());
+		Workbook stream = new OpenDocumentStreamWorkbook(f, f.getName());
+		assertArrayEquals(dom.getSheetNames(), stream.getSheetNames());
+		
+		for (int s = 0; s < dom.getSheetNames().length; s++) {
+			Sheet expected = dom.getSheet(s);
+			Sheet actual = stream.getSheet(expected.getName());
+			assertTrue(actual.getRows() <= expected.getRows());
+			assertTrue(actual.getColumns() <= expected.getColumns());
+			
+			for (int r = 0; r < Math.min(expected.getRows(), 100); r++) {
+				for (int c = 0; c < Math.min(expected.getColumns(), 20); c++) {
+					Cell e = expected.getCell(c, r);
+					TypeAnnotation type = e.getType();
+					if (r >= actual.getRows() || c >= actual.getColumns()) {
+						// trailing empty rows and columns are not part of the streamed sheet
+						assertEquals(e.getCellInfo(), TypeAnnotation.NULL, type);
+						continue;
+					}
+					XLWrapTestCase.assertSameValue(expected, c, r);
+					XLWrapTestCase.assertSameValue(actual, c, r);
+					Cell a = actual.getCell(c, r);
+					assertEquals(a.getCellInfo(), type, a.getType());
+					if (type == TypeAnnotation.TEXT)
+						assertEquals(e.getText(), a.getText());
+					else if (type == TypeAnnotation.NUMBER)
+						assertEquals(e.getNumber(), a.getNumber(), Math.abs(e.getNumber()) * 1e-6);
+					else if (type == TypeAnnotation.DATE)
+						assertEquals(e.getDate(), a.getDate());
+					else if (type == TypeAnnotation.BOOLEAN)
+						assertEquals(e.getBoolean(), a.getBoolean());
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testStreamingRepeats() throws Exception {
+		String row = "<table:table-row>" +
+			"<table:table-cell office:value-type=\"string\"><text:p>a<text:s text:c=\"2\"/>b</text:p><text:p><text:span>c</text:span></text:p></table:table-cell>" +
+			"<table:table-cell office:value-type=\"float\" office:value=\"0.1\" table:number-columns-repeated=\"3\"><text:p>0.1</text:p></table:table-cell>" +
+			"<table:covered-table-cell/>" +
+			"<table:table-cell office:value-type=\"boolean\" office:boolean-value=\"true\"><office:annotation><text:p>note</text:p></office:annotation><text:p>TRUE</text:p></table:table-cell>" +
+			"<table:table-cell table:number-columns-repeated=\"1018\"/></table:table-row>";
+		File f = write("<office:document-content " +
+			"xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\" " +
+			"xmlns:table=\"urn:oasis:names:tc:opendocument:xmlns:table:1.0\" " +
+			"xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\"><office:body><office:spreadsheet>" +
+			"<table:table table:name=\"Big\"><table:table-column table:number-columns-repeated=\"1024\"/>" +
+			"<table:table-header-rows>" + row + "</table:table-header-rows>" +
+			"<table:table-row table:number-rows-repeated=\"500000\"><table:table-cell table:number-columns-repeated=\"1024\"/></table:table-row>" +
+			"<table:table-row table:number-rows-repeated=\"2\">" + row.substring("<table:table-row>".length()) +
+			"<table:table-row table:number-rows-repeated=\"548573\"><table:table-cell table:number-columns-repeated=\"1024\"/></table:table-row>" +
+			"</table:table><table:table table:name=\"Empty\"/></office:spreadsheet></office:body></office:document-content>");
+		
+		Workbook wb = new OpenDocumentStreamWorkbook(f, "test.ods");
+		assertArrayEquals(new String[] { "Big", "Empty" }, wb.getSheetNames());
+		assertNull(wb.getSheet("Missing"));
+		
+		Sheet sh = wb.getSheet("Big");
+		// trailing empty rows and columns are not counted
+		assertEquals(500003, sh.getRows());
+		assertEquals(6, sh.getColumns());
+		for (int r : new int[] { 0, 500001, 500002 }) {
+			assertEquals("a  b\nc", sh.getCell(0, r).getText());
+			for (int c = 1; c <= 3; c++)
+				assertEquals(0.1, sh.getCell(c, r).getNumber(), 0);
+			assertEquals(TypeAnnotation.NULL, sh.getCell(4, r).getType());
+			assertEquals(TypeAnnotation.BOOLEAN, sh.getCell(5, r).getType());
+		}
+		assertEquals(TypeAnnotation.NULL, sh.getCell(0, 1).getType());
+		assertEquals("", sh.getCell(0, 500000).getText());
+		try {
+			sh.getCell(0, 500003);
+			fail("Expected XLWrapEOFException");
+		} catch (XLWrapEOFException expected) {}
+		try {
+			sh.getCell(6, 0);
+			fail("Expected XLWrapEOFException");
+		} catch (XLWrapEOFException expected) {}
+		
+		assertEquals(0, wb.getSheet(1).getRows());
+	}
+	
+	private File write(String content) throws IOException {
+		File f = File.createTempFile("xlwrap-test", ".ods");
+		f.deleteOnExit();
+		ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(f));
+		zip.putNextEntry(new ZipEntry("content.xml"));
+		zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + content).getBytes("utf-8"));
+		zip.closeEntry();
+		zip.close();
+		return f;
+	}
+
 //	/**
 //	 * better fixture via WebSVN...
 //	 * 
@@ -0,0 +1,208 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.xlwrap.spreadsheet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+import test.xlwrap.XLWrapTestCase;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
+import at.jku.xlwrap.spreadsheet.Sheet;
+import at.jku.xlwrap.spreadsheet.TypeAnnotation;
+import at.jku.xlwrap.spreadsheet.Workbook;
+import at.jku.xlwrap.spreadsheet.WorkbookFactory;
+import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
+import at.jku.xlwrap.spreadsheet.xlsx.XLSXWorkbook;
+
+/**
+ * @author dorgon
+ *
+ */
+public class TestXLSXLoading {
+	private static final String NS = "xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" " +
+			"xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\"";
+	private static final String REL = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/";
+	
+	private File write(String... entries) throws IOException {
+		File f = File.createTempFile("xlwrap-test", ".xlsx");
+		f.deleteOnExit();
+		ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(f));
+		for (int i = 0; i < entries.length; i += 2) {
+			zip.putNextEntry(new ZipEntry(entries[i]));
+			zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + entries[i+1]).getBytes("utf-8"));
+			zip.closeEntry();
+		}
+		zip.close();
+		return f;
+	}
+	
+	private File workbook(String bigSheet) throws IOException {
+		return write(
+			"_rels/.rels", "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">" +
+				"<Relationship Id=\"rId1\" Type=\"" + REL + "officeDocument\" Target=\"xl/workbook.xml\"/></Relationships>",
+			"xl/workbook.xml", "<workbook " + NS + "><workbookPr/><sheets>" +
+				"<sheet name=\"People\" sheetId=\"1\" r:id=\"rId1\"/><sheet name=\"Big\" sheetId=\"2\" r:id=\"rId2\"/></sheets></workbook>",
+			"xl/_rels/workbook.xml.rels", "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">" +
+				"<Relationship Id=\"rId1\" Type=\"" + REL + "worksheet\" Target=\"./worksheets/sheet1.xml\"/>" +
+				"<Relationship Id=\"rId2\" Type=\"" + REL + "worksheet\" Target=\"/xl/worksheets/big.xml\"/>" +
+				"<Relationship Id=\"rId3\" Type=\"" + REL + "sharedStrings\" Target=\"sharedStrings.xml\"/>" +
+				"<Relationship Id=\"rId4\" Type=\"" + REL + "styles\" Target=\"styles.xml\"/></Relationships>",
+			"xl/sharedStrings.xml", "<sst " + NS + ">" +
+				"<si><t>Person</t></si>" +
+				"<si><r><t xml:space=\"preserve\">Rich </t></r><r><rPr><b/></rPr><t>text</t></r><rPh sb=\"0\" eb=\"1\"><t>phonetic</t></rPh></si>" +
+				"<si><t>a_x000D_b</t></si>" +
+				"<si><t/></si></sst>",
+			"xl/styles.xml", "<styleSheet " + NS + "><numFmts count=\"2\">" +
+				"<numFmt numFmtId=\"164\" formatCode=\"yyyy\\-mm\\-dd\\ hh:mm\"/><numFmt numFmtId=\"165\" formatCode=\"0.00&quot; days&quot;\"/></numFmts>" +
+				"<cellStyleXfs count=\"1\"><xf numFmtId=\"14\"/></cellStyleXfs>" +
+				"<cellXfs count=\"4\"><xf numFmtId=\"0\"/><xf numFmtId=\"14\"/><xf numFmtId=\"164\"/><xf numFmtId=\"165\"/></cellXfs></styleSheet>",
+			"xl/worksheets/sheet1.xml", "<worksheet " + NS + "><dimension ref=\"A1:E5\"/><sheetData>" +
+				"<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c><c r=\"B1\" t=\"inlineStr\"><is><t>Inline &amp; more</t></is></c>" +
+					"<c r=\"C1\" t=\"b\"><v>1</v></c><c r=\"D1\" t=\"e\"><v>#DIV/0!</v></c><c r=\"E1\" t=\"s\"><v>1</v></c></row>" +
+				"<row r=\"2\"><c r=\"A2\"><v>42</v></c><c r=\"B2\" s=\"1\"><v>40179</v></c><c r=\"C2\" s=\"2\"><v>40179.5</v></c>" +
+					"<c r=\"D2\" s=\"3\"><v>3.5</v></c><c r=\"E2\"><f>A2*2</f><v>84</v></c></row>" +
+				"<row r=\"5\"><c r=\"C5\" t=\"str\"><f>\"x\"&amp;\"y\"</f><v>xy</v></c><c><v>7</v></c><c r=\"E5\" t=\"s\"><v>2</v></c></row>" +
+				"</sheetData></worksheet>",
+			"xl/worksheets/big.xml", bigSheet);
+	}
+	
+	private String bigSheet() {
+		// rows 1-1000 and 2001-3000, the gap is longer than the window of the test
+		StringBuilder sb = new StringBuilder("<worksheet " + NS + "><sheetData>");
+		for (int r = 0; r < 3000; r++) {
+			if (r == 1000)
+				r = 2000;
+			sb.append("<row r=\"").append(r + 1).append("\"><c r=\"A").append(r + 1).append("\"><v>").append(r).append("</v></c></row>");
+		}
+		return sb.append("</sheetData></worksheet>").toString();
+	}
+	
+	@Test
+	public void testCellTypes() throws Exception {
+		Workbook wb = new XLSXWorkbook(workbook(bigSheet()), "test.xlsx");
+		assertEquals(2, wb.getSheetNames().length);
+		assertEquals("Big", wb.getSheetNames()[1]);
+		assertNull(wb.getSheet("Missing"));
+		
+		Sheet sh = wb.getSheet("People");
+		assertEquals(5, sh.getRows());
+		assertEquals(5, sh.getColumns());
+		
+		assertEquals("Person", sh.getCell(0, 0).getText());
+		assertEquals(TypeAnnotation.TEXT, sh.getCell(1, 0).getType());
+		assertEquals("Inline & more", sh.getCell(1, 0).getText());
+		assertEquals(TypeAnnotation.BOOLEAN, sh.getCell(2, 0).getType());
+		assertTrue(sh.getCell(2, 0).getBoolean());
+		assertEquals(TypeAnnotation.NULL, sh.getCell(3, 0).getType());
+		assertEquals("Rich text", sh.getCell(4, 0).getText());
+		
+		assertEquals(TypeAnnotation.NUMBER, sh.getCell(0, 1).getType());
+		assertEquals(42, sh.getCell(0, 1).getInteger());
+		assertEquals(TypeAnnotation.DATE, sh.getCell(1, 1).getType());
+		assertEquals(new Date(1262304000000L), sh.getCell(1, 1).getDate()); // 2010-01-01 UTC
+		assertEquals(TypeAnnotation.DATE, sh.getCell(2, 1).getType());
+		assertEquals(new Date(1262304000000L + 12 * 3600 * 1000), sh.getCell(2, 1).getDate());
+		assertTrue(sh.getCell(2, 1).getFormat().isDateFormat());
+		assertEquals(TypeAnnotation.NUMBER, sh.getCell(3, 1).getType());
+		assertTrue(sh.getCell(3, 1).getFormat().isNumberFormat());
+		assertEquals("A2*2", sh.getCell(4, 1).getFormula());
+		assertEquals(84.0, sh.getCell(4, 1).getNumber(), 0);
+		
+		// rows 3 and 4 are omitted in the XML
+		assertEquals(TypeAnnotation.NULL, sh.getCell(0, 2).getType());
+		assertEquals(TypeAnnotation.NULL, sh.getCell(4, 3).getType());
+		assertEquals(TypeAnnotation.NULL, sh.getCell(0, 4).getType());
+		assertEquals("xy", sh.getCell(2, 4).getText());
+		assertEquals(7, sh.getCell(3, 4).getInteger());
+		assertEquals("a\rb", sh.getCell(4, 4).getText());
+		
+		try {
+			sh.getCell(0, 5);
+			fail("EOF expected");
+		} catch (XLWrapEOFException e) {
+		}
+		wb.close();
+	}
+	
+	@Test
+	public void testReadCell() throws Exception {
+		Workbook wb = new XLSXWorkbook(workbook(bigSheet()), "test.xlsx");
+		Sheet sh = wb.getSheet("People");
+		for (int r = 0; r < 5; r++)
+			for (int c = 0; c < 5; c++)
+				XLWrapTestCase.assertSameValue(sh, c, r);
+		
+		CellValueHolder holder = new CellValueHolder();
+		sh.readCell(4, 0, holder);
+		assertEquals("Rich text", holder.getText().toString());
+		sh.readCell(1, 1, holder);
+		assertEquals(TypeAnnotation.DATE, holder.getType());
+		assertEquals(1262304000000L, holder.getDate());
+		
+		Sheet big = wb.getSheet("Big");
+		for (int r = 0; r < 3000; r++) {
+			big.readCell(0, r, holder);
+			if (r >= 1000 && r < 2000)
+				assertTrue(holder.isNull());
+			else
+				assertEquals(r, holder.getNumber(), 0);
+		}
+	}
+	
+	@Test
+	public void testStreaming() throws Exception {
+		Workbook wb = new XLSXWorkbook(workbook(bigSheet()), "test.xlsx", 100);
+		Sheet sh = wb.getSheet(1);
+		assertEquals(Integer.MAX_VALUE, sh.getRows());
+		for (int r = 0; r < 3000; r++) {
+			if (r < 1000 || r >= 2000)
+				assertEquals(r, sh.getCell(0, r).getInteger());
+			else
+				assertEquals(TypeAnnotation.NULL, sh.getCell(0, r).getType());
+		}
+		assertEquals(1, sh.getColumns());
+		
+		// rows which left the window are read again from the start
+		assertEquals(5, sh.getCell(0, 5).getInteger());
+		assertEquals(2500, sh.getCell(0, 2500).getInteger());
+		try {
+			sh.getCell(0, 3000);
+			fail("EOF expected");
+		} catch (XLWrapEOFException e) {
+		}
+		wb.close();
+	}
+	
+	@Test
+	public void testFactory() throws Exception {
+		File f = workbook(bigSheet());
+		Workbook wb = WorkbookFactory.getWorkbook(f.getPath());
+		assertTrue(wb instanceof XLSXWorkbook);
+		assertEquals("Person", wb.getSheet(0).getCell(0, 0).getText());
+		wb.close();
+	}
+}
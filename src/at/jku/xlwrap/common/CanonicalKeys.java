@@ -0,0 +1,155 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+/**
+ * @author dorgon
+ *
+ * Structural keys for the nodes of a model, which do not depend on blank node IDs. Since blank node IDs
+ * are random, statements are listed in a different order whenever a mapping is parsed. Sorting by these 
+ * keys yields the same order in every run, e.g. to assign slots and blank node labels deterministically.
+ * 
+ * Blank nodes start in a single class and are refined by the sorted classes of their neighbours and the 
+ * connecting predicates until the number of classes does not grow anymore. The key of a blank node is 
+ * the rank of its final class. Blank nodes which cannot be told apart this way are interchangeable.
+ * 
+ */
+public class CanonicalKeys {
+	
+	/** class of each blank node */
+	private final Map<Node, Integer> classes = new HashMap<Node, Integer>();
+	
+	/**
+	 * constructor
+	 * 
+	 * @param model
+	 */
+	public CanonicalKeys(Model model) {
+		List<Statement> stmts = new ArrayList<Statement>();
+		StmtIterator it = model.listStatements();
+		while (it.hasNext())
+			stmts.add(it.nextStatement());
+		it.close();
+		
+		for (Statement st : stmts) {
+			if (st.getSubject().isAnon())
+				classes.put(st.getSubject().asNode(), 0);
+			if (st.getObject().isAnon())
+				classes.put(st.getObject().asNode(), 0);
+		}
+		
+		int count = classes.isEmpty() ? 0 : 1;
+		while (true) {
+			Map<Node, List<String>> edges = new HashMap<Node, List<String>>();
+			for (Node n : classes.keySet())
+				edges.put(n, new ArrayList<String>());
+			for (Statement st : stmts) {
+				Node s = st.getSubject().asNode();
+				Node o = st.getObject().asNode();
+				String p = st.getPredicate().getURI();
+				if (s.isBlank())
+					edges.get(s).add(">" + p + " " + getKey(o));
+				if (o.isBlank())
+					edges.get(o).add("<" + p + " " + getKey(s));
+			}
+			
+			// signature: previous class and sorted edges, new classes are ranked by signature
+			Map<Node, String> signatures = new HashMap<Node, String>();
+			TreeSet<String> distinct = new TreeSet<String>();
+			for (Map.Entry<Node, List<String>> e : edges.entrySet()) {
+				List<String> l = e.getValue();
+				Collections.sort(l);
+				String sig = classes.get(e.getKey()) + l.toString();
+				signatures.put(e.getKey(), sig);
+				distinct.add(sig);
+			}
+			if (distinct.size() == count)
+				break; // stable
+			
+			List<String> ranks = new ArrayList<String>(distinct);
+			for (Map.Entry<Node, String> e : signatures.entrySet())
+				classes.put(e.getKey(), Collections.binarySearch(ranks, e.getValue()));
+			count = distinct.size();
+		}
+	}
+	
+	/**
+	 * @param n
+	 * @return the structural key of a blank node or the string representation of any other node
+	 */
+	public String getKey(Node n) {
+		if (n.isBlank()) {
+			Integer c = classes.get(n);
+			return "_:" + ((c != null) ? c : "");
+		} else
+			return n.toString();
+	}
+	
+	/**
+	 * @param n
+	 * @return the structural key of a node
+	 */
+	public String getKey(RDFNode n) {
+		return getKey(n.asNode());
+	}
+	
+	/**
+	 * @param st
+	 * @return the structural key of a statement
+	 */
+	public String getKey(Statement st) {
+		return getKey(st.getSubject()) + " " + st.getPredicate().getURI() + " " + getKey(st.getObject());
+	}
+	
+	/**
+	 * @param model
+	 * @return the statements of a model in canonical order
+	 */
+	public static List<Statement> listStatements(Model model) {
+		CanonicalKeys keys = new CanonicalKeys(model);
+		List<Statement> stmts = new ArrayList<Statement>();
+		StmtIterator it = model.listStatements();
+		while (it.hasNext())
+			stmts.add(it.nextStatement());
+		it.close();
+		
+		final Map<Statement, String> stmtKeys = new HashMap<Statement, String>();
+		for (Statement st : stmts)
+			stmtKeys.put(st, keys.getKey(st));
+		Collections.sort(stmts, new Comparator<Statement>() {
+			@Override
+			public int compare(Statement a, Statement b) {
+				return stmtKeys.get(a).compareTo(stmtKeys.get(b));
+			}
+		});
+		return stmts;
+	}
+	
+}
@@ -57,10 +57,39 @@ public class Constants {
 	public static final String SYSTEMPROPERTY_CACHEDIR = "xlwrap.cachedir";
 	public static final String DEFAULT_CACHE_DIR = "data";
 	public static final boolean CHECK_FOR_CHANGES = true;
+	public static final String SYSTEMPROPERTY_WATCH_INTERVAL = "xlwrap.watch.interval";
+	public static final long DEFAULT_WATCH_INTERVAL = 2000;
+	public static final String SYSTEMPROPERTY_WATCH_REMOTE_INTERVAL = "xlwrap.watch.remoteinterval";
+	public static final long DEFAULT_WATCH_REMOTE_INTERVAL = 60000;
+	public static final String SYSTEMPROPERTY_LEAN_UNION = "xlwrap.leanunion";
+	public static final boolean LEAN_UNION = Boolean.parseBoolean(System.getProperty(SYSTEMPROPERTY_LEAN_UNION, "false"));
+	public static final String SYSTEMPROPERTY_RDFS_CLOSURE = "xlwrap.rdfsclosure";
+	public static final boolean RDFS_CLOSURE = Boolean.parseBoolean(System.getProperty(SYSTEMPROPERTY_RDFS_CLOSURE, "false"));
 	
 	// materializer
 	public static final int DEFAULT_SHIFT_STEPS = 1;
 	public static final boolean EMPTY_STRING_AS_NULL = true;
+	public static final String SYSTEMPROPERTY_THREADS = "xlwrap.threads";
+	public static final int DEFAULT_THREADS = 1;
+	public static final String SYSTEMPROPERTY_CHUNK_SIZE = "xlwrap.chunksize";
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+	public static final String SYSTEMPROPERTY_EXPRESSION_TIMING = "xlwrap.exprtiming";
+	
+	// spreadsheets
+	public static final String SYSTEMPROPERTY_CSV_ENCODING = "xlwrap.csv.encoding";
+	public static final String DEFAULT_CSV_ENCODING = "utf-8";
+	public static final String SYSTEMPROPERTY_CSV_MAPPED = "xlwrap.csv.mapped";
+	public static final boolean CSV_MAPPED = Boolean.parseBoolean(System.getProperty(SYSTEMPROPERTY_CSV_MAPPED, "true"));
+	public static final String SYSTEMPROPERTY_CSV_SIDECAR = "xlwrap.csv.sidecar";
+	public static final boolean CSV_SIDECAR = Boolean.parseBoolean(System.getProperty(SYSTEMPROPERTY_CSV_SIDECAR, "false"));
+	public static final String SYSTEMPROPERTY_CSV_THREADS = "xlwrap.csv.threads";
+	public static final int DEFAULT_CSV_THREADS = 1;
+	public static final String SYSTEMPROPERTY_ODS_STREAMING = "xlwrap.ods.streaming";
+	public static final boolean ODS_STREAMING = Boolean.parseBoolean(System.getProperty(SYSTEMPROPERTY_ODS_STREAMING, "false"));
+	public static final String SYSTEMPROPERTY_SHEET_CACHE = "xlwrap.sheetcache";
+	public static final boolean SHEET_CACHE = Boolean.parseBoolean(System.getProperty(SYSTEMPROPERTY_SHEET_CACHE, "false"));
+	public static final String SYSTEMPROPERTY_SHEET_CACHE_MB = "xlwrap.sheetcache.mb";
+	public static final int DEFAULT_SHEET_CACHE_MB = 64;
 
 	/** namespace for variables suggested by Richard Cyganiak */
 	public static final String VARIABLE_NS = "http://purl.org/NET/xlwrap/var#";
@@ -15,16 +15,23 @@
  */
 package at.jku.xlwrap.common;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import at.jku.xlwrap.exec.BlankNodeAllocator;
 import at.jku.xlwrap.exec.ExecutionContext;
 import at.jku.xlwrap.map.BNodeReplacer;
 import at.jku.xlwrap.map.XLExprDatatype;
@@ -47,6 +54,8 @@ import at.jku.xlwrap.map.range.MultiRange;
 import at.jku.xlwrap.map.range.NullRange;
 import at.jku.xlwrap.map.range.Range;
 import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
+import at.jku.xlwrap.spreadsheet.Sheet;
 import at.jku.xlwrap.spreadsheet.TypeAnnotation;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 
@@ -62,6 +71,7 @@ import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Statement;
 import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.vocabulary.RDF;
 import com.hp.hpl.jena.vocabulary.XSD;
 
 /**
@@ -70,6 +80,9 @@ import com.hp.hpl.jena.vocabulary.XSD;
  */
 public class Utils {
 	
+	/** bytes read at once when computing message digests of files */
+	private static final int DIGEST_CHUNK = 64 * 1024;
+	
 	private static final String REGEX_MATCH_RANGE = 
 		"^" +								// start of line
 		"(?:" +	 							// optional file with suffix "#"
@@ -374,6 +387,29 @@ public class Utils {
 			return new E_String(cell.getText());
 	}
 	
+	/**
+	 * @param holder filled by {@link Sheet#readCell(int, int, CellValueHolder)}
+	 * @return the same value as {@link #getXLExprValue(Cell)} for the cell
+	 */
+	public static XLExprValue<?> getXLExprValue(CellValueHolder holder) {
+		switch (holder.getType()) {
+		case NUMBER:
+			double d = holder.getNumber();
+			if ((long) d == d)
+				return new E_Long((long) d);
+			else
+				return new E_Double(d);
+		case TEXT:
+			return new E_String(holder.getString());
+		case DATE:
+			return new E_Date(new Date(holder.getDate()));
+		case BOOLEAN:
+			return holder.getBoolean() ? E_Boolean.TRUE : E_Boolean.FALSE;
+		default:
+			return null;
+		}
+	}
+	
 	/**
 	 * 
 	 * @param the target model
@@ -381,6 +417,17 @@ public class Utils {
 	 * @return a Jena node
 	 */
 	public static RDFNode createNode(Model target, XLExprValue<?> ev) {
+		return createNode(target, ev, null);
+	}
+	
+	/**
+	 * 
+	 * @param the target model
+	 * @param value the XLExprValue
+	 * @param bnodes allocator used for blank nodes created for lists, if null random IDs are used
+	 * @return a Jena node
+	 */
+	public static RDFNode createNode(Model target, XLExprValue<?> ev, BlankNodeAllocator bnodes) {
 		if (ev instanceof E_String)
 			return target.createLiteral((String) ev.getValue());
 		else if (ev instanceof E_Long) {
@@ -415,10 +462,11 @@ public class Utils {
 		else if (ev instanceof E_BlankNode)
 			return target.createResource((AnonId) ev.getValue());
         else if (ev instanceof E_List) {
-            Bag list = target.createBag();
+            Bag list = (bnodes != null) ?
+            		target.createResource(bnodes.nextId()).addProperty(RDF.type, RDF.Bag).as(Bag.class) : target.createBag();
             E_List eList = (E_List) ev;
             for (XLExprValue<?> value : eList.getValue()) {
-                list.add(createNode(target, value));
+                list.add(createNode(target, value, bnodes));
             }
             return list;
         }		else
@@ -488,10 +536,50 @@ public class Utils {
 			throw new XLWrapException("SHA-1 message digest is not available.");
 		}
 		
-		byte[] data = new byte[40];
 		md.update(string.getBytes());
-		data = md.digest();
+		return toHex(md.digest());
+	}
+	
+	/**
+	 * compute SHA-1 message digest for the content of a file, 
+	 * the file is read in chunks and not held in memory
+	 * 
+	 * @param file
+	 * @return
+	 * @throws XLWrapException
+	 */
+	public static String SHA1(File file) throws XLWrapException {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new XLWrapException("SHA-1 message digest is not available.");
+		}
 		
+		try {
+			FileInputStream in = new FileInputStream(file);
+			try {
+				FileChannel ch = in.getChannel();
+				ByteBuffer buf = ByteBuffer.allocateDirect(DIGEST_CHUNK);
+				while (ch.read(buf) >= 0) {
+					buf.flip();
+					md.update(buf);
+					buf.clear();
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new XLWrapException("Failed to compute message digest of " + file + ".", e);
+		}
+		return toHex(md.digest());
+	}
+	
+	/**
+	 * @param data
+	 * @return lower case hex string
+	 */
+	private static String toHex(byte[] data) {
         StringBuffer buf = new StringBuffer();
         for (int i = 0; i < data.length; i++) {
         	int halfbyte = (data[i] >>> 4) & 0x0F;
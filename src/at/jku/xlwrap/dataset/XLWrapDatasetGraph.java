@@ -18,6 +18,7 @@ package at.jku.xlwrap.dataset;
 import at.jku.xlwrap.engine.XLWrapEngine;
 
 import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.shared.Lock;
 import com.hp.hpl.jena.sparql.core.DataSourceGraphImpl;
 
 /**
@@ -41,8 +42,17 @@ public class XLWrapDatasetGraph extends DataSourceGraphImpl {
 	 */
 	@Override
 	public Graph getDefaultGraph() {
-		// acquire fresh to let engine check for changed mapping files and spreadsheets
-		return engine.getModel().getGraph();
+		// acquire fresh, the engine publishes a new snapshot after each reload
+		return engine.getGraph();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.hp.hpl.jena.sparql.core.DataSourceGraphImpl#getLock()
+	 */
+	@Override
+	public Lock getLock() {
+		// queries on a snapshot keep the engine from removing its replaced graphs
+		return engine.getLock();
 	}
 
 	@Override
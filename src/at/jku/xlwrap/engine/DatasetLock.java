@@ -0,0 +1,65 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.engine;
+
+import java.util.LinkedList;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import com.hp.hpl.jena.shared.JenaException;
+import com.hp.hpl.jena.shared.Lock;
+
+/**
+ * @author dorgon
+ *
+ * Jena lock over a ReadWriteLock, e.g. taken by Joseki for each request on a dataset,
+ * critical sections are tracked per thread and may be nested, a thread holding 
+ * a read lock must not request a write lock
+ * 
+ */
+public class DatasetLock implements Lock {
+	private final ReadWriteLock lock;
+	
+	/** locks entered by the current thread, innermost first */
+	private final ThreadLocal<LinkedList<java.util.concurrent.locks.Lock>> entered = new ThreadLocal<LinkedList<java.util.concurrent.locks.Lock>>() {
+		@Override
+		protected LinkedList<java.util.concurrent.locks.Lock> initialValue() {
+			return new LinkedList<java.util.concurrent.locks.Lock>();
+		}
+	};
+	
+	/**
+	 * constructor
+	 * 
+	 * @param lock
+	 */
+	public DatasetLock(ReadWriteLock lock) {
+		this.lock = lock;
+	}
+	
+	public void enterCriticalSection(boolean readLockRequested) {
+		java.util.concurrent.locks.Lock l = readLockRequested ? lock.readLock() : lock.writeLock();
+		l.lock();
+		entered.get().addFirst(l);
+	}
+
+	public void leaveCriticalSection() {
+		LinkedList<java.util.concurrent.locks.Lock> locks = entered.get();
+		if (locks.isEmpty())
+			throw new JenaException("leaveCriticalSection: no lock held by " + Thread.currentThread().getName());
+		locks.removeFirst().unlock();
+	}
+	
+}
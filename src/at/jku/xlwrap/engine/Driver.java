@@ -17,6 +17,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.exec.NTriplesSink;
 import at.jku.xlwrap.exec.XLWrapMaterializer;
 import at.jku.xlwrap.map.MappingParser;
 import at.jku.xlwrap.map.XLWrapMapping;
@@ -59,7 +60,9 @@ public class Driver {
             System.err.println("Missing input file name.\n"
                     + "Syntax: input [output] [options] [var1=val1] [var2=val2] ...\n"
                     + "Options:\n"
-            		+ "\t-lang=[language]\tDefines the output serialization language. Can be RDF/XML (default), RDF/XML-ABBREV, N-TRIPLE, TURTLE, TTL or N3");
+            		+ "\t-lang=[language]\tDefines the output serialization language. Can be RDF/XML (default), RDF/XML-ABBREV, N-TRIPLE (streamed), TURTLE, TTL or N3\n"
+            		+ "\t-threads=[n]\tNumber of threads used to process map templates in parallel (default 1)\n"
+            		+ "\t-chunksize=[n]\tIterations per chunk if a single map template is processed in parallel (default 1000, 0 to disable)");
             return;
         }
 
@@ -69,6 +72,8 @@ public class Driver {
 
         // parse options
         String lang = "RDF/XML";
+        Integer threads = null;
+        Integer chunkSize = null;
     	Map<String, String> variables = new HashMap<String, String>();
     	for (int i=1; i<args.length; i++) {
     		if (args[i].indexOf("=") < 0) {
@@ -79,6 +84,10 @@ public class Driver {
 	    		String varValue = var[1].replace("\"", "");
 	    		if ("-lang".equals(varName)) {
 	    			lang = varValue;
+	    		} else if ("-threads".equals(varName)) {
+	    			threads = Integer.parseInt(varValue);
+	    		} else if ("-chunksize".equals(varName)) {
+	    			chunkSize = Integer.parseInt(varValue);
 	    		} else {
 	    			variables.put(varName, varValue);
 	    		}
@@ -90,10 +99,10 @@ public class Driver {
 
         XLWrapMapping map = MappingParser.parse(url);
         XLWrapMaterializer mat = new XLWrapMaterializer();
-        Model m = mat.generateModel(map);
-
-        // do some RDF prettifying.
-        prettifyNamespaces(m);
+        if (threads != null)
+        	mat.setThreads(threads);
+        if (chunkSize != null)
+        	mat.setChunkSize(chunkSize);
 
         // get or compute the output file name
         if (outfile == null) {
@@ -103,13 +112,39 @@ public class Driver {
             if (dotPos > 0) {
                 outfile = outfile.substring(0, dotPos);
             }
-            outfile = outfile + ".rdf";
+            outfile = outfile + (isNTriples(lang) ? ".nt" : ".rdf");
         }
 
+        // N-Triples can be streamed directly without building the model in memory
+        if (isNTriples(lang)) {
+        	FileOutputStream out = new FileOutputStream(outfile);
+        	try {
+        		mat.generate(map, new NTriplesSink(out));
+        	} finally {
+        		try {
+        			out.close();
+        		} catch (IOException ignore) {}
+        	}
+        	return;
+        }
+        
+        Model m = mat.generateModel(map);
+
+        // do some RDF prettifying.
+        prettifyNamespaces(m);
+
         // Write it!
         m.write(new FileOutputStream(outfile), lang);
     }
 
+    /**
+     * @param lang
+     * @return true if lang denotes N-Triples
+     */
+    private boolean isNTriples(String lang) {
+    	return "N-TRIPLE".equalsIgnoreCase(lang) || "N-TRIPLES".equalsIgnoreCase(lang) || "NT".equalsIgnoreCase(lang);
+    }
+
     /**
      * @param args
      *            The command line arguments. First one is the input
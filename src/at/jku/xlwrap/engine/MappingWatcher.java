@@ -0,0 +1,138 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author dorgon
+ *
+ * background thread checking an XLWrapEngine for changed mapping and spreadsheet files,
+ * so queries do not have to check files themselves
+ * 
+ * local files are checked every interval (a stat per file), remote spreadsheets (URLs) only every 
+ * remoteInterval since each check opens a connection, changed mappings are reloaded by this thread
+ * 
+ * java.nio.file.WatchService would avoid polling local files but requires Java 7, the checks done
+ * per interval are cheap compared to reloading a mapping
+ * 
+ */
+public class MappingWatcher implements Runnable {
+	private static final Logger log = LoggerFactory.getLogger(MappingWatcher.class);
+	
+	private final XLWrapEngine engine;
+	private final long interval;
+	private final long remoteInterval;
+	
+	private Thread thread;
+	private volatile boolean running = false;
+	
+	/** set by requestCheck(), guarded by this */
+	private boolean checkRequested = false;
+	
+	/**
+	 * constructor
+	 * 
+	 * @param engine
+	 * @param interval ms between checks of local files
+	 * @param remoteInterval ms between checks of remote files
+	 */
+	public MappingWatcher(XLWrapEngine engine, long interval, long remoteInterval) {
+		this.engine = engine;
+		this.interval = interval;
+		this.remoteInterval = remoteInterval;
+	}
+	
+	/**
+	 * start the watcher thread (daemon)
+	 */
+	public synchronized void start() {
+		if (thread != null)
+			return;
+		running = true;
+		thread = new Thread(this, "xlwrap-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * stop the watcher thread and wait until a running check has finished
+	 */
+	public void stop() {
+		Thread t;
+		synchronized (this) {
+			running = false;
+			t = thread;
+			thread = null;
+			notifyAll();
+		}
+		if (t != null) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * check for changes (including remote files) as soon as possible instead of waiting for the interval
+	 */
+	public synchronized void requestCheck() {
+		checkRequested = true;
+		notifyAll();
+	}
+	
+	/**
+	 * @return true if the watcher thread is running
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public void run() {
+		long lastRemote = System.currentTimeMillis();
+		while (running) {
+			boolean requested;
+			synchronized (this) {
+				if (!checkRequested) {
+					try {
+						wait(interval);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				requested = checkRequested;
+				checkRequested = false;
+			}
+			if (!running)
+				return;
+			
+			long now = System.currentTimeMillis();
+			boolean remote = requested || now - lastRemote >= remoteInterval;
+			if (remote)
+				lastRemote = now;
+			try {
+				engine.checkForChanges(remote);
+			} catch (Throwable e) {
+				log.error("Failed to check for changed mappings.", e);
+			}
+		}
+	}
+	
+}
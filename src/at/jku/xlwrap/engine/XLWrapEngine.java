@@ -23,10 +23,16 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,15 +40,24 @@ import org.slf4j.LoggerFactory;
 import at.jku.semwiq.endpoint.JosekiInstance;
 import at.jku.semwiq.rmi.SpawnedEndpointMetadata;
 import at.jku.xlwrap.common.Constants;
+import at.jku.xlwrap.common.Utils;
 import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.exec.BufferedSink;
+import at.jku.xlwrap.exec.GraphSink;
+import at.jku.xlwrap.exec.MaterializationStats;
 import at.jku.xlwrap.exec.XLWrapMaterializer;
+import at.jku.xlwrap.map.MapTemplate;
 import at.jku.xlwrap.map.MappingParser;
 import at.jku.xlwrap.map.XLWrapMapping;
+import at.jku.xlwrap.vocab.XLWrap;
 
 import com.hp.hpl.jena.datatypes.xsd.XSDDateTime;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.compose.MultiUnion;
 import com.hp.hpl.jena.ontology.OntModel;
 import com.hp.hpl.jena.ontology.OntModelSpec;
 import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.rdf.model.InfModel;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.Property;
@@ -50,10 +65,14 @@ import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.Statement;
 import com.hp.hpl.jena.rdf.model.StmtIterator;
 import com.hp.hpl.jena.rdf.model.impl.RDFReaderFImpl;
+import com.hp.hpl.jena.reasoner.ReasonerRegistry;
+import com.hp.hpl.jena.shared.Lock;
 import com.hp.hpl.jena.tdb.TDB;
 import com.hp.hpl.jena.tdb.TDBFactory;
 import com.hp.hpl.jena.util.FileUtils;
 import com.hp.hpl.jena.vocabulary.DC;
+import com.hp.hpl.jena.vocabulary.DCTerms;
+import com.hp.hpl.jena.vocabulary.RDF;
 
 /**
  * @author dorgon
@@ -65,6 +84,24 @@ public class XLWrapEngine {
 	/** source file property */
 	public static final Property SOURCE_FILE_PROPERTY = ModelFactory.createDefaultModel().createProperty("http://open.vocab.org/terms/sourcefile");
 	
+	/** links meta data to the content digest of a local source file, a blank node with the file (source file property) and its SHA-1 digest (rdf:value) */
+	public static final Property SOURCE_DIGEST_PROPERTY = ModelFactory.createDefaultModel().createProperty(XLWrap.NS + "sourceDigest");
+	
+	/** links a template graph (meta data) to the graph currently holding its triples, e.g. file:/mappings/x.trig#template0.k3x9a1 */
+	public static final Property DATA_GRAPH_PROPERTY = DCTerms.hasVersion;
+	
+	/** graph holding the RDFS closure of all cached graphs, see Constants.RDFS_CLOSURE */
+	public static final String CLOSURE_GRAPH = XLWrap.NS + "rdfsClosure";
+	
+	/** suffix of the graph names of templates, followed by the template number, e.g. file:/mappings/x.trig#template0 */
+	public static final String TEMPLATE_GRAPH_SUFFIX = "#template";
+	
+	/** number of inferred statements added to the closure graph at once */
+	private static final int CLOSURE_BATCH_SIZE = 100000;
+	
+	/** number of generated triples added to a data graph at once */
+	private static final int LOAD_BATCH_SIZE = 10000;
+	
 	/** cache direcotry */
 	private final String cacheDir;
 	
@@ -74,17 +111,44 @@ public class XLWrapEngine {
 	/** TDB dataset */
 	private final Dataset dataset;
 	
-	/** the master model over all sub graphs, target for queries, union model */
-	private OntModel masterCache;
+	/** TDB allows multiple readers or a single writer: queries hold the read lock, 
+	 * reloads only take the write lock to modify the dataset and to sync it */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	/** the read-write lock for SPARQL endpoints */
+	private final DatasetLock datasetLock = new DatasetLock(lock);
+	
+	/** the master model over all sub graphs, target for queries, union model,
+	 * a snapshot which is never modified but replaced by a new one after each reload */
+	private volatile OntModel masterCache;
+	
+	/** the union graph of the current snapshot, without OntModel layering in lean union mode (masterCache is null then) */
+	private volatile Graph unionGraph;
+
+	/** sub models of the master model by template graph name */
+	private final Map<String, Model> subModels = new Hashtable<String, Model>();
+	
+	/** data graphs replaced by newer ones, still part of snapshots handed out before, 
+	 * removed with the next reload when no reader holds the lock anymore */
+	private final List<String> retiredGraphs = new ArrayList<String>();
 
 	/** prefixes */
 	private final Map<String, String> cachedPrefixes = new Hashtable<String, String>();
 	
 	/** materializer */
 	private XLWrapMaterializer materializer;
+	
+	/** materialization statistics, kept across materializers of all checks */
+	private final MaterializationStats stats = new MaterializationStats();
 
-	/** updating flag, indicates if server is currently updating caches */
-	private boolean updating = false;
+	/** serve a plain union graph without OntModel layering */
+	private boolean leanUnion = Constants.LEAN_UNION;
+	
+	/** store the RDFS closure of all cached graphs */
+	private boolean rdfsClosure = Constants.RDFS_CLOSURE;
+	
+	/** background thread checking for changes, null if disabled */
+	private MappingWatcher watcher = null;
 	
 	/**
 	 * @param cacheDirectory TDB cache directory
@@ -100,21 +164,185 @@ public class XLWrapEngine {
 		RDFReaderFImpl.setBaseReaderClassName("TTL", com.hp.hpl.jena.n3.turtle.TurtleReader.class.getName()); // use old Jena reader for N3
 
 		init();
+		stats.register(MaterializationStats.MBEAN_NAME);
 		checkForChanges();
+		
+		if (Constants.CHECK_FOR_CHANGES) {
+			watcher = new MappingWatcher(this, 
+					Long.getLong(Constants.SYSTEMPROPERTY_WATCH_INTERVAL, Constants.DEFAULT_WATCH_INTERVAL),
+					Long.getLong(Constants.SYSTEMPROPERTY_WATCH_REMOTE_INTERVAL, Constants.DEFAULT_WATCH_REMOTE_INTERVAL));
+			watcher.start();
+		}
 	}
 
 	/** initialize */
-	public void init() {
+	public synchronized void init() {
 		log.info("Initializing XLWrap engine (watch dir: " + watchDir + ", TDB cache dir: " + cacheDir + ")");
 		
+		lock.writeLock().lock();
+		try {
+			initCache();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		publish();
+	}
+	
+	/**
+	 * load sub models from the dataset, caller must hold the write lock
+	 */
+	private void initCache() {
 		TDB.sync(this.dataset);
-		masterCache = ModelFactory.createOntologyModel(OntModelSpec.RDFS_MEM);
 		cachedPrefixes.clear();
-		for (Iterator<String> it = listCachedNames() ; it.hasNext() ;) {
-			Model model = getCachedModel(it.next());
-			masterCache.addSubModel(model);
+		subModels.clear();
+		retiredGraphs.clear();
+		
+		Map<String, String> templates = new HashMap<String, String>();
+		StmtIterator st = dataset.getDefaultModel().listStatements(null, DATA_GRAPH_PROPERTY, (Resource) null);
+		while (st.hasNext()) {
+			Statement stmt = st.next();
+			templates.put(stmt.getResource().getURI(), stmt.getSubject().getURI());
+		}
+		
+		List<String> names = new ArrayList<String>();
+		for (Iterator<String> it = listCachedNames() ; it.hasNext() ;)
+			names.add(it.next());
+		for (String name : names) {
+			Model model = dataset.getNamedModel(name);
+			if (templates.containsKey(name))
+				subModels.put(templates.get(name), model);
+			else if (name.contains(TEMPLATE_GRAPH_SUFFIX) || name.startsWith(CLOSURE_GRAPH)) {
+				// data graph replaced before shutdown, not loaded completely, or cached without data graphs by older versions
+				model.removeAll();
+				model.close();
+				continue;
+			} else
+				subModels.put(name, model); // single graph per mapping of older versions
 			cachedPrefixes.putAll(model.getNsPrefixMap());
 		}
+		
+		// closure stored by an earlier run with different settings
+		if (!rdfsClosure && subModels.containsKey(CLOSURE_GRAPH)) {
+			removeGraph(CLOSURE_GRAPH);
+			dropRetiredGraphs();
+		} else if (rdfsClosure && !subModels.containsKey(CLOSURE_GRAPH))
+			updateClosure();
+		TDB.sync(this.dataset);
+	}
+	
+	/**
+	 * replace the master model by a new snapshot over the current sub models
+	 */
+	private void publish() {
+		if (leanUnion) {
+			List<Graph> graphs = getSubGraphs();
+			masterCache = null;
+			unionGraph = (graphs.size() == 1) ? graphs.get(0) : new MultiUnion(graphs.iterator());
+		} else {
+			OntModel snapshot = ModelFactory.createOntologyModel(OntModelSpec.RDFS_MEM);
+			for (Model model : subModels.values())
+				snapshot.addSubModel(model);
+			masterCache = snapshot;
+			unionGraph = snapshot.getGraph();
+		}
+	}
+	
+	/**
+	 * store the RDFS closure (RDFS simple: sub classes and properties, domains, ranges) of all 
+	 * cached graphs into a new data graph of CLOSURE_GRAPH, so queries need no inference at runtime
+	 */
+	private void updateClosure() {
+		if (subModels.containsKey(CLOSURE_GRAPH))
+			removeGraph(CLOSURE_GRAPH);
+		if (!rdfsClosure || subModels.isEmpty())
+			return;
+		
+		// the closure is inferred from the sub models without lock, only this thread modifies the dataset
+		Calendar started = now();
+		Model base = ModelFactory.createModelForGraph(new MultiUnion(getSubGraphs().iterator()));
+		InfModel inf = ModelFactory.createInfModel(ReasonerRegistry.getRDFSSimpleReasoner(), base);
+		String data = newDataGraphName(CLOSURE_GRAPH);
+		Model closure = dataset.getNamedModel(data);
+		List<Statement> batch = new ArrayList<Statement>();
+		StmtIterator it = inf.listStatements();
+		while (it.hasNext()) {
+			Statement stmt = it.nextStatement();
+			if (!base.contains(stmt))
+				batch.add(stmt);
+			if (batch.size() == CLOSURE_BATCH_SIZE) {
+				addBatch(closure, batch);
+				batch.clear();
+			}
+		}
+		it.close();
+		
+		lock.writeLock().lock();
+		try {
+			closure.add(batch);
+			Resource meta = getMetadataResource(CLOSURE_GRAPH);
+			meta.addLiteral(DC.date, started);
+			meta.addProperty(DATA_GRAPH_PROPERTY, meta.getModel().createResource(data));
+		} finally {
+			lock.writeLock().unlock();
+		}
+		subModels.put(CLOSURE_GRAPH, closure);
+		log.info("RDFS closure now in cache (" + closure.size() + " triples)");
+	}
+	
+	/**
+	 * @param model
+	 * @param statements added under the write lock
+	 */
+	private void addBatch(Model model, List<Statement> statements) {
+		lock.writeLock().lock();
+		try {
+			model.add(statements);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * write the dataset to disk
+	 */
+	private void sync() {
+		lock.writeLock().lock();
+		try {
+			TDB.sync(dataset);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * @param leanUnion serve a plain union of the cached graphs (getGraph()) instead of an OntModel, 
+	 * 		default is Constants.LEAN_UNION
+	 */
+	public synchronized void setLeanUnion(boolean leanUnion) {
+		this.leanUnion = leanUnion;
+		publish();
+	}
+	
+	/**
+	 * @param rdfsClosure store the RDFS closure of all cached graphs, updated with each reload, 
+	 * 		default is Constants.RDFS_CLOSURE
+	 */
+	public synchronized void setRdfsClosure(boolean rdfsClosure) {
+		this.rdfsClosure = rdfsClosure;
+		dropRetiredGraphs();
+		updateClosure();
+		sync();
+		publish();
+	}
+	
+	/**
+	 * @return graphs of the current sub models
+	 */
+	private List<Graph> getSubGraphs() {
+		List<Graph> graphs = new ArrayList<Graph>();
+		for (Model model : subModels.values())
+			graphs.add(model.getGraph());
+		return graphs;
 	}
 	
 	/**
@@ -143,28 +371,86 @@ public class XLWrapEngine {
 	 * @return
 	 */
 	public Iterator<String> listCachedNames() {
-		return dataset.listNames();
+		List<String> names = new ArrayList<String>();
+		lock.readLock().lock();
+		try {
+			for (Iterator<String> it = dataset.listNames() ; it.hasNext() ;)
+				names.add(it.next());
+		} finally {
+			lock.readLock().unlock();
+		}
+		return names.iterator();
 	}
 	
 	/**
-	 * get a specific model for a given mapping file URI
+	 * @return URIs of the mapping files with cached graphs
+	 */
+	public synchronized Set<String> listCachedMappings() {
+		Set<String> mappings = new TreeSet<String>();
+		for (Iterator<String> it = listCachedNames() ; it.hasNext() ;) {
+			String name = it.next();
+			if (!retiredGraphs.contains(name) && !name.startsWith(CLOSURE_GRAPH))
+				mappings.add(getMappingUri(name));
+		}
+		return mappings;
+	}
+	
+	/**
+	 * get a specific model for a given template graph name or mapping file URI, 
+	 * callers must hold getLock() while reading it
 	 * 
 	 * @param canonical
 	 * @return
 	 */
 	public Model getCachedModel(String canonical) {
-		return dataset.getNamedModel(canonical);
+		String data = getDataGraph(canonical);
+		return dataset.getNamedModel((data != null) ? data : canonical);
+	}
+	
+	/**
+	 * @param graph template graph name
+	 * @return name of the graph currently holding the triples of the template or null
+	 */
+	public String getDataGraph(String graph) {
+		lock.readLock().lock();
+		try {
+			Statement s = getMetadataResource(graph).getProperty(DATA_GRAPH_PROPERTY);
+			return (s != null) ? s.getResource().getURI() : null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * @param graph template graph name
+	 * @return a new name for a graph holding the triples of the template
+	 */
+	private String newDataGraphName(String graph) {
+		long version = System.currentTimeMillis();
+		String name;
+		while (dataset.containsNamedModel(name = graph + "." + Long.toString(version, 36)))
+			version++;
+		return name;
 	}
 
 	/**
 	 * check for changes in mapping files and referred spreadsheet files
 	 */
 	public void checkForChanges() {
-		updating = true;
+		checkForChanges(true);
+	}
+	
+	/**
+	 * check for changes in mapping files and referred spreadsheet files, 
+	 * called by the MappingWatcher in the background
+	 * 
+	 * @param remote also check referred spreadsheets given by URLs (opens a connection per file)
+	 */
+	public synchronized void checkForChanges(boolean remote) {
 		try {
 			File f = new File(watchDir);
 			if (f.isFile())
-				checkFileChanged(f);
+				checkFileChanged(f, remote);
 			else if (f.isDirectory()) {
 				File[] mappingFiles = f.listFiles(new FilenameFilter() {
 					@Override
@@ -175,12 +461,11 @@ public class XLWrapEngine {
 				
 				// for each file in the directory
 				for (File file : mappingFiles)
-					checkFileChanged(file);
+					checkFileChanged(file, remote);
 			}
 			
 			// check for deleted mapping files
-			for (Iterator<String> it = listCachedNames() ; it.hasNext() ;) {
-				String fileUri = it.next();
+			for (String fileUri : listCachedMappings()) {
 				if (!new File(FileUtils.toFilename(fileUri)).exists())
 					removeFromCache(fileUri);
 			}
@@ -188,7 +473,6 @@ public class XLWrapEngine {
 			log.error(e.getMessage(), e);
 			
 		} finally {
-			updating = false;			
 			materializer = null;
 		}		
 	}
@@ -197,20 +481,55 @@ public class XLWrapEngine {
 	/** check if a file has changed and rebuild the cached model
 	 * 
 	 * @param file
+	 * @param remote also check referred spreadsheets given by URLs
 	 * @throws XLWrapException 
 	 */
-	private void checkFileChanged(File file) throws XLWrapException {
+	private void checkFileChanged(File file, boolean remote) throws XLWrapException {
 		try {
 			String fileUri = "file:" + file.getCanonicalPath();
-			if (!isCached(fileUri) ||
-				file.lastModified() > getTimestamp(fileUri).getTimeInMillis()	// mapping file has been modified
-				|| referredFilesChanged(fileUri))								// some of the referred spreadsheet files have been modified
-					reloadIntoCache(fileUri);
+			if (!isCached(fileUri) || mappingChanged(file, fileUri))
+				reloadIntoCache(fileUri);
+			else {
+				// only re-run templates referring to modified spreadsheet files
+				Set<String> changed = getChangedFiles(fileUri, remote);
+				if (!changed.isEmpty())
+					reloadIntoCache(fileUri, changed);
+			}
 		} catch (IOException e) {
 			log.error("Failed to check " + file.getAbsolutePath() + " for changes.", e);
 		}
 	}
 
+	/**
+	 * a mapping file modified after it was loaded but with the same content is not reloaded,
+	 * only its timestamp is updated
+	 * 
+	 * @param file
+	 * @param fileUri
+	 * @return true if the mapping file has been modified
+	 * @throws XLWrapException
+	 */
+	private boolean mappingChanged(File file, String fileUri) throws XLWrapException {
+		Resource meta = getMetadataResource(fileUri);
+		if (file.lastModified() <= getTimestamp(fileUri).getTimeInMillis())
+			return false;
+		
+		Calendar checked = now();
+		String digest = getDigest(meta, fileUri);
+		if (digest == null || !digest.equals(digest(fileUri, new HashMap<String, String>())))
+			return true;
+		
+		log.debug("Mapping <" + fileUri + "> has been touched but not modified.");
+		lock.writeLock().lock();
+		try {
+			setTimestamp(meta, checked);
+			TDB.sync(dataset);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return false;
+	}
+	
 	/**
 	 * @param canonical
 	 * @return
@@ -220,35 +539,216 @@ public class XLWrapEngine {
 	}
 	
 	/**
-	 * @param fileUri
-	 * @return
+	 * @param fileUri mapping file URI
+	 * @param remote also check spreadsheets given by URLs
+	 * @return spreadsheet files modified after the graph of a template referring to them was loaded
 	 * @throws XLWrapException 
 	 * @throws IOException 
 	 * @throws MalformedURLException 
 	 */
-	private boolean referredFilesChanged(String fileUri) throws XLWrapException, MalformedURLException, IOException {
-		Resource meta = getMetadataResource(fileUri);
-
-		long created = getTimestamp(fileUri).getTimeInMillis();
-		StmtIterator it = meta.listProperties(SOURCE_FILE_PROPERTY);
-		if (!it.hasNext())
-			log.warn("No information on associated spreadsheet files found in meta data for <" + fileUri + ">!");
-
-		String file;
-		while (it.hasNext()) {
-			file = it.nextStatement().getResource().getURI();
-			if (FileUtils.isURI(file)) {
-				URLConnection url = new URL(file).openConnection();
-				if (url.getLastModified() > created)
-					return true;
-			} else if (FileUtils.isFile(file)) {
-				File f = new File(file);
-				if (f.lastModified() > created)
-					return true;
+	private Set<String> getChangedFiles(String fileUri, boolean remote) throws XLWrapException, MalformedURLException, IOException {
+		Set<String> changed = new TreeSet<String>();
+		Map<String, String> digests = new HashMap<String, String>();
+		Map<Resource, List<String>> touched = new HashMap<Resource, List<String>>();
+		Calendar checked = now();
+		
+		for (String graph : getTemplateGraphs(fileUri)) {
+			Resource meta = getMetadataResource(graph);
+			long created = getTimestamp(graph).getTimeInMillis();
+			List<String> files = getReferredFiles(graph);
+			if (files.isEmpty())
+				log.warn("No information on associated spreadsheet files found in meta data for <" + graph + ">!");
+			
+			boolean modified = false;
+			boolean unmodified = false;
+			for (String file : files) {
+				if ((remote || getLocalFile(file) != null) && fileChanged(file, created)) {
+					// local files with the same content are not reloaded (e.g. touched by sync tools)
+					String digest = getDigest(meta, file);
+					if (digest != null && digest.equals(digest(file, digests)))
+						unmodified = true;
+					else {
+						changed.add(file);
+						modified = true;
+					}
+				}
 			}
+			if (unmodified && !modified)
+				touched.put(meta, files);
 		}
 		
-		return false;
+		// update timestamps of templates with touched files only, unless reloaded anyway because 
+		// a file is shared with a modified template, so digests are only computed once per modification
+		if (!touched.isEmpty()) {
+			lock.writeLock().lock();
+			try {
+				for (Map.Entry<Resource, List<String>> e : touched.entrySet()) {
+					if (Collections.disjoint(e.getValue(), changed)) {
+						log.debug("Spreadsheets of <" + e.getKey().getURI() + "> have been touched but not modified.");
+						setTimestamp(e.getKey(), checked);
+					}
+				}
+				TDB.sync(dataset);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		return changed;
+	}
+	
+	/**
+	 * @param file local file name or URL of a spreadsheet
+	 * @param since
+	 * @return true if the file has been modified after since
+	 * @throws MalformedURLException
+	 * @throws IOException
+	 */
+	private boolean fileChanged(String file, long since) throws MalformedURLException, IOException {
+		File local = getLocalFile(file);
+		if (local != null)
+			return local.lastModified() > since;
+		else {
+			URLConnection url = new URL(file).openConnection();
+			return url.getLastModified() > since;
+		}
+	}
+	
+	/**
+	 * @param file file name or URI
+	 * @return the local file or null if file is a remote URL
+	 */
+	private static File getLocalFile(String file) {
+		return FileUtils.isFile(file) ? new File(FileUtils.toFilename(file)) : null;
+	}
+	
+	/**
+	 * @param file file name or URI
+	 * @param digests digests computed before, file digests are added
+	 * @return SHA-1 digest of the content of a local file, null for remote or missing files
+	 */
+	private static String digest(String file, Map<String, String> digests) {
+		if (digests.containsKey(file))
+			return digests.get(file);
+		
+		String digest = null;
+		File local = getLocalFile(file);
+		if (local != null && local.isFile()) {
+			try {
+				digest = Utils.SHA1(local);
+			} catch (XLWrapException e) {
+				log.warn("Failed to compute digest of " + file + ", changes are detected by modification time only.", e);
+			}
+		}
+		digests.put(file, digest);
+		return digest;
+	}
+	
+	/**
+	 * @param meta meta data of a mapping or template graph
+	 * @param file
+	 * @return the digest of file stored in the meta data or null
+	 */
+	private static String getDigest(Resource meta, String file) {
+		StmtIterator it = meta.listProperties(SOURCE_DIGEST_PROPERTY);
+		try {
+			while (it.hasNext()) {
+				Resource node = it.nextStatement().getResource();
+				if (node.hasProperty(SOURCE_FILE_PROPERTY, meta.getModel().createResource(file)) && node.hasProperty(RDF.value))
+					return node.getProperty(RDF.value).getString();
+			}
+			return null;
+		} finally {
+			it.close();
+		}
+	}
+	
+	/**
+	 * add a source file and its digest to meta data
+	 * 
+	 * @param meta
+	 * @param file
+	 * @param digest may be null for remote files
+	 */
+	private static void addSourceFile(Resource meta, String file, String digest) {
+		meta.addProperty(SOURCE_FILE_PROPERTY, meta.getModel().createResource(file));
+		addDigest(meta, file, digest);
+	}
+	
+	/**
+	 * add the digest of a file to meta data
+	 * 
+	 * @param meta
+	 * @param file
+	 * @param digest may be null for remote files
+	 */
+	private static void addDigest(Resource meta, String file, String digest) {
+		if (digest != null) {
+			Model model = meta.getModel();
+			Resource node = model.createResource();
+			node.addProperty(SOURCE_FILE_PROPERTY, model.createResource(file));
+			node.addProperty(RDF.value, digest);
+			meta.addProperty(SOURCE_DIGEST_PROPERTY, node);
+		}
+	}
+	
+	/**
+	 * remove meta data including digest nodes
+	 * 
+	 * @param meta
+	 */
+	private static void clearMetadata(Resource meta) {
+		List<Resource> nodes = new ArrayList<Resource>();
+		StmtIterator it = meta.listProperties(SOURCE_DIGEST_PROPERTY);
+		while (it.hasNext())
+			nodes.add(it.nextStatement().getResource());
+		it.close();
+		for (Resource node : nodes)
+			node.removeProperties();
+		meta.removeProperties();
+	}
+	
+	/**
+	 * @param meta
+	 * @param date
+	 */
+	private static void setTimestamp(Resource meta, Calendar date) {
+		meta.removeAll(DC.date);
+		meta.addLiteral(DC.date, date);
+	}
+	
+	/**
+	 * @param fileUri mapping file URI
+	 * @return names of the graphs of the templates of a mapping
+	 */
+	public List<String> getTemplateGraphs(String fileUri) {
+		List<String> graphs = new ArrayList<String>();
+		lock.readLock().lock();
+		try {
+			StmtIterator it = getMetadataResource(fileUri).listProperties(DCTerms.hasPart);
+			while (it.hasNext())
+				graphs.add(it.nextStatement().getResource().getURI());
+		} finally {
+			lock.readLock().unlock();
+		}
+		return graphs;
+	}
+	
+	/**
+	 * @param fileUri mapping file URI
+	 * @param tmplNum number of the template in the mapping, see {@link #getTemplates(XLWrapMapping)}
+	 * @return name of the graph holding the triples generated by the template
+	 */
+	public static String getTemplateGraphName(String fileUri, int tmplNum) {
+		return fileUri + TEMPLATE_GRAPH_SUFFIX + tmplNum;
+	}
+	
+	/**
+	 * @param graph name of a cached graph
+	 * @return URI of the mapping file the graph belongs to
+	 */
+	private static String getMappingUri(String graph) {
+		int i = graph.lastIndexOf(TEMPLATE_GRAPH_SUFFIX);
+		return (i < 0) ? graph : graph.substring(0, i);
 	}
 	
 	/**
@@ -258,9 +758,14 @@ public class XLWrapEngine {
 	 */
 	public List<String> getReferredFiles(String canonical) {
 		List<String> files = new ArrayList<String>();
-		StmtIterator it = getMetadataResource(canonical).listProperties(SOURCE_FILE_PROPERTY);
-		while (it.hasNext())
-			files.add(it.next().getResource().getURI());
+		lock.readLock().lock();
+		try {
+			StmtIterator it = getMetadataResource(canonical).listProperties(SOURCE_FILE_PROPERTY);
+			while (it.hasNext())
+				files.add(it.next().getResource().getURI());
+		} finally {
+			lock.readLock().unlock();
+		}
 		return files;
 	}
 	
@@ -270,12 +775,16 @@ public class XLWrapEngine {
 	 * @return
 	 */
 	public Calendar getTimestamp(String fileUri) throws XLWrapException {
-		Resource meta = getMetadataResource(fileUri);
-		Statement s = meta.getProperty(DC.date);
-		if (s == null)
-			throw new XLWrapException("Could not find a timestamp for <" + fileUri + "> in meta data!");
-		
-		Object o = s.getLiteral().getValue();
+		Object o;
+		lock.readLock().lock();
+		try {
+			Statement s = getMetadataResource(fileUri).getProperty(DC.date);
+			if (s == null)
+				throw new XLWrapException("Could not find a timestamp for <" + fileUri + "> in meta data!");
+			o = s.getLiteral().getValue();
+		} finally {
+			lock.readLock().unlock();
+		}
 		XSDDateTime dt = (XSDDateTime) o;
 		return dt.asCalendar();
 	}
@@ -285,30 +794,57 @@ public class XLWrapEngine {
 	 * @return
 	 */
 	private boolean isCached(String fileUri) {
-		boolean modelExists = dataset.containsNamedModel(fileUri);
 		boolean metaExists = getMetadataResource(fileUri).listProperties().hasNext();
+		boolean templatesExist = getMetadataResource(fileUri).hasProperty(DCTerms.hasPart);
 
-		if (modelExists && !metaExists)
-			log.warn("Mapping <" + fileUri + "> is cached but no meta data found.");
-		if (metaExists && !modelExists)
-			log.warn("Meta data found for mapping <" + fileUri + ">  but no cached model exists.");
+		if (dataset.containsNamedModel(fileUri))
+			log.info("Mapping <" + fileUri + "> is cached in a single graph, will be reloaded into graphs per template.");
+		else if (metaExists && !templatesExist)
+			log.warn("Meta data found for mapping <" + fileUri + "> but no cached template graphs exist.");
 		
-		if (modelExists && metaExists)
-			return true;
-		else
-			return false;			
+		if (!metaExists || !templatesExist || dataset.containsNamedModel(fileUri))
+			return false;
+		for (String graph : getTemplateGraphs(fileUri))
+			if (getDataGraph(graph) == null)
+				return false;
+		return true;
 	}
 	
 	/**
+	 * materialize all templates of a mapping into the cache
+	 * 
 	 * @param fileUri
 	 */
 	public void reloadIntoCache(String fileUri) {
+		reloadIntoCache(fileUri, null);
+	}
+	
+	/**
+	 * materialize templates of a mapping, each template into its own graph,
+	 * the meta data links the mapping to its template graphs (dcterms:hasPart) and records
+	 * the referred spreadsheet files and a timestamp per template graph
+	 * 
+	 * templates are materialized into new data graphs (dcterms:hasVersion of the template graph) 
+	 * while queries continue on the current snapshot, generated triples are added in batches under 
+	 * the write lock, a new snapshot is published when all templates are loaded, replaced data graphs 
+	 * are removed with the next reload, after queries on the old snapshot have released the lock
+	 * 
+	 * @param fileUri
+	 * @param changedFiles only reload templates referring to one of these files, null to reload the whole mapping
+	 */
+	public synchronized void reloadIntoCache(String fileUri, Set<String> changedFiles) {
 		// create new materializer
-		if (materializer == null) {
-			SpawnedEndpointMetadata meta = JosekiInstance.getLastSpawnedEndpointMetadata();
-			materializer = new XLWrapMaterializer(meta.getHostname(), meta.getPort(), JosekiInstance.getLastPubbyPathPrefix());
-		}
+		if (materializer == null)
+			materializer = createMaterializer(stats);
 		
+		// files modified while loading are detected by the next check, as are digests computed before loading
+		Calendar started = now();
+		Map<String, String> digests = new HashMap<String, String>();
+		String mappingDigest = digest(fileUri, digests);
+		dropRetiredGraphs();
+		
+		// new data graphs by template graph
+		Map<String, String> loaded = new HashMap<String, String>();
 		try {
 			XLWrapMapping map = MappingParser.parse(fileUri);
 			if (map.isOffline()) {
@@ -318,32 +854,162 @@ public class XLWrapEngine {
 				return;
 			}
 			
-			if (isCached(fileUri))
+			if (changedFiles != null)
+				log.info("Processing templates of XLWrap mapping '" + fileUri + "' referring to changed files " + changedFiles + "...");
+			else if (isCached(fileUri))
 				log.info("Processing changed XLWrap mapping: '" + fileUri + "'...");
 			else
 				log.info("Processing new XLWrap mapping: '" + fileUri + "'...");
 			
-			// TODO: inference / forward rules into TDB model - if (Config.inferenceEnabled())
-			Model model = dataset.getNamedModel(fileUri);
-			model.removeAll();
-			materializer.generateModel(map, model);
-			
-			// create meta data entry
 			Resource meta = getMetadataResource(fileUri);
-			meta.removeProperties();
-			for (String f : map.getReferredFiles())
-				meta.addProperty(SOURCE_FILE_PROPERTY, meta.getModel().createResource(f));
-			meta.addLiteral(DC.date, Calendar.getInstance());
+			List<String> oldGraphs = getTemplateGraphs(fileUri);
+			List<String> graphs = new ArrayList<String>();
+			Map<String, Set<String>> graphFiles = new HashMap<String, Set<String>>();
+			long triples = 0;
 			
-			masterCache.addSubModel(model);
-			cachedPrefixes.putAll(model.getNsPrefixMap());
-			TDB.sync(dataset);
+			List<MapTemplate> tmpls = getTemplates(map);
+			for (int i = 0; i < tmpls.size(); i++) {
+				MapTemplate tmpl = tmpls.get(i);
+				String graph = getTemplateGraphName(fileUri, i);
+				graphs.add(graph);
+				Set<String> files = map.getReferredFiles(tmpl);
+				if (changedFiles != null && Collections.disjoint(files, changedFiles))
+					continue;
+				
+				XLWrapMapping single = new XLWrapMapping();
+				single.add(tmpl);
+				
+				// TODO: inference / forward rules into TDB model - if (Config.inferenceEnabled())
+				materializer.setBlankNodePrefix("m" + Integer.toHexString(graph.hashCode())); // graphs are merged by the union graph
+				String data = newDataGraphName(graph);
+				loaded.put(graph, data);
+				graphFiles.put(graph, files);
+				for (String f : files)
+					digest(f, digests);
+				Model model = dataset.getNamedModel(data);
+				materializer.generate(single, createLoadSink(model));
+				triples += model.size();
+			}
 			
-			log.info("Mapping <" + fileUri + "> now in cache (" + model.size() + " triples)");
+			// all templates loaded, switch template graphs to the new data graphs
+			lock.writeLock().lock();
+			try {
+				for (Map.Entry<String, String> e : loaded.entrySet()) {
+					String graph = e.getKey();
+					Model model = dataset.getNamedModel(e.getValue());
+					String old = getDataGraph(graph);
+					if (old != null)
+						retiredGraphs.add(old);
+					
+					// template meta data
+					Resource tmplMeta = getMetadataResource(graph);
+					clearMetadata(tmplMeta);
+					for (String f : graphFiles.get(graph))
+						addSourceFile(tmplMeta, f, digests.get(f));
+					tmplMeta.addLiteral(DC.date, started);
+					tmplMeta.addProperty(DATA_GRAPH_PROPERTY, tmplMeta.getModel().createResource(e.getValue()));
+					
+					subModels.put(graph, model);
+					cachedPrefixes.putAll(model.getNsPrefixMap());
+				}
+				loaded.clear();
+				
+				if (changedFiles == null) {
+					// graphs of removed templates and of an old single-graph cache
+					for (String graph : oldGraphs)
+						if (!graphs.contains(graph))
+							removeGraph(graph);
+					if (dataset.containsNamedModel(fileUri))
+						removeGraph(fileUri);
+					
+					// create meta data entry
+					clearMetadata(meta);
+					addDigest(meta, fileUri, mappingDigest);
+					for (String f : map.getReferredFiles())
+						meta.addProperty(SOURCE_FILE_PROPERTY, meta.getModel().createResource(f));
+					for (String graph : graphs)
+						meta.addProperty(DCTerms.hasPart, meta.getModel().createResource(graph));
+					meta.addLiteral(DC.date, started);
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+			updateClosure();
+			sync();
+			publish();
+			
+			log.info("Mapping <" + fileUri + "> now in cache (" + triples + " triples in " + graphFiles.size() + " of " + graphs.size() + " template graphs reloaded)");
 		} catch (XLWrapException e) {
 			log.error("Processing failed for mapping '" + fileUri + "'.", e);
+		} finally {
+			// data graphs of a failed reload, the current snapshot remains
+			for (String data : loaded.values())
+				dropGraph(data);
 		}
 	}
+	
+	/**
+	 * @param model data graph not part of any snapshot yet
+	 * @return a sink adding triples to the model in batches, each under the write lock
+	 */
+	private BufferedSink createLoadSink(Model model) {
+		return new BufferedSink(new GraphSink(model.getGraph()), LOAD_BATCH_SIZE) {
+			@Override
+			public void flush() throws XLWrapException {
+				lock.writeLock().lock();
+				try {
+					super.flush();
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+		};
+	}
+	
+	/**
+	 * @return the current time truncated to seconds, TDB does not restore inlined xsd:dateTime values 
+	 * 		with milliseconds below 100 correctly (e.g. .05 becomes .5)
+	 */
+	private static Calendar now() {
+		Calendar c = Calendar.getInstance();
+		c.set(Calendar.MILLISECOND, 0);
+		return c;
+	}
+	
+	/**
+	 * the order of templates in a parsed mapping is not stable, templates are sorted by their referred
+	 * files to assign graphs, templates with equal files are always reloaded together
+	 * 
+	 * @param map
+	 * @return templates of the mapping in the order of their graph numbers
+	 * @throws XLWrapException
+	 */
+	private static List<MapTemplate> getTemplates(XLWrapMapping map) throws XLWrapException {
+		final Map<MapTemplate, String> keys = new HashMap<MapTemplate, String>();
+		List<MapTemplate> tmpls = new ArrayList<MapTemplate>();
+		Iterator<MapTemplate> it = map.getMapTemplatesIterator();
+		while (it.hasNext()) {
+			MapTemplate tmpl = it.next();
+			keys.put(tmpl, new TreeSet<String>(map.getReferredFiles(tmpl)).toString());
+			tmpls.add(tmpl);
+		}
+		Collections.sort(tmpls, new Comparator<MapTemplate>() {
+			@Override
+			public int compare(MapTemplate t1, MapTemplate t2) {
+				return keys.get(t1).compareTo(keys.get(t2));
+			}
+		});
+		return tmpls;
+	}
+	
+	/**
+	 * @param stats statistics of the engine the materializer adds to
+	 * @return a materializer for the mappings, using the host of the last spawned endpoint if available
+	 */
+	protected XLWrapMaterializer createMaterializer(MaterializationStats stats) {
+		SpawnedEndpointMetadata meta = JosekiInstance.getLastSpawnedEndpointMetadata();
+		return new XLWrapMaterializer(meta.getHostname(), meta.getPort(), JosekiInstance.getLastPubbyPathPrefix(), stats);
+	}
 
 	/**
 	 * @param file
@@ -351,36 +1017,122 @@ public class XLWrapEngine {
 	private void removeFromCache(String canonicalFileName) {
 		log.info("Cleaning cache for mapping '" + canonicalFileName + "' ...");
 
-		Model model = dataset.getNamedModel(canonicalFileName);
-		masterCache.removeSubModel(model);
-		masterCache.rebind();
-
-		// clear cached data
-		model.removeAll();
-		model.close();
-		Resource meta = getMetadataResource(canonicalFileName);
-		meta.removeProperties();
+		dropRetiredGraphs();
+		lock.writeLock().lock();
+		try {
+			for (String graph : getTemplateGraphs(canonicalFileName))
+				removeGraph(graph);
+			if (dataset.containsNamedModel(canonicalFileName))
+				removeGraph(canonicalFileName);
+			clearMetadata(getMetadataResource(canonicalFileName));
+		} finally {
+			lock.writeLock().unlock();
+		}
+		updateClosure();
+		sync();
+		publish();
 		
 		// TODO - improve: currently cached prefixes remain in cache until server is restarted
 	}
+	
+	/**
+	 * remove a graph from the union model, its data is cleared with the next reload
+	 * 
+	 * @param graph template graph name or mapping file URI
+	 */
+	private void removeGraph(String graph) {
+		subModels.remove(graph);
+		String data = getDataGraph(graph);
+		retiredGraphs.add((data != null) ? data : graph);
+		lock.writeLock().lock();
+		try {
+			clearMetadata(getMetadataResource(graph));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * clear data graphs which are not part of the current snapshot anymore, 
+	 * waits until queries on older snapshots have released the lock
+	 */
+	private void dropRetiredGraphs() {
+		if (retiredGraphs.isEmpty())
+			return;
+		lock.writeLock().lock();
+		try {
+			for (String data : retiredGraphs)
+				dropGraph(data);
+			retiredGraphs.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * clear cached data
+	 * 
+	 * @param name
+	 */
+	private void dropGraph(String name) {
+		lock.writeLock().lock();
+		try {
+			Model model = dataset.getNamedModel(name);
+			model.removeAll();
+			model.close();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
 
 	/**
-	 * blocks if server is currently updating caches
-	 * this is only part of the story and should prevent concurrency issues in some cases
-	 * to fully support locking, the requester (e.g. query engine) would have to care about locking also
+	 * @return the background watcher, null if checking for changes is disabled
+	 */
+	public MappingWatcher getWatcher() {
+		return watcher;
+	}
+
+	/**
+	 * @return materialization statistics of all checks since the engine was started
+	 */
+	public MaterializationStats getMaterializationStats() {
+		return stats;
+	}
+
+	/**
+	 * never blocks, reloads build new data graphs and publish a new snapshot when done, 
+	 * a snapshot stays valid while getLock() is held for reading, its replaced data graphs
+	 * are removed by the reload after the one which replaced it once the lock is released
 	 * 
-	 * @return the masterCache for queries
+	 * changes are detected by the MappingWatcher in the background, not per call
+	 * 
+	 * @return the current snapshot of the masterCache for queries
 	 */
 	public OntModel getModel() {
-		if (Constants.CHECK_FOR_CHANGES)
-			checkForChanges();
-		
-		while (updating) {
-			try {
-				Thread.sleep(100);
-			} catch (InterruptedException e) {}
-		}
-		return masterCache;
+		OntModel model = masterCache;
+		if (model == null) // lean union mode, wrap only for callers requiring an OntModel
+			model = ModelFactory.createOntologyModel(OntModelSpec.RDFS_MEM, ModelFactory.createModelForGraph(unionGraph));
+		return model;
+	}
+	
+	/**
+	 * never blocks, see getModel()
+	 * 
+	 * @return the union graph of the current snapshot for queries, in lean union mode
+	 * 		(Constants.LEAN_UNION) a plain union of the cached graphs without OntModel layering
+	 */
+	public Graph getGraph() {
+		return unionGraph;
+	}
+	
+	/**
+	 * queries must hold the lock for reading while iterating over a snapshot, Joseki 
+	 * takes it for each request, a thread holding it must not trigger a reload
+	 * 
+	 * @return the read-write lock guarding the TDB dataset
+	 */
+	public Lock getLock() {
+		return datasetLock;
 	}
 
 	/**
@@ -394,8 +1146,15 @@ public class XLWrapEngine {
 	 * clean resources
 	 */
 	public void shutdown() {
+		if (watcher != null)
+			watcher.stop();
+		synchronized (this) {
+			dropRetiredGraphs();
+			sync();
+		}
 		dataset.close();
-		masterCache.close();
+		if (masterCache != null)
+			masterCache.close();
 		
 		log.info("XLWrap-Server shutdown cleanly.");
 	}
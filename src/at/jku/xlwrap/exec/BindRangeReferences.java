@@ -0,0 +1,93 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.exec;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.map.expr.E_RangeRef;
+import at.jku.xlwrap.map.expr.XLExpr;
+import at.jku.xlwrap.map.expr.XLExprVisitor;
+import at.jku.xlwrap.map.range.AnyRange;
+import at.jku.xlwrap.map.range.MultiRange;
+import at.jku.xlwrap.map.range.NullRange;
+import at.jku.xlwrap.map.range.Range;
+
+/**
+ * @author dorgon
+ *
+ * replaces range references by BoundRanges, each single range is bound to those
+ * stages whose restriction subsumes it (multi ranges are bound per sub range)
+ */
+public class BindRangeReferences implements XLExprVisitor {
+	private final TransformationStage[] stages;
+	private final ExecutionContext context;
+	
+	/**
+	 * constructor
+	 * 
+	 * @param stages candidate stages ordered from root to leaf
+	 * @param context
+	 */
+	public BindRangeReferences(TransformationStage[] stages, ExecutionContext context) {
+		this.stages = stages;
+		this.context = context;
+	}
+
+	@Override
+	public void visiting0(XLExpr expr) throws XLWrapException {
+		if (expr instanceof E_RangeRef) {
+			E_RangeRef rangeRef = (E_RangeRef) expr;
+			rangeRef.setRange(bind(rangeRef.getRange()));
+		}
+	}
+
+	/**
+	 * @param range
+	 * @return bound range
+	 * @throws XLWrapException
+	 */
+	public Range bind(Range range) throws XLWrapException {
+		if (range instanceof BoundRange || range == AnyRange.INSTANCE || range == NullRange.INSTANCE)
+			return range;
+		
+		if (range instanceof MultiRange) {
+			MultiRange bound = new MultiRange();
+			Iterator<Range> it = ((MultiRange) range).getRangeIterator();
+			while (it.hasNext())
+				bound.addRange(bind(it.next()));
+			return bound;
+		}
+		
+		List<TransformationStage> applying = new ArrayList<TransformationStage>();
+		for (TransformationStage stage : stages)
+			if (stage.getStageRestriction().subsumes(range, context))
+				applying.add(stage);
+		return new BoundRange(range, applying.toArray(new TransformationStage[applying.size()]));
+	}
+	
+	@Override
+	public void visiting1(XLExpr expr1) throws XLWrapException {}
+
+	@Override
+	public void visiting2(XLExpr expr2) throws XLWrapException {}
+
+	@Override
+	public void visitingFunction(XLExpr func) throws XLWrapException {}
+
+}
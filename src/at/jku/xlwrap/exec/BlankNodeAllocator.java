@@ -0,0 +1,91 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.exec;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.rdf.model.AnonId;
+
+/**
+ * @author dorgon
+ *
+ * allocates blank node labels deterministically from a template/iteration prefix and a counter
+ * instead of random IDs, so materializing the same mapping twice yields the same labels,
+ * also if templates or chunks are processed in parallel
+ * 
+ * labels are built as [prefix]t[template]i[iteration]n[counter] for fresh blank nodes of an iteration,
+ * [prefix]t[template]c[slot] for blank nodes of constant statements, and id_[value] for xl:id,
+ * the optional prefix distinguishes materializations of different mappings which are merged later
+ * 
+ * an allocator is owned by a single ExecutionContext (i.e. thread)
+ * 
+ */
+public class BlankNodeAllocator {
+	private String template = "t0";
+	private String prefix = "t0i0n";
+	private int counter = 0;
+	
+	/**
+	 * start allocating blank nodes for another template
+	 * 
+	 * @param prefix prefix for all labels of the mapping, may be empty
+	 * @param templateIndex position of the template in the mapping
+	 */
+	public void startTemplate(String prefix, int templateIndex) {
+		template = prefix + "t" + templateIndex;
+		startIteration("0");
+	}
+	
+	/**
+	 * start allocating blank nodes for another iteration of the current template
+	 * 
+	 * @param iteration position of the iteration, must be unique within the template (see TemplateModelGenerator.getIteration())
+	 */
+	public void startIteration(String iteration) {
+		prefix = template + "i" + iteration + "n";
+		counter = 0;
+	}
+	
+	/**
+	 * @return a new blank node ID for the current iteration
+	 */
+	public AnonId nextId() {
+		return AnonId.create(prefix + (counter++));
+	}
+	
+	/**
+	 * @return a new blank node for the current iteration
+	 */
+	public Node next() {
+		return Node.createAnon(nextId());
+	}
+	
+	/**
+	 * @param slot
+	 * @return the blank node of a constant statement slot of the current template, equal for all iterations
+	 */
+	public Node constant(int slot) {
+		return Node.createAnon(AnonId.create(template + "c" + slot));
+	}
+	
+	/**
+	 * @param id value of an xl:id declaration
+	 * @return the blank node for the id, equal for all templates and iterations
+	 */
+	public Node forId(String id) {
+		return Node.createAnon(AnonId.create("id_" + id));
+	}
+
+}
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.exec;
+
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.map.range.AnyRange;
+import at.jku.xlwrap.map.range.Range;
+
+/**
+ * @author dorgon
+ *
+ * A range bound to the transformation stages which apply to it. The base range is never
+ * changed, instead, the range for the current iteration is resolved from the absolute
+ * transformation of each bound stage (e.g. the current row offset of a RowShift).
+ * Thus, no expressions need to be copied or changed when stages proceed.
+ * 
+ * If all bound stages are shifts, their column, row, and sheet offsets are cached per stage
+ * version and the resolved range is moved to the summed offsets in place. Otherwise (sheet or
+ * file repeats), the transformations are applied to a copy of the base range one by one.
+ * 
+ * Which stages apply is decided once based on the restrictions of the transformations for the
+ * initial position. The resolved range is cached until one of the bound stages proceeds.
+ * 
+ */
+public class BoundRange extends Range {
+	private final Range base;
+	
+	/** bound stages from root to leaf */
+	private final TransformationStage[] stages;
+
+	/** cached resolved range and stage versions it was resolved for */
+	private Range resolved = null;
+	private final long[] versions;
+	
+	/** true if all bound stages are shifts given by their offsets */
+	private final boolean offsets;
+	
+	/** offsets of each stage for the cached versions */
+	private final int[] colOffsets, rowOffsets, sheetOffsets;
+	
+	/** base range offsets are applied to, sheet numbers are determined once if sheets are shifted */
+	private Range origin;
+	
+	/**
+	 * constructor
+	 * 
+	 * @param base the untransformed range, must not be a MultiRange (bind each sub range instead)
+	 * @param stages the stages which transform this range, ordered from root to leaf
+	 */
+	public BoundRange(Range base, TransformationStage[] stages) {
+		this.base = base;
+		this.origin = base;
+		this.stages = stages;
+		this.versions = new long[stages.length];
+		this.colOffsets = new int[stages.length];
+		this.rowOffsets = new int[stages.length];
+		this.sheetOffsets = new int[stages.length];
+		
+		boolean offsets = true;
+		for (int i = 0; i < stages.length && offsets; i++)
+			offsets = stages[i].isOffset();
+		this.offsets = offsets;
+	}
+	
+	/**
+	 * @return the untransformed range
+	 */
+	public Range getBaseRange() {
+		return base;
+	}
+	
+	/**
+	 * resolve the range for the current position of all bound stages
+	 * 
+	 * @return the transformed range (must not be changed, only valid until a bound stage proceeds)
+	 * @throws XLWrapException
+	 */
+	public Range resolve() throws XLWrapException {
+		boolean changed = resolved == null;
+		for (int i = 0; i < stages.length; i++) {
+			long version = stages[i].getVersion();
+			if (resolved == null || versions[i] != version) {
+				versions[i] = version;
+				if (offsets) {
+					colOffsets[i] = stages[i].getColumnOffset();
+					rowOffsets[i] = stages[i].getRowOffset();
+					sheetOffsets[i] = stages[i].getSheetOffset();
+				}
+				changed = true;
+			}
+		}
+		if (!changed)
+			return resolved;
+		
+		if (offsets) {
+			int cols = 0, rows = 0, sheets = 0;
+			for (int i = 0; i < stages.length; i++) {
+				cols += colOffsets[i];
+				rows += rowOffsets[i];
+				sheets += sheetOffsets[i];
+			}
+			if (resolved == null)
+				resolved = base.copy();
+			if (move(resolved, cols, rows, sheets))
+				return resolved;
+		}
+		
+		resolved = transform(stages.length - 1);
+		return resolved;
+	}
+	
+	/**
+	 * resolve the range for the current position of all bound stages up to a level,
+	 * the transformations of deeper stages are not applied
+	 * 
+	 * @param level the level of the deepest stage to apply (0 = root)
+	 * @return the transformed range
+	 * @throws XLWrapException
+	 */
+	public Range resolve(int level) throws XLWrapException {
+		if (stages.length == 0 || stages[stages.length-1].getLevel() <= level)
+			return resolve();
+		
+		int last = -1;
+		while (last + 1 < stages.length && stages[last+1].getLevel() <= level)
+			last++;
+		
+		if (offsets) {
+			int cols = 0, rows = 0, sheets = 0;
+			for (int i = 0; i <= last; i++) {
+				cols += stages[i].getColumnOffset();
+				rows += stages[i].getRowOffset();
+				sheets += stages[i].getSheetOffset();
+			}
+			Range r = base.copy();
+			if (move(r, cols, rows, sheets))
+				return r;
+		}
+		return transform(last);
+	}
+	
+	/**
+	 * move a range to the base range shifted by the given offsets
+	 * 
+	 * @param r the range to move
+	 * @param cols
+	 * @param rows
+	 * @param sheets
+	 * @return false if the range cannot be moved in place
+	 * @throws XLWrapException
+	 */
+	private boolean move(Range r, int cols, int rows, int sheets) throws XLWrapException {
+		if (sheets != 0 && origin == base) // sheet shifts need sheet numbers, determined by context once
+			origin = base.copy().shiftSheets(0, AnyRange.INSTANCE, stages[0].context);
+		return r.moveTo(origin, cols, rows, sheets);
+	}
+	
+	/**
+	 * apply the transformations of the stages up to last to a copy of the base range
+	 * 
+	 * @param last index of the deepest stage to apply
+	 * @return the transformed range
+	 * @throws XLWrapException
+	 */
+	private Range transform(int last) throws XLWrapException {
+		Range r = base.copy();
+		for (int i = 0; i <= last; i++)
+			r = stages[i].transform(r, AnyRange.INSTANCE);
+		return r;
+	}
+
+	@Override
+	public Range getAbsoluteRange(ExecutionContext context) throws XLWrapException {
+		return resolve().getAbsoluteRange(context);
+	}
+
+	@Override
+	public CellIterator getCellIterator(ExecutionContext context) throws XLWrapException {
+		return resolve().getCellIterator(context);
+	}
+
+	// transformation helpers, operate on a copy of the resolved range
+	
+	@Override
+	public Range shiftRows(int n, Range restrict, ExecutionContext context) throws IndexOutOfBoundsException, XLWrapException {
+		return resolve().copy().shiftRows(n, restrict, context);
+	}
+
+	@Override
+	public Range shiftCols(int n, Range restrict, ExecutionContext context) throws IndexOutOfBoundsException, XLWrapException {
+		return resolve().copy().shiftCols(n, restrict, context);
+	}
+
+	@Override
+	public Range shiftSheets(int n, Range restrict, ExecutionContext context) throws XLWrapException {
+		return resolve().copy().shiftSheets(n, restrict, context);
+	}
+
+	@Override
+	public Range changeFileName(String fileName, Range restrict, ExecutionContext context) throws XLWrapException {
+		return resolve().copy().changeFileName(fileName, restrict, context);
+	}
+
+	@Override
+	public Range changeSheetName(String sheetName, Range restrict, ExecutionContext context) throws XLWrapException {
+		return resolve().copy().changeSheetName(sheetName, restrict, context);
+	}
+
+	@Override
+	public Range changeSheetNumber(int n, Range restrict, ExecutionContext context) throws XLWrapException {
+		return resolve().copy().changeSheetNumber(n, restrict, context);
+	}
+
+	@Override
+	public boolean subsumes(Range other, ExecutionContext context) throws XLWrapException {
+		return resolve().subsumes(other, context);
+	}
+
+	@Override
+	public boolean withinSheetBounds(ExecutionContext context) {
+		try {
+			return resolve().withinSheetBounds(context);
+		} catch (XLWrapException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return a new bound range sharing the base range and the stages
+	 */
+	@Override
+	public Range copy() {
+		return new BoundRange(base, stages);
+	}
+
+	@Override
+	public String toString() {
+		try {
+			return resolve().toString();
+		} catch (XLWrapException e) {
+			return base.toString();
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import at.jku.xlwrap.common.XLWrapException;
+
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * @author dorgon
+ *
+ * collects triples of a single worker thread and forwards them in batches to a 
+ * shared target sink, access to the target is synchronized on the target sink
+ * 
+ * start() and finish() are not forwarded, they must be called for the target
+ * sink by the owner
+ * 
+ */
+public class BufferedSink implements TripleSink {
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	
+	private final TripleSink target;
+	private final int batchSize;
+	private final List<Triple> buffer;
+	
+	/**
+	 * constructor
+	 * 
+	 * @param target
+	 * @param batchSize
+	 */
+	public BufferedSink(TripleSink target, int batchSize) {
+		this.target = target;
+		this.batchSize = batchSize;
+		this.buffer = new ArrayList<Triple>(batchSize);
+	}
+
+	/**
+	 * constructor with default batch size
+	 * 
+	 * @param target
+	 */
+	public BufferedSink(TripleSink target) {
+		this(target, DEFAULT_BATCH_SIZE);
+	}
+	
+	public void start() {
+	}
+
+	public void add(Triple triple) throws XLWrapException {
+		buffer.add(triple);
+		if (buffer.size() >= batchSize)
+			flush();
+	}
+
+	/**
+	 * flush buffered triples
+	 */
+	public void finish() throws XLWrapException {
+		flush();
+	}
+	
+	/**
+	 * forward buffered triples to the target sink
+	 * 
+	 * @throws XLWrapException
+	 */
+	public void flush() throws XLWrapException {
+		if (buffer.isEmpty())
+			return;
+		
+		synchronized (target) {
+			for (Triple t : buffer)
+				target.add(t);
+		}
+		buffer.clear();
+	}
+	
+}
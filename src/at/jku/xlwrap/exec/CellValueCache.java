@@ -0,0 +1,164 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.exec;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import at.jku.xlwrap.common.Utils;
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.map.expr.val.XLExprValue;
+import at.jku.xlwrap.map.range.CellRange;
+import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
+
+/**
+ * @author dorgon
+ *
+ * iteration-scoped cache of decoded cell values (absolute cell coordinates => XLExprValue),
+ * the same cell is often referenced several times within a single template iteration
+ * 
+ * the cache is owned by a single ExecutionContext (i.e. thread), it is cleared whenever a 
+ * transformation stage changes its position or another template is activated, misses are loaded
+ * through the run-scoped {@link SheetValueCache} of the context if enabled
+ * 
+ */
+public class CellValueCache {
+	private final ExecutionContext context;
+	private final Map<Key, XLExprValue<?>> values = new HashMap<Key, XLExprValue<?>>();
+	
+	private long hits = 0;
+	private long misses = 0;
+	
+	/**
+	 * constructor
+	 * 
+	 * @param context used to load cells
+	 */
+	public CellValueCache(ExecutionContext context) {
+		this.context = context;
+	}
+	
+	/**
+	 * get the decoded value of a cell, load it if not cached
+	 * 
+	 * @param absolute cell range
+	 * @return the value, may be null for empty cells
+	 * @throws XLWrapException
+	 * @throws XLWrapEOFException
+	 */
+	public XLExprValue<?> getValue(CellRange absolute) throws XLWrapException, XLWrapEOFException {
+		Key key = new Key(absolute);
+		XLExprValue<?> value = values.get(key);
+		if (value != null || values.containsKey(key)) {
+			hits++;
+			return value;
+		}
+		
+		misses++;
+		SheetValueCache shared = context.getSheetValueCache();
+		if (shared != null)
+			value = shared.getValue(context.getSheet(absolute), absolute.getColumn(), absolute.getRow());
+		else
+			value = Utils.getXLExprValue(context.getCell(absolute));
+		values.put(key, value);
+		return value;
+	}
+	
+	/**
+	 * clear cached values (hit/miss counters are kept)
+	 */
+	public void clear() {
+		if (!values.isEmpty())
+			values.clear();
+	}
+	
+	/**
+	 * add the counters of another cache (e.g. of a forked context)
+	 * 
+	 * @param other
+	 */
+	public synchronized void addCounters(CellValueCache other) {
+		hits += other.getHits();
+		misses += other.getMisses();
+	}
+	
+	/**
+	 * @return number of values returned from the cache
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * @return number of values loaded from the sheet
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * reset hit/miss counters
+	 */
+	public synchronized void resetCounters() {
+		hits = 0;
+		misses = 0;
+	}
+	
+	/**
+	 * absolute cell coordinates
+	 */
+	private static class Key {
+		private final String fileName;
+		private final Integer sheetNum;
+		private final String sheetName;
+		private final int col;
+		private final int row;
+		private final int hash;
+		
+		public Key(CellRange absolute) {
+			this.fileName = absolute.getFileName();
+			this.sheetNum = absolute.getSheetNum();
+			this.sheetName = (sheetNum == null) ? absolute.getSheetName() : null;
+			this.col = absolute.getColumn();
+			this.row = absolute.getRow();
+			
+			int h = (fileName != null) ? fileName.hashCode() : 0;
+			h = 31 * h + ((sheetNum != null) ? sheetNum.hashCode() : (sheetName != null) ? sheetName.hashCode() : 0);
+			h = 31 * h + col;
+			h = 31 * h + row;
+			this.hash = h;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key k = (Key) obj;
+			return col == k.col && row == k.row && 
+				eq(fileName, k.fileName) && eq(sheetNum, k.sheetNum) && eq(sheetName, k.sheetName);
+		}
+		
+		private static boolean eq(Object a, Object b) {
+			return (a == null) ? b == null : a.equals(b);
+		}
+	}
+	
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.exec;
+
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * @author dorgon
+ *
+ * only counts the generated triples, useful for testing and benchmarks
+ * 
+ */
+public class CountingSink implements TripleSink {
+	private long count = 0;
+	
+	public void start() {
+		count = 0;
+	}
+
+	public void add(Triple triple) {
+		count++;
+	}
+
+	public void finish() {
+	}
+	
+	/**
+	 * @return number of triples added since start()
+	 */
+	public long getCount() {
+		return count;
+	}
+	
+}
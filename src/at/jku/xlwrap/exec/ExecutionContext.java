@@ -20,8 +20,10 @@ import java.util.Hashtable;
 import java.util.Map;
 
 import jxl.read.biff.BiffException;
+import at.jku.xlwrap.common.Constants;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.map.MapTemplate;
+import at.jku.xlwrap.map.expr.val.XLExprValue;
 import at.jku.xlwrap.map.range.CellRange;
 import at.jku.xlwrap.spreadsheet.Cell;
 import at.jku.xlwrap.spreadsheet.Sheet;
@@ -41,11 +43,18 @@ public class ExecutionContext {
 	private MapTemplate activeTemplate;
 	private Model targetModel;
 	private final NodeReplacer nodeReplacer;
+	private final CellValueCache cellValueCache;
+	private SheetValueCache sheetValueCache;
+	private final BlankNodeAllocator blankNodeAllocator;
+	private TemplateStats stats = new TemplateStats(false);
 	
 	private final Map<String, Workbook> openWorkbooks;
 	private final Map<String, Sheet> openSheetsByNumber;
 	private final Map<String, Sheet> openSheetsByName;
 	private final Map<String, Map<String, Integer>> sheetNumbers;
+	
+	/** per-file locks for opening workbooks and sheets, shared with forked contexts */
+	private final Map<String, Object> fileLocks;
 
 	// server info if running in web server
 	private String hostname = null;
@@ -71,12 +80,67 @@ public class ExecutionContext {
 	 */
 	public ExecutionContext() {
 		nodeReplacer = new NodeReplacer();
+		cellValueCache = new CellValueCache(this);
+		blankNodeAllocator = new BlankNodeAllocator();
 		targetModel = ModelFactory.createDefaultModel();
+		if (Constants.SHEET_CACHE)
+			sheetValueCache = new SheetValueCache(Integer.getInteger(Constants.SYSTEMPROPERTY_SHEET_CACHE_MB, Constants.DEFAULT_SHEET_CACHE_MB) * 1024L * 1024L);
 
 		openWorkbooks = new Hashtable<String, Workbook>();
 		openSheetsByNumber = new Hashtable<String, Sheet>();
 		openSheetsByName = new Hashtable<String, Sheet>();
 		sheetNumbers = new Hashtable<String, Map<String, Integer>>();
+		fileLocks = new Hashtable<String, Object>();
+	}
+	
+	/**
+	 * constructor for forked contexts, shares opened workbooks and sheets with the parent
+	 * 
+	 * @param parent
+	 */
+	private ExecutionContext(ExecutionContext parent) {
+		nodeReplacer = new NodeReplacer();
+		cellValueCache = new CellValueCache(this);
+		blankNodeAllocator = new BlankNodeAllocator();
+		targetModel = ModelFactory.createDefaultModel();
+		
+		openWorkbooks = parent.openWorkbooks;
+		openSheetsByNumber = parent.openSheetsByNumber;
+		openSheetsByName = parent.openSheetsByName;
+		sheetNumbers = parent.sheetNumbers;
+		fileLocks = parent.fileLocks;
+		sheetValueCache = parent.sheetValueCache;
+		
+		hostname = parent.hostname;
+		port = parent.port;
+		pubbyPathPrefix = parent.pubbyPathPrefix;
+	}
+	
+	/**
+	 * create a new context for another thread, which has its own active template, target model,
+	 * node replacer, cell value cache, and blank node allocator, but shares opened workbooks and sheets (read-only) 
+	 * as well as the sheet value cache with this context,
+	 * destroy() must only be called for the original context
+	 * 
+	 * @return forked context
+	 */
+	public ExecutionContext fork() {
+		return new ExecutionContext(this);
+	}
+	
+	/**
+	 * @param fileName
+	 * @return lock object for opening the file
+	 */
+	private Object getFileLock(String fileName) {
+		synchronized (fileLocks) {
+			Object lock = fileLocks.get(fileName);
+			if (lock == null) {
+				lock = new Object();
+				fileLocks.put(fileName, lock);
+			}
+			return lock;
+		}
 	}
 
 	/**
@@ -85,6 +149,7 @@ public class ExecutionContext {
 	 */
 	public void setActiveTemplate(MapTemplate currentTemplate) {
 		this.activeTemplate = currentTemplate;
+		cellValueCache.clear();
 	}
 	
 	/**
@@ -95,7 +160,7 @@ public class ExecutionContext {
 	}
 
 	/**
-	 * @param targetModel the targetModel to set
+	 * @param targetModel the model used to create result nodes, may receive additional triples (e.g. for lists)
 	 */
 	public void setTargetModel(Model targetModel) {
 		this.targetModel = targetModel;
@@ -132,11 +197,16 @@ public class ExecutionContext {
 			String key = getKey(fileName, sheetName);
 			Sheet s = openSheetsByName.get(key);
 			if (s == null) {
-				s = getWorkbook(fileName).getSheet(sheetName);
-				if (s == null)
-					throw new XLWrapException("Sheet '" + sheetName + "' does not exist in '" + fileName + "'.");
-
-				openSheetsByNumber.put(key, s);
+				synchronized (getFileLock(fileName)) {
+					s = openSheetsByName.get(key);
+					if (s == null) {
+						s = getWorkbook(fileName).getSheet(sheetName);
+						if (s == null)
+							throw new XLWrapException("Sheet '" + sheetName + "' does not exist in '" + fileName + "'.");
+		
+						openSheetsByName.put(key, s);
+					}
+				}
 			}
 			return s;
 		}
@@ -157,13 +227,18 @@ public class ExecutionContext {
 		String key = getKey(fileName, sheetNum);
 		Sheet s = openSheetsByNumber.get(key);
 		if (s == null) {
-			try {
-				s = getWorkbook(fileName).getSheet(sheetNum);
-			} catch (ArrayIndexOutOfBoundsException e) {
-				throw new XLWrapException("Sheet #" + (sheetNum+1) + " does not exist in '" + fileName + "'.", e);
+			synchronized (getFileLock(fileName)) {
+				s = openSheetsByNumber.get(key);
+				if (s == null) {
+					try {
+						s = getWorkbook(fileName).getSheet(sheetNum);
+					} catch (ArrayIndexOutOfBoundsException e) {
+						throw new XLWrapException("Sheet #" + (sheetNum+1) + " does not exist in '" + fileName + "'.", e);
+					}
+		
+					openSheetsByNumber.put(key, s);
+				}
 			}
-
-			openSheetsByNumber.put(key, s);
 		}
 		return s;
 	}
@@ -213,11 +288,16 @@ public class ExecutionContext {
 	public Workbook getWorkbook(String fileName) throws XLWrapException {
 		Workbook wb = openWorkbooks.get(fileName);
 		if (wb == null) {
-			try {
-				wb = WorkbookFactory.getWorkbook(fileName);
-				openWorkbooks.put(fileName, wb);
-			} catch (XLWrapException e) {
-				throw new XLWrapException("Failed to open workbook: " + fileName + ".", e);
+			synchronized (getFileLock(fileName)) {
+				wb = openWorkbooks.get(fileName);
+				if (wb == null) {
+					try {
+						wb = WorkbookFactory.getWorkbook(fileName);
+						openWorkbooks.put(fileName, wb);
+					} catch (XLWrapException e) {
+						throw new XLWrapException("Failed to open workbook: " + fileName + ".", e);
+					}
+				}
 			}
 		}
 		return wb;
@@ -245,6 +325,16 @@ public class ExecutionContext {
 		return getSheet(absolute).getCell(absolute.getColumn(), absolute.getRow());
 	}
 
+	/**
+	 * @param absolute cell range
+	 * @return the decoded value of the cell for the absolute cell range, cached for the current iteration
+	 * @throws XLWrapException
+	 * @throws XLWrapEOFException
+	 */
+	public XLExprValue<?> getCellValue(CellRange absolute) throws XLWrapException, XLWrapEOFException {
+		return cellValueCache.getValue(absolute);
+	}
+
 	/**
 	 * @param fileName
 	 * @param sheetPointer
@@ -262,6 +352,8 @@ public class ExecutionContext {
 	 * destroy the context and close all opened workbooks
 	 */
 	public void destroy() {
+		if (sheetValueCache != null)
+			sheetValueCache.clear();
 		for (Workbook wb : openWorkbooks.values())
 			wb.close();
 	}
@@ -273,6 +365,48 @@ public class ExecutionContext {
 		return nodeReplacer;
 	}
 
+	/**
+	 * @return the cell value cache of this context
+	 */
+	public CellValueCache getCellValueCache() {
+		return cellValueCache;
+	}
+
+	/**
+	 * @return the run-scoped cache of decoded values shared with forked contexts, null if disabled
+	 */
+	public SheetValueCache getSheetValueCache() {
+		return sheetValueCache;
+	}
+	
+	/**
+	 * @param sheetValueCache run-scoped cache of decoded values, null to disable, must be set before forking
+	 */
+	public void setSheetValueCache(SheetValueCache sheetValueCache) {
+		this.sheetValueCache = sheetValueCache;
+	}
+
+	/**
+	 * @param stats statistics of the active template collected by this context
+	 */
+	public void setStats(TemplateStats stats) {
+		this.stats = stats;
+	}
+	
+	/**
+	 * @return statistics of the active template collected by this context
+	 */
+	public TemplateStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * @return the blank node allocator of this context
+	 */
+	public BlankNodeAllocator getBlankNodeAllocator() {
+		return blankNodeAllocator;
+	}
+
 	/**
 	 * @return the hostname
 	 */
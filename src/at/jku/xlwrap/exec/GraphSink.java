@@ -0,0 +1,56 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.exec;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * @author dorgon
+ *
+ * adds triples to a Jena graph
+ * 
+ */
+public class GraphSink implements TripleSink {
+	private final Graph graph;
+	
+	/**
+	 * constructor
+	 * 
+	 * @param graph target graph
+	 */
+	public GraphSink(Graph graph) {
+		this.graph = graph;
+	}
+	
+	public void start() {
+	}
+
+	public void add(Triple triple) {
+		graph.add(triple);
+	}
+
+	public void finish() {
+	}
+	
+	/**
+	 * @return the target graph
+	 */
+	public Graph getGraph() {
+		return graph;
+	}
+	
+}
@@ -0,0 +1,270 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.exec;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.jku.xlwrap.common.Constants;
+
+/**
+ * @author dorgon
+ *
+ * statistics of an XLWrapMaterializer per map template, can be registered as a JMX MBean
+ * 
+ */
+public class MaterializationStats implements MaterializationStatsMBean {
+	private static final Logger log = LoggerFactory.getLogger(MaterializationStats.class);
+	
+	public static final String MBEAN_NAME = "at.jku.xlwrap:type=MaterializationStats";
+	
+	private final Map<String, TemplateStats> templates = new LinkedHashMap<String, TemplateStats>();
+	private long runs = 0;
+	private long lastRunMillis = 0;
+	private volatile boolean expressionTiming = Boolean.getBoolean(Constants.SYSTEMPROPERTY_EXPRESSION_TIMING);
+	private volatile SheetValueCache sheetValueCache = null;
+	
+	/**
+	 * register as MBean at the platform MBean server, replacing a previously registered instance
+	 * 
+	 * @param name object name, e.g. MBEAN_NAME
+	 * @return true if registered
+	 */
+	public boolean register(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName on = new ObjectName(name);
+			if (server.isRegistered(on))
+				server.unregisterMBean(on);
+			server.registerMBean(this, on);
+			return true;
+		} catch (Exception e) {
+			log.warn("Failed to register materialization statistics as MBean " + name + ".", e);
+			return false;
+		}
+	}
+	
+	/**
+	 * @return new statistics for a template (or a chunk of it) processed by a single thread
+	 */
+	public TemplateStats createTemplateStats() {
+		return new TemplateStats(expressionTiming);
+	}
+	
+	/**
+	 * add statistics collected for a template
+	 * 
+	 * @param template key of the template
+	 * @param stats
+	 */
+	public synchronized void add(String template, TemplateStats stats) {
+		TemplateStats t = templates.get(template);
+		if (t == null) {
+			t = new TemplateStats(true);
+			templates.put(template, t);
+		}
+		t.add(stats);
+	}
+	
+	/**
+	 * @param sheetValueCache cache of the materializer reporting its counters, may be null
+	 */
+	public void setSheetValueCache(SheetValueCache sheetValueCache) {
+		this.sheetValueCache = sheetValueCache;
+	}
+	
+	/**
+	 * @param millis duration of a finished run
+	 */
+	public synchronized void runFinished(long millis) {
+		runs++;
+		lastRunMillis = millis;
+	}
+	
+	/**
+	 * @param template
+	 * @return a copy of the statistics of a template or null
+	 */
+	public synchronized TemplateStats getTemplateStats(String template) {
+		TemplateStats t = templates.get(template);
+		if (t == null)
+			return null;
+		TemplateStats copy = new TemplateStats(true);
+		copy.add(t);
+		return copy;
+	}
+	
+	public synchronized long getRuns() {
+		return runs;
+	}
+	
+	public synchronized long getLastRunMillis() {
+		return lastRunMillis;
+	}
+	
+	public synchronized long getIterations() {
+		long n = 0;
+		for (TemplateStats t : templates.values())
+			n += t.iterations;
+		return n;
+	}
+	
+	public synchronized long getTriples() {
+		long n = 0;
+		for (TemplateStats t : templates.values())
+			n += t.triples;
+		return n;
+	}
+	
+	public synchronized long getSkippedTriples() {
+		long n = 0;
+		for (TemplateStats t : templates.values())
+			n += t.skippedTriples;
+		return n;
+	}
+	
+	public synchronized long getEofSkippedTriples() {
+		long n = 0;
+		for (TemplateStats t : templates.values())
+			n += t.eofSkippedTriples;
+		return n;
+	}
+	
+	public synchronized long getConditionEvaluations() {
+		long n = 0;
+		for (TemplateStats t : templates.values())
+			n += t.breakEvaluations + t.skipEvaluations;
+		return n;
+	}
+	
+	public long getSheetCacheHits() {
+		SheetValueCache c = sheetValueCache;
+		return (c != null) ? c.getHits() : 0;
+	}
+	
+	public long getSheetCacheMisses() {
+		SheetValueCache c = sheetValueCache;
+		return (c != null) ? c.getMisses() : 0;
+	}
+	
+	public double getSheetCacheHitRate() {
+		SheetValueCache c = sheetValueCache;
+		return (c != null) ? c.getHitRate() : 0;
+	}
+	
+	public long getSheetCacheBytes() {
+		SheetValueCache c = sheetValueCache;
+		return (c != null) ? c.getUsedBytes() : 0;
+	}
+	
+	public synchronized String[] getTemplateSummaries() {
+		List<String> list = new ArrayList<String>();
+		for (Map.Entry<String, TemplateStats> e : templates.entrySet()) {
+			TemplateStats t = e.getValue();
+			list.add(e.getKey() + ": " + t.iterations + " iterations, " + t.triples + " triples, " + 
+					t.skippedTriples + " skipped, " + t.eofSkippedTriples + " EOF-skipped, " + (t.time / 1000000) + " ms");
+		}
+		return list.toArray(new String[list.size()]);
+	}
+	
+	public String getJSON() {
+		try {
+			return toJSON().toString(2);
+		} catch (JSONException e) {
+			return "{}";
+		}
+	}
+	
+	/**
+	 * @return all statistics as a JSON object
+	 * @throws JSONException
+	 */
+	public synchronized JSONObject toJSON() throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("runs", runs);
+		json.put("lastRunMillis", lastRunMillis);
+		json.put("expressionTiming", expressionTiming);
+		
+		SheetValueCache c = sheetValueCache;
+		if (c != null) {
+			JSONObject cache = new JSONObject();
+			cache.put("hits", c.getHits());
+			cache.put("misses", c.getMisses());
+			cache.put("hitRate", c.getHitRate());
+			cache.put("usedBytes", c.getUsedBytes());
+			cache.put("maxBytes", c.getMaxBytes());
+			json.put("sheetCache", cache);
+		}
+		
+		JSONArray list = new JSONArray();
+		for (Map.Entry<String, TemplateStats> e : templates.entrySet()) {
+			TemplateStats t = e.getValue();
+			JSONObject o = new JSONObject();
+			o.put("template", e.getKey());
+			o.put("millis", t.time / 1000000);
+			o.put("iterations", t.iterations);
+			o.put("triples", t.triples);
+			o.put("skippedTriples", t.skippedTriples);
+			o.put("eofSkippedTriples", t.eofSkippedTriples);
+			o.put("deletedNodes", t.deletedNodes);
+			o.put("breakEvaluations", t.breakEvaluations);
+			o.put("skipEvaluations", t.skipEvaluations);
+			
+			JSONArray exprs = new JSONArray();
+			for (Map.Entry<String, long[]> x : t.getExpressionTimes().entrySet()) {
+				JSONObject eo = new JSONObject();
+				eo.put("expr", x.getKey());
+				eo.put("micros", x.getValue()[0] / 1000);
+				eo.put("evaluations", x.getValue()[1]);
+				exprs.put(eo);
+			}
+			o.put("expressions", exprs);
+			list.put(o);
+		}
+		json.put("templates", list);
+		return json;
+	}
+	
+	public boolean isExpressionTiming() {
+		return expressionTiming;
+	}
+	
+	public void setExpressionTiming(boolean expressionTiming) {
+		this.expressionTiming = expressionTiming;
+	}
+	
+	public synchronized void reset() {
+		templates.clear();
+		runs = 0;
+		lastRunMillis = 0;
+		SheetValueCache c = sheetValueCache;
+		if (c != null)
+			c.resetCounters();
+	}
+	
+}
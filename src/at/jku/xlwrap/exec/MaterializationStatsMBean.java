@@ -0,0 +1,74 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.exec;
+
+/**
+ * @author dorgon
+ *
+ * JMX management interface of MaterializationStats
+ * 
+ */
+public interface MaterializationStatsMBean {
+	
+	/** @return number of generate() runs */
+	public long getRuns();
+	
+	/** @return duration of the last run in ms */
+	public long getLastRunMillis();
+	
+	/** @return total number of iterations over all templates */
+	public long getIterations();
+	
+	/** @return total number of triples emitted */
+	public long getTriples();
+	
+	/** @return total number of statements skipped because a node was null or deleted */
+	public long getSkippedTriples();
+	
+	/** @return total number of statements skipped because the end of a file was reached */
+	public long getEofSkippedTriples();
+	
+	/** @return total number of break and skip condition evaluations */
+	public long getConditionEvaluations();
+	
+	/** @return number of cell values returned from the sheet value cache */
+	public long getSheetCacheHits();
+	
+	/** @return number of cell values decoded from sheets by the sheet value cache */
+	public long getSheetCacheMisses();
+	
+	/** @return hit rate of the sheet value cache, 0 if disabled */
+	public double getSheetCacheHitRate();
+	
+	/** @return approximate memory used by the sheet value cache */
+	public long getSheetCacheBytes();
+	
+	/** @return one summary line per template */
+	public String[] getTemplateSummaries();
+	
+	/** @return all statistics as a JSON document */
+	public String getJSON();
+	
+	/** @return true if evaluation time of expressions is measured */
+	public boolean isExpressionTiming();
+	
+	/** @param expressionTiming enable or disable measuring evaluation time of expressions */
+	public void setExpressionTiming(boolean expressionTiming);
+	
+	/** reset all statistics */
+	public void reset();
+	
+}
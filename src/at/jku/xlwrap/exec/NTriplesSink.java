@@ -0,0 +1,158 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.exec;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+
+import at.jku.xlwrap.common.XLWrapException;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * @author dorgon
+ *
+ * writes triples as N-Triples, line by line, without keeping them in memory
+ * 
+ */
+public class NTriplesSink implements TripleSink {
+	private final Writer out;
+	
+	/**
+	 * constructor
+	 * 
+	 * @param out
+	 * @throws XLWrapException
+	 */
+	public NTriplesSink(OutputStream out) throws XLWrapException {
+		try {
+			this.out = new BufferedWriter(new OutputStreamWriter(out, "ASCII"), 65536);
+		} catch (UnsupportedEncodingException e) {
+			throw new XLWrapException("Failed to create N-Triples writer.", e);
+		}
+	}
+	
+	/**
+	 * constructor
+	 * 
+	 * @param out
+	 */
+	public NTriplesSink(Writer out) {
+		this.out = (out instanceof BufferedWriter) ? out : new BufferedWriter(out, 65536);
+	}
+	
+	public void start() {
+	}
+
+	public void add(Triple triple) throws XLWrapException {
+		try {
+			writeNode(triple.getSubject());
+			out.write(' ');
+			writeNode(triple.getPredicate());
+			out.write(' ');
+			writeNode(triple.getObject());
+			out.write(" .\n");
+		} catch (IOException e) {
+			throw new XLWrapException("Failed to write triple: " + triple + ".", e);
+		}
+	}
+
+	public void finish() throws XLWrapException {
+		try {
+			out.flush();
+		} catch (IOException e) {
+			throw new XLWrapException("Failed to flush N-Triples output.", e);
+		}
+	}
+	
+	private void writeNode(Node n) throws IOException {
+		if (n.isURI()) {
+			out.write('<');
+			writeEscaped(n.getURI());
+			out.write('>');
+		} else if (n.isBlank()) {
+			out.write("_:");
+			writeBlankLabel(n.getBlankNodeLabel());
+		} else if (n.isLiteral()) {
+			out.write('"');
+			writeEscaped(n.getLiteralLexicalForm());
+			out.write('"');
+			String lang = n.getLiteralLanguage();
+			String dt = n.getLiteralDatatypeURI();
+			if (lang != null && lang.length() > 0) {
+				out.write('@');
+				out.write(lang);
+			} else if (dt != null) {
+				out.write("^^<");
+				writeEscaped(dt);
+				out.write('>');
+			}
+		} else
+			throw new IOException("Cannot write node: " + n);
+	}
+
+	/**
+	 * N-Triples only allows [A-Za-z][A-Za-z0-9]* as blank node labels, 
+	 * other characters are hex-encoded (as done by Jena's NTripleWriter)
+	 */
+	private void writeBlankLabel(String label) throws IOException {
+		out.write('A');
+		for (int i = 0; i < label.length(); i++) {
+			char c = label.charAt(i);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))
+				out.write(c);
+			else {
+				out.write('X');
+				out.write(Integer.toHexString(c));
+				out.write('X');
+			}
+		}
+	}
+	
+	private void writeEscaped(String s) throws IOException {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '\\': out.write("\\\\"); break;
+			case '"': out.write("\\\""); break;
+			case '\n': out.write("\\n"); break;
+			case '\r': out.write("\\r"); break;
+			case '\t': out.write("\\t"); break;
+			default:
+				if (c >= 32 && c < 127)
+					out.write(c);
+				else if (Character.isHighSurrogate(c) && i+1 < s.length() && Character.isLowSurrogate(s.charAt(i+1))) {
+					writeUnicode("\\U", Character.toCodePoint(c, s.charAt(++i)), 8);
+				} else
+					writeUnicode("\\u", c, 4);
+			}
+		}
+	}
+
+	private void writeUnicode(String prefix, int cp, int digits) throws IOException {
+		String hex = Integer.toHexString(cp).toUpperCase();
+		out.write(prefix);
+		for (int i = hex.length(); i < digits; i++)
+			out.write('0');
+		out.write(hex);
+	}
+	
+}
@@ -15,149 +15,108 @@
  */
 package at.jku.xlwrap.exec;
 
-import java.util.HashSet;
-import java.util.Hashtable;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import at.jku.xlwrap.common.Utils;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.map.expr.TypeCast;
 import at.jku.xlwrap.map.expr.XLExpr;
 import at.jku.xlwrap.map.expr.val.E_List;
 import at.jku.xlwrap.map.expr.val.XLExprValue;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
-import at.jku.xlwrap.vocab.XLWrap;
 
-import com.hp.hpl.jena.datatypes.DatatypeFormatException;
-import com.hp.hpl.jena.rdf.model.AnonId;
-import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
-import com.hp.hpl.jena.rdf.model.Statement;
-import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.graph.Node;
 
 
 /**
  * URI/Bnode replacer, replaces blank nodes in templates with concrete URIs if a valid xl:uri specification exists
  * furthermore, for blank nodes which are annotated with a xl:id, it maintains equal anonymous IDs 
  * 
+ * works on the slots of a compiled TemplatePlan and is reset for each iteration
+ * 
  * @author dorgon
  */
 public class NodeReplacer {
 	private static final Logger log = LoggerFactory.getLogger(NodeReplacer.class);
-	private final Map<Resource, Resource> replacedBnodes; // one global
-	private final Set<Resource> deletedResources = new HashSet<Resource>();
-	private Map<Resource, Resource> replacedURIs; // new one each time a template model is applied
-		
-	/**
-	 * create a new node replacer
-	 * creates URIs and equal bnode labels for equal IDs 
-	 */
-	public NodeReplacer() {
-		replacedBnodes = new Hashtable<Resource, Resource>();
-	}
+	private Node[] replacedBnodes = new Node[0]; // by xl:id
+	private Node[] replacedURIs = new Node[0]; // by xl:uri
+	private boolean[] deleted = new boolean[0];
 	
 	/**
-	 * scan statements of the form (?s xl:uri ?o) and (?s xl:id ?o) where ?o can be an xl:Expr literal
-	 * creates internal nodes for future replacing, does not modify tmplModel
+	 * evaluate the xl:uri and xl:id declarations of a plan
+	 * creates internal nodes for future replacing
 	 * 
-	 * @param tmplModel the model to scan
+	 * @param plan the compiled template
+	 * @param exprs the expression vector of the current iteration
 	 * @param context the execution context for xl:Expr evaluation
 	 * @throws XLWrapException
 	 * @throws XLWrapEOFException
 	 */
-	public void scanXLWrapBNodes(Model tmplModel, ExecutionContext context) throws XLWrapException, XLWrapEOFException {
-		replacedURIs = new Hashtable<Resource, Resource>(); // new one for URI replacements
-
-		StmtIterator it = tmplModel.listStatements();
-		Statement s;
-		Resource p;
+	public void scan(TemplatePlan plan, XLExpr[] exprs, ExecutionContext context) throws XLWrapException, XLWrapEOFException {
+		int slots = plan.getSlotCount();
+		if (deleted.length < slots) {
+			replacedBnodes = new Node[slots];
+			replacedURIs = new Node[slots];
+			deleted = new boolean[slots];
+		} else {
+			Arrays.fill(replacedBnodes, 0, slots, null);
+			Arrays.fill(replacedURIs, 0, slots, null);
+			Arrays.fill(deleted, 0, slots, false);
+		}
 		
-		while (it.hasNext()) {
-			s = it.next();
-			p = s.getPredicate();
-			
-			if (p.isURIResource() && (p.getURI().equals(XLWrap.uri.getURI()) || p.getURI().equals(XLWrap.id.getURI()))) {
-				XLExpr expr = null;
-				try {
-					expr = Utils.getExpression(s.getObject().asNode());
-				} catch (DatatypeFormatException e) {
-					log.warn("Ignoring invalid xl:Expr for " + p.getURI() + ": '" + s.getObject() + "'.", e);
-					deletedResources.add(s.getSubject());
-					continue;
-				}
-				
-				if (expr == null) {
-					log.warn("Ignoring invalid xl:Expr for " + p.getURI() + ": '" + s.getObject() + "', object must be a literal with xl:Expr datatype.");
-					deletedResources.add(s.getSubject());
-					continue;
-				}
-
-				if (s.getSubject().isURIResource())
-					log.warn("Overriding URI of " + s.getSubject().getURI() + " with " + expr + " specified by " + p.getURI() + "!");
-
-				XLExprValue<?> ev = expr.eval(context);
-				if (ev == null) {
-					if (log.isDebugEnabled())
-						log.debug("Ignoring xl:Expr for xl:uri or xl:id because it evaluated to null: " + expr + ".");
-					deletedResources.add(s.getSubject());
-                } else if (ev instanceof E_List) {
-                    for (XLExprValue<?> value : ((E_List) ev).getValue()) {
-                        String val = TypeCast.toString(value);
-
-                        // replace URIs now
-                        if (p.getURI().equals(XLWrap.uri.getURI())) {
-                            replacedURIs.put(s.getSubject(),
-                                tmplModel.createResource(val));
-
-                        } else if (p.getURI().equals(XLWrap.id.getURI()))
-                            replacedBnodes.put(
-                                s.getSubject(),
-                                tmplModel.createResource(AnonId.create("id_"
-                                        + val)));
-                    }
-                } else {
-					String val = TypeCast.toString(ev);
-
-					// replace URIs now
-					if (p.getURI().equals(XLWrap.uri.getURI())) {
-						replacedURIs.put(s.getSubject(), tmplModel.createResource(val));
-						
-					} else if (p.getURI().equals(XLWrap.id.getURI()))
-						replacedBnodes.put(s.getSubject(), tmplModel.createResource(AnonId.create("id_" + val)));
-				}
+		for (int i = 0; i < plan.getDeclarationCount(); i++) {
+			int subject = plan.getDeclarationSubject(i);
+			int exprIdx = plan.getDeclarationExprIndex(i);
+			if (exprIdx < 0) { // invalid, warned when compiled
+				deleted[subject] = true;
+				continue;
 			}
-		}		
-		it.close();
+			
+			XLExprValue<?> ev = plan.eval(exprIdx, exprs, context);
+			if (ev == null) {
+				if (log.isDebugEnabled())
+					log.debug("Ignoring xl:Expr for xl:uri or xl:id because it evaluated to null: " + plan.getExpressionLabel(exprIdx) + ".");
+				deleted[subject] = true;
+				context.getStats().deletedNodes++;
+			} else if (ev instanceof E_List) {
+				for (XLExprValue<?> value : ((E_List) ev).getValue())
+					replace(subject, TypeCast.toString(value), plan.isURIDeclaration(i), context);
+			} else
+				replace(subject, TypeCast.toString(ev), plan.isURIDeclaration(i), context);
+		}
+	}
+	
+	private void replace(int slot, String val, boolean uri, ExecutionContext context) {
+		if (uri)
+			replacedURIs[slot] = Node.createURI(val);
+		else
+			replacedBnodes[slot] = context.getBlankNodeAllocator().forId(val);
 	}
 	
 	/**
-	 * replace orig by cached node or return orig
-	 * @param orig
-	 * @return replaced node or orig
+	 * get replacement of a blank node slot
+	 * 
+	 * @param slot
+	 * @return replaced node or null
 	 */
-	public Resource replace(Resource orig) {
-		Resource r = replacedBnodes.get(orig);
-		if (r == null)
-			r = replacedURIs.get(orig);
+	public Node replace(int slot) {
+		Node r = replacedBnodes[slot];
 		if (r == null)
-			return orig;
+			r = replacedURIs[slot];
 		
-		if (log.isTraceEnabled())
-			log.trace("NodeReplacer: replacing " + orig.toString() + " with " + r.toString());
+		if (r != null && log.isTraceEnabled())
+			log.trace("NodeReplacer: replacing slot " + slot + " with " + r.toString());
 		return r;
 	}
 	
 	/**
-	 * Returns true if the resource had an attached xl:Expr that evaluated to null
-	 * @param r a node (usually blank)
+	 * Returns true if the slot had an attached xl:Expr that evaluated to null
+	 * @param slot
 	 * @return true if it is deleted
 	 */
-	public boolean isDeleted(RDFNode r) {
-		return deletedResources.contains(r);
+	public boolean isDeleted(int slot) {
+		return deleted[slot];
 	}
 }
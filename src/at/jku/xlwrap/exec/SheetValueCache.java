@@ -0,0 +1,340 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.exec;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import at.jku.xlwrap.common.Utils;
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.map.expr.val.E_Boolean;
+import at.jku.xlwrap.map.expr.val.E_Date;
+import at.jku.xlwrap.map.expr.val.E_Double;
+import at.jku.xlwrap.map.expr.val.E_Long;
+import at.jku.xlwrap.map.expr.val.E_String;
+import at.jku.xlwrap.map.expr.val.XLExprValue;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
+import at.jku.xlwrap.spreadsheet.Sheet;
+import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
+
+/**
+ * @author dorgon
+ *
+ * run-scoped cache of decoded cell values per sheet, shared by all templates (and forked contexts) of a
+ * mapping run, in contrast to the iteration-scoped {@link CellValueCache}
+ * 
+ * values are stored in pages of PAGE_ROWS x PAGE_COLS cells holding a type tag (byte) and a 
+ * primitive (long, doubles as raw bits, dates as millis, text as index into a per-sheet string dictionary),
+ * pages are filled cell by cell on first access via {@link Sheet#readCell(int, int, CellValueHolder)}
+ * 
+ * the approximate memory used by pages and strings is limited by maxBytes, if exhausted cells are decoded 
+ * from the sheet without being cached
+ * 
+ */
+public class SheetValueCache {
+	private static final int PAGE_ROW_SHIFT = 5;
+	private static final int PAGE_COL_SHIFT = 3;
+	private static final int PAGE_ROWS = 1 << PAGE_ROW_SHIFT;
+	private static final int PAGE_COLS = 1 << PAGE_COL_SHIFT;
+	private static final int PAGE_CELLS = PAGE_ROWS * PAGE_COLS;
+	
+	/** approximate size of a page: tags, values, array and object headers */
+	private static final long PAGE_BYTES = PAGE_CELLS * 9 + 3 * 16;
+	
+	/** approximate size of a string in the dictionary without its characters */
+	private static final long STRING_BYTES = 40 + 48;
+	
+	// type tags, 0 = not loaded
+	private static final byte T_NULL = 1;
+	private static final byte T_LONG = 2;
+	private static final byte T_DOUBLE = 3;
+	private static final byte T_TEXT = 4;
+	private static final byte T_DATE = 5;
+	private static final byte T_TRUE = 6;
+	private static final byte T_FALSE = 7;
+	
+	private final long maxBytes;
+	private final AtomicLong usedBytes = new AtomicLong();
+	private final Map<Sheet, Table> tables = new IdentityHashMap<Sheet, Table>();
+	
+	/** counters of tables dropped by clear() */
+	private long droppedHits = 0;
+	private long droppedMisses = 0;
+	
+	/**
+	 * constructor
+	 * 
+	 * @param maxBytes approximate memory limit for cached values
+	 */
+	public SheetValueCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * get the decoded value of a cell, load it if not cached
+	 * 
+	 * @param sheet
+	 * @param col
+	 * @param row
+	 * @return the same value as Utils.getXLExprValue(sheet.getCell(col, row)), may be null for empty cells
+	 * @throws XLWrapException
+	 * @throws XLWrapEOFException
+	 */
+	public XLExprValue<?> getValue(Sheet sheet, int col, int row) throws XLWrapException, XLWrapEOFException {
+		return getTable(sheet).getValue(col, row);
+	}
+	
+	private synchronized Table getTable(Sheet sheet) {
+		Table t = tables.get(sheet);
+		if (t == null) {
+			t = new Table(sheet);
+			tables.put(sheet, t);
+		}
+		return t;
+	}
+	
+	/**
+	 * reserve memory for a new page or string
+	 * 
+	 * @param bytes
+	 * @return false if the limit would be exceeded
+	 */
+	private boolean reserve(long bytes) {
+		while (true) {
+			long used = usedBytes.get();
+			if (used + bytes > maxBytes)
+				return false;
+			if (usedBytes.compareAndSet(used, used + bytes))
+				return true;
+		}
+	}
+	
+	/**
+	 * drop all cached values (counters are kept)
+	 */
+	public synchronized void clear() {
+		for (Table t : tables.values())
+			t.clear();
+		tables.clear();
+		usedBytes.set(0);
+	}
+	
+	/**
+	 * @return number of values returned from the cache
+	 */
+	public synchronized long getHits() {
+		long n = 0;
+		for (Table t : tables.values())
+			n += t.getHits();
+		return n + droppedHits;
+	}
+	
+	/**
+	 * @return number of values loaded from the sheets
+	 */
+	public synchronized long getMisses() {
+		long n = 0;
+		for (Table t : tables.values())
+			n += t.getMisses();
+		return n + droppedMisses;
+	}
+	
+	/**
+	 * @return hits / (hits + misses), 0 if no value was requested
+	 */
+	public synchronized double getHitRate() {
+		long hits = getHits();
+		long total = hits + getMisses();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+	
+	/**
+	 * @return approximate memory used by cached values
+	 */
+	public long getUsedBytes() {
+		return usedBytes.get();
+	}
+	
+	/**
+	 * @return approximate memory limit for cached values
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+	
+	/**
+	 * reset hit/miss counters
+	 */
+	public synchronized void resetCounters() {
+		for (Table t : tables.values())
+			t.resetCounters();
+		droppedHits = 0;
+		droppedMisses = 0;
+	}
+	
+	/**
+	 * cached values of a single sheet, guarded by its own lock
+	 */
+	private class Table {
+		private final Sheet sheet;
+		private final CellValueHolder holder = new CellValueHolder();
+		
+		/** pages by row block and column block */
+		private Page[][] pages = new Page[16][];
+		
+		private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+		private final List<String> strings = new ArrayList<String>();
+		
+		private long hits = 0;
+		private long misses = 0;
+		
+		public Table(Sheet sheet) {
+			this.sheet = sheet;
+		}
+		
+		public synchronized XLExprValue<?> getValue(int col, int row) throws XLWrapException, XLWrapEOFException {
+			Page page = (col >= 0 && row >= 0) ? getPage(col, row) : null;
+			int i = ((row & (PAGE_ROWS - 1)) << PAGE_COL_SHIFT) | (col & (PAGE_COLS - 1));
+			if (page != null && page.tags[i] != 0) {
+				hits++;
+				return toValue(page.tags[i], page.values[i]);
+			}
+			
+			misses++;
+			sheet.readCell(col, row, holder);
+			if (page == null)
+				return Utils.getXLExprValue(holder);
+			
+			byte tag;
+			long value = 0;
+			switch (holder.getType()) {
+			case NUMBER:
+				double d = holder.getNumber();
+				if ((long) d == d) {
+					tag = T_LONG;
+					value = (long) d;
+				} else {
+					tag = T_DOUBLE;
+					value = Double.doubleToRawLongBits(d);
+				}
+				break;
+			case TEXT:
+				String s = holder.getString();
+				Integer id = dictionary.get(s);
+				if (id == null) {
+					if (!reserve(STRING_BYTES + 2 * s.length()))
+						return new E_String(s);
+					id = strings.size();
+					strings.add(s);
+					dictionary.put(s, id);
+				}
+				tag = T_TEXT;
+				value = id;
+				break;
+			case DATE:
+				tag = T_DATE;
+				value = holder.getDate();
+				break;
+			case BOOLEAN:
+				tag = holder.getBoolean() ? T_TRUE : T_FALSE;
+				break;
+			default:
+				tag = T_NULL;
+			}
+			page.tags[i] = tag;
+			page.values[i] = value;
+			return toValue(tag, value);
+		}
+		
+		/**
+		 * @return the page of the cell, created if missing and within the memory limit, otherwise null
+		 */
+		private Page getPage(int col, int row) {
+			int r = row >>> PAGE_ROW_SHIFT;
+			int c = col >>> PAGE_COL_SHIFT;
+			if (r >= pages.length) {
+				Page[][] grown = new Page[Math.max(r + 1, pages.length * 2)][];
+				System.arraycopy(pages, 0, grown, 0, pages.length);
+				pages = grown;
+			}
+			Page[] cols = pages[r];
+			if (cols == null || c >= cols.length) {
+				Page[] grown = new Page[c + 1];
+				if (cols != null)
+					System.arraycopy(cols, 0, grown, 0, cols.length);
+				pages[r] = cols = grown;
+			}
+			Page p = cols[c];
+			if (p == null && reserve(PAGE_BYTES))
+				cols[c] = p = new Page();
+			return p;
+		}
+		
+		private XLExprValue<?> toValue(byte tag, long value) {
+			switch (tag) {
+			case T_LONG:
+				return new E_Long(value);
+			case T_DOUBLE:
+				return new E_Double(Double.longBitsToDouble(value));
+			case T_TEXT:
+				return new E_String(strings.get((int) value));
+			case T_DATE:
+				return new E_Date(new Date(value));
+			case T_TRUE:
+				return E_Boolean.TRUE;
+			case T_FALSE:
+				return E_Boolean.FALSE;
+			default:
+				return null;
+			}
+		}
+		
+		public synchronized void clear() {
+			droppedHits += hits;
+			droppedMisses += misses;
+			pages = new Page[16][];
+			dictionary.clear();
+			strings.clear();
+		}
+		
+		public synchronized long getHits() {
+			return hits;
+		}
+		
+		public synchronized long getMisses() {
+			return misses;
+		}
+		
+		public synchronized void resetCounters() {
+			hits = 0;
+			misses = 0;
+		}
+	}
+	
+	/**
+	 * PAGE_ROWS x PAGE_COLS cells, row-major
+	 */
+	private static class Page {
+		private final byte[] tags = new byte[PAGE_CELLS];
+		private final long[] values = new long[PAGE_CELLS];
+	}
+	
+}
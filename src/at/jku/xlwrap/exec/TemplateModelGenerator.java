@@ -16,20 +16,22 @@
 package at.jku.xlwrap.exec;
 
 import at.jku.xlwrap.common.XLWrapException;
-
-import com.hp.hpl.jena.rdf.model.Model;
+import at.jku.xlwrap.map.expr.XLExpr;
 
 /**
  * @author dorgon
  *
- * Generates a sequence of template models based on the transformations
- * of the active MapTemplate of the ExecutionContext.
+ * Generates a sequence of expression vectors for the compiled TemplatePlan
+ * based on the transformations of the active MapTemplate of the ExecutionContext.
  * 
  */
 public class TemplateModelGenerator {
 
-	/** next template */
-	private Model next;
+	/** next expression vector */
+	private XLExpr[] next;
+	
+	/** true if next has already been returned by next() */
+	private boolean returned = false;
 	
 	/** stacked transformation executor sequence */
 	private TransformationStage transExec;
@@ -42,38 +44,79 @@ public class TemplateModelGenerator {
 	 */
 	public TemplateModelGenerator(ExecutionContext context) throws XLWrapException {
 		if (context.getActiveTemplate().getTransformations().size() > 0) {
-			transExec = TransformationStage.create(context);
-			next = transExec.getStageTemplate();
+			transExec = TransformationStage.create(context); // positioned at first valid iteration or null
+			next = (transExec != null) ? transExec.getStageExpressions() : null;
 			
 		// no transformations, just use base template once
 		} else {
 			transExec = null;
-			next = context.getActiveTemplate().getTemplateModel();
+			next = context.getActiveTemplate().getTemplatePlan().getExpressions();
 		}
 	}
 	
+	/**
+	 * constructor for a window of iterations [from, to) of the active template, which must have 
+	 * a single transformation, used to process chunks of large templates in parallel
+	 * 
+	 * @param context
+	 * @param from first iteration (zero-based)
+	 * @param to limit (exclusive)
+	 * @throws XLWrapException
+	 */
+	public TemplateModelGenerator(ExecutionContext context, int from, int to) throws XLWrapException {
+		transExec = TransformationStage.createUnpositioned(context);
+		if (transExec == null)
+			throw new XLWrapException("Cannot generate a window of iterations for a template without transformations.");
+		next = transExec.window(from, to) ? transExec.getStageExpressions() : null;
+	}
+	
+	/**
+	 * @return the position of the current iteration (the last one returned by next()), which is unique within 
+	 * the template and independent of windows (see TransformationStage.getPosition())
+	 */
+	public String getIteration() {
+		return (transExec != null) ? transExec.getPosition() : "0";
+	}
+	
+	/**
+	 * @return true if there are no more iterations at all, false if generation only stopped at the end of the window 
+	 */
+	public boolean isExhausted() {
+		return transExec == null || transExec.isExhausted();
+	}
+	
+	/**
+	 * the stages are advanced lazily here, because the bound expressions returned by next()
+	 * are resolved for the current position when evaluated
+	 * 
+	 * @return true if there is another iteration
+	 * @throws XLWrapException
+	 */
 	public boolean hasNext() throws XLWrapException {
+		if (returned) {
+			returned = false;
+			
+			// try to get next
+			if (transExec != null && transExec.proceed())
+				next = transExec.getStageExpressions();
+			else
+				next = null;
+		}
 		return next != null;
 	}
 
 	/**
-	 * get next template model, the base model transformed by the sequence of transformation executors
+	 * get next expression vector, the base expressions bound to the sequence of transformation executors,
+	 * only valid until the next call of hasNext()
 	 * 
 	 * @return
 	 * @throws XLWrapException
 	 */
-	public Model next() throws XLWrapException {
-		Model current = next;
-		
-		// try to get next
-		if (transExec == null) {
-			next = null;
-		} else if (transExec.proceed()) {
-			next = transExec.getStageTemplate();
-		} else
-			next = null;
-		
-		return current;
+	public XLExpr[] next() throws XLWrapException {
+		if (!hasNext())
+			return null;
+		returned = true;
+		return next;
 	}
 
 }
@@ -0,0 +1,429 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.exec;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.jku.xlwrap.common.CanonicalKeys;
+import at.jku.xlwrap.common.Utils;
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.map.expr.XLExpr;
+import at.jku.xlwrap.map.expr.val.XLExprValue;
+import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
+import at.jku.xlwrap.vocab.XLWrap;
+
+import com.hp.hpl.jena.datatypes.DatatypeFormatException;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Statement;
+
+/**
+ * @author dorgon
+ *
+ * An immutable, compiled form of a template graph. Each distinct node of the graph
+ * becomes a slot, which is either a constant node, a blank node placeholder, or an
+ * XLExpr (referenced by its index in the expression vector). Statements are stored as
+ * triples of slot indexes, xl:uri and xl:id declarations are kept separately.
+ * 
+ * The plan is compiled once per MapTemplate and then executed for each iteration with
+ * the transformed expression vector produced by the TransformationStages. Only the
+ * expressions change between iterations, so the template graph is never copied.
+ * 
+ */
+public class TemplatePlan {
+	private static final Logger log = LoggerFactory.getLogger(TemplatePlan.class);
+
+	/** slot kinds */
+	public static final int CONSTANT = 0;
+	public static final int BLANK = 1;
+	public static final int EXPRESSION = 2;
+
+	/** resolve states used during execution */
+	private static final byte UNRESOLVED = 0;
+	private static final byte RESOLVED = 1;
+	private static final byte EOF = 2;
+	
+	/** original nodes of the template graph (by slot) */
+	private final Node[] nodes;
+	
+	/** kind of each slot */
+	private final int[] kinds;
+	
+	/** index into the expression vector for EXPRESSION slots, -1 otherwise */
+	private final int[] exprIndexes;
+	
+	/** base expressions (untransformed) */
+	private final XLExpr[] expressions;
+	
+	/** labels of the base expressions for statistics, created on demand */
+	private volatile String[] labels = null;
+	
+	/** statements as subject, predicate, object slot indexes */
+	private final int[] statements;
+	
+	/** xl:uri and xl:id declarations: subject slot, expression index (-1 if invalid), and whether it is xl:uri */
+	private final int[] declSubjects;
+	private final int[] declExprIndexes;
+	private final boolean[] declIsURI;
+	
+	/** if true, blank nodes get new labels in each iteration */
+	private final boolean freshBlankNodes;
+
+	/**
+	 * private constructor, use compile()
+	 */
+	private TemplatePlan(Node[] nodes, int[] kinds, int[] exprIndexes, XLExpr[] expressions, int[] statements,
+			int[] declSubjects, int[] declExprIndexes, boolean[] declIsURI, boolean freshBlankNodes) {
+		this.nodes = nodes;
+		this.kinds = kinds;
+		this.exprIndexes = exprIndexes;
+		this.expressions = expressions;
+		this.statements = statements;
+		this.declSubjects = declSubjects;
+		this.declExprIndexes = declExprIndexes;
+		this.declIsURI = declIsURI;
+		this.freshBlankNodes = freshBlankNodes;
+	}
+	
+	/**
+	 * compile a template graph
+	 * 
+	 * @param model the template graph
+	 * @param freshBlankNodes if true, blank nodes are replaced by new ones in each iteration (template graphs),
+	 * otherwise a single blank node per slot is used for all iterations (constant graphs), 
+	 * labels are assigned by the BlankNodeAllocator of the context, slots are numbered in canonical statement
+	 * order (see CanonicalKeys), so they are equal whenever the mapping is parsed
+	 * @return the compiled plan
+	 */
+	public static TemplatePlan compile(Model model, boolean freshBlankNodes) {
+		Map<Node, Integer> slots = new HashMap<Node, Integer>();
+		List<Node> nodes = new ArrayList<Node>();
+		List<XLExpr> exprs = new ArrayList<XLExpr>();
+		List<Integer> kinds = new ArrayList<Integer>();
+		List<Integer> exprIndexes = new ArrayList<Integer>();
+		List<Integer> statements = new ArrayList<Integer>();
+		List<Integer> declSubjects = new ArrayList<Integer>();
+		List<Integer> declExprIndexes = new ArrayList<Integer>();
+		List<Boolean> declIsURI = new ArrayList<Boolean>();
+		
+		for (Statement st : CanonicalKeys.listStatements(model)) {
+			Node s = st.getSubject().asNode();
+			Node p = st.getPredicate().asNode();
+			Node o = st.getObject().asNode();
+			
+			// xl:uri and xl:id declarations are evaluated before the statements of each iteration
+			if (p.isURI() && (p.getURI().equals(XLWrap.uri.getURI()) || p.getURI().equals(XLWrap.id.getURI()))) {
+				int exprIdx = -1;
+				try {
+					XLExpr expr = Utils.getExpression(o);
+					if (expr == null)
+						log.warn("Ignoring invalid xl:Expr for " + p.getURI() + ": '" + o + "', object must be a literal with xl:Expr datatype.");
+					else {
+						exprIdx = exprs.size();
+						exprs.add(expr.copy());
+					}
+				} catch (DatatypeFormatException e) {
+					log.warn("Ignoring invalid xl:Expr for " + p.getURI() + ": '" + o + "'.", e);
+				}
+				
+				if (s.isURI())
+					log.warn("Overriding URI of " + s.getURI() + " specified by " + p.getURI() + " is not supported, the declaration only applies if it evaluates to null.");
+
+				declSubjects.add(getSlot(s, slots, nodes, kinds, exprIndexes, exprs));
+				declExprIndexes.add(exprIdx);
+				declIsURI.add(p.getURI().equals(XLWrap.uri.getURI()));
+				continue;
+			}
+			
+			statements.add(getSlot(s, slots, nodes, kinds, exprIndexes, exprs));
+			statements.add(getSlot(p, slots, nodes, kinds, exprIndexes, exprs));
+			statements.add(getSlot(o, slots, nodes, kinds, exprIndexes, exprs));
+		}
+		
+		return new TemplatePlan(
+				nodes.toArray(new Node[nodes.size()]),
+				toIntArray(kinds),
+				toIntArray(exprIndexes),
+				exprs.toArray(new XLExpr[exprs.size()]),
+				toIntArray(statements),
+				toIntArray(declSubjects),
+				toIntArray(declExprIndexes),
+				toBooleanArray(declIsURI),
+				freshBlankNodes);
+	}
+
+	private static int getSlot(Node n, Map<Node, Integer> slots, List<Node> nodes, List<Integer> kinds, List<Integer> exprIndexes, List<XLExpr> exprs) {
+		Integer slot = slots.get(n);
+		if (slot == null) {
+			slot = nodes.size();
+			slots.put(n, slot);
+			nodes.add(n);
+			
+			XLExpr expr = n.isBlank() ? null : Utils.getExpression(n);
+			if (expr != null) {
+				kinds.add(EXPRESSION);
+				exprIndexes.add(exprs.size());
+				exprs.add(expr.copy()); // must not share expressions with the template graph
+			} else {
+				kinds.add(n.isBlank() ? BLANK : CONSTANT);
+				exprIndexes.add(-1);
+			}
+		}
+		return slot;
+	}
+	
+	private static int[] toIntArray(List<Integer> list) {
+		int[] a = new int[list.size()];
+		for (int i = 0; i < a.length; i++)
+			a[i] = list.get(i);
+		return a;
+	}
+
+	private static boolean[] toBooleanArray(List<Boolean> list) {
+		boolean[] a = new boolean[list.size()];
+		for (int i = 0; i < a.length; i++)
+			a[i] = list.get(i);
+		return a;
+	}
+	
+	/**
+	 * @return the base expression vector, must not be modified, use copyExpressions() instead
+	 */
+	public XLExpr[] getExpressions() {
+		return expressions;
+	}
+	
+	/**
+	 * @param exprs
+	 * @return a deep copy of the expression vector
+	 */
+	public static XLExpr[] copyExpressions(XLExpr[] exprs) {
+		XLExpr[] copy = new XLExpr[exprs.length];
+		for (int i = 0; i < exprs.length; i++)
+			copy[i] = exprs[i].copy();
+		return copy;
+	}
+	
+	/**
+	 * @return number of slots
+	 */
+	public int getSlotCount() {
+		return nodes.length;
+	}
+	
+	/**
+	 * @return number of statements (without xl:uri and xl:id declarations)
+	 */
+	public int getStatementCount() {
+		return statements.length / 3;
+	}
+	
+	/**
+	 * @return true if there are no statements
+	 */
+	public boolean isEmpty() {
+		return statements.length == 0;
+	}
+	
+	/**
+	 * @param slot
+	 * @return the original node of the template graph
+	 */
+	public Node getNode(int slot) {
+		return nodes[slot];
+	}
+	
+	/**
+	 * @param slot
+	 * @return the slot kind
+	 */
+	public int getKind(int slot) {
+		return kinds[slot];
+	}
+	
+	/**
+	 * @return number of xl:uri and xl:id declarations
+	 */
+	public int getDeclarationCount() {
+		return declSubjects.length;
+	}
+	
+	/**
+	 * @param i declaration
+	 * @return subject slot of the declaration
+	 */
+	public int getDeclarationSubject(int i) {
+		return declSubjects[i];
+	}
+	
+	/**
+	 * @param i declaration
+	 * @return index into the expression vector or -1 if the declaration is invalid
+	 */
+	public int getDeclarationExprIndex(int i) {
+		return declExprIndexes[i];
+	}
+	
+	/**
+	 * @param i declaration
+	 * @return true for xl:uri, false for xl:id
+	 */
+	public boolean isURIDeclaration(int i) {
+		return declIsURI[i];
+	}
+	
+	/**
+	 * execute the plan for a single iteration and add the resulting triples to the sink
+	 * 
+	 * @param exprs the (transformed) expression vector of the current iteration
+	 * @param context
+	 * @param sink
+	 * @throws XLWrapException
+	 * @throws XLWrapEOFException if an xl:uri or xl:id declaration cannot be evaluated
+	 */
+	public void execute(XLExpr[] exprs, ExecutionContext context, TripleSink sink) throws XLWrapException, XLWrapEOFException {
+		TemplateStats stats = context.getStats();
+		NodeReplacer replacer = context.getNodeReplacer();
+		replacer.scan(this, exprs, context); // throws XLWrapEOFException
+		
+		Model target = context.getTargetModel();
+		Node[] resolved = new Node[nodes.length];
+		byte[] state = new byte[nodes.length];
+		
+		int s, p, o;
+		Node newS, newP, newO;
+		Triple triple;
+		for (int i = 0; i < statements.length; i += 3) {
+			s = statements[i];
+			p = statements[i+1];
+			o = statements[i+2];
+			
+			// skip if the Expr for one of the resources evaluated to null
+			if (replacer.isDeleted(s) || replacer.isDeleted(p) || replacer.isDeleted(o)) {
+				stats.skippedTriples++;
+				continue;
+			}
+			
+			newS = resolve(s, exprs, replacer, resolved, state, target, context);
+			newP = resolve(p, exprs, replacer, resolved, state, target, context);
+			newO = resolve(o, exprs, replacer, resolved, state, target, context);
+			if (state[s] == EOF || state[p] == EOF || state[o] == EOF) {
+				log.warn("End of file reached, skipping statement: " + nodes[s] + " " + nodes[p] + " " + nodes[o]);
+				stats.eofSkippedTriples++;
+				continue;
+			}
+			if (newS == null || newP == null || newO == null) {
+				if (log.isTraceEnabled())
+					log.trace("Skip triple: " + newS + " " + newP + " " + newO);
+				stats.skippedTriples++;
+				continue;
+			}
+			if (newS.isLiteral())
+				throw new XLWrapException("Literal in subject position: '" + newS + "'");
+			if (!newP.isURI())
+				throw new XLWrapException("Predicate must be URI: '" + newP + "'");
+			
+			triple = new Triple(newS, newP, newO);
+			if (log.isTraceEnabled())
+				log.trace("Add triple: " + triple);
+			sink.add(triple);
+			stats.triples++;
+		}
+	}
+
+	/**
+	 * evaluate an expression of the vector, measure evaluation time if enabled
+	 * 
+	 * @param i index of the expression
+	 * @param exprs the expression vector of the current iteration
+	 * @param context
+	 * @return the value
+	 * @throws XLWrapException
+	 * @throws XLWrapEOFException
+	 */
+	XLExprValue<?> eval(int i, XLExpr[] exprs, ExecutionContext context) throws XLWrapException, XLWrapEOFException {
+		TemplateStats stats = context.getStats();
+		if (!stats.isExpressionTiming())
+			return exprs[i].eval(context);
+		
+		long start = System.nanoTime();
+		try {
+			return exprs[i].eval(context);
+		} finally {
+			stats.addExpressionTime(getExpressionLabel(i), System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * @param i index of the expression
+	 * @return label of the untransformed expression
+	 */
+	public String getExpressionLabel(int i) {
+		String[] l = labels;
+		if (l == null) {
+			l = new String[expressions.length];
+			for (int j = 0; j < l.length; j++)
+				l[j] = expressions[j].toString();
+			labels = l;
+		}
+		return l[i];
+	}
+	
+	/**
+	 * resolve a slot to a concrete node for the current iteration, results are cached in resolved[]
+	 * 
+	 * @return the node or null if the expression evaluated to null or EOF was reached (flagged in state[])
+	 */
+	private Node resolve(int slot, XLExpr[] exprs, NodeReplacer replacer, Node[] resolved, byte[] state, Model target, ExecutionContext context) throws XLWrapException {
+		if (state[slot] != UNRESOLVED)
+			return resolved[slot];
+		state[slot] = RESOLVED;
+		
+		Node n;
+		switch (kinds[slot]) {
+		case BLANK:
+			// if anonymous, try to replace by NodeReplacer
+			n = replacer.replace(slot);
+			if (n == null)
+				n = freshBlankNodes ? context.getBlankNodeAllocator().next() : context.getBlankNodeAllocator().constant(slot);
+			break;
+			
+		case EXPRESSION:
+			try {
+				XLExprValue<?> val = eval(exprIndexes[slot], exprs, context);
+				n = (val == null) ? null : Utils.createNode(target, val, context.getBlankNodeAllocator()).asNode();
+			} catch (XLWrapEOFException e) {
+				state[slot] = EOF;
+				n = null;
+			}
+			break;
+			
+		default:
+			n = nodes[slot];
+		}
+		
+		resolved[slot] = n;
+		return n;
+	}
+	
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.exec;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author dorgon
+ *
+ * counters and timers of a single map template, collected by one ExecutionContext (i.e. thread)
+ * without synchronization and added to the MaterializationStats when the template (or chunk) is done
+ * 
+ */
+public class TemplateStats {
+	/** time the template has been processed in ns (wall clock) */
+	long time = 0;
+	
+	/** number of iterations (expression vectors) executed */
+	long iterations = 0;
+	
+	/** number of triples emitted */
+	long triples = 0;
+	
+	/** number of statements skipped because a node evaluated to null or was deleted by a null xl:uri/xl:id */
+	long skippedTriples = 0;
+	
+	/** number of statements skipped because the end of a file was reached */
+	long eofSkippedTriples = 0;
+	
+	/** number of xl:uri/xl:id declarations evaluated to null (deleting the node) */
+	long deletedNodes = 0;
+	
+	/** number of break condition evaluations */
+	long breakEvaluations = 0;
+	
+	/** number of skip condition evaluations */
+	long skipEvaluations = 0;
+	
+	/** if false, expressions are not timed */
+	private final boolean expressionTiming;
+	
+	/** cumulative time in ns and number of evaluations per expression */
+	private final Map<String, long[]> expressionTimes = new LinkedHashMap<String, long[]>();
+	
+	/**
+	 * constructor
+	 * 
+	 * @param expressionTiming if true, evaluation time of expressions is measured
+	 */
+	public TemplateStats(boolean expressionTiming) {
+		this.expressionTiming = expressionTiming;
+	}
+	
+	/**
+	 * @return true if evaluation time of expressions is measured
+	 */
+	public boolean isExpressionTiming() {
+		return expressionTiming;
+	}
+	
+	/**
+	 * add evaluation time for an expression
+	 * 
+	 * @param expr label of the expression (e.g. the untransformed expression)
+	 * @param nanos
+	 */
+	public void addExpressionTime(String expr, long nanos) {
+		long[] t = expressionTimes.get(expr);
+		if (t == null) {
+			t = new long[2];
+			expressionTimes.put(expr, t);
+		}
+		t[0] += nanos;
+		t[1]++;
+	}
+	
+	/**
+	 * add all counters and timers of another instance
+	 * 
+	 * @param other
+	 */
+	public void add(TemplateStats other) {
+		time += other.time;
+		iterations += other.iterations;
+		triples += other.triples;
+		skippedTriples += other.skippedTriples;
+		eofSkippedTriples += other.eofSkippedTriples;
+		deletedNodes += other.deletedNodes;
+		breakEvaluations += other.breakEvaluations;
+		skipEvaluations += other.skipEvaluations;
+		for (Map.Entry<String, long[]> e : other.expressionTimes.entrySet()) {
+			long[] t = expressionTimes.get(e.getKey());
+			if (t == null) {
+				t = new long[2];
+				expressionTimes.put(e.getKey(), t);
+			}
+			t[0] += e.getValue()[0];
+			t[1] += e.getValue()[1];
+		}
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+	public long getIterations() {
+		return iterations;
+	}
+
+	public long getTriples() {
+		return triples;
+	}
+
+	public long getSkippedTriples() {
+		return skippedTriples;
+	}
+
+	public long getEofSkippedTriples() {
+		return eofSkippedTriples;
+	}
+
+	public long getDeletedNodes() {
+		return deletedNodes;
+	}
+
+	public long getBreakEvaluations() {
+		return breakEvaluations;
+	}
+
+	public long getSkipEvaluations() {
+		return skipEvaluations;
+	}
+
+	/**
+	 * @return cumulative time in ns (index 0) and number of evaluations (index 1) per expression
+	 */
+	public Map<String, long[]> getExpressionTimes() {
+		return expressionTimes;
+	}
+	
+}
@@ -43,6 +43,10 @@ public interface TransformationExector {
 	 * this needs to be called multiple times for each range reference, thus, the
 	 * implementation must not change the internal state (any iterators) until next call to thisHasMoreTransformations()
 	 * 
+	 * the transformation must be absolute for the current state (e.g. shift by the total offset of the current
+	 * iteration compared to the untransformed range), it is applied to a copy of the untransformed range
+	 * (see BoundRange), transformations of parent stages have been applied before
+	 * 
 	 * @param range
 	 * @param restriction only apply transformation if range is subsumed by restriction range or to parts of a multi range
 	 * @return transformed range object
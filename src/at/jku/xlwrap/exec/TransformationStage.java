@@ -15,37 +15,26 @@
  */
 package at.jku.xlwrap.exec;
 
-import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import at.jku.xlwrap.common.Utils;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.map.MapTemplate;
-import at.jku.xlwrap.map.XLExprDatatype;
 import at.jku.xlwrap.map.expr.E_RangeRef;
 import at.jku.xlwrap.map.expr.TypeCast;
 import at.jku.xlwrap.map.expr.XLExpr;
 import at.jku.xlwrap.map.expr.XLExpr1;
 import at.jku.xlwrap.map.expr.XLExpr2;
-import at.jku.xlwrap.map.expr.XLExprVisitor;
 import at.jku.xlwrap.map.expr.XLExprWalker;
 import at.jku.xlwrap.map.expr.func.XLExprFunction;
-import at.jku.xlwrap.map.range.AnyRange;
+import at.jku.xlwrap.map.range.MultiRange;
 import at.jku.xlwrap.map.range.Range;
 import at.jku.xlwrap.map.transf.Transformation;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 
-import com.hp.hpl.jena.graph.Node;
-import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Statement;
-import com.hp.hpl.jena.rdf.model.StmtIterator;
-
 /**
  * @author dorgon
  *
@@ -55,6 +44,11 @@ import com.hp.hpl.jena.rdf.model.StmtIterator;
  * It is organized as a cascaded sequence of multiple iterable transformation stages whose
  * implementation of the TransformExector interface is implemented by the actual transform operation.
  * 
+ * The position of the cascade is given by the state of each stage (e.g. the count of a RowShift).
+ * Expressions are bound once to the stages which apply to their ranges (see BoundRange), the 
+ * ranges for the current position are resolved on demand by applying the absolute transformation
+ * of each stage, so nothing is copied or changed when stages proceed.
+ * 
  */
 public abstract class TransformationStage implements TransformationExector {
 	private static final Logger log = LoggerFactory.getLogger(TransformationStage.class);
@@ -68,112 +62,172 @@ public abstract class TransformationStage implements TransformationExector {
 	/** the execution context */
 	protected final ExecutionContext context;
 	
-	/** template model of current stage */
-	private Model stageTmpl;
+	/** level of this stage, 0 for root */
+	private int level;
+	
+	/** incremented whenever the position of this stage changes */
+	private long version = 0;
+	
+	/** number of iterations of this stage since the last reset (including skipped ones) */
+	private int iteration = 0;
+	
+	/** iterations of this stage are limited to this count (exclusive), see window() */
+	private int limit = Integer.MAX_VALUE;
+	
+	/** true if this stage ended due to its own transformations, bounds or break condition (and not due to the limit) */
+	private boolean exhausted = false;
+	
+	/** bound template expressions (shared by all stages, see TemplatePlan) */
+	private XLExpr[] stageExprs;
 
-	/** this = stage restriction + base restrictions of subs */
-	private Map<TransformationStage, Range> restrictions;
+	/** stage restriction (untransformed, used for binding) */
+	private Range restriction;
 	
-	/** this = stage break condition + base break conditions of subs */
-	private Map<TransformationStage, XLExpr> breakConditions;
+	/** stage break condition, bound to this and parent stages */
+	private XLExpr breakCondition;
 	
-	/** this = stage skip condition + base skip conditions of subs */
-	private Map<TransformationStage, XLExpr> skipConditions;
+	/** stage skip condition, bound to this and parent stages */
+	private XLExpr skipCondition;
 	
+	/** labels of the untransformed conditions for statistics */
+	private String breakLabel, skipLabel;
 	
 	/**
 	 * constructor
 	 */
 	protected TransformationStage(ExecutionContext context) {
 		this.context = context;
-		this.restrictions = new Hashtable<TransformationStage, Range>();
-		this.breakConditions = new Hashtable<TransformationStage, XLExpr>();
-		this.skipConditions = new Hashtable<TransformationStage, XLExpr>();
 	}
 	
 	/**
 	 * creates a cascaded sequence of TransformationStages
+	 * and positions it at the first valid iteration
 	 * 
 	 * @param context
-	 * @return
+	 * @return the leaf stage or null if there are no transformations or no valid iterations
 	 * @throws XLWrapException 
 	 */
 	public static TransformationStage create(ExecutionContext context) throws XLWrapException {		
+		TransformationStage leaf = createUnpositioned(context);
+		if (leaf != null && leaf.first())
+			return leaf;
+		else
+			return null;
+	}
+	
+	/**
+	 * creates a cascaded sequence of TransformationStages, call first() to position it
+	 * 
+	 * @param context
+	 * @return the leaf stage or null if there are no transformations
+	 * @throws XLWrapException 
+	 */
+	public static TransformationStage createUnpositioned(ExecutionContext context) throws XLWrapException {		
 		MapTemplate activeTmpl = context.getActiveTemplate();
-		
-		TransformationStage exec = null;
-		TransformationStage parent = null;
-
 		List<Transformation> t = activeTmpl.getTransformations();
+		if (t.size() == 0)
+			return null; // no transformations
 		
-		// create cascaded sequence of stages and build up baseRestrictions map
+		// create cascaded sequence of stages, the last transformation is the root
+		TransformationStage[] stages = new TransformationStage[t.size()];
 		Transformation transf;		
-		if (t.size() > 0) {
-			for (int i = t.size() - 1; i >= 0; i--) {
-				transf = t.get(i);
-
-				exec = transf.getExecutor(context);
-				
-				// need to initially apply transform to make replacements in case of Sheet/FileRepeat/etc.
-				exec.initStage(activeTmpl.getTemplateModel(),
-						transf.getRestriction(),
-						transf.getBreakCondition(),
-						transf.getSkipCondition()
-						);
-				
-				if (parent != null)
-					parent.sub = exec;
-				
-				exec.parent = parent;
-				parent = exec;
+		for (int i = t.size() - 1; i >= 0; i--) {
+			transf = t.get(i);
+			TransformationStage exec = transf.getExecutor(context);
+			exec.level = t.size() - 1 - i;
+			exec.restriction = transf.getRestriction();
+			stages[exec.level] = exec;
+			
+			if (exec.level > 0) {
+				exec.parent = stages[exec.level-1];
+				exec.parent.sub = exec;
 			}
+		}
 		
-			exec.setSubRestrictionsAndConditions(new Hashtable<TransformationStage, Range>(), new Hashtable<TransformationStage, XLExpr>(), new Hashtable<TransformationStage, XLExpr>());
-			return exec;
-		} else
-			return null; // no transformations
+		// bind template expressions to all stages
+		XLExpr[] exprs = TemplatePlan.copyExpressions(activeTmpl.getTemplatePlan().getExpressions());
+		BindRangeReferences binder = new BindRangeReferences(stages, context);
+		for (XLExpr expr : exprs)
+			XLExprWalker.walkPostOrder(expr, binder);
+		
+		// bind conditions to this and parent stages
+		for (int level = 0; level < stages.length; level++) {
+			transf = t.get(t.size() - 1 - level);
+			TransformationStage[] applying = new TransformationStage[level+1];
+			System.arraycopy(stages, 0, applying, 0, level+1);
+			binder = new BindRangeReferences(applying, context);
+			
+			TransformationStage exec = stages[level];
+			exec.stageExprs = exprs;
+			exec.breakCondition = transf.getBreakCondition().copy();
+			exec.breakLabel = "break condition of " + transf.getName() + ": " + transf.getBreakCondition();
+			XLExprWalker.walkPostOrder(exec.breakCondition, binder);
+			if (transf.getSkipCondition() != null) {
+				exec.skipCondition = transf.getSkipCondition().copy();
+				exec.skipLabel = "skip condition of " + transf.getName() + ": " + transf.getSkipCondition();
+				XLExprWalker.walkPostOrder(exec.skipCondition, binder);
+			}
+			exec.reset();
+		}
+		
+		return stages[stages.length-1];
 	}
 	
 	/**
-	 * set restrictions and break/skip conditions of sub stages (bottom-up recursion)
+	 * position this stage and all parents at their first valid iteration
 	 * 
-	 * @param baseRestrictionsOfSubs collected restrictions of subs
-	 * @param baseBreakConditionsOfSubs collected break conditions of subs
-	 * @param baseSkipConditionsOfSubs collected skip conditions of subs
+	 * @return false if there is no valid iteration
+	 * @throws XLWrapException
 	 */
-	private void setSubRestrictionsAndConditions(Map<TransformationStage, Range> baseRestrictionsOfSubs, Map<TransformationStage, XLExpr> baseBreakConditionsOfSubs, Map<TransformationStage, XLExpr> baseSkipConditionsOfSubs) {
-		for (TransformationStage exec : baseRestrictionsOfSubs.keySet()) {
-			restrictions.put(exec, baseRestrictionsOfSubs.get(exec).copy());
-			breakConditions.put(exec, baseBreakConditionsOfSubs.get(exec).copy());
-			if (baseSkipConditionsOfSubs.containsKey(exec))
-				skipConditions.put(exec, baseSkipConditionsOfSubs.get(exec).copy());
-		}
+	public boolean first() throws XLWrapException {
+		if (parent != null && !parent.first())
+			return false;
 		
-		baseRestrictionsOfSubs.put(this, getStageRestriction()); 	// can use reference now, will copy later
-		baseBreakConditionsOfSubs.put(this, getStageBreakCondition());		// can use reference now, will copy later
-		if (getStageSkipCondition() != null)
-			baseSkipConditionsOfSubs.put(this, getStageSkipCondition());		// can use reference now, will copy later
-		if (parent != null) // recurse
-			parent.setSubRestrictionsAndConditions(baseRestrictionsOfSubs, baseBreakConditionsOfSubs, baseSkipConditionsOfSubs);
+		reset();
+		return proceed();
 	}
-
+	
 	/**
+	 * position a single stage (without parent and sub stages) at the first valid iteration
+	 * within the window [from, to) of its iteration space, iterations before are skipped without 
+	 * evaluating any conditions, so windows can be processed independently (e.g. in parallel)
 	 * 
-	 * @param stageTmpl
-	 * @param stageRestriction
-	 * @param stageBreakCondition
-	 * @param stageSkipCondition
+	 * @param from first iteration (zero-based)
+	 * @param to limit (exclusive)
+	 * @return false if there is no valid iteration in the window
 	 * @throws XLWrapException
 	 */
-	private void initStage(Model stageTmpl, Range stageRestriction, XLExpr stageBreakCondition, XLExpr stageSkipCondition) throws XLWrapException {
-		this.stageTmpl = Utils.copyModel(stageTmpl);
-		setStageRestriction(stageRestriction.copy());
-		setStageBreakCondition(stageBreakCondition.copy());
-		setStageSkipCondition(stageSkipCondition.copy());
+	public boolean window(int from, int to) throws XLWrapException {
+		if (parent != null || sub != null)
+			throw new XLWrapException("Only a single transformation stage can be positioned at a window of iterations.");
 		
-		// post-order:
-		init();
-		proceed();
+		reset();
+		iteration = skip(from);
+		limit = to;
+		return proceed();
+	}
+	
+	/**
+	 * skip iterations without checking any conditions, the default implementation calls
+	 * hasMoreTransformations() n times, stages which can compute their state directly should override it
+	 * 
+	 * @param n number of iterations to skip
+	 * @return the number of iterations actually skipped
+	 * @throws XLWrapException
+	 */
+	protected int skip(int n) throws XLWrapException {
+		int i = 0;
+		while (i < n && hasMoreTransformations())
+			i++;
+		return i;
+	}
+	
+	/**
+	 * @return true if the stage ended due to its transformations, sheet bounds or break condition, false 
+	 * if it is still positioned or ended at the limit of its window
+	 */
+	public boolean isExhausted() {
+		return exhausted;
 	}
 	
 	/**
@@ -184,160 +238,186 @@ public abstract class TransformationStage implements TransformationExector {
 	 * @throws XLWrapException 
 	 */
 	public boolean proceed() throws XLWrapException {
-		if (hasMoreTransformations() &&
-			applyTransformation() &&
-			!breakConditionTrue(getStageBreakCondition(), context)) {
-			
-			if (skipConditionTrue(getStageSkipCondition(), context)) {
-				if (log.isTraceEnabled())
-					log.trace("Skipping transformation due to skip condition: " + getStageBreakCondition());
-				return proceed();
-			}
-			
-			return true;
-
-			// proceed with next higher stage
-		} else {
-			// if parent has next re-init this
-			if (parent != null) {
-				if (parent.proceed()) {
-					
-					// copy down for this stage
-					stageTmpl = Utils.copyModel(parent.getStageTemplate());
-					
-					// copy down base restrictions and break conditions
-					for (TransformationStage key : restrictions.keySet()) {
-						restrictions.put(key, parent.restrictions.get(key).copy());
-						breakConditions.put(key, parent.breakConditions.get(key).copy());
-						if (parent.skipConditions.containsKey(key))
-							skipConditions.put(key, parent.skipConditions.get(key).copy());
-					}
-					
-					init();
-					proceed(); // must have more now
+		while (true) {
+			if (proceedThis())
 				return true;
-				}
-			}
+			
+			// proceed with next higher stage and re-init this
+			if (parent == null || !parent.proceed())
+				return false;
+			reset();
 		}
-
-		return false;
 	}
-
+	
 	/**
-	 * transform the stage template, restriction, and break condition
-	 * return false if an expression is out of sheet bounds
+	 * proceed with this stage only
 	 * 
-	 * @throws XLWrapException 
+	 * @return false if this stage has no more valid transformations
+	 * @throws XLWrapException
 	 */
-	private boolean applyTransformation() throws XLWrapException {
-		Range stageRestriction = getStageRestriction();
-		
-		XLExprVisitor exprTransformer = new TransformRangeReferences(this, stageRestriction);
-		SheetBoundsChecker boundsCheck = new SheetBoundsChecker(context);
-
-		stageTmpl = Utils.copyModel(stageTmpl); //TODO no need to copy if we use a bnode generator in XLWrapMaterializer.addStatements()
-		
-		Statement st;
-		Node o;
-		XLExpr expr;
-		XLExpr transformed;
-		
-		// collect changes first
-		List<ObjectChange> changes = new ArrayList<ObjectChange>();
-		
-		StmtIterator sIt = stageTmpl.listStatements();
-		while (sIt.hasNext()) {
-			st = sIt.nextStatement();
-			o = st.getObject().asNode();
+	private boolean proceedThis() throws XLWrapException {
+		while (iteration < limit) {
+			if (!hasMoreTransformations()) {
+				exhausted = true;
+				return false;
+			}
+			iteration++;
+			moved();
 			
-			expr = Utils.getExpression(o);
+			if (!withinSheetBounds()) {
+				log.trace("At least one expression out of sheet bounds, proceeding with next stage.");
+				exhausted = true;
+				return false;
+			}
+			if (evalCondition(true)) {
+				exhausted = true;
+				return false;
+			}
 			
-			if (expr != null) {
-				transformed = expr.copy(); // clone before, must not change original one
-				XLExprWalker.walkPostOrder(transformed, exprTransformer);
-				
-				// check sheet bounds
-				if (!boundsCheck.withinSheetBounds(transformed)) {
-					log.trace("At least one expression out of sheet bounds, proceeding with next stage.");
-					return false;
-				}
-				
-				// throws ConcurrentModificationException: st.changeObject(stageTmpl.createTypedLiteral(expr, XLExprDatatype.instance));
-				changes.add(new ObjectChange(st, stageTmpl.createTypedLiteral(transformed, XLExprDatatype.instance)));
-
+			if (skipCondition != null && evalCondition(false)) {
 				if (log.isTraceEnabled())
-					log.trace(expr + " => " + transformed);
+					log.trace("Skipping transformation due to skip condition: " + skipCondition);
+				continue;
 			}
+			return true;
 		}
+		return false; // limit of window reached
+	}
+	
+	/**
+	 * evaluate the break or skip condition of this stage, count evaluations and measure time if enabled
+	 * 
+	 * @param breakCond true for the break condition, false for the skip condition
+	 * @return the result of the condition
+	 * @throws XLWrapException
+	 */
+	private boolean evalCondition(boolean breakCond) throws XLWrapException {
+		TemplateStats stats = context.getStats();
+		if (breakCond)
+			stats.breakEvaluations++;
+		else
+			stats.skipEvaluations++;
 		
-		// apply changes now
-		for (ObjectChange ch : changes)
-			ch.statement.changeObject(ch.object);
-		sIt.close();
-
-		// transform stage break condition
-		XLExprWalker.walkPostOrder(getStageBreakCondition(), new TransformRangeReferences(this, stageRestriction));
-		// transform stage skip condition
-		if (getStageSkipCondition() != null)
-			XLExprWalker.walkPostOrder(getStageSkipCondition(), new TransformRangeReferences(this, stageRestriction));
-		// copy previous restriction
-		Range prevRestriction = stageRestriction.copy();
-		// transform stage restriction
-		setStageRestriction(transform(stageRestriction, AnyRange.INSTANCE));		
-		
-		// transform sub ranges and stage break conditions
-		if (sub != null)
-			transformSubRestrictionsAndConditions(sub, prevRestriction);
-		
-		// not returned false earlier; all ranges within sheet bounds: true
-		return true;
+		long start = stats.isExpressionTiming() ? System.nanoTime() : 0;
+		try {
+			return breakCond ? breakConditionTrue(breakCondition, context) : skipConditionTrue(skipCondition, context);
+		} finally {
+			if (stats.isExpressionTiming())
+				stats.addExpressionTime(breakCond ? breakLabel : skipLabel, System.nanoTime() - start);
+		}
 	}
-
+	
 	/**
-	 * @param key
-	 * @param restriction
-	 * @throws XLWrapException 
+	 * re-initialize this stage
 	 */
-	private void transformSubRestrictionsAndConditions(TransformationStage key, Range restriction) throws XLWrapException {
-		XLExprWalker.walkPostOrder(breakConditions.get(key), new TransformRangeReferences(this, restriction));
-		XLExprWalker.walkPostOrder(skipConditions.get(key), new TransformRangeReferences(this, restriction));
-		restrictions.put(key, transform(restrictions.get(key), restriction));
+	private void reset() {
+		init();
+		iteration = 0;
+		exhausted = false;
+		moved();
+	}
+	
+	/**
+	 * called whenever the position of this stage changes
+	 */
+	private void moved() {
+		version++;
+		context.getCellValueCache().clear(); // cached values are only valid for a single iteration
+	}
 
-		if (key.sub != null)
-			transformSubRestrictionsAndConditions(key.sub, restriction);
+	/**
+	 * check if all template expressions are within sheet bounds for the current position
+	 * of this and all parent stages (sub stages are not considered)
+	 * 
+	 * @return true if all ranges are within sheet bounds
+	 */
+	private boolean withinSheetBounds() {
+		SheetBoundsChecker boundsCheck = new SheetBoundsChecker(context, level);
+		for (XLExpr expr : stageExprs)
+			if (!boundsCheck.withinSheetBounds(expr))
+				return false;
+		return true;
 	}
 
 	/**
-	 * get transformed template model
+	 * get bound template expressions
 	 * 
-	 * @return template model
+	 * @return expression vector, must not be modified
 	 */
-	public Model getStageTemplate() {
-		return stageTmpl;
+	public XLExpr[] getStageExpressions() {
+		return stageExprs;
 	}
 
+	/**
+	 * @return the (untransformed) restriction of this stage
+	 */
 	public Range getStageRestriction() {
-		return restrictions.get(this);
+		return restriction;
 	}
 	
-	public void setStageRestriction(Range restriction) {
-		restrictions.put(this, restriction);
+	/**
+	 * @return the bound break condition of this stage
+	 */
+	public XLExpr getStageBreakCondition() {
+		return breakCondition;
 	}
 	
-	public XLExpr getStageBreakCondition() {
-		return breakConditions.get(this);
+	/**
+	 * @return the bound skip condition of this stage
+	 */
+	public XLExpr getStageSkipCondition() {
+		return skipCondition;
 	}
 	
-	public void setStageBreakCondition(XLExpr condition) {
-		breakConditions.put(this, condition);
+	/**
+	 * @return the position of this and all parent stages as iteration numbers from root to this stage
+	 * separated by '_' (e.g. "3_7"), unique for each iteration of the cascade
+	 */
+	public String getPosition() {
+		return (parent != null) ? parent.getPosition() + "_" + iteration : String.valueOf(iteration);
 	}
 	
-	public XLExpr getStageSkipCondition() {
-		return skipConditions.get(this);
+	/**
+	 * @return level of this stage, 0 for root
+	 */
+	public int getLevel() {
+		return level;
 	}
 	
-	public void setStageSkipCondition(XLExpr condition) {
-		skipConditions.put(this, condition);
+	/**
+	 * @return the version, which changes whenever the position of this stage changes
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return true if the transformation of this stage is a pure shift given by the offsets
+	 * below, false if transform() must be applied (e.g. for sheet or file repeats)
+	 */
+	public boolean isOffset() {
+		return false;
+	}
+
+	/**
+	 * @return columns shifted at the current position relative to the initial position
+	 */
+	public int getColumnOffset() {
+		return 0;
+	}
+
+	/**
+	 * @return rows shifted at the current position relative to the initial position
+	 */
+	public int getRowOffset() {
+		return 0;
+	}
+
+	/**
+	 * @return sheets shifted at the current position relative to the initial position
+	 */
+	public int getSheetOffset() {
+		return 0;
 	}
 	
 	/**
@@ -387,36 +467,22 @@ public abstract class TransformationStage implements TransformationExector {
 		return  ((parent != null) ? parent + "\n   ^\n   |\n" : "") + getThisStatus();
 	}
 	
-	/**
-	 * a simple data structure to track object changes
-	 * 
-	 * @author dorgon
-	 */
-	private class ObjectChange {
-		Statement statement;
-		RDFNode object;
-		
-		public ObjectChange(Statement s, RDFNode o) {
-			this.statement = s;
-			this.object = o;
-		}
-	}
-
 	class SheetBoundsChecker {
 		private ExecutionContext context;
+		private int level;
 		
 		/**
 		 * @param context
+		 * @param level only apply stages up to this level
 		 */
-		public SheetBoundsChecker(ExecutionContext context) {
+		public SheetBoundsChecker(ExecutionContext context, int level) {
 			this.context = context;
+			this.level = level;
 		}
 
 		public boolean withinSheetBounds(XLExpr expr) {
 			if (expr instanceof E_RangeRef) {
-				Range r = ((E_RangeRef) expr).getRange();
-				if (!r.withinSheetBounds(context))
-					return false;
+				return withinSheetBounds(((E_RangeRef) expr).getRange());
 				
 			} else if (expr instanceof XLExpr1) {
 				return withinSheetBounds(((XLExpr1) expr).getArg());
@@ -434,6 +500,23 @@ public abstract class TransformationStage implements TransformationExector {
 			return true;
 		}
 		
+		private boolean withinSheetBounds(Range r) {
+			if (r instanceof BoundRange) {
+				try {
+					return ((BoundRange) r).resolve(level).withinSheetBounds(context);
+				} catch (XLWrapException e) {
+					return false;
+				}
+			} else if (r instanceof MultiRange) {
+				Iterator<Range> it = ((MultiRange) r).getRangeIterator();
+				while (it.hasNext())
+					if (!withinSheetBounds(it.next()))
+						return false;
+				return true;
+			} else
+				return r.withinSheetBounds(context);
+		}
+		
 	}
 
 }
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.exec;
+
+import at.jku.xlwrap.common.XLWrapException;
+
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * @author dorgon
+ *
+ * consumer of triples generated by the XLWrapMaterializer, allows to
+ * stream results directly into a file, a store, or a counter without
+ * building an in-memory model first
+ * 
+ */
+public interface TripleSink {
+
+	/**
+	 * called once before the first triple is added
+	 * @throws XLWrapException
+	 */
+	public void start() throws XLWrapException;
+	
+	/**
+	 * add a generated triple
+	 * 
+	 * @param triple
+	 * @throws XLWrapException
+	 */
+	public void add(Triple triple) throws XLWrapException;
+	
+	/**
+	 * called once after the last triple has been added
+	 * @throws XLWrapException
+	 */
+	public void finish() throws XLWrapException;
+	
+}
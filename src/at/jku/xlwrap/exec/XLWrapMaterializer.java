@@ -15,29 +15,35 @@
  */
 package at.jku.xlwrap.exec;
 
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import at.jku.xlwrap.common.Utils;
+import at.jku.xlwrap.common.Constants;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.map.MapTemplate;
 import at.jku.xlwrap.map.XLWrapMapping;
 import at.jku.xlwrap.map.expr.XLExpr;
-import at.jku.xlwrap.map.expr.val.XLExprValue;
+import at.jku.xlwrap.map.transf.RowShift;
+import at.jku.xlwrap.spreadsheet.Sheet;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
-import at.jku.xlwrap.vocab.XLWrap;
+import at.jku.xlwrap.spreadsheet.csv.CSVSheet;
 
+import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.mem.GraphMem;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
-import com.hp.hpl.jena.rdf.model.Statement;
-import com.hp.hpl.jena.rdf.model.StmtIterator;
 import com.hp.hpl.jena.rdf.model.impl.ModelCom;
 
 /**
@@ -45,18 +51,43 @@ import com.hp.hpl.jena.rdf.model.impl.ModelCom;
  *
  * generates models from XLWrapMapping
  * can be used multiple times efficiently sharing a single WorkbookRegistry
+ * if more than one thread is configured, map templates are processed in parallel, a single map template
+ * with a single RowShift is split into chunks of iterations processed in parallel
  *
  */
 public class XLWrapMaterializer {
 	private static final Logger log = LoggerFactory.getLogger(XLWrapMaterializer.class);
 
 	private final ExecutionContext context;
+	
+	/** number of threads for parallel processing of map templates */
+	private int threads = Integer.getInteger(Constants.SYSTEMPROPERTY_THREADS, Constants.DEFAULT_THREADS);
+	
+	/** statistics per map template */
+	private final MaterializationStats stats;
+	
+	/** prefix for blank node labels (see BlankNodeAllocator) */
+	private String blankNodePrefix = "";
+	
+	/** number of iterations per chunk if a single template is processed in parallel, 0 to disable */
+	private int chunkSize = Integer.getInteger(Constants.SYSTEMPROPERTY_CHUNK_SIZE, Constants.DEFAULT_CHUNK_SIZE);
 
 	/**
 	 * constructor
 	 */
 	public XLWrapMaterializer() {
+		this(new MaterializationStats());
+	}
+	
+	/**
+	 * constructor
+	 * 
+	 * @param stats statistics to add to, e.g. kept across several materializers
+	 */
+	public XLWrapMaterializer(MaterializationStats stats) {
 		context = new ExecutionContext();
+		this.stats = stats;
+		stats.setSheetValueCache(context.getSheetValueCache());
 	}
 	
 	/**
@@ -67,7 +98,21 @@ public class XLWrapMaterializer {
 	 * @param pubbyPathPrefix
 	 */
 	public XLWrapMaterializer(String hostname, int port, String pubbyPathPrefix) {
+		this(hostname, port, pubbyPathPrefix, new MaterializationStats());
+	}
+	
+	/**
+	 * constructor for server environments
+	 * 
+	 * @param hostname
+	 * @param port
+	 * @param pubbyPathPrefix
+	 * @param stats statistics to add to, e.g. kept across several materializers
+	 */
+	public XLWrapMaterializer(String hostname, int port, String pubbyPathPrefix, MaterializationStats stats) {
 		context = new ExecutionContext(hostname, port, pubbyPathPrefix);
+		this.stats = stats;
+		stats.setSheetValueCache(context.getSheetValueCache());
 	}
 	
 	public Model generateModel(XLWrapMapping mapping) throws XLWrapException {
@@ -86,108 +131,431 @@ public class XLWrapMaterializer {
 	 * @throws XLWrapException
 	 */
 	public Model generateModel(XLWrapMapping mapping, Model targetModel) throws XLWrapException {
-		context.setTargetModel(targetModel);
-		
-		// for each template
+		generate(mapping, new GraphSink(targetModel.getGraph()));
+		return targetModel;
+	}
+	
+	/**
+	 * generate triples and push them into a sink one by one without building an intermediate model,
+	 * note that in contrast to a model, a sink may receive duplicate triples
+	 * 
+	 * @param mapping
+	 * @param sink
+	 * @throws XLWrapException
+	 */
+	public void generate(XLWrapMapping mapping, TripleSink sink) throws XLWrapException {
+		List<MapTemplate> templates = new ArrayList<MapTemplate>();
 		Iterator<MapTemplate> it = mapping.getMapTemplatesIterator();
-		MapTemplate nextTmpl;
-		while (it.hasNext()) {
-			nextTmpl = it.next();
-			nextTmpl.initAndValidate(context);
-			context.setActiveTemplate(nextTmpl);
+		while (it.hasNext())
+			templates.add(it.next());
+		
+		long start = System.currentTimeMillis();
+		context.getCellValueCache().resetCounters();
+		SheetValueCache sheetCache = context.getSheetValueCache();
+		if (sheetCache != null)
+			sheetCache.clear(); // decoded values are shared by the templates of a single run
+		sink.start();
+		if (threads > 1 && templates.size() > 1)
+			generateParallel(templates, sink);
+		else {
+			// scratch model used to create result nodes, may receive additional triples (e.g. rdf:Bag for lists)
+			Model nodeModel = new ModelCom( new GraphMem( ModelFactory.Standard ) );
+			context.setTargetModel(nodeModel);
+			
+			for (int i = 0; i < templates.size(); i++) {
+				MapTemplate tmpl = templates.get(i);
+				if (threads > 1 && chunkSize > 0 && tmpl.getTransformations().size() == 1 && tmpl.getTransformations().get(0) instanceof RowShift)
+					generateChunked(tmpl, i, sink);
+				else
+					generateTemplate(tmpl, i, context, sink);
+			}
+		}
+		sink.finish();
+		stats.runFinished(System.currentTimeMillis() - start);
+		
+		if (log.isDebugEnabled()) {
+			CellValueCache cache = context.getCellValueCache();
+			log.debug("Cell value cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses.");
+			if (sheetCache != null)
+				log.debug("Sheet value cache: " + sheetCache.getHits() + " hits, " + sheetCache.getMisses() + " misses, " + 
+						(sheetCache.getUsedBytes() / 1024) + " of " + (sheetCache.getMaxBytes() / 1024) + " KB used.");
+		}
+	}
+
+	/**
+	 * process templates in parallel, each worker uses a forked context sharing the opened workbooks
+	 * and a buffered sink forwarding triples to the target sink in batches
+	 * 
+	 * @param templates
+	 * @param sink
+	 * @throws XLWrapException
+	 */
+	private void generateParallel(List<MapTemplate> templates, final TripleSink sink) throws XLWrapException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, templates.size()));
+		try {
+			List<Future<Object>> results = new ArrayList<Future<Object>>();
+			for (int i = 0; i < templates.size(); i++) {
+				final MapTemplate tmpl = templates.get(i);
+				final int tmplIndex = i;
+				results.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						ExecutionContext workerContext = context.fork();
+						workerContext.setTargetModel(new ModelCom( new GraphMem( ModelFactory.Standard ) ));
+						BufferedSink buffer = new BufferedSink(sink);
+						generateTemplate(tmpl, tmplIndex, workerContext, buffer);
+						buffer.flush();
+						context.getCellValueCache().addCounters(workerContext.getCellValueCache());
+						return null;
+					}
+				}));
+			}
+			
+			// wait for all, re-throw the first failure
+			for (Future<Object> f : results) {
+				try {
+					f.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof XLWrapException)
+						throw (XLWrapException) e.getCause();
+					throw new XLWrapException("Failed to generate triples for map template.", e.getCause());
+				} catch (InterruptedException e) {
+					throw new XLWrapException("Interrupted while waiting for map templates.", e);
+				}
+			}
+		} finally {
+			shutdown(executor);
+		}
+	}
+	
+	/**
+	 * stop an executor and wait until all running tasks have returned, so no worker 
+	 * reads sheets or updates statistics after the caller continued
+	 * 
+	 * @param executor
+	 */
+	private static void shutdown(ExecutorService executor) {
+		executor.shutdownNow();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				if (executor.awaitTermination(1, TimeUnit.SECONDS))
+					break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+	
+	/**
+	 * process a single template with one RowShift in parallel by splitting its iterations into chunks,
+	 * the chunks are evaluated by workers with forked contexts and their triples are forwarded to the sink
+	 * in chunk order, so the output is the same as for sequential processing, 
+	 * the first chunk ending due to a break condition (or sheet bounds) ends the template,
+	 * chunks started speculatively after it are cancelled and their statistics are discarded,
+	 * templates of sheets which cannot read rows out of order (CSV streams) are processed sequentially
+	 * 
+	 * @param tmpl
+	 * @param tmplIndex position of the template in the mapping
+	 * @param sink
+	 * @throws XLWrapException
+	 */
+	private void generateChunked(MapTemplate tmpl, int tmplIndex, TripleSink sink) throws XLWrapException {
+		tmpl.initAndValidate(context);
+		Sheet sheet = context.getSheet(tmpl.getFileName(), tmpl.getSheetNum());
+		if (sheet instanceof CSVSheet && !((CSVSheet) sheet).isRandomAccess()) {
+			// chunks in flight would read rows far ahead of the stream, evicting rows still needed by earlier chunks
+			log.debug("Cannot process " + tmpl.getFileName() + " in chunks, rows are read from a stream.");
+			generateTemplate(tmpl, tmplIndex, context, sink);
+			return;
+		}
+		context.setActiveTemplate(tmpl);
+		context.getBlankNodeAllocator().startTemplate(blankNodePrefix, tmplIndex);
+		TemplateStats constStats = stats.createTemplateStats();
+		context.setStats(constStats);
+		TemplatePlan constPlan = tmpl.getConstantPlan();
+		boolean constAdded = false;
+		
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		// keep a limited number of chunks in flight, so buffered triples do not pile up
+		LinkedList<Chunk> pending = new LinkedList<Chunk>();
+		try {
+			int nextChunk = 0;
+			boolean exhausted = false;
+			while (!exhausted) {
+				while (pending.size() < 2 * threads && nextChunk >= 0) {
+					long from = (long) nextChunk * chunkSize;
+					if (from >= Integer.MAX_VALUE) {
+						nextChunk = -1;
+						break;
+					}
+					Chunk c = new Chunk(tmpl, tmplIndex, (int) from, (int) Math.min(from + chunkSize, Integer.MAX_VALUE));
+					c.future = executor.submit(c);
+					pending.add(c);
+					nextChunk++;
+				}
+				if (pending.isEmpty())
+					break;
+				
+				Chunk c = pending.removeFirst();
+				try {
+					c.future.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof XLWrapException)
+						throw (XLWrapException) e.getCause();
+					throw new XLWrapException("Failed to generate triples for map template.", e.getCause());
+				} catch (InterruptedException e) {
+					throw new XLWrapException("Interrupted while waiting for chunks of map template.", e);
+				}
+				
+				for (Triple t : c.triples)
+					sink.add(t);
+				c.mergeStats();
+				
+				// constant statements are equal for all iterations, add them only once
+				if (!constAdded && c.iterations > 0 && constPlan != null) {
+					try {
+						constPlan.execute(constPlan.getExpressions(), context, sink);
+					} catch (XLWrapEOFException e) {
+						log.warn("End of file reached, skipping constant statements.");
+					} finally {
+						flushNodeModel(context.getTargetModel(), sink);
+					}
+				}
+				constAdded |= c.iterations > 0;
+				exhausted = c.exhausted;
+			}
+		} finally {
+			// speculative chunks after the end of the template or a failure
+			for (Chunk c : pending) {
+				c.cancelled = true;
+				c.future.cancel(true);
+			}
+			shutdown(executor);
+			stats.add(getTemplateKey(tmpl, tmplIndex), constStats);
+		}
+	}
+	
+	/**
+	 * a chunk of iterations of a single map template, collects its triples for the chunked generation
+	 */
+	private class Chunk implements Callable<Chunk>, TripleSink {
+		private final MapTemplate tmpl;
+		private final int tmplIndex;
+		private final int from;
+		private final int to;
+		
+		private final List<Triple> triples = new ArrayList<Triple>();
+		private int iterations = 0;
+		private boolean exhausted = false;
+		
+		/** set if the output of the chunk is not needed anymore, checked once per iteration */
+		private volatile boolean cancelled = false;
+		private Future<Chunk> future;
+		
+		private ExecutionContext workerContext;
+		private TemplateStats chunkStats;
+		
+		public Chunk(MapTemplate tmpl, int tmplIndex, int from, int to) {
+			this.tmpl = tmpl;
+			this.tmplIndex = tmplIndex;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Chunk call() throws Exception {
+			workerContext = context.fork();
+			Model nodeModel = new ModelCom( new GraphMem( ModelFactory.Standard ) );
+			workerContext.setTargetModel(nodeModel);
+			workerContext.setActiveTemplate(tmpl);
+			BlankNodeAllocator bnodes = workerContext.getBlankNodeAllocator();
+			bnodes.startTemplate(blankNodePrefix, tmplIndex);
+			chunkStats = stats.createTemplateStats();
+			workerContext.setStats(chunkStats);
+			long start = System.nanoTime();
 			
-			// generate triples for template model in each stage
-			Model tmplModel;
-			TemplateModelGenerator mIt = new TemplateModelGenerator(context);
+			TemplatePlan plan = tmpl.getTemplatePlan();
+			TemplateModelGenerator mIt = new TemplateModelGenerator(workerContext, from, to);
 			while (mIt.hasNext()) {
-				tmplModel = mIt.next();
+				if (cancelled || Thread.currentThread().isInterrupted())
+					return this;
+				XLExpr[] exprs = mIt.next();
+				bnodes.startIteration(mIt.getIteration());
+				chunkStats.iterations++;
 				try {
-					addStatements(context, tmplModel);
-					Model constModel = nextTmpl.getConstantModel();
-					if (constModel != null)
-						addStatements(context, constModel);
+					plan.execute(exprs, workerContext, this);
+					iterations++;
 				} catch (XLWrapEOFException e) {
 					log.warn("End of file reached, skipping template.");
+					exhausted = true;
 					break;
+				} finally {
+					flushNodeModel(nodeModel, this);
 				}
 			}
+			exhausted |= mIt.isExhausted();
+			chunkStats.time = System.nanoTime() - start;
+			return this;
 		}
 		
-		return context.getTargetModel();
-	}
+		/**
+		 * add statistics and cache counters of the chunk, only called for chunks whose output is used
+		 */
+		private void mergeStats() {
+			context.getCellValueCache().addCounters(workerContext.getCellValueCache());
+			stats.add(getTemplateKey(tmpl, tmplIndex), chunkStats);
+		}
+		
+		public void start() {
+		}
+
+		public void add(Triple triple) {
+			triples.add(triple);
+		}
 
+		public void finish() {
+		}
+	}
+	
 	/**
-	 * add statements based on template model to target model
+	 * generate triples for a single map template
 	 * 
+	 * @param tmpl
+	 * @param tmplIndex position of the template in the mapping
 	 * @param context
-	 * @param tmplModel
+	 * @param sink
 	 * @throws XLWrapException
-	 * @throws XLWrapEOFException 
 	 */
-	private void addStatements(ExecutionContext context, Model tmplModel) throws XLWrapException, XLWrapEOFException {
-		Model target = context.getTargetModel();
+	private void generateTemplate(MapTemplate tmpl, int tmplIndex, ExecutionContext context, TripleSink sink) throws XLWrapException {
+		Model nodeModel = context.getTargetModel();
+		tmpl.initAndValidate(context);
+		context.setActiveTemplate(tmpl);
+		BlankNodeAllocator bnodes = context.getBlankNodeAllocator();
+		bnodes.startTemplate(blankNodePrefix, tmplIndex);
+		TemplateStats tmplStats = stats.createTemplateStats();
+		context.setStats(tmplStats);
+		long start = System.nanoTime();
 		
-		Resource s;
-		Resource p;
-		RDFNode o;
-
-		NodeReplacer replacer = context.getNodeReplacer();
-		replacer.scanXLWrapBNodes(tmplModel, context); // throws XLWrapEOFException
-		
-		StmtIterator sIt = tmplModel.listStatements();
-		Statement tmplStatement;
-		Triple triple;
-		
-		while (sIt.hasNext()) {
-			tmplStatement = sIt.nextStatement();
-
-			s = tmplStatement.getSubject();
-			p = tmplStatement.getPredicate();
-			o = tmplStatement.getObject();
-			
-			// TODO: don't copy model each time to get distinct bnodes, apply BNodeReplacer here 
-			
-			// skip if property is xl:uri or xl:id (already processed by NodeReplacer before)
-			if (p.isURIResource() && ( p.getURI().equals(XLWrap.uri.getURI()) || p.getURI().equals(XLWrap.id.getURI()) ) )
-				continue;
-
-			// skip if the Expr for one of the resources evaluated to null
-			if (replacer.isDeleted(s) || replacer.isDeleted(p) || replacer.isDeleted(o))
-				continue;
-			
-			// if anonymous, try to replace by NodeReplacer
-			if (s.isAnon())
-				s = replacer.replace(s);
-			if (p.isAnon())
-				p = replacer.replace(p);
-			if (o.isAnon())
-				o = replacer.replace(o.as(Resource.class)); // also for object, (:x :p [ xl:uri "http://ex.com"^^xl:Expr ]) == (:x :p "http://ex.com"^^xl:Expr)
-			
-			// evaluate XLWrap expressions
+		// generate triples for the compiled template in each stage
+		TemplatePlan plan = tmpl.getTemplatePlan();
+		TemplatePlan constPlan = tmpl.getConstantPlan();
+		boolean constAdded = false;
+		TemplateModelGenerator mIt = new TemplateModelGenerator(context);
+		while (mIt.hasNext()) {
+			XLExpr[] exprs = mIt.next();
+			bnodes.startIteration(mIt.getIteration());
+			tmplStats.iterations++;
 			try {
-				RDFNode newS = Utils.getEvaluatedNode(s, target, context);
-				RDFNode newP = Utils.getEvaluatedNode(p, target, context);
-				RDFNode newO = Utils.getEvaluatedNode(o, target, context);
-				if (newS == null || newP == null || newO == null) {
-					if (log.isTraceEnabled())
-						log.trace("Skip triple: " + newS + " " + newP + " " + newO);
-					continue;
-				}
-				if (!newS.isResource()) {
-					throw new XLWrapException("Literal in subject position: '" + newS + "'");
-				}
-				if (!newP.isURIResource()) {
-					throw new XLWrapException("Predicate must be URI: '" + newP + "'");
-				}
-				triple = new Triple(newS.asNode(), newP.asNode(), newO.asNode());
-				if (log.isTraceEnabled())
-					log.trace("Add triple: " + triple);
+				plan.execute(exprs, context, sink);
 				
-				target.getGraph().add(triple);
-			} catch (XLWrapEOFException eof) {
-				log.warn("End of file reached, skipping statement: " + tmplStatement);
+				// constant statements are equal for all iterations, add them only once
+				if (!constAdded && constPlan != null)
+					constPlan.execute(constPlan.getExpressions(), context, sink);
+				constAdded = true;
+			} catch (XLWrapEOFException e) {
+				log.warn("End of file reached, skipping template.");
+				break;
+			} finally {
+				flushNodeModel(nodeModel, sink);
 			}
 		}
-		sIt.close();
+		tmplStats.time = System.nanoTime() - start;
+		stats.add(getTemplateKey(tmpl, tmplIndex), tmplStats);
+	}
+	
+	/**
+	 * @param tmpl
+	 * @param tmplIndex
+	 * @return key of the template for statistics
+	 */
+	private String getTemplateKey(MapTemplate tmpl, int tmplIndex) {
+		StringBuilder sb = new StringBuilder();
+		if (blankNodePrefix.length() > 0)
+			sb.append(blankNodePrefix).append(" ");
+		sb.append("#").append(tmplIndex).append(" ").append(tmpl.getFileName());
+		if (tmpl.getSheetName() != null)
+			sb.append(" (Sheet '").append(tmpl.getSheetName()).append("')");
+		return sb.toString();
+	}
+	
+	/**
+	 * @return statistics per map template, accumulated over all runs until reset
+	 */
+	public MaterializationStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * @param threads number of threads used to process map templates in parallel
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	
+	/**
+	 * @return number of threads used to process map templates in parallel
+	 */
+	public int getThreads() {
+		return threads;
+	}
+	
+	/**
+	 * @param maxBytes approximate memory limit of the sheet value cache shared by all templates of a run, 0 to disable
+	 */
+	public void setSheetCacheSize(long maxBytes) {
+		SheetValueCache cache = (maxBytes > 0) ? new SheetValueCache(maxBytes) : null;
+		context.setSheetValueCache(cache);
+		stats.setSheetValueCache(cache);
+	}
+	
+	/**
+	 * @param chunkSize number of iterations per chunk if a single map template is processed in parallel, 0 to disable
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+	
+	/**
+	 * @return number of iterations per chunk if a single map template is processed in parallel
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+	
+	/**
+	 * blank node labels are allocated deterministically, so materializations of different mappings should
+	 * use different prefixes if they are merged
+	 * 
+	 * @param blankNodePrefix prefix for blank node labels
+	 */
+	public void setBlankNodePrefix(String blankNodePrefix) {
+		this.blankNodePrefix = blankNodePrefix;
+	}
+	
+	/**
+	 * @return prefix for blank node labels
+	 */
+	public String getBlankNodePrefix() {
+		return blankNodePrefix;
+	}
+	
+	/**
+	 * move additional triples created in the node model into the sink
+	 * 
+	 * @param nodeModel
+	 * @param sink
+	 * @throws XLWrapException
+	 */
+	private void flushNodeModel(Model nodeModel, TripleSink sink) throws XLWrapException {
+		if (nodeModel.isEmpty())
+			return;
+		
+		Iterator<Triple> it = nodeModel.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+		while (it.hasNext())
+			sink.add(it.next());
+		nodeModel.removeAll();
 	}
 }
@@ -15,27 +15,38 @@
  */
 package at.jku.xlwrap.map;
 
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.hp.hpl.jena.rdf.model.AnonId;
 
 /** 
  * bnode replacer: used for replacing bnodes with new ones
  * 
+ * new labels are assigned from a counter with a prefix unique for each replacer instead of random IDs
+ * 
  * @author dorgon
  *
  */
 public class BNodeReplacer {
-	private final Hashtable<AnonId, AnonId> old2new = new Hashtable<AnonId, AnonId>();
+	private static final AtomicInteger instances = new AtomicInteger();
+	
+	private final Map<AnonId, AnonId> old2new = new HashMap<AnonId, AnonId>();
+	private final String prefix;
+	private int counter = 0;
+	
+	public BNodeReplacer() {
+		prefix = "r" + instances.getAndIncrement() + "n";
+	}
 	
 	public AnonId getNew(AnonId old) {
-		if (old2new.keySet().contains(old))
-			return old2new.get(old);
-		else {
+		AnonId newId = old2new.get(old);
+		if (newId == null) {
 			// new entry
-			AnonId newId = AnonId.create();
+			newId = AnonId.create(prefix + (counter++));
 			old2new.put(old, newId);
-			return newId;
 		}
+		return newId;
 	}
-}
\ No newline at end of file
+}
@@ -30,6 +30,7 @@ import at.jku.xlwrap.common.Constants;
 import at.jku.xlwrap.common.Utils;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.exec.ExecutionContext;
+import at.jku.xlwrap.exec.TemplatePlan;
 import at.jku.xlwrap.map.expr.E_RangeRef;
 import at.jku.xlwrap.map.expr.XLExpr;
 import at.jku.xlwrap.map.expr.XLExprVisitor;
@@ -66,6 +67,10 @@ public class MapTemplate {
 	private final Model tmplModel;
 	private final Model constModel; // can be null
 	
+	// compiled lazily
+	private TemplatePlan tmplPlan = null;
+	private TemplatePlan constPlan = null;
+	
 	private final List<Transformation> transformations;
 	private final Map<String, RDFNode> constantDefs = new HashMap<String, RDFNode>();
 	
@@ -200,6 +205,24 @@ public class MapTemplate {
 		return constModel;
 	}
 	
+	/**
+	 * @return the compiled template graph
+	 */
+	public synchronized TemplatePlan getTemplatePlan() {
+		if (tmplPlan == null)
+			tmplPlan = TemplatePlan.compile(tmplModel, true);
+		return tmplPlan;
+	}
+	
+	/**
+	 * @return the compiled constant graph or null if there is none
+	 */
+	public synchronized TemplatePlan getConstantPlan() {
+		if (constPlan == null && constModel != null && !constModel.isEmpty())
+			constPlan = TemplatePlan.compile(constModel, false);
+		return constPlan;
+	}
+	
 	public String getConstantModelAsString() {
 		if (constModel == null)
 			return "";
@@ -15,9 +15,15 @@
  */
 package at.jku.xlwrap.map;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import at.jku.xlwrap.common.CanonicalKeys;
 import at.jku.xlwrap.common.Constants;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.map.expr.func.FunctionRegistry;
@@ -105,10 +111,21 @@ public class MappingParser {
 //				FunctionRegistry.registerPackage(fIt.next().getString());
 //			fIt.close();
 			
-			// parse map templates
+			// parse map templates in canonical order, so template indexes (e.g. in blank node labels) are equal in every run
+			List<Resource> templates = new ArrayList<Resource>();
 			StmtIterator tIt = mRes.listProperties(XLWrap.template);
-			while (tIt.hasNext()) {
-				Resource m = tIt.next().getResource();
+			while (tIt.hasNext())
+				templates.add(tIt.next().getResource());
+			tIt.close();
+			final CanonicalKeys keys = new CanonicalKeys(specModel);
+			Collections.sort(templates, new Comparator<Resource>() {
+				@Override
+				public int compare(Resource a, Resource b) {
+					return keys.getKey(a).compareTo(keys.getKey(b));
+				}
+			});
+			
+			for (Resource m : templates) {
 				String fileName = null;
 				Statement fn = m.getProperty(XLWrap.fileName);
 				if (fn == null)
@@ -128,7 +145,6 @@ public class MappingParser {
 					mapping.add(parseMapTemplate(m));
 				}
 			}
-			tIt.close();
 			
 			// offline flag set?
 			Statement offline = mRes.getProperty(XLWrap.offline);
@@ -111,31 +111,40 @@ public class XLWrapMapping {
 	 */
 	public Set<String> getReferredFiles() throws XLWrapException {
 		Set<String> referredFiles = new HashSet<String>();
-		for (MapTemplate tmpl : templates) {
-			
-			// base file
-			referredFiles.add(tmpl.getFileName());
-			
-			// files referred by FileRepeat
-			for (Transformation t : tmpl.getTransformations()) {
-				if (t instanceof FileRepeat)
-					referredFiles.addAll(((FileRepeat) t).getTargetFiles());
-			}
-			
-			// files referred by absolute cell references in xl:Expr
-			CollectFileNames coll = new CollectFileNames();
-			StmtIterator it = tmpl.getTemplateModel().listStatements();
-			while (it.hasNext()) {
-				Statement st = it.nextStatement();
-				XLExpr expr = Utils.getExpression(st.getObject().asNode());
-				if (expr != null)
-					XLExprWalker.walkPostOrder(expr, coll);
-			}
-			it.close();
-			
-			// add collected file names from xl:Expr ranges
-			referredFiles.addAll(coll.list);
+		for (MapTemplate tmpl : templates)
+			referredFiles.addAll(getReferredFiles(tmpl));
+		return referredFiles;
+	}
+	
+	/**
+	 * @param tmpl
+	 * @return files referred by a single template of the mapping
+	 * @throws XLWrapException 
+	 */
+	public Set<String> getReferredFiles(MapTemplate tmpl) throws XLWrapException {
+		Set<String> referredFiles = new HashSet<String>();
+		// base file
+		referredFiles.add(tmpl.getFileName());
+		
+		// files referred by FileRepeat
+		for (Transformation t : tmpl.getTransformations()) {
+			if (t instanceof FileRepeat)
+				referredFiles.addAll(((FileRepeat) t).getTargetFiles());
 		}
+		
+		// files referred by absolute cell references in xl:Expr
+		CollectFileNames coll = new CollectFileNames();
+		StmtIterator it = tmpl.getTemplateModel().listStatements();
+		while (it.hasNext()) {
+			Statement st = it.nextStatement();
+			XLExpr expr = Utils.getExpression(st.getObject().asNode());
+			if (expr != null)
+				XLExprWalker.walkPostOrder(expr, coll);
+		}
+		it.close();
+		
+		// add collected file names from xl:Expr ranges
+		referredFiles.addAll(coll.list);
 
 		return referredFiles;
 	}
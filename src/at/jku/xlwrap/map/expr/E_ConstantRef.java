@@ -67,7 +67,7 @@ public class E_ConstantRef extends XLExpr0 {
 			return new E_URI(constant.as(Resource.class).getURI());
 		}
 		if (constant.isAnon()) {
-			return new E_BlankNode();
+			return new E_BlankNode(context.getBlankNodeAllocator().nextId());
 		}
 		Literal l = constant.as(Literal.class);
 		if (!XLWrap.Expr.getURI().equals(l.getDatatypeURI())) {
@@ -25,7 +25,6 @@ import at.jku.xlwrap.exec.ExecutionContext;
 import at.jku.xlwrap.map.expr.val.XLExprValue;
 import at.jku.xlwrap.map.range.CellRange;
 import at.jku.xlwrap.map.range.Range;
-import at.jku.xlwrap.spreadsheet.Cell;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 
 
@@ -76,16 +75,14 @@ public class E_RangeRef extends XLExpr0 {
 		if (!(absolute instanceof CellRange))
 			throw new XLWrapException("Cannot get value from multi range: " + range + ", needs to be wrapped by another function such as SUM() producing a single value.");
 		else {
-			Cell cell;
 			CellRange cr = (CellRange) absolute;
 			try {
-				cell = context.getCell(cr);
+				return context.getCellValue(cr); // cached for the current iteration
 			} catch (XLWrapEOFException eof) {
 				throw eof;
 			} catch (Exception e) {
 				throw new XLWrapException("Failed to get cell " + cr + ".", e); 
 			}
-			return Utils.getXLExprValue(cell);
 		}
 	}
 
@@ -25,11 +25,14 @@ import at.jku.xlwrap.map.expr.E_RangeRef;
 import at.jku.xlwrap.map.expr.TypeCast;
 import at.jku.xlwrap.map.expr.XLExpr;
 import at.jku.xlwrap.map.expr.func.XLExprFunction;
+import at.jku.xlwrap.map.expr.val.E_Double;
+import at.jku.xlwrap.map.expr.val.E_Long;
 import at.jku.xlwrap.map.expr.val.XLExprNumber;
 import at.jku.xlwrap.map.expr.val.XLExprValue;
 import at.jku.xlwrap.map.range.Range;
 import at.jku.xlwrap.map.range.Range.CellIterator;
-import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
+import at.jku.xlwrap.spreadsheet.TypeAnnotation;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 
 /**
@@ -63,21 +66,54 @@ public class E_FuncSUM extends XLExprFunction {
 			if (arg instanceof E_RangeRef) {
 				Range range = ((E_RangeRef) arg).getRange();
 				
-				// iterate over cells and sum up values string with an integer
+				// iterate over cells and sum up numbers as primitives, long until the first fraction
 				CellIterator it = range.getCellIterator(context);
+				CellValueHolder value = new CellValueHolder();
+				boolean any = false;
+				boolean fraction = false;
+				long longSum = 0;
+				double doubleSum = 0;
 				while (it.hasNext()) {
-					Cell cell = it.next();
-					XLExprNumber<?> other = TypeCast.toExprNumber(Utils.getXLExprValue(cell));
-					if (other == null) {
-						log.warn("Null value encountered in " + toString() + " for cell " + cell.getCellInfo() + ", skipping...");
-						return null;
+					it.next(value);
+					if (value.getType() == TypeAnnotation.NUMBER) {
+						double d = value.getNumber();
+						if (!fraction && (long) d == d)
+							longSum += (long) d;
+						else {
+							if (!fraction) {
+								doubleSum = longSum;
+								fraction = true;
+							}
+							doubleSum += d;
+						}
+					} else {
+						// other types are cast like single values (e.g. numeric strings)
+						XLExprNumber<?> other = TypeCast.toExprNumber(Utils.getXLExprValue(value));
+						if (other == null) {
+							log.warn("Null value encountered in " + toString() + " for cell value " + value + ", skipping...");
+							return null;
+						}
+						if (!fraction && other instanceof E_Long)
+							longSum += ((E_Long) other).getValue();
+						else {
+							if (!fraction) {
+								doubleSum = longSum;
+								fraction = true;
+							}
+							doubleSum += ((Number) other.getValue()).doubleValue();
+						}
 					}
-					total = (total != null) ? total.add(other) : other;
+					any = true;
+				}
+				
+				if (any) {
+					XLExprNumber<?> sum = fraction ? new E_Double(doubleSum) : new E_Long(longSum);
+					total = (total != null) ? total.add(sum) : sum;
 				}
 			} else if (arg instanceof XLExprNumber)
 				total = (total != null) ? total.add((XLExprNumber<?>) arg) : (XLExprNumber<?>) arg;
-				
-			throw new XLWrapException("Invalid arguments: " + toString() + ".");
+			else
+				throw new XLWrapException("Invalid arguments: " + toString() + ".");
 		}
 		return total;
 	}	
@@ -15,7 +15,6 @@
  */
 package at.jku.xlwrap.map.expr.func.spreadsheet;
 
-import at.jku.xlwrap.common.Utils;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.exec.ExecutionContext;
 import at.jku.xlwrap.map.expr.E_RangeRef;
@@ -25,6 +24,7 @@ import at.jku.xlwrap.map.expr.val.E_Boolean;
 import at.jku.xlwrap.map.expr.val.XLExprValue;
 import at.jku.xlwrap.map.range.Range;
 import at.jku.xlwrap.map.range.Range.CellIterator;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 
 /**
@@ -54,8 +54,10 @@ public class E_FuncEMPTY extends XLExprFunction {
 		// every cell must be empty (conjunction)
 		Range range = ((E_RangeRef) args.get(0)).getRange();
 		CellIterator it = range.getCellIterator(context);
+		CellValueHolder value = new CellValueHolder();
 		while (it.hasNext()) {
-			if (Utils.getXLExprValue(it.next()) != null)
+			it.next(value);
+			if (!value.isNull())
 				return E_Boolean.FALSE;
 		}
 		
@@ -20,7 +20,8 @@ public class XLExpression implements XLExpressionConstants {
                 System.out.println("OK: " + e);
         }
 
-        public static XLExpr parse(String input) throws ParseException {
+        // the generated parser is static, synchronized for parallel materialization
+        public static synchronized XLExpr parse(String input) throws ParseException {
                 if (initialized == null)
                         initialized = new XLExpression(new StringReader(input));
                 else
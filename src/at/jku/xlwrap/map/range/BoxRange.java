@@ -25,6 +25,7 @@ import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.exec.ExecutionContext;
 import at.jku.xlwrap.map.MapTemplate;
 import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
 import at.jku.xlwrap.spreadsheet.Sheet;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 
@@ -235,6 +236,30 @@ public class BoxRange extends Range {
 		}
 		return this;
 	}
+
+	@Override
+	public boolean moveTo(Range origin, int cols, int rows, int sheets) throws IndexOutOfBoundsException {
+		if (!(origin instanceof BoxRange))
+			return false;
+		BoxRange o = (BoxRange) origin;
+		if (sheets != 0 && (o.sheetNum1 == null || o.sheetNum2 == null))
+			return false;
+		if (o.col1 + cols < 0)
+			throw new IndexOutOfBoundsException("Attempt to shift col1 below zero.");
+		if (o.row1 + rows < 0)
+			throw new IndexOutOfBoundsException("Attempt to shift row1 below zero.");
+
+		fileName = o.fileName;
+		sheet1 = o.sheet1;
+		sheet2 = o.sheet2;
+		sheetNum1 = (sheets != 0) ? Integer.valueOf(o.sheetNum1 + sheets) : o.sheetNum1;
+		sheetNum2 = (sheets != 0) ? Integer.valueOf(o.sheetNum2 + sheets) : o.sheetNum2;
+		col1 = o.col1 + cols;
+		col2 = o.col2 + cols;
+		row1 = o.row1 + rows;
+		row2 = o.row2 + rows;
+		return true;
+	}
 	
 // misc functions
 	
@@ -262,10 +287,28 @@ public class BoxRange extends Range {
 						&& sheetPointer <= range.sheetNum2;
 			}
 			
+			/** sheet of sheetPointer, resolved when the pointer moves to another sheet */
+			private Sheet sheet;
+			private int sheetOf = -1;
+			
 			@Override
 			public Cell next() throws XLWrapException, XLWrapEOFException {
 				Cell cell = context.getCell(range.fileName, sheetPointer, colPointer, rowPointer);
-				
+				advance();
+				return cell;
+			}
+			
+			@Override
+			public void next(CellValueHolder holder) throws XLWrapException, XLWrapEOFException {
+				if (sheetOf != sheetPointer) {
+					sheet = context.getSheet(range.fileName, sheetPointer);
+					sheetOf = sheetPointer;
+				}
+				sheet.readCell(colPointer, rowPointer, holder);
+				advance();
+			}
+			
+			private void advance() {
 				if (colPointer < range.col2)
 					colPointer++;
 				else {
@@ -278,7 +321,6 @@ public class BoxRange extends Range {
 						colPointer = range.col1;
 					}
 				}	
-				return cell;
 			}
 		};
 	}
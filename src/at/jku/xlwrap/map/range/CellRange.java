@@ -25,6 +25,7 @@ import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.exec.ExecutionContext;
 import at.jku.xlwrap.map.MapTemplate;
 import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
 import at.jku.xlwrap.spreadsheet.Sheet;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 
@@ -186,6 +187,26 @@ public class CellRange extends Range {
 			setSheetNumber(n);
 		return this;
 	}
+
+	@Override
+	public boolean moveTo(Range origin, int cols, int rows, int sheets) throws IndexOutOfBoundsException {
+		if (!(origin instanceof CellRange))
+			return false;
+		CellRange o = (CellRange) origin;
+		if (sheets != 0 && o.sheetNum == null)
+			return false;
+		if (o.col + cols < 0)
+			throw new IndexOutOfBoundsException("Attempt to shift column below zero.");
+		if (o.row + rows < 0)
+			throw new IndexOutOfBoundsException("Attempt to shift row below zero.");
+
+		fileName = o.fileName;
+		sheetName = o.sheetName;
+		sheetNum = (sheets != 0) ? Integer.valueOf(o.sheetNum + sheets) : o.sheetNum;
+		col = o.col + cols;
+		row = o.row + rows;
+		return true;
+	}
 	
 	@Override
 	public Range copy() {
@@ -255,6 +276,15 @@ public class CellRange extends Range {
 				} else
 					return null;
 			}			
+			
+			@Override
+			public void next(CellValueHolder holder) throws XLWrapException, XLWrapEOFException {
+				if (range != null) {
+					context.getSheet(range).readCell(range.getColumn(), range.getRow(), holder);
+					range = null;
+				} else
+					holder.setNull();
+			}
 		};
 	}
 	
@@ -21,6 +21,7 @@ import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.exec.ExecutionContext;
 import at.jku.xlwrap.map.MapTemplate;
 import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
 import at.jku.xlwrap.spreadsheet.Sheet;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 
@@ -124,6 +125,20 @@ public class FullSheetRange extends Range {
 		return this;
 	}
 
+	@Override
+	public boolean moveTo(Range origin, int cols, int rows, int sheets) throws IndexOutOfBoundsException {
+		if (!(origin instanceof FullSheetRange))
+			return false;
+		FullSheetRange o = (FullSheetRange) origin;
+		if (sheets != 0 && o.sheetNum == null)
+			return false;
+
+		fileName = o.fileName;
+		sheetName = o.sheetName;
+		sheetNum = (sheets != 0) ? Integer.valueOf(o.sheetNum + sheets) : o.sheetNum;
+		return true;
+	}
+
 // misc functions
 	
 	@Override
@@ -135,6 +150,7 @@ public class FullSheetRange extends Range {
 			private int rowPointer;
 			private int colMax;
 			private int rowMax;
+			private Sheet sheet;
 
 			@Override
 			public void init(Range r) throws XLWrapException {
@@ -143,9 +159,9 @@ public class FullSheetRange extends Range {
 				colPointer = 0;
 				rowPointer = 0;
 				
-				Sheet s = context.getSheet(range.fileName, range.sheetNum);
-				colMax = s.getColumns() - 1;
-				rowMax = s.getRows() - 1;
+				sheet = context.getSheet(range.fileName, range.sheetNum);
+				colMax = sheet.getColumns() - 1;
+				rowMax = sheet.getRows() - 1;
 			}
 		
 			@Override
@@ -156,13 +172,23 @@ public class FullSheetRange extends Range {
 			@Override
 			public Cell next() throws XLWrapException, XLWrapEOFException {
 				Cell cell = context.getCell(range.fileName, range.sheetNum, colPointer, rowPointer);
+				advance();
+				return cell;
+			}
+			
+			@Override
+			public void next(CellValueHolder holder) throws XLWrapException, XLWrapEOFException {
+				sheet.readCell(colPointer, rowPointer, holder);
+				advance();
+			}
+			
+			private void advance() {
 				if (colPointer < colMax)
 					colPointer++;
 				else {
 					colPointer = 0;
 					rowPointer++;
 				}
-				return cell;
 			}
 		};
 	}
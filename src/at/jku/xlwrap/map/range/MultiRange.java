@@ -22,6 +22,7 @@ import java.util.List;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.exec.ExecutionContext;
 import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 
 /**
@@ -140,6 +141,13 @@ public class MultiRange extends Range {
 				return next;
 			}
 			
+			@Override
+			public void next(CellValueHolder holder) throws XLWrapException, XLWrapEOFException {
+				current.next(holder);
+				if (!current.hasNext())
+					nextIterator();
+			}
+			
 		};
 	}
 	
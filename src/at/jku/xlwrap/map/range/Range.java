@@ -19,6 +19,7 @@ import at.jku.xlwrap.common.Copy;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.exec.ExecutionContext;
 import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 
 
@@ -104,6 +105,20 @@ public abstract class Range implements Copy<Range>{
 	 */
 	public abstract Range changeSheetNumber(int n, Range restrict, ExecutionContext context) throws XLWrapException;
 
+	/**
+	 * sets this range to the origin range moved by the given offsets, no objects are created
+	 *
+	 * @param origin a range of the same type, must have sheet numbers set if sheets is not zero
+	 * @param cols columns to shift
+	 * @param rows rows to shift
+	 * @param sheets sheets to shift
+	 * @return false if this range cannot be moved in place (it is unchanged then)
+	 * @throws IndexOutOfBoundsException
+	 */
+	public boolean moveTo(Range origin, int cols, int rows, int sheets) throws IndexOutOfBoundsException {
+		return false;
+	}
+
 
 // misc methods
 
@@ -168,6 +183,17 @@ public abstract class Range implements Copy<Range>{
 		public abstract boolean hasNext() throws XLWrapException;
 		public abstract Cell next() throws XLWrapException, XLWrapEOFException;
 		
+		/**
+		 * read the next cell into a caller-owned holder, override to avoid creating cells
+		 * 
+		 * @param holder
+		 * @throws XLWrapException
+		 * @throws XLWrapEOFException
+		 */
+		public void next(CellValueHolder holder) throws XLWrapException, XLWrapEOFException {
+			holder.set(next());
+		}
+		
 	}
 
 }
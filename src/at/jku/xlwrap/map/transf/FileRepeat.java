@@ -89,6 +89,8 @@ public class FileRepeat extends TransformationBase {
 			
 			@Override
 			public Range transform(Range range, Range restriction) throws XLWrapException {
+				if (file == null) // not yet started
+					return range;
 				return range.changeFileName(file, restriction, context);
 			}
 			
@@ -63,13 +63,28 @@ public class RowShift extends Shift {
 				} else
 					return false;
 			}
+			
+			@Override
+			protected int skip(int n) {
+				int skipped = Math.min(n, repeat - count);
+				count += skipped;
+				return skipped;
+			}
 
+			@Override
+			public boolean isOffset() {
+				return true;
+			}
+			
+			@Override
+			public int getRowOffset() {
+				return (count > 1) ? (count-1) * shift : 0; // absolute shift for the current count
+			}
+			
 			@Override
 			public Range transform(Range range, Range restriction) throws IndexOutOfBoundsException, XLWrapException {
-				if (count > 1)
-					return range.shiftRows(shift, restriction, context);
-				else
-					return range;
+				int n = getRowOffset();
+				return (n != 0) ? range.shiftRows(n, restriction, context) : range;
 			}
 
 			@Override
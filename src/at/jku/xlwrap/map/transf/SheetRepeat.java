@@ -93,6 +93,8 @@ public class SheetRepeat extends TransformationBase {
 			
 			@Override
 			public Range transform(Range range, Range restriction) throws XLWrapException {
+				if (sheet == null) // not yet started
+					return range;
 				return range.changeSheetName(sheet, restriction, context);
 			}
 
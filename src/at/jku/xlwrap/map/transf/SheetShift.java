@@ -63,13 +63,28 @@ public class SheetShift extends Shift {
 				} else
 					return false;
 			}
+			
+			@Override
+			protected int skip(int n) {
+				int skipped = Math.min(n, repeat - count);
+				count += skipped;
+				return skipped;
+			}
 
+			@Override
+			public boolean isOffset() {
+				return true;
+			}
+			
+			@Override
+			public int getSheetOffset() {
+				return (count > 1) ? (count-1) * shift : 0; // absolute shift for the current count
+			}
+			
 			@Override
 			public Range transform(Range range, Range restriction) throws XLWrapException {
-				if (count > 1)
-					return range.shiftSheets(shift, restriction, context);
-				else
-					return range;
+				int n = getSheetOffset();
+				return (n != 0) ? range.shiftSheets(n, restriction, context) : range;
 			}
 			
 			@Override
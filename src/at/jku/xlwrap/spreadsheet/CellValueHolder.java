@@ -0,0 +1,185 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.spreadsheet;
+
+import at.jku.xlwrap.common.Constants;
+import at.jku.xlwrap.common.XLWrapException;
+
+/**
+ * @author dorgon
+ *
+ * Caller-owned, reusable receiver of a cell value, filled by {@link Sheet#readCell(int, int, CellValueHolder)} 
+ * without creating a {@link Cell} per access. Holds the type plus a primitive or a CharSequence. 
+ * Text may refer to the internal buffer of the holder or to a buffer of the sheet, so it is only 
+ * valid until the holder is filled again; use {@link #getString()} to keep it.
+ */
+public class CellValueHolder {
+	private TypeAnnotation type = TypeAnnotation.NULL;
+	private double number;
+	private boolean bool;
+	private long date;
+	private CharSequence text;
+	
+	/** reused by backends decoding text, see {@link #textBuffer()} */
+	private final StringBuilder buffer = new StringBuilder();
+	
+	/**
+	 * empty cell
+	 */
+	public void setNull() {
+		type = TypeAnnotation.NULL;
+		text = null;
+	}
+	
+	/**
+	 * @param number
+	 */
+	public void setNumber(double number) {
+		type = TypeAnnotation.NUMBER;
+		this.number = number;
+		text = null;
+	}
+	
+	/**
+	 * @param bool
+	 */
+	public void setBoolean(boolean bool) {
+		type = TypeAnnotation.BOOLEAN;
+		this.bool = bool;
+		text = null;
+	}
+	
+	/**
+	 * @param date milliseconds since 1970-01-01 UTC
+	 */
+	public void setDate(long date) {
+		type = TypeAnnotation.DATE;
+		this.date = date;
+		text = null;
+	}
+	
+	/**
+	 * zero-length text is NULL if {@link Constants#EMPTY_STRING_AS_NULL} is set
+	 * 
+	 * @param text may be the {@link #textBuffer()}
+	 */
+	public void setText(CharSequence text) {
+		if (text == null || Constants.EMPTY_STRING_AS_NULL && text.length() == 0)
+			setNull();
+		else {
+			type = TypeAnnotation.TEXT;
+			this.text = text;
+		}
+	}
+	
+	/**
+	 * @return the cleared internal buffer to decode text into, passed to {@link #setText(CharSequence)} afterwards
+	 */
+	public StringBuilder textBuffer() {
+		buffer.setLength(0);
+		return buffer;
+	}
+	
+	/**
+	 * fill from a cell, used for sources without a direct implementation
+	 * 
+	 * @param cell may be null
+	 * @throws XLWrapException
+	 */
+	public void set(Cell cell) throws XLWrapException {
+		if (cell == null) {
+			setNull();
+			return;
+		}
+		
+		TypeAnnotation t = cell.getType();
+		if (t == TypeAnnotation.NUMBER)
+			setNumber(cell.getNumber());
+		else if (t == TypeAnnotation.DATE)
+			setDate(cell.getDate().getTime());
+		else if (t == TypeAnnotation.BOOLEAN)
+			setBoolean(cell.getBoolean());
+		else if (t == TypeAnnotation.NULL)
+			setNull();
+		else
+			setText(cell.getText());
+	}
+	
+	/**
+	 * @return the type, NULL for empty cells
+	 */
+	public TypeAnnotation getType() {
+		return type;
+	}
+	
+	/**
+	 * @return true if the cell is empty
+	 */
+	public boolean isNull() {
+		return type == TypeAnnotation.NULL;
+	}
+	
+	/**
+	 * @return value of NUMBER cells
+	 */
+	public double getNumber() {
+		return number;
+	}
+	
+	/**
+	 * @return value of BOOLEAN cells
+	 */
+	public boolean getBoolean() {
+		return bool;
+	}
+	
+	/**
+	 * @return value of DATE cells in milliseconds since 1970-01-01 UTC
+	 */
+	public long getDate() {
+		return date;
+	}
+	
+	/**
+	 * @return value of TEXT cells, only valid until the holder is filled again
+	 */
+	public CharSequence getText() {
+		return text;
+	}
+	
+	/**
+	 * @return value of TEXT cells as a new String
+	 */
+	public String getString() {
+		return text != null ? text.toString() : null;
+	}
+	
+	@Override
+	public String toString() {
+		switch (type) {
+		case NUMBER:
+			return type + " " + number;
+		case BOOLEAN:
+			return type + " " + bool;
+		case DATE:
+			return type + " " + date;
+		case TEXT:
+			return type + " " + text;
+		default:
+			return type.toString();
+		}
+	}
+}
@@ -31,6 +31,18 @@ public interface Sheet {
 	 */
 	public Cell getCell(int column, int row) throws XLWrapException, XLWrapEOFException;
 
+	/**
+	 * read the value of a cell into a caller-owned holder without creating a {@link Cell}, 
+	 * types are the same as for {@link #getCell(int, int)}
+	 * 
+	 * @param column
+	 * @param row
+	 * @param holder receives the type and value
+	 * @throws XLWrapException
+	 * @throws XLWrapEOFException
+	 */
+	public void readCell(int column, int row, CellValueHolder holder) throws XLWrapException, XLWrapEOFException;
+
 	/**
 	 * @return
 	 */
@@ -15,7 +15,7 @@
  */
 package at.jku.xlwrap.spreadsheet;
 
-import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -23,26 +23,29 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
+import at.jku.xlwrap.common.Constants;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.spreadsheet.csv.CSVParseConfig;
 import at.jku.xlwrap.spreadsheet.csv.CSVWorkbook;
 import at.jku.xlwrap.spreadsheet.excel.ExcelWorkbook;
+import at.jku.xlwrap.spreadsheet.opendoc.OpenDocumentStreamWorkbook;
 import at.jku.xlwrap.spreadsheet.opendoc.OpenDocumentWorkbook;
+import at.jku.xlwrap.spreadsheet.xlsx.XLSXWorkbook;
 
 import com.hp.hpl.jena.util.FileUtils;
 
-import org.apache.tika.metadata.Metadata;
-import org.apache.tika.parser.AutoDetectParser;
-import org.apache.tika.parser.ParseContext;
-import org.apache.tika.parser.Parser;
-import org.apache.tika.sax.BodyContentHandler;
-import org.xml.sax.ContentHandler;
-
 /**
  * @author dorgon
  *
@@ -73,6 +76,15 @@ public class WorkbookFactory {
 		mimeToType.put("text/csv", Type.CSV);
 	}
 	
+	/** number of bytes read to detect the type of a file without a known extension */
+	private static final int SNIFF_BYTES = 4096;
+	
+	/** maximum number of bytes transferred per call when downloading */
+	private static final long DOWNLOAD_CHUNK = 1 << 20;
+	
+	private static final byte[] OLE2_MAGIC = { (byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1 };
+	private static final byte[] ZIP_MAGIC = { 'P', 'K', 3, 4 };
+	
 	/**
 	 * @param fileName
 	 * @return
@@ -81,24 +93,40 @@ public class WorkbookFactory {
 	public static Workbook getWorkbook(String fileName) throws XLWrapException {
 		String ext = fileName.substring(fileName.lastIndexOf(".")+1, fileName.length());
 		Type t = extToType.get(ext);
+		
+		// unknown extension: download once and detect the type from the local copy
+		File local = null;
 		if (t == null) {
-			t = getTypeFromContent(fileName);			
+			try {
+				local = FileUtils.isURI(fileName) ? downloadToTemp(fileName) : new File(fileName);
+			} catch (IOException e) {
+				throw new XLWrapException("Failed to download spreadsheet from <" + fileName + ">.", e);
+			}
+			t = getTypeFromContent(local);
 		}
 		try {
 			switch(t) {
 			case MSEXCEL:
-				return new ExcelWorkbook(open(fileName), fileName);
+				return new ExcelWorkbook((local != null) ? new FileInputStream(local) : open(fileName), fileName);
 
 			case OPENDOCUMENT:
-				File f = null;
-				if (FileUtils.isURI(fileName))
-					f = downloadToTemp(fileName); //TODO test
+				File f = (local != null) ? local : toFile(fileName);
+				if (Constants.ODS_STREAMING)
+					return new OpenDocumentStreamWorkbook(f, fileName);
 				else
-					f = new File(fileName);
-				return new OpenDocumentWorkbook(f, fileName);
+					return new OpenDocumentWorkbook(f, fileName);
+			
+			case OFFICEOPENXML:
+				return new XLSXWorkbook((local != null) ? local : toFile(fileName), fileName);
 			
 			case CSV:
-				return new CSVWorkbook(open(fileName), fileName);
+				Charset charset = Charset.forName(System.getProperty(Constants.SYSTEMPROPERTY_CSV_ENCODING, Constants.DEFAULT_CSV_ENCODING));
+				if (Constants.CSV_MAPPED && local != null)
+					return new CSVWorkbook(local, fileName, charset);
+				else if (Constants.CSV_MAPPED && !FileUtils.isURI(fileName))
+					return new CSVWorkbook(new File(fileName), fileName, charset);
+				else
+					return new CSVWorkbook((local != null) ? new FileInputStream(local) : open(fileName), fileName, charset);
 				
 			default:
 				throw new XLWrapException("Cannot open document '" + fileName + "', file type is not recognized.");
@@ -111,38 +139,118 @@ public class WorkbookFactory {
 	}
 	
 	/**
-	 * @param fileName
-	 * @return Type
+	 * detect the type from the first bytes of a file: OLE2 compound document (BIFF), ZIP container
+	 * (ODF mimetype entry or xl/ part of Office Open XML), or plain text (CSV)
+	 * 
+	 * @param file
+	 * @return Type, UNKNOWN if not recognized
 	 * @throws XLWrapException 
 	 */
-	private static Type getTypeFromContent(String fileName) throws XLWrapException {
-		Type type = null;
-	    InputStream is = null;
-	    try {
-	      is = open(fileName);
-	      ContentHandler contenthandler = new BodyContentHandler();
-	      Metadata metadata = new Metadata();
-	      metadata.set(Metadata.RESOURCE_NAME_KEY, fileName);
-	      Parser parser = new AutoDetectParser();
-	      parser.parse(is, contenthandler, metadata, new ParseContext());
-	      String mimeType = metadata.get(Metadata.CONTENT_TYPE);
-	      if (mimeType != null)
-	    	  type = mimeToType.get(mimeType);
-	    } catch (Exception e) {
-	    	throw new XLWrapException("Unable to read file " + fileName, e);
-	    } finally {
-	        if (is != null) {
-	        	try {
-	        		is.close();
-	        	} catch (Exception exc) {
-	        		// ignore
-	        	}
-	        }
-	    }	
-	    if (type == null) {
-	    	type = Type.UNKNOWN;
-	    }
-	    return type;
+	public static Type getTypeFromContent(File file) throws XLWrapException {
+		byte[] head = new byte[SNIFF_BYTES];
+		int len = 0;
+		InputStream is = null;
+		try {
+			is = new FileInputStream(file);
+			int n;
+			while (len < head.length && (n = is.read(head, len, head.length - len)) > 0)
+				len += n;
+		} catch (IOException e) {
+			throw new XLWrapException("Unable to read file " + file, e);
+		} finally {
+			close(is);
+		}
+		
+		if (startsWith(head, len, OLE2_MAGIC))
+			return Type.MSEXCEL;
+		else if (startsWith(head, len, ZIP_MAGIC))
+			return getTypeFromZip(file);
+		else if (isText(head, len))
+			return Type.CSV;
+		else
+			return Type.UNKNOWN;
+	}
+	
+	/**
+	 * @param file ZIP container
+	 * @return Type by the mimetype entry (ODF) or xl/ entries (Office Open XML), UNKNOWN otherwise
+	 * @throws XLWrapException
+	 */
+	private static Type getTypeFromZip(File file) throws XLWrapException {
+		ZipFile zip = null;
+		try {
+			zip = new ZipFile(file);
+			ZipEntry mimetype = zip.getEntry("mimetype");
+			if (mimetype != null) {
+				byte[] buf = new byte[256];
+				int len = 0;
+				InputStream is = zip.getInputStream(mimetype);
+				try {
+					int n;
+					while (len < buf.length && (n = is.read(buf, len, buf.length - len)) > 0)
+						len += n;
+				} finally {
+					is.close();
+				}
+				Type t = mimeToType.get(new String(buf, 0, len, "US-ASCII").trim());
+				return (t != null) ? t : Type.UNKNOWN;
+			}
+			
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements())
+				if (entries.nextElement().getName().startsWith("xl/"))
+					return Type.OFFICEOPENXML;
+			return Type.UNKNOWN;
+		} catch (IOException e) {
+			throw new XLWrapException("Unable to read ZIP container " + file, e);
+		} finally {
+			if (zip != null) {
+				try {
+					zip.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+	
+	private static boolean startsWith(byte[] b, int len, byte[] prefix) {
+		if (len < prefix.length)
+			return false;
+		for (int i = 0; i < prefix.length; i++)
+			if (b[i] != prefix[i])
+				return false;
+		return true;
+	}
+	
+	/**
+	 * @return true for UTF-16 with BOM or text without NUL and (almost) without other control characters, 
+	 * 		which does not look like markup (e.g. an HTML error page)
+	 */
+	private static boolean isText(byte[] b, int len) {
+		if (len >= 2 && (b[0] == (byte) 0xFE && b[1] == (byte) 0xFF || b[0] == (byte) 0xFF && b[1] == (byte) 0xFE))
+			return true;
+		
+		int start = startsWith(b, len, new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF }) ? 3 : 0;
+		int control = 0;
+		int first = -1;
+		for (int i = start; i < len; i++) {
+			int c = b[i] & 0xff;
+			if (c == 0)
+				return false;
+			else if (c < 0x20 && c != '\t' && c != '\n' && c != '\r' && c != '\f')
+				control++;
+			else if (first < 0 && c > ' ')
+				first = c;
+		}
+		return first != '<' && control * 100 <= len;
+	}
+	
+	private static File toFile(String fileName) throws IOException, XLWrapException {
+		if (FileUtils.isURI(fileName))
+			return downloadToTemp(fileName);
+		else
+			return new File(fileName);
 	}
 
 	/**
@@ -151,36 +259,47 @@ public class WorkbookFactory {
 	 * @throws XLWrapException 
 	 */
 	private static File downloadToTemp(String fileName) throws IOException, XLWrapException {
-		String tmpDir = System.getProperty("java.io.tmpdir");
-		if (!tmpDir.endsWith(File.pathSeparator))
-			tmpDir = "/" + tmpDir;
-		
-		URL url = new URL(fileName);
-		InputStream in = url.openStream();
-		
 		String file = null;
 		Matcher m = Pattern.compile("^.*\\/(.*)$").matcher(fileName);
     	if (m.find())
     		file = m.group(1);
 		
-		File tmp = new File(tmpDir + file);
-		BufferedOutputStream out;
+    	// unique name keeping the original name as suffix (and its extension)
+		File tmp;
+		FileOutputStream out;
 		try {
-			out = new BufferedOutputStream(new FileOutputStream(tmp));
+			tmp = File.createTempFile("xlwrap-", (file != null) ? "-" + file : null);
+			tmp.deleteOnExit();
+			out = new FileOutputStream(tmp);
 		} catch (IOException e) {
-			throw new XLWrapException("Failed to download " + fileName + ", cannot write into temp directory (" + tmpDir + file + ".");
+			throw new XLWrapException("Failed to download " + fileName + ", cannot write into temp directory " + System.getProperty("java.io.tmpdir") + ".", e);
 		}
-		if (!tmp.canWrite())
-			throw new XLWrapException("Failed to download " + fileName + ", cannot write into temp directory " + tmpDir + ".");
 
-		int b;
-		while ((b = in.read()) >= 0)
-			out.write(b);
-		in.close();
-		out.close();
+		ReadableByteChannel in = null;
+		try {
+			in = Channels.newChannel(new URL(fileName).openStream());
+			FileChannel channel = out.getChannel();
+			long pos = 0;
+			long n;
+			while ((n = channel.transferFrom(in, pos, DOWNLOAD_CHUNK)) > 0)
+				pos += n;
+		} finally {
+			close(in);
+			out.close();
+		}
 		
 		return tmp;
 	}
+	
+	private static void close(Closeable c) {
+		if (c != null) {
+			try {
+				c.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
 
 	private static InputStream open(String url) throws MalformedURLException, IOException {
 		if (FileUtils.isURI(url))
@@ -48,61 +48,75 @@ public class CSVCell implements Cell {
 		this.row = row;
 		this.lexValue = string;
 	}
+	
+	/**
+	 * constructor for cells decoding their value lazily, see {@link #lex()}
+	 */
+	CSVCell(String file, int col, int row) {
+		this(file, col, row, null);
+	}
+	
+	/**
+	 * @return the lexical value
+	 */
+	String lex() {
+		return lexValue;
+	}
 
 	@Override
 	public boolean getBoolean() throws XLWrapException {
-		String norm = lexValue.trim().toLowerCase();
+		String norm = lex().trim().toLowerCase();
 		if (norm.equals("true") || norm.equals("1") || norm.equals("yes") || norm.equals("on"))
 			return true;
 		else if (norm.equals("false") || norm.equals("0") || norm.equals("no") || norm.equals("off"))
 			return false;
 		else {
-			throw new XLWrapException("Failed to parse boolean from CSV file " + getCellInfo() + ": " + lexValue + ".");
+			throw new XLWrapException("Failed to parse boolean from CSV file " + getCellInfo() + ": " + lex() + ".");
 		}
 	}
 
 	@Override
 	public Date getDate() throws XLWrapException {
 		try {
-			return E_Date.parse(lexValue);
+			return E_Date.parse(lex());
 		} catch (ParseException e) {
-			throw new XLWrapException("Failed to parse date from CSV file " + getCellInfo() + ": " + lexValue + ".");
+			throw new XLWrapException("Failed to parse date from CSV file " + getCellInfo() + ": " + lex() + ".");
 		}
 	}
 
 	@Override
 	public double getDouble() throws XLWrapException {
 		try {
-			return Double.parseDouble(lexValue);
+			return Double.parseDouble(lex());
 		} catch (Exception e) {
-			throw new XLWrapException("Failed to parse double value from CSV file " + getCellInfo() + ": " + lexValue + ".", e);
+			throw new XLWrapException("Failed to parse double value from CSV file " + getCellInfo() + ": " + lex() + ".", e);
 		}
 	}
 
 	@Override
 	public float getFloat() throws XLWrapException {
 		try {
-			return Float.parseFloat(lexValue);
+			return Float.parseFloat(lex());
 		} catch (Exception e) {
-			throw new XLWrapException("Failed to parse float value from CSV file " + getCellInfo() + ": " + lexValue + ".", e);
+			throw new XLWrapException("Failed to parse float value from CSV file " + getCellInfo() + ": " + lex() + ".", e);
 		}
 	}
 
 	@Override
 	public int getInteger() throws XLWrapException {
 		try {
-			return Integer.parseInt(lexValue);
+			return Integer.parseInt(lex());
 		} catch (Exception e) {
-			throw new XLWrapException("Failed to parse integer value from CSV file " + getCellInfo() + ": " + lexValue + ".", e);
+			throw new XLWrapException("Failed to parse integer value from CSV file " + getCellInfo() + ": " + lex() + ".", e);
 		}
 	}
 
 	@Override
 	public long getLong() throws XLWrapException {
 		try {
-			return Long.parseLong(lexValue);
+			return Long.parseLong(lex());
 		} catch (Exception e) {
-			throw new XLWrapException("Failed to parse long from CSV file " + getCellInfo() + ": " + lexValue + ".", e);
+			throw new XLWrapException("Failed to parse long from CSV file " + getCellInfo() + ": " + lex() + ".", e);
 		}
 	}
 
@@ -110,25 +124,25 @@ public class CSVCell implements Cell {
 	public double getNumber() throws XLWrapException {
 		// try long first, if string contains a comma, it will fail
 		try {
-			Long l = Long.parseLong(lexValue);
+			Long l = Long.parseLong(lex());
 			return l;
 		} catch (Exception ignore) {	}
 
 		// try double now, provide detailed exception e if fails
 		try {
-			Double d = Double.parseDouble(lexValue);
+			Double d = Double.parseDouble(lex());
 			return d;
 		} catch (Exception e) {
-			throw new XLWrapException("Failed to parse value as number from CSV file " + getClass() + ": " + lexValue + ".", e);
+			throw new XLWrapException("Failed to parse value as number from CSV file " + getClass() + ": " + lex() + ".", e);
 		}
 	}
 
 	@Override
 	public String getText() throws XLWrapException {
-		if (Constants.EMPTY_STRING_AS_NULL && lexValue.length() == 0)
+		if (Constants.EMPTY_STRING_AS_NULL && lex().length() == 0)
 			return null;
 		else
-			return lexValue;
+			return lex();
 	}
 
 	@Override
@@ -144,7 +158,7 @@ public class CSVCell implements Cell {
 	@Override
 	public TypeAnnotation getType() throws XLWrapException {
 		// handle all source values as text
-		if (lexValue == null || Constants.EMPTY_STRING_AS_NULL && lexValue.length() == 0)
+		if (lex() == null || Constants.EMPTY_STRING_AS_NULL && lex().length() == 0)
 			return TypeAnnotation.NULL;
 		else
 			return TypeAnnotation.TEXT;
@@ -152,7 +166,7 @@ public class CSVCell implements Cell {
 
 	@Override
 	public String getCellInfo() {
-		return file + ", " + Utils.indexToAlpha(col) + (row+1) + " (" + lexValue + ")";
+		return file + ", " + Utils.indexToAlpha(col) + (row+1) + " (" + lex() + ")";
 	}
 	
 	/* (non-Javadoc)
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.spreadsheet.csv;
+
+import java.nio.ByteBuffer;
+
+import at.jku.xlwrap.common.Constants;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
+
+/**
+ * Ring buffer of parsed CSV rows in columnar layout: per column an int array of cell start 
+ * and end offsets indexed by cache slot, plus one reference per slot to the buffer holding the text 
+ * of the row. Rows share their buffers, either char chunks filled by the stream-based line parser or 
+ * mapped windows of a {@link MappedCSVReader}. No objects are created per cached cell, 
+ * {@link #getCell(int, int, int)} returns a view which decodes the text on demand, 
+ * {@link #read(int, int, CellValueHolder)} decodes it into a caller-owned holder.
+ * 
+ * @author dorgon
+ *
+ */
+class CSVRowCache {
+	/** decodes cell text of rows stored as bytes */
+	interface ByteDecoder {
+		/**
+		 * @param buf
+		 * @param start
+		 * @param end
+		 * @param unescape replace doubled value delimiters
+		 * @return decoded text
+		 */
+		public String decode(ByteBuffer buf, int start, int end, boolean unescape);
+		
+		/**
+		 * @param buf
+		 * @param start
+		 * @param end
+		 * @param unescape replace doubled value delimiters
+		 * @param out receives the decoded text
+		 */
+		public void decode(ByteBuffer buf, int start, int end, boolean unescape, StringBuilder out);
+	}
+	
+	private final String file;
+	private final int capacity;
+	private final ByteDecoder decoder;
+	
+	/** cell offsets [column][slot], the start of escaped cells of byte rows is stored as ~start */
+	private int[][] starts = new int[0][];
+	private int[][] ends = new int[0][];
+	
+	/** number of cells per slot */
+	private final int[] widths;
+	
+	/** text buffer per slot, char[] or ByteBuffer */
+	private final Object[] data;
+	
+	/**
+	 * @param file
+	 * @param capacity number of slots
+	 * @param decoder for rows stored as bytes, may be null if only char rows are added
+	 */
+	CSVRowCache(String file, int capacity, ByteDecoder decoder) {
+		this.file = file;
+		this.capacity = capacity;
+		this.decoder = decoder;
+		this.widths = new int[capacity];
+		this.data = new Object[capacity];
+	}
+	
+	/**
+	 * @return number of slots
+	 */
+	int capacity() {
+		return capacity;
+	}
+	
+	/**
+	 * store a row
+	 * 
+	 * @param slot
+	 * @param buf char[] or ByteBuffer holding the text of the row
+	 * @param bounds start and end offset of each cell in buf
+	 * @param off index of the first offset of the row in bounds
+	 * @param cols number of cells
+	 */
+	void set(int slot, Object buf, int[] bounds, int off, int cols) {
+		if (cols > starts.length)
+			widen(cols);
+		for (int c = 0; c < cols; c++) {
+			starts[c][slot] = bounds[off + 2 * c];
+			ends[c][slot] = bounds[off + 2 * c + 1];
+		}
+		widths[slot] = cols;
+		data[slot] = buf;
+	}
+	
+	private void widen(int cols) {
+		int[][] s = new int[cols][];
+		int[][] e = new int[cols][];
+		System.arraycopy(starts, 0, s, 0, starts.length);
+		System.arraycopy(ends, 0, e, 0, ends.length);
+		for (int c = starts.length; c < cols; c++) {
+			s[c] = new int[capacity];
+			e[c] = new int[capacity];
+		}
+		starts = s;
+		ends = e;
+	}
+	
+	/**
+	 * @param slot
+	 * @return number of cells of the row in the given slot
+	 */
+	int columns(int slot) {
+		return widths[slot];
+	}
+	
+	/**
+	 * @param slot
+	 * @param col
+	 * @param row row number used for cell info
+	 * @return a view of the cell or null if the row has no such column
+	 */
+	CSVCell getCell(int slot, int col, int row) {
+		if (col >= widths[slot])
+			return null;
+		int s = starts[col][slot];
+		int e = ends[col][slot];
+		if (Constants.EMPTY_STRING_AS_NULL && (s == e || ~s == e))
+			return new CSVCell(file, col, row, null);
+		return new View(file, col, row, data[slot], s, e);
+	}
+	
+	/**
+	 * read a cell into a holder, the text is decoded into the buffer of the holder
+	 * 
+	 * @param slot
+	 * @param col
+	 * @param holder
+	 */
+	void read(int slot, int col, CellValueHolder holder) {
+		if (col >= widths[slot]) {
+			holder.setNull();
+			return;
+		}
+		int s = starts[col][slot];
+		int e = ends[col][slot];
+		Object buf = data[slot];
+		StringBuilder b = holder.textBuffer();
+		if (buf instanceof char[])
+			b.append((char[]) buf, s, e - s);
+		else if (s < 0)
+			decoder.decode((ByteBuffer) buf, ~s, e, true, b);
+		else
+			decoder.decode((ByteBuffer) buf, s, e, false, b);
+		holder.setText(b);
+	}
+	
+	/**
+	 * cell view decoding its text from the shared buffer when requested first
+	 */
+	private class View extends CSVCell {
+		private final Object buf;
+		private final int start;
+		private final int end;
+		private String text = null;
+		
+		View(String file, int col, int row, Object buf, int start, int end) {
+			super(file, col, row);
+			this.buf = buf;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		String lex() {
+			if (text == null) {
+				if (buf instanceof char[])
+					text = new String((char[]) buf, start, end - start);
+				else if (start < 0)
+					text = decoder.decode((ByteBuffer) buf, ~start, end, true);
+				else
+					text = decoder.decode((ByteBuffer) buf, start, end, false);
+			}
+			return text;
+		}
+	}
+}
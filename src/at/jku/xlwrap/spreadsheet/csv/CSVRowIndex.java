@@ -0,0 +1,169 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.spreadsheet.csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sparse index of byte offsets of a CSV file, one entry per block of {@link #INTERVAL} rows, 
+ * built while the file is streamed. Evicted rows can be re-read from the start of their block.
+ * 
+ * A complete index can be saved as a sidecar file next to the CSV file, which is only used again 
+ * if size and modification time of the CSV file did not change.
+ * 
+ * @author dorgon
+ *
+ */
+class CSVRowIndex {
+	private static final Logger log = LoggerFactory.getLogger(CSVRowIndex.class);
+	
+	/** rows per block */
+	static final int INTERVAL = 1024;
+	
+	/** extension of sidecar files */
+	static final String SIDECAR_EXTENSION = ".xlidx";
+	
+	private static final int MAGIC = 0x584c4931; // XLI1
+	
+	private long[] offsets = new long[64];
+	private int blocks = 0;
+	
+	/** total number of rows if complete, -1 otherwise */
+	private int rows = -1;
+	
+	/**
+	 * record the offset of a row, only the first row of each block is recorded
+	 * 
+	 * @param row
+	 * @param offset byte offset of the line
+	 */
+	void record(int row, long offset) {
+		if (row % INTERVAL != 0 || row / INTERVAL != blocks)
+			return;
+		if (blocks == offsets.length) {
+			long[] o = new long[offsets.length * 2];
+			System.arraycopy(offsets, 0, o, 0, offsets.length);
+			offsets = o;
+		}
+		offsets[blocks++] = offset;
+	}
+	
+	/**
+	 * mark the index as complete
+	 * @param rows total number of rows
+	 */
+	void complete(int rows) {
+		this.rows = rows;
+	}
+	
+	/**
+	 * @return true if all rows of the file have been indexed
+	 */
+	boolean isComplete() {
+		return rows >= 0;
+	}
+	
+	/**
+	 * @param row
+	 * @return true if the block of the row is indexed
+	 */
+	boolean covers(int row) {
+		return row / INTERVAL < blocks;
+	}
+	
+	/**
+	 * @param block
+	 * @return byte offset of the first row of the block
+	 */
+	long offset(int block) {
+		return offsets[block];
+	}
+	
+	/**
+	 * @param csv
+	 * @return the sidecar file of a CSV file
+	 */
+	static File sidecar(File csv) {
+		return new File(csv.getPath() + SIDECAR_EXTENSION);
+	}
+	
+	/**
+	 * save the index as a sidecar file
+	 * 
+	 * @param csv
+	 */
+	void save(File csv) {
+		File f = sidecar(csv);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeLong(csv.length());
+				out.writeLong(csv.lastModified());
+				out.writeInt(INTERVAL);
+				out.writeInt(rows);
+				out.writeInt(blocks);
+				for (int i = 0; i < blocks; i++)
+					out.writeLong(offsets[i]);
+			} finally {
+				out.close();
+			}
+			log.debug("Saved row index of " + csv + " to " + f + ".");
+		} catch (IOException e) {
+			log.warn("Failed to save row index of " + csv + " to " + f + ".", e);
+			f.delete();
+		}
+	}
+	
+	/**
+	 * @param csv
+	 * @return the complete index saved as a sidecar of the file, null if there is none or it is outdated
+	 */
+	static CSVRowIndex load(File csv) {
+		File f = sidecar(csv);
+		if (!f.exists())
+			return null;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+			try {
+				if (in.readInt() != MAGIC || in.readLong() != csv.length() || in.readLong() != csv.lastModified() || in.readInt() != INTERVAL)
+					return null;
+				CSVRowIndex index = new CSVRowIndex();
+				index.rows = in.readInt();
+				index.blocks = in.readInt();
+				index.offsets = new long[Math.max(index.blocks, 1)];
+				for (int i = 0; i < index.blocks; i++)
+					index.offsets[i] = in.readLong();
+				return index;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			log.warn("Failed to load row index of " + csv + " from " + f + ".", e);
+			return null;
+		}
+	}
+}
@@ -16,16 +16,18 @@
 package at.jku.xlwrap.spreadsheet.csv;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import at.jku.xlwrap.common.Constants;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
 import at.jku.xlwrap.spreadsheet.Sheet;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 
@@ -33,18 +35,49 @@ import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
  * @author dorgon
  *
  * CSV is opened as a stream, new rows are read in on-demand and trashed if the cache reaches a specified MAX_CACHE_SIZE rows.
+ * Local files are memory-mapped and scanned at the byte level by a {@link MappedCSVReader} instead, 
+ * optionally by multiple threads parsing ahead.
+ * Rows are stored in a {@link CSVRowCache} as cell offsets into shared text buffers.
+ * Rows of mapped files which have already been evicted from the cache are re-read block-wise 
+ * through the sparse {@link CSVRowIndex} built while streaming.
  */
 public class CSVSheet implements Sheet {
 	private static final Logger log = LoggerFactory.getLogger(CSVSheet.class);
 	
 	private static final int DEFAULT_CACHE_SIZE = 40000;
 	
+	/** number of rows read ahead when a sheet is opened to estimate the number of columns */
+	private static final int COLUMN_SAMPLE_ROWS = 1000;
+	
+	/** size of the char chunks holding the cell text of rows read from a stream */
+	private static final int CHUNK_SIZE = 1 << 20;
+	
+	/** number of re-read row blocks kept */
+	private static final int MAX_BLOCKS = 4;
+	
 	private final BufferedReader in;
+	private final MappedCSVReader mapped;
 	private final String file;
 	private CSVParseConfig cfg = null;
 
 	/** cache of rows */
-	private final Row[] cache;
+	private final CSVRowCache cache;
+	
+	/** blocks of rows re-read through the row index, least recently used first */
+	private final Map<Integer, Block> blocks = new LinkedHashMap<Integer, Block>(MAX_BLOCKS, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, Block> eldest) {
+			return size() > MAX_BLOCKS;
+		}
+	};
+	
+	/** current chunk the line parser writes cell text into, rows keep references to their chunks */
+	private char[] chunk = new char[0];
+	private int chunkPos = 0;
+	
+	/** cell offsets of the row parsed last */
+	private int[] bounds = new int[16];
 	
 	/** cache pointer */
 	private int pt = 0;
@@ -62,8 +95,8 @@ public class CSVSheet implements Sheet {
 	private int lastRow = 0;
 	
 	
-	/** number of columns, determined at creation */
-	private int columns;
+	/** number of columns, maximum of the rows read so far */
+	private volatile int columns;
 	
 	/** number of rows, unknown, assume maximum */
 	private final int rows = Integer.MAX_VALUE;
@@ -76,40 +109,97 @@ public class CSVSheet implements Sheet {
 	 * @throws IOException 
 	 */
 	public CSVSheet(BufferedReader in, String file, Integer cacheSize) throws XLWrapException {
+		this(in, null, file, cacheSize);
+	}
+	
+	/**
+	 * memory-maps a local file
+	 * 
+	 * @param f
+	 * @param file
+	 * @param charset must be supported by {@link MappedCSVReader#supports(Charset)}
+	 * @param cacheSize, if null DEFAULT_CACHE_SIZE is used
+	 * @throws XLWrapException
+	 */
+	public CSVSheet(File f, String file, Charset charset, Integer cacheSize) throws XLWrapException {
+		this(f, file, charset, cacheSize, MappedCSVReader.DEFAULT_WINDOW_SIZE);
+	}
+	
+	/**
+	 * memory-maps a local file
+	 * 
+	 * @param f
+	 * @param file
+	 * @param charset must be supported by {@link MappedCSVReader#supports(Charset)}
+	 * @param cacheSize, if null DEFAULT_CACHE_SIZE is used
+	 * @param windowSize size of the mapped windows in bytes, grows for longer lines
+	 * @throws XLWrapException
+	 */
+	public CSVSheet(File f, String file, Charset charset, Integer cacheSize, int windowSize) throws XLWrapException {
+		this(f, file, charset, cacheSize, windowSize, false);
+	}
+	
+	/**
+	 * memory-maps a local file
+	 * 
+	 * @param f
+	 * @param file
+	 * @param charset must be supported by {@link MappedCSVReader#supports(Charset)}
+	 * @param cacheSize, if null DEFAULT_CACHE_SIZE is used
+	 * @param windowSize size of the mapped windows in bytes, grows for longer lines
+	 * @param sidecar load the row index from and save it to a sidecar file next to f
+	 * @throws XLWrapException
+	 */
+	public CSVSheet(File f, String file, Charset charset, Integer cacheSize, int windowSize, boolean sidecar) throws XLWrapException {
+		this(f, file, charset, cacheSize, windowSize, sidecar, 1);
+	}
+	
+	/**
+	 * memory-maps a local file
+	 * 
+	 * @param f
+	 * @param file
+	 * @param charset must be supported by {@link MappedCSVReader#supports(Charset)}
+	 * @param cacheSize, if null DEFAULT_CACHE_SIZE is used
+	 * @param windowSize size of the mapped windows in bytes, grows for longer lines
+	 * @param sidecar load the row index from and save it to a sidecar file next to f
+	 * @param threads number of threads parsing chunks of the file ahead in parallel, 1 parses on demand
+	 * @throws XLWrapException
+	 */
+	public CSVSheet(File f, String file, Charset charset, Integer cacheSize, int windowSize, boolean sidecar, int threads) throws XLWrapException {
+		this(null, new MappedCSVReader(f, file, charset, windowSize, sidecar, threads), file, cacheSize);
+	}
+	
+	CSVSheet(BufferedReader in, MappedCSVReader mapped, String file, Integer cacheSize) throws XLWrapException {
 		this.in = in;
+		this.mapped = mapped;
 		this.file = file;
-		this.cache = new Row[cacheSize != null ? cacheSize : DEFAULT_CACHE_SIZE];
+		this.cache = new CSVRowCache(file, cacheSize != null ? cacheSize : DEFAULT_CACHE_SIZE, mapped);
 		
-		// init
-		readRow();
-		
-		// determine number of columns
-		for (int i=0; i<this.rows; i++) {
-			Row row = getRow(i);
-			if (row == null)
-				break;
-			int cols = row.columns();
-			if (cols > this.columns)
-				this.columns = cols;
-		}
+		// init, read a bounded sample of rows to estimate the number of columns, 
+		// which is then updated as further rows stream in (see advance())
+		int sample = Math.min(COLUMN_SAMPLE_ROWS, cache.capacity() / 2);
+		do {
+			readRow();
+		} while (lastRow < sample && !finished);
 	}
 
 	/**
 	 * get row from cache or dynamically fetch more rows as needed
 	 * @param i
-	 * @return row
+	 * @return cache slot of the row or -1 at EOF
 	 * @throws XLWrapException
 	 */
-	private Row getRow(int i) throws XLWrapException {
-		if (i < firstRow)
+	private int getRow(int i) throws XLWrapException {
+		if (i < firstRow) // only for streams, mapped files re-read blocks instead
 			throw new XLWrapException("Row " + i + " has already been removed from the cache, please increase the cache size for the CSVWorkbook.");
 		while (lastRow <= i && !finished)
 			readRow();
 		
-		if (finished && i > lastRow) // EOF
-			return null;
+		if (i >= lastRow) // EOF
+			return -1;
 		else
-			return cache[i % cache.length];
+			return i % cache.capacity();
 	}
 
 	/**
@@ -117,6 +207,14 @@ public class CSVSheet implements Sheet {
 	 * @throws IOException 
 	 */
 	private void readRow() throws XLWrapException {
+		if (mapped != null) {
+			if (mapped.readRow(lastRow, cache, pt))
+				advance();
+			else
+				finished = true;
+			return;
+		}
+		
 		try {
 			String line;
 			while (true) {	// Skip empty lines
@@ -135,31 +233,144 @@ public class CSVSheet implements Sheet {
 			if (cfg == null)
 				cfg = CSVParseConfig.DEFAULT_IF_UNDETECTABLE;
 			
-			cache[pt] = new Row(line, lastRow);
-			lastRow++;			// move last row of boundary
-			if (iterations > 0)
-				firstRow++;		// move lower boundary starting with second iteration
-
-			if (pt < cache.length-1) {
-				pt++;			// move cache pointer
-			} else {
-				pt = 0;
-				iterations++;
-				log.debug("Read " + lastRow + " rows from " + file);
+			// text of a row is never longer than the line
+			if (chunk.length - chunkPos < line.length()) {
+				chunk = new char[Math.max(CHUNK_SIZE, line.length())];
+				chunkPos = 0;
 			}
+			int cols = new SimpleLineParser(line, lastRow).parse();
+			cache.set(pt, chunk, bounds, 0, cols);
+			advance();
 		} catch (IOException e) {
 			throw new XLWrapException("Failed to read next line from CSV file " + getSheetInfo() + ".", e);
 		}
 	}
+	
+	/**
+	 * move the cache boundaries after a row has been stored at the cache pointer
+	 */
+	private void advance() {
+		int cols = cache.columns(pt);
+		if (cols > columns)
+			columns = cols;
+		
+		lastRow++;			// move last row of boundary
+		if (iterations > 0)
+			firstRow++;		// move lower boundary starting with second iteration
 
+		if (pt < cache.capacity()-1) {
+			pt++;			// move cache pointer
+		} else {
+			pt = 0;
+			iterations++;
+			log.debug("Read " + lastRow + " rows from " + file);
+		}
+	}
+	
+	/**
+	 * close the underlying file
+	 */
+	void close() {
+		try {
+			if (mapped != null)
+				mapped.close();
+			else
+				in.close();
+		} catch (IOException e) {
+			log.error("Failed to close CSV file " + file + ".", e);
+		}
+	}
+	
+	/**
+	 * @return true if rows can be read in any order, which is the case for memory-mapped files re-reading
+	 * evicted rows, rows read from a stream are lost once they have been removed from the cache
+	 */
+	public boolean isRandomAccess() {
+		return mapped != null;
+	}
+
+	/**
+	 * synchronized, because rows are fetched into the shared cache on demand
+	 */
+	@Override
+	public synchronized Cell getCell(int column, int row) throws XLWrapException, XLWrapEOFException {
+		if (isBlockRow(row))
+			return getBlock(row).cache.getCell(row % CSVRowIndex.INTERVAL, column, row);
+		
+		int slot = getRow(row);
+		if (slot >= 0)
+			return cache.getCell(slot, column, row);
+		else
+			throw new XLWrapEOFException();
+	}
+	
+	/**
+	 * synchronized, because rows are fetched into the shared cache on demand
+	 */
 	@Override
-	public Cell getCell(int column, int row) throws XLWrapException, XLWrapEOFException {
-		Row r = getRow(row);
-		if (r != null)
-			return r.getCell(column);
+	public synchronized void readCell(int column, int row, CellValueHolder holder) throws XLWrapException, XLWrapEOFException {
+		if (isBlockRow(row)) {
+			getBlock(row).cache.read(row % CSVRowIndex.INTERVAL, column, holder);
+			return;
+		}
+		
+		int slot = getRow(row);
+		if (slot >= 0)
+			cache.read(slot, column, holder);
 		else
 			throw new XLWrapEOFException();
 	}
+	
+	/**
+	 * @param row
+	 * @return true for evicted rows and, with a loaded sidecar index, rows far ahead of the stream, 
+	 * which are read from blocks re-read through the row index
+	 */
+	private boolean isBlockRow(int row) {
+		return mapped != null && (row < firstRow || row >= lastRow + cache.capacity() && mapped.isIndexed(row));
+	}
+
+	/**
+	 * get the block of rows re-read through the row index containing a row
+	 * 
+	 * @param row
+	 * @return the block, the slot of the row is row % {@link CSVRowIndex#INTERVAL}
+	 * @throws XLWrapException
+	 * @throws XLWrapEOFException
+	 */
+	private Block getBlock(int row) throws XLWrapException, XLWrapEOFException {
+		if (!mapped.isIndexed(row))
+			throw new XLWrapEOFException(); // beyond the last block of a complete index
+		
+		int b = row / CSVRowIndex.INTERVAL;
+		Block block = blocks.get(b);
+		if (block == null) {
+			CSVRowCache c = new CSVRowCache(file, CSVRowIndex.INTERVAL, mapped);
+			block = new Block(c, mapped.readBlock(b, c));
+			for (int i = 0; i < block.rows; i++)
+				if (c.columns(i) > columns)
+					columns = c.columns(i);
+			blocks.put(b, block);
+			log.debug("Re-read rows " + b * CSVRowIndex.INTERVAL + "-" + (b * CSVRowIndex.INTERVAL + block.rows - 1) + " from " + file);
+		}
+		
+		if (row % CSVRowIndex.INTERVAL >= block.rows)
+			throw new XLWrapEOFException();
+		return block;
+	}
+	
+	/**
+	 * rows re-read through the row index
+	 */
+	private static class Block {
+		private final CSVRowCache cache;
+		private final int rows;
+		
+		Block(CSVRowCache cache, int rows) {
+			this.cache = cache;
+			this.rows = rows;
+		}
+	}
 
 	@Override
 	public int getColumns() {
@@ -181,61 +392,6 @@ public class CSVSheet implements Sheet {
 		return file;
 	}
 
-	/**
-	 * class storing row data
-	 * 
-	 * @author dorgon
-	 */
-	private class Row {
-		private final int row;
-		private final CSVCell[] cells;
-		
-		/**
-		 * constructor
-		 * @throws XLWrapException 
-		 */
-		public Row(String line, int row) throws XLWrapException {
-			this.row = row;
-			List<CSVCell> coll = new SimpleLineParser(line, row).parse();
-			
-			int size = Math.max(coll.size(), columns); 
-			cells = new CSVCell[size];
-			int i;
-			for (i = 0; i < coll.size(); i++)
-				cells[i] = coll.get(i);
-			for (; i < size; i++)
-				cells[i] = null;
-		}
-		
-		/**
-		 * @return the cells
-		 */
-		public CSVCell getCell(int col) {
-			return cells[col];
-		}
-		
-		/**
-		 * number of columns
-		 * @return
-		 */
-		public int columns() {
-			return cells.length;
-		}
-		
-		/* (non-Javadoc)
-		 * @see java.lang.Object#toString()
-		 */
-		@Override
-		public String toString() {
-			StringBuilder sb = new StringBuilder();
-			sb.append("row ").append(row).append(": (");
-			for (CSVCell c : cells)
-				sb.append("'").append(c.toString()).append("'").append(", ");
-			sb.append(")");
-			return sb.toString();
-		}
-	}
-
 	private class SimpleLineParser {
 		private String line;
 		private int row;
@@ -251,7 +407,6 @@ public class CSVSheet implements Sheet {
 		private final char sepStart;
 		private final char[] ws;
 
-		private List<CSVCell> coll = new ArrayList<CSVCell>();
 		private int cols = 0;
 		
 		public SimpleLineParser(String s, int row) {
@@ -267,7 +422,12 @@ public class CSVSheet implements Sheet {
 			this.ws = cfg.getWhiteSpaces();			
 		}
 		
-		public List<CSVCell> parse() throws XLWrapException {
+		/**
+		 * parse the line, writes the cell text into the current chunk and the offsets into bounds
+		 * @return number of cells
+		 * @throws XLWrapException
+		 */
+		public int parse() throws XLWrapException {
 			if (hasNext())
 				next();
 			cell();
@@ -275,7 +435,7 @@ public class CSVSheet implements Sheet {
 				expect(sep, false);
 				cell();
 			}
-			return coll;
+			return cols;
 		}
 
 //		private void cell() throws XLWrapException {
@@ -303,8 +463,16 @@ public class CSVSheet implements Sheet {
 				}
 			}
 			whitespace();
-			String lex = (text.length() == 0 && Constants.EMPTY_STRING_AS_NULL) ? null : text.toString();
-			coll.add(new CSVCell(file, cols++, row, lex));
+			if (2 * cols + 2 > bounds.length) {
+				int[] b = new int[bounds.length * 2];
+				System.arraycopy(bounds, 0, b, 0, bounds.length);
+				bounds = b;
+			}
+			bounds[2 * cols] = chunkPos;
+			text.getChars(0, text.length(), chunk, chunkPos);
+			chunkPos += text.length();
+			bounds[2 * cols + 1] = chunkPos;
+			cols++;
 		}
 		
 		private boolean hasNext() {
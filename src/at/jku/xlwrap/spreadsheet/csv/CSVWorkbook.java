@@ -16,14 +16,21 @@
 package at.jku.xlwrap.spreadsheet.csv;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import at.jku.xlwrap.common.Constants;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.spreadsheet.Sheet;
 import at.jku.xlwrap.spreadsheet.Workbook;
@@ -36,14 +43,50 @@ public class CSVWorkbook implements Workbook {
 	private static final Logger log = LoggerFactory.getLogger(CSVWorkbook.class);
 	
 	private final BufferedReader in;
+	private final File mappedFile;
+	private final Charset charset;
 	private final String file;
 	
+	/** sheets reading from the mapped file */
+	private final List<CSVSheet> sheets = new ArrayList<CSVSheet>();
+	
 	/**
 	 * @param stream
 	 * @param fileName
 	 */
 	public CSVWorkbook(InputStream stream, String fileName) throws UnsupportedEncodingException {
-		this.in = new BufferedReader(new InputStreamReader(stream, "utf-8"));
+		this(stream, fileName, Charset.forName("utf-8"));
+	}
+	
+	/**
+	 * @param stream
+	 * @param fileName
+	 * @param charset
+	 */
+	public CSVWorkbook(InputStream stream, String fileName, Charset charset) {
+		this.in = new BufferedReader(new InputStreamReader(stream, charset));
+		this.mappedFile = null;
+		this.charset = charset;
+		this.file = fileName;
+	}
+	
+	/**
+	 * memory-maps a local file if the charset allows scanning at the byte level, otherwise reads it as a stream
+	 * 
+	 * @param f
+	 * @param fileName
+	 * @param charset
+	 * @throws FileNotFoundException 
+	 */
+	public CSVWorkbook(File f, String fileName, Charset charset) throws FileNotFoundException {
+		if (MappedCSVReader.supports(charset)) {
+			this.in = null;
+			this.mappedFile = f;
+		} else {
+			this.in = new BufferedReader(new InputStreamReader(new FileInputStream(f), charset));
+			this.mappedFile = null;
+		}
+		this.charset = charset;
 		this.file = fileName;
 	}
 
@@ -54,21 +97,40 @@ public class CSVWorkbook implements Workbook {
 	
 	@Override
 	public void close() {
-		try {
-			in.close();
-		} catch (IOException e) {
-			log.error("Failed to close open CSV input stream.", e);
+		if (in != null) {
+			try {
+				in.close();
+			} catch (IOException e) {
+				log.error("Failed to close open CSV input stream.", e);
+			}
+		}
+		synchronized (sheets) {
+			for (CSVSheet s : sheets)
+				s.close();
+			sheets.clear();
 		}
 	}
 
 	@Override
 	public Sheet getSheet(int sheet) throws XLWrapException {
-		return new CSVSheet(in, file, null);
+		return createSheet();
 	}
 
 	@Override
 	public Sheet getSheet(String sheetName) throws XLWrapException {
-		return new CSVSheet(in, file, null);
+		return createSheet();
+	}
+	
+	private Sheet createSheet() throws XLWrapException {
+		if (mappedFile == null)
+			return new CSVSheet(in, file, null);
+		
+		CSVSheet s = new CSVSheet(mappedFile, file, charset, null, MappedCSVReader.DEFAULT_WINDOW_SIZE, Constants.CSV_SIDECAR, 
+				Integer.getInteger(Constants.SYSTEMPROPERTY_CSV_THREADS, Constants.DEFAULT_CSV_THREADS));
+		synchronized (sheets) {
+			sheets.add(s);
+		}
+		return s;
 	}
 
 	@Override
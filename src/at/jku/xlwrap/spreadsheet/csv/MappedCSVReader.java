@@ -0,0 +1,705 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.spreadsheet.csv;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.jku.xlwrap.common.XLWrapException;
+
+/**
+ * Reads rows of a CSV file from a memory-mapped window of the file and scans separators and quotes 
+ * at the byte level. Rows are stored in the {@link CSVRowCache} as a reference to the mapped window and 
+ * the offsets of their cells, cell strings are decoded when a cell is requested.
+ * 
+ * Only works for encodings which encode ASCII characters as single bytes that never occur inside 
+ * multi-byte sequences (e.g. UTF-8, ISO-8859-1), see {@link #supports(Charset)}. The syntax accepted is the 
+ * same as of the line parser of {@link CSVSheet}, lines are terminated by \n, \r, or \r\n.
+ * 
+ * With more than one parser thread the file is split into byte ranges, which are parsed in parallel and 
+ * delivered in order while the sheet is evaluated. Each range holds the lines starting inside it. Since 
+ * a line always ends a record (also within delimiters), line boundaries are record boundaries.
+ * 
+ * @author dorgon
+ *
+ */
+class MappedCSVReader implements CSVRowCache.ByteDecoder {
+	private static final Logger log = LoggerFactory.getLogger(MappedCSVReader.class);
+	
+	/** default size of a mapped window */
+	static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+	
+	/** maximum size of the byte ranges parsed in parallel */
+	static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+	
+	private final File f;
+	private final String file;
+	private final Charset charset;
+	
+	/** every byte is a char, no multi-byte sequences */
+	private final boolean latin1;
+	private final int windowSize;
+	private final long size;
+	
+	/** cursor of the sequential pass, null after EOF */
+	private Cursor cursor;
+	
+	/** sparse index of row offsets, built by the sequential pass or loaded from a sidecar file */
+	private CSVRowIndex index;
+	private final boolean sidecar;
+	
+	/** number of parser threads, parallel parsing if > 1 */
+	private final int threads;
+	private final int chunkSize;
+	private ExecutorService executor;
+	
+	/** parsed chunks in order, limited to 2 * threads */
+	private LinkedList<Future<Batch>> pending;
+	
+	/** start offset of the next chunk to submit */
+	private long nextChunk = 0;
+	
+	/** chunk delivered currently and index of its next row */
+	private Batch batch;
+	private int batchRow;
+	
+	private CSVParseConfig cfg = null;
+	private int sep, delim;
+	private boolean hasSep, hasDelim, delimOpt;
+	private byte[] ws;
+	
+	/** cell offsets of the row parsed last */
+	private int[] bounds = new int[16];
+	
+	/**
+	 * @param f
+	 * @param file file name used for cells and error messages
+	 * @param charset
+	 * @param windowSize maximum size of a mapped window, grows if a single line is larger
+	 * @param sidecar load the row index from and save it to a sidecar file (see {@link CSVRowIndex})
+	 * @param threads number of parser threads, 1 parses on the calling thread
+	 * @throws XLWrapException
+	 */
+	MappedCSVReader(File f, String file, Charset charset, int windowSize, boolean sidecar, int threads) throws XLWrapException {
+		if (!supports(charset))
+			throw new XLWrapException("Cannot scan CSV file " + file + " encoded in " + charset + " at the byte level.");
+		this.f = f;
+		this.file = file;
+		this.charset = charset;
+		this.latin1 = charset.name().equals("ISO-8859-1");
+		this.windowSize = windowSize;
+		this.sidecar = sidecar;
+		this.threads = threads;
+		this.chunkSize = Math.min(windowSize, MAX_CHUNK_SIZE);
+		try {
+			cursor = new Cursor(new FileInputStream(f).getChannel(), 0, windowSize);
+			size = cursor.channel.size();
+		} catch (IOException e) {
+			throw new XLWrapException("Failed to map CSV file " + file + ".", e);
+		}
+		
+		if (sidecar)
+			index = CSVRowIndex.load(f);
+		if (index == null)
+			index = new CSVRowIndex();
+		else
+			log.debug("Using row index " + CSVRowIndex.sidecar(f) + ".");
+	}
+	
+	/**
+	 * @param charset
+	 * @return true if files in the given charset can be read by a MappedCSVReader
+	 */
+	static boolean supports(Charset charset) {
+		String name = charset.name();
+		return name.equals("UTF-8") || name.equals("ISO-8859-1") || name.equals("US-ASCII") || name.equals("windows-1252");
+	}
+	
+	/**
+	 * read the next non-empty line into the cache
+	 * 
+	 * @param row row number
+	 * @param cache
+	 * @param slot
+	 * @return false at EOF
+	 * @throws XLWrapException
+	 */
+	boolean readRow(int row, CSVRowCache cache, int slot) throws XLWrapException {
+		if (cursor == null)
+			return false;
+		try {
+			if (threads > 1) {
+				if (readParsed(row, cache, slot))
+					return true;
+			} else if (cursor.nextLine()) {
+				index.record(row, cursor.lineOffset());
+				int cols = parse(cursor.window, row, cursor.lineStart, cursor.lineEnd);
+				cache.set(slot, cursor.window, bounds, 0, cols);
+				return true;
+			}
+		} catch (IOException e) {
+			throw new XLWrapException("Failed to read next line from CSV file " + file + ".", e);
+		}
+		
+		// EOF
+		if (!index.isComplete()) {
+			index.complete(row);
+			if (sidecar)
+				index.save(f);
+		}
+		close();
+		return false;
+	}
+	
+	/**
+	 * take the next row from the chunks parsed in parallel
+	 * 
+	 * @return false at EOF
+	 */
+	private boolean readParsed(int row, CSVRowCache cache, int slot) throws XLWrapException, IOException {
+		if (executor == null && !startParsers())
+			return false;
+		
+		while (batch == null || batchRow == batch.rows) {
+			while (pending.size() < 2 * threads && nextChunk < size) {
+				pending.add(executor.submit(new Chunk(cursor.channel, nextChunk, Math.min(nextChunk + chunkSize, size))));
+				nextChunk += chunkSize;
+			}
+			if (pending.isEmpty())
+				return false;
+			
+			try {
+				batch = pending.removeFirst().get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				throw new XLWrapException("Failed to parse CSV file " + file + ".", e.getCause());
+			} catch (InterruptedException e) {
+				throw new XLWrapException("Interrupted while waiting for rows of CSV file " + file + ".", e);
+			}
+			batchRow = 0;
+		}
+		
+		int i = batchRow++;
+		index.record(row, batch.offsets[i]);
+		if (batch.cols[i] < 0) // invalid line, parse it again to report the error with its row number
+			parse(batch.windows[i], row, batch.lineStarts[i], batch.lineEnds[i]);
+		cache.set(slot, batch.windows[i], batch.bounds, batch.boundsOffsets[i], batch.cols[i]);
+		return true;
+	}
+	
+	/**
+	 * detect the parse config from the first line and start the parser threads
+	 * 
+	 * @return false if the file has no lines
+	 */
+	private boolean startParsers() throws XLWrapException, IOException {
+		if (cfg == null) {
+			if (!cursor.nextLine())
+				return false;
+			detect(cursor.window, cursor.lineStart, cursor.lineEnd);
+		}
+		pending = new LinkedList<Future<Batch>>();
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "CSV parser " + file);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		return true;
+	}
+	
+	/**
+	 * @param row
+	 * @return true if the row can be read by {@link #readBlock(int, CSVRowCache)}
+	 */
+	boolean isIndexed(int row) {
+		return index.covers(row);
+	}
+	
+	/**
+	 * @return true if the index covers the whole file
+	 */
+	boolean isIndexComplete() {
+		return index.isComplete();
+	}
+	
+	/**
+	 * re-read a block of rows from its indexed offset, independent of the sequential pass
+	 * 
+	 * @param block block number, row / {@link CSVRowIndex#INTERVAL}
+	 * @param cache target cache with at least {@link CSVRowIndex#INTERVAL} slots
+	 * @return number of rows read, less than the interval at EOF
+	 * @throws XLWrapException
+	 */
+	int readBlock(int block, CSVRowCache cache) throws XLWrapException {
+		try {
+			FileChannel ch = new FileInputStream(f).getChannel();
+			try {
+				Cursor c = new Cursor(ch, index.offset(block), windowSize);
+				int row = block * CSVRowIndex.INTERVAL;
+				int n = 0;
+				while (n < CSVRowIndex.INTERVAL && c.nextLine()) {
+					int cols = parse(c.window, row + n, c.lineStart, c.lineEnd);
+					cache.set(n++, c.window, bounds, 0, cols);
+				}
+				return n;
+			} finally {
+				ch.close(); // mapped windows stay valid
+			}
+		} catch (IOException e) {
+			throw new XLWrapException("Failed to re-read rows " + block * CSVRowIndex.INTERVAL + "ff. from CSV file " + file + ".", e);
+		}
+	}
+
+	/**
+	 * close the file, mapped windows stay valid until they are garbage collected
+	 */
+	void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+			pending = null;
+			batch = null;
+		}
+		if (cursor != null) {
+			try {
+				cursor.channel.close();
+			} catch (IOException e) {
+				log.error("Failed to close CSV file " + file + ".", e);
+			}
+			cursor = null;
+		}
+	}
+	
+	/**
+	 * position in a file, reads lines from mapped windows
+	 */
+	private class Cursor {
+		private final FileChannel channel;
+		private final int windowSize;
+		private ByteBuffer window;
+		private long windowStart;
+		
+		/** absolute position of the next line */
+		private long pos;
+		
+		/** offsets of the current line in the window */
+		private int lineStart, lineEnd;
+		
+		Cursor(FileChannel channel, long pos, int windowSize) throws IOException {
+			this.channel = channel;
+			this.windowSize = windowSize;
+			this.pos = pos;
+			map(pos, windowSize);
+		}
+		
+		private void map(long start, long length) throws IOException {
+			long len = Math.min(length, size - start);
+			if (len > Integer.MAX_VALUE)
+				throw new IOException("Line at byte " + start + " exceeds the maximum window size.");
+			if (len <= 0)
+				window = ByteBuffer.allocate(0);
+			else {
+				MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, len);
+				window = buf;
+			}
+			windowStart = start;
+			if (log.isTraceEnabled())
+				log.trace("Mapped " + len + " bytes of " + file + " at " + start + ".");
+		}
+		
+		/**
+		 * move to the next non-empty line
+		 * @return false at EOF
+		 * @throws IOException
+		 */
+		boolean nextLine() throws IOException {
+			while (line()) {
+				if (lineEnd > lineStart) // skip empty lines
+					return true;
+			}
+			return false;
+		}
+		
+		/**
+		 * move to the next line, which may be empty
+		 * @return false at EOF
+		 * @throws IOException
+		 */
+		boolean line() throws IOException {
+			while (pos < size) {
+				int start = (int) (pos - windowStart);
+				int lim = window.limit();
+				int i = start;
+				while (i < lim) {
+					byte b = window.get(i);
+					if (b == '\n' || b == '\r')
+						break;
+					i++;
+				}
+				
+				// line or \r\n continues after the window, remap at line start
+				if (windowStart + lim < size && (i == lim || i + 1 == lim && window.get(i) == '\r')) {
+					map(pos, Math.max(windowSize, 2L * (lim - start)));
+					continue;
+				}
+				
+				int skip = 0;
+				if (i < lim)
+					skip = (window.get(i) == '\r' && i + 1 < lim && window.get(i + 1) == '\n') ? 2 : 1;
+				pos = windowStart + i + skip;
+				lineStart = start;
+				lineEnd = i;
+				return true;
+			}
+			return false;
+		}
+		
+		/**
+		 * @return absolute offset of the current line
+		 */
+		long lineOffset() {
+			return windowStart + lineStart;
+		}
+	}
+	
+	/**
+	 * parses the lines starting in a byte range, the first line may end after the range
+	 */
+	private class Chunk implements Callable<Batch> {
+		private final FileChannel channel;
+		private final long from, to;
+		
+		Chunk(FileChannel channel, long from, long to) {
+			this.channel = channel;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		public Batch call() throws IOException {
+			// start at the preceding byte, a line starting before the range belongs to the previous chunk
+			Cursor c = new Cursor(channel, from > 0 ? from - 1 : 0, (int) (to - from) + 1 + 4096);
+			if (from > 0)
+				c.line();
+			
+			Batch b = new Batch();
+			int[] bounds = new int[16];
+			while (c.nextLine() && c.lineOffset() < to) {
+				LineParser p = new LineParser(c.window, -1, c.lineStart, c.lineEnd, bounds);
+				int cols;
+				try {
+					cols = p.parse();
+				} catch (XLWrapException e) {
+					cols = -1;
+				}
+				bounds = p.bounds;
+				b.add(c, bounds, cols);
+			}
+			return b;
+		}
+	}
+	
+	/**
+	 * rows of a chunk, cell offsets of all rows are stored in a single array
+	 */
+	private static class Batch {
+		private int rows = 0;
+		private ByteBuffer[] windows = new ByteBuffer[256];
+		private long[] offsets = new long[256];
+		private int[] lineStarts = new int[256];
+		private int[] lineEnds = new int[256];
+		
+		/** number of cells, -1 for invalid lines */
+		private int[] cols = new int[256];
+		private int[] boundsOffsets = new int[256];
+		private int[] bounds = new int[4096];
+		private int boundsSize = 0;
+		
+		private void add(Cursor c, int[] b, int n) {
+			if (rows == offsets.length) {
+				int len = rows * 2;
+				ByteBuffer[] w = new ByteBuffer[len];
+				System.arraycopy(windows, 0, w, 0, rows);
+				windows = w;
+				offsets = copy(offsets, len);
+				lineStarts = copy(lineStarts, len);
+				lineEnds = copy(lineEnds, len);
+				cols = copy(cols, len);
+				boundsOffsets = copy(boundsOffsets, len);
+			}
+			int cells = Math.max(n, 0) * 2;
+			if (boundsSize + cells > bounds.length)
+				bounds = copy(bounds, Math.max(bounds.length * 2, boundsSize + cells));
+			System.arraycopy(b, 0, bounds, boundsSize, cells);
+			
+			windows[rows] = c.window;
+			offsets[rows] = c.lineOffset();
+			lineStarts[rows] = c.lineStart;
+			lineEnds[rows] = c.lineEnd;
+			cols[rows] = n;
+			boundsOffsets[rows] = boundsSize;
+			boundsSize += cells;
+			rows++;
+		}
+		
+		private static int[] copy(int[] a, int len) {
+			int[] r = new int[len];
+			System.arraycopy(a, 0, r, 0, a.length);
+			return r;
+		}
+		
+		private static long[] copy(long[] a, int len) {
+			long[] r = new long[len];
+			System.arraycopy(a, 0, r, 0, a.length);
+			return r;
+		}
+	}
+	
+	private void configure(CSVParseConfig cfg) throws XLWrapException {
+		this.cfg = cfg;
+		String s = cfg.getColSeperator();
+		String d = cfg.getValDelimiter();
+		if (s != null && s.length() > 1 || d != null && d.length() > 1)
+			throw new XLWrapException("Only single character column separators and value delimiters are supported for CSV file " + file + ".");
+		hasSep = s != null && s.length() > 0;
+		sep = hasSep ? ascii(s.charAt(0)) : 0;
+		hasDelim = d != null && d.length() > 0;
+		delim = hasDelim ? ascii(d.charAt(0)) : 0;
+		delimOpt = cfg.isValDelimOptional();
+		char[] w = cfg.getWhiteSpaces();
+		ws = new byte[w.length];
+		for (int i = 0; i < w.length; i++)
+			ws[i] = (byte) ascii(w[i]);
+	}
+
+	private int ascii(char c) throws XLWrapException {
+		if (c > 127)
+			throw new XLWrapException("Only ASCII characters are supported as separators and delimiters for CSV file " + file + ".");
+		return c;
+	}
+	
+	/**
+	 * parse a line, same logic as CSVSheet.SimpleLineParser but on bytes and recording cell offsets
+	 */
+	private int parse(ByteBuffer buf, int row, int start, int end) throws XLWrapException {
+		if (cfg == null)
+			detect(buf, start, end);
+		LineParser p = new LineParser(buf, row, start, end, bounds);
+		int cols = p.parse();
+		bounds = p.bounds;
+		return cols;
+	}
+	
+	/**
+	 * auto-detect parse config from a line
+	 */
+	private void detect(ByteBuffer buf, int start, int end) throws XLWrapException {
+		CSVParseConfig detected = CSVParseConfig.autoDetectConfig(decode(buf, start, end, false));
+		configure(detected != null ? detected : CSVParseConfig.DEFAULT_IF_UNDETECTABLE);
+	}
+	
+	/**
+	 * decode bytes of a window, thread-safe because only absolute get methods are used
+	 */
+	public String decode(ByteBuffer buf, int start, int end, boolean unescape) {
+		byte[] bytes = new byte[end - start];
+		int n = 0;
+		for (int i = start; i < end; i++) {
+			byte b = buf.get(i);
+			bytes[n++] = b;
+			if (unescape && b == delim && i + 1 < end && buf.get(i + 1) == delim)
+				i++;
+		}
+		return new String(bytes, 0, n, charset);
+	}
+	
+	/**
+	 * decode bytes of a window into a buffer, ASCII is copied directly (and all bytes of ISO-8859-1), 
+	 * the rest of a cell starting with another byte is decoded by {@link #decode(ByteBuffer, int, int, boolean)}
+	 */
+	public void decode(ByteBuffer buf, int start, int end, boolean unescape, StringBuilder out) {
+		for (int i = start; i < end; i++) {
+			byte b = buf.get(i);
+			if (b < 0 && !latin1) {
+				out.append(decode(buf, i, end, unescape));
+				return;
+			}
+			out.append((char) (b & 0xff));
+			if (unescape && b == delim && i + 1 < end && buf.get(i + 1) == delim)
+				i++;
+		}
+	}
+	
+	/**
+	 * byte-level line parser
+	 */
+	private class LineParser {
+		private final ByteBuffer window;
+		private final int row;
+		private final int start;
+		private final int end;
+		
+		private int idx;
+		private int next;
+		
+		private int cols = 0;
+		
+		/** cell offsets, replaced by a larger array if needed */
+		private int[] bounds;
+		
+		/** first and last offset of the current cell value */
+		private int valueStart, valueEnd;
+		
+		LineParser(ByteBuffer window, int row, int start, int end, int[] bounds) {
+			this.window = window;
+			this.bounds = bounds;
+			this.row = row;
+			this.start = start;
+			this.end = end;
+			this.idx = start;
+		}
+		
+		/**
+		 * @return number of cells, offsets are written into bounds
+		 * @throws XLWrapException
+		 */
+		int parse() throws XLWrapException {
+			if (hasNext())
+				next();
+			cell();
+			while (hasNext()) {
+				expectSep();
+				cell();
+			}
+			return cols;
+		}
+		
+		private void cell() throws XLWrapException {
+			boolean esc = false;
+			whitespace();
+			boolean usingDelim = expectDelim(delimOpt);
+			valueStart = -1;
+			value(usingDelim);
+			expectDelim(delimOpt);
+			if (usingDelim) {
+				// delimiter escaping by doubling the delimiter
+				while (nextIsDelimStart()) {
+					esc = true;
+					expectDelim(true);
+					value(false);
+					expectDelim(true);
+				}
+			}
+			whitespace();
+			
+			if (2 * cols + 2 > bounds.length) {
+				int[] b = new int[bounds.length * 2];
+				System.arraycopy(bounds, 0, b, 0, bounds.length);
+				bounds = b;
+			}
+			bounds[2 * cols] = esc ? ~valueStart : valueStart;
+			bounds[2 * cols + 1] = valueEnd;
+			cols++;
+		}
+		
+		private boolean hasNext() {
+			return idx < end;
+		}
+		
+		private void next() {
+			next = window.get(idx++);
+		}
+		
+		private void whitespace() {
+			if (hasNext()) {
+				for (byte c : ws)
+					if (next == c) {
+						next(); // skip whitespace
+						break;
+					}
+			}
+		}
+		
+		private boolean expectDelim(boolean optional) throws XLWrapException {
+			if (!hasDelim)
+				return true; // empty string always "found"
+			return expect(delim, optional);
+		}
+		
+		private void expectSep() throws XLWrapException {
+			if (hasSep)
+				expect(sep, false);
+		}
+		
+		private boolean expect(int c, boolean optional) throws XLWrapException {
+			if (next != c) {
+				if (optional)
+					return false; // not found, was optional
+				else
+					throw new XLWrapException("Invalid line, was expecting '" + (char) c + "' at position " + (idx - start) + " in line " + row + ":" + decode(window, start, end, false));
+			}
+			if (hasNext()) // if has next, proceed (otherwise we are at the end of a line)
+				next();
+			return true;
+		}
+
+		private boolean nextIsDelimStart() {
+			return hasDelim && hasNext() && next == delim;
+		}
+		
+		/**
+		 * scan a value, the cell text spans from the start of the first to the end of the last value
+		 */
+		private void value(boolean ignoreSep) {
+			int s = idx - 1;
+			int e;
+			for (;;) {
+				if (next == delim || !ignoreSep && next == sep) { // delim or sep reached
+					e = idx - 1;
+					break;
+				}
+				if (hasNext())
+					next();
+				else { // end of line
+					e = idx;
+					break;
+				}
+			}
+			if (valueStart < 0)
+				valueStart = s;
+			valueEnd = e;
+		}
+	}
+}
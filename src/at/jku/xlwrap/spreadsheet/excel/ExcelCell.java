@@ -32,6 +32,7 @@ import at.jku.xlwrap.common.Constants;
 import at.jku.xlwrap.common.Utils;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
 import at.jku.xlwrap.spreadsheet.FormatAnnotation;
 import at.jku.xlwrap.spreadsheet.TypeAnnotation;
 
@@ -119,6 +120,35 @@ public class ExcelCell implements Cell {
 			throw new XLWrapException("Unknown cell type: " + getCellInfo());
 	}
 
+	/**
+	 * read the value of a jxl cell into a holder, types are mapped like {@link #getType()}
+	 * 
+	 * @param cell
+	 * @param holder
+	 * @param file
+	 * @param sheet
+	 * @throws XLWrapException
+	 */
+	static void read(jxl.Cell cell, CellValueHolder holder, String file, String sheet) throws XLWrapException {
+		CellType t = cell.getType();
+		
+		if (t == CellType.BOOLEAN || t == CellType.BOOLEAN_FORMULA)
+			holder.setBoolean(((BooleanCell) cell).getValue());
+		else if (t == CellType.NUMBER || t == CellType.NUMBER_FORMULA)
+			holder.setNumber(((NumberCell) cell).getValue());
+		else if (t == CellType.DATE || t == CellType.DATE_FORMULA)
+			holder.setDate(((DateCell) cell).getDate().getTime());
+		else if (t == CellType.EMPTY)
+			holder.setNull();
+		else if (t == CellType.LABEL || t == CellType.STRING_FORMULA)
+			holder.setText(cell.getContents());
+		else if (t == CellType.ERROR || t == CellType.FORMULA_ERROR) {
+			log.warn("Error in cell " + new ExcelCell(cell, file, sheet).getCellInfo() + ".");
+			holder.setNull();
+		} else
+			throw new XLWrapException("Unknown cell type: " + new ExcelCell(cell, file, sheet).getCellInfo());
+	}
+
 	@Override
 	public FormatAnnotation getFormat() {
 		CellFormat cf = cell.getCellFormat();
@@ -15,7 +15,9 @@
  */
 package at.jku.xlwrap.spreadsheet.excel;
 
+import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
 import at.jku.xlwrap.spreadsheet.Sheet;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 
@@ -27,27 +29,61 @@ public class ExcelSheet implements Sheet {
 	private final jxl.Sheet sheet;
 	private final String file;
 	
+	/** 
+	 * jxl reads sheets lazily and clears the previously accessed sheet of a workbook,
+	 * so all sheets of a workbook are accessed using the same lock (the workbook)
+	 */
+	private final Object lock;
+	
 	/**
 	 * @param sheet
 	 */
 	public ExcelSheet(jxl.Sheet sheet, String file) {
+		this(sheet, file, sheet);
+	}
+
+	/**
+	 * @param sheet
+	 * @param file
+	 * @param lock shared lock for all sheets of the workbook
+	 */
+	public ExcelSheet(jxl.Sheet sheet, String file, Object lock) {
 		this.sheet = sheet;
 		this.file = file;
+		this.lock = lock;
 	}
-
+	
 	@Override
 	public Cell getCell(int column, int row) throws XLWrapEOFException {
 		try {
-			jxl.Cell cell = sheet.getCell(column, row);
+			jxl.Cell cell;
+			synchronized (lock) {
+				cell = sheet.getCell(column, row);
+			}
 			return new ExcelCell(cell, file, sheet.getName());
 		} catch (ArrayIndexOutOfBoundsException e) {
 			throw new XLWrapEOFException();
 		}
 	}
 
+	@Override
+	public void readCell(int column, int row, CellValueHolder holder) throws XLWrapException, XLWrapEOFException {
+		try {
+			jxl.Cell cell;
+			synchronized (lock) {
+				cell = sheet.getCell(column, row);
+			}
+			ExcelCell.read(cell, holder, file, sheet.getName());
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new XLWrapEOFException();
+		}
+	}
+
 	@Override
 	public int getColumns() {
-		return sheet.getColumns();
+		synchronized (lock) {
+			return sheet.getColumns();
+		}
 	}
 
 	@Override
@@ -57,7 +93,9 @@ public class ExcelSheet implements Sheet {
 
 	@Override
 	public int getRows() {
-		return sheet.getRows();
+		synchronized (lock) {
+			return sheet.getRows();
+		}
 	}
 
 	@Override
@@ -51,12 +51,16 @@ public class ExcelWorkbook implements Workbook {
 	
 	@Override
 	public Sheet getSheet(int sheetNum) {
-		return new ExcelSheet(wb.getSheet(sheetNum), file);
+		synchronized (wb) {
+			return new ExcelSheet(wb.getSheet(sheetNum), file, wb);
+		}
 	}
 
 	@Override
 	public Sheet getSheet(String sheetName) {
-		return new ExcelSheet(wb.getSheet(sheetName), file);
+		synchronized (wb) {
+			return new ExcelSheet(wb.getSheet(sheetName), file, wb);
+		}
 	}
 
 	@Override
@@ -26,6 +26,7 @@ import at.jku.xlwrap.common.Constants;
 import at.jku.xlwrap.common.Utils;
 import at.jku.xlwrap.common.XLWrapException;
 import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
 import at.jku.xlwrap.spreadsheet.FormatAnnotation;
 import at.jku.xlwrap.spreadsheet.TypeAnnotation;
 
@@ -98,6 +99,10 @@ public class OpenDocumentCell implements Cell {
 	@Override
 	public double getNumber() throws XLWrapException {
 		obtainValue();
+		return number(val);
+	}
+	
+	private static double number(Object val) {
 		if (val instanceof Long)
 			return ((Long) val).doubleValue();
 		else if (val instanceof Integer)
@@ -146,12 +151,40 @@ public class OpenDocumentCell implements Cell {
 	}
 
 	private void obtainValue() {
-		if (val == null) {
-			val = cell.getValue();
-			if (val == null || (val instanceof String && ((String) val).length() == 0)) { // maybe content is XML?
-				val = cell.getElement().getValue();
-			}
-		}
+		if (val == null)
+			val = value(cell);
+	}
+	
+	/**
+	 * @param cell
+	 * @return the value of the cell as returned by jOpenDocument, or its text content if empty
+	 */
+	static Object value(org.jopendocument.dom.spreadsheet.Cell<SpreadSheet> cell) {
+		Object val = cell.getValue();
+		if (val == null || (val instanceof String && ((String) val).length() == 0)) // maybe content is XML?
+			val = cell.getElement().getValue();
+		return val;
+	}
+	
+	/**
+	 * read a value obtained by {@link #value(org.jopendocument.dom.spreadsheet.Cell)} into a holder, 
+	 * types are mapped like {@link #getType()}
+	 * 
+	 * @param val
+	 * @param holder
+	 */
+	static void read(Object val, CellValueHolder holder) {
+		if (val instanceof String)
+			holder.setText((String) val);
+		else if (val instanceof Float || val instanceof Double ||
+				val instanceof Integer || val instanceof Long || val instanceof Short || val instanceof Byte)
+			holder.setNumber(number(val));
+		else if (val instanceof Date)
+			holder.setDate(((Date) val).getTime());
+		else if (val instanceof Boolean)
+			holder.setBoolean((Boolean) val);
+		else
+			holder.setNull();
 	}
 
 	@Override
@@ -0,0 +1,296 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.spreadsheet.opendoc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import at.jku.xlwrap.spreadsheet.opendoc.OpenDocumentStreamSheet.Row;
+
+/**
+ * @author dorgon
+ *
+ * Reads the tables of an OpenDocument content.xml into {@link OpenDocumentStreamSheet}s. 
+ * Consecutive empty rows are merged into a single run, rows without values share 
+ * {@link Row#EMPTY}. Trailing empty rows and columns, e.g. written by LibreOffice up to the 
+ * maximum sheet size, are not counted for the size of a sheet.
+ */
+class OpenDocumentContentParser {
+	static final String NS_OFFICE = "urn:oasis:names:tc:opendocument:xmlns:office:1.0";
+	static final String NS_TABLE = "urn:oasis:names:tc:opendocument:xmlns:table:1.0";
+	static final String NS_TEXT = "urn:oasis:names:tc:opendocument:xmlns:text:1.0";
+	
+	private final XMLStreamReader r;
+	private final String file;
+	
+	// row runs of the current table
+	private int[] rowStarts = new int[64];
+	private Row[] rowRuns = new Row[64];
+	private int rowCount;
+	
+	// cell runs of the current row
+	private int[] starts = new int[64];
+	private byte[] kinds = new byte[64];
+	private double[] numbers = new double[64];
+	private String[] texts = new String[64];
+	private int cellCount;
+	
+	/** number of columns of the last row up to its last value */
+	private int width;
+	
+	private final StringBuilder text = new StringBuilder();
+	
+	/**
+	 * @param r reader positioned before the document element
+	 * @param file used for sheet info
+	 */
+	OpenDocumentContentParser(XMLStreamReader r, String file) {
+		this.r = r;
+		this.file = file;
+	}
+	
+	/**
+	 * @return all tables of the document in document order
+	 * @throws XMLStreamException
+	 */
+	List<OpenDocumentStreamSheet> parse() throws XMLStreamException {
+		List<OpenDocumentStreamSheet> sheets = new ArrayList<OpenDocumentStreamSheet>();
+		while (r.hasNext()) {
+			if (r.next() == XMLStreamConstants.START_ELEMENT && is(NS_TABLE, "table"))
+				sheets.add(table());
+		}
+		return sheets;
+	}
+	
+	/**
+	 * read a table:table element, the reader is positioned at its start
+	 */
+	private OpenDocumentStreamSheet table() throws XMLStreamException {
+		String name = r.getAttributeValue(NS_TABLE, "name");
+		int rows = 0;
+		int valueRows = 0;
+		int columns = 0;
+		rowCount = 0;
+		
+		// row groups, header rows etc. are only descended into
+		int depth = 1;
+		while (depth > 0) {
+			int ev = r.next();
+			if (ev == XMLStreamConstants.START_ELEMENT) {
+				if (is(NS_TABLE, "table-row")) {
+					int repeat = repeat("number-rows-repeated");
+					Row row = row();
+					if (row != Row.EMPTY || rowCount == 0 || rowRuns[rowCount-1] != Row.EMPTY)
+						addRow(rows, row);
+					rows += repeat;
+					if (row != Row.EMPTY) {
+						valueRows = rows;
+						columns = Math.max(columns, width);
+					}
+				} else
+					depth++;
+			} else if (ev == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+		
+		if (rowCount == 0)
+			addRow(0, Row.EMPTY);
+		return new OpenDocumentStreamSheet(name, file, valueRows, columns, 
+				Arrays.copyOf(rowStarts, rowCount), Arrays.copyOf(rowRuns, rowCount));
+	}
+	
+	private void addRow(int start, Row row) {
+		if (rowCount == rowStarts.length) {
+			rowStarts = Arrays.copyOf(rowStarts, rowCount * 2);
+			rowRuns = Arrays.copyOf(rowRuns, rowCount * 2);
+		}
+		rowStarts[rowCount] = start;
+		rowRuns[rowCount++] = row;
+	}
+	
+	/**
+	 * read a table:table-row element, the reader is positioned at its start
+	 */
+	private Row row() throws XMLStreamException {
+		int col = 0;
+		int runs = 0;
+		width = 0;
+		cellCount = 0;
+		while (true) {
+			int ev = r.next();
+			if (ev == XMLStreamConstants.START_ELEMENT) {
+				if (is(NS_TABLE, "table-cell") || is(NS_TABLE, "covered-table-cell")) {
+					int repeat = repeat("number-columns-repeated");
+					if (cell(col)) {
+						width = col + repeat;
+						runs = cellCount;
+					}
+					col += repeat;
+				} else
+					skip();
+			} else if (ev == XMLStreamConstants.END_ELEMENT)
+				break;
+		}
+		
+		if (width == 0)
+			return Row.EMPTY;
+		return new Row(Arrays.copyOf(starts, runs), Arrays.copyOf(kinds, runs), 
+				Arrays.copyOf(numbers, runs), Arrays.copyOf(texts, runs), width);
+	}
+	
+	/**
+	 * read a table:table-cell element and add a cell run, the reader is positioned at its start
+	 * 
+	 * @param col first column of the run
+	 * @return true if the cell has a value
+	 */
+	private boolean cell(int col) throws XMLStreamException {
+		String type = r.getAttributeValue(NS_OFFICE, "value-type");
+		byte kind = OpenDocumentStreamCell.EMPTY;
+		double number = 0;
+		String value = null;
+		
+		if (type == null || type.equals("string"))
+			value = r.getAttributeValue(NS_OFFICE, "string-value");
+		else if (type.equals("float") || type.equals("percentage") || type.equals("currency")) {
+			String v = r.getAttributeValue(NS_OFFICE, "value");
+			if (v != null) {
+				try {
+					number = Double.parseDouble(v);
+					kind = OpenDocumentStreamCell.NUMBER;
+				} catch (NumberFormatException e) {
+					// keep the displayed text
+				}
+			}
+		} else if (type.equals("date")) {
+			value = r.getAttributeValue(NS_OFFICE, "date-value");
+			if (value != null && value.length() > 0)
+				kind = OpenDocumentStreamCell.DATE;
+		} else if (type.equals("time")) {
+			value = r.getAttributeValue(NS_OFFICE, "time-value");
+			kind = OpenDocumentStreamCell.TIME;
+		} else if (type.equals("boolean")) {
+			kind = OpenDocumentStreamCell.BOOLEAN;
+			number = Boolean.parseBoolean(r.getAttributeValue(NS_OFFICE, "boolean-value")) ? 1 : 0;
+		}
+		
+		String content = content();
+		if (kind == OpenDocumentStreamCell.EMPTY) {
+			// strings, unknown types and cells without value type like jOpenDocument
+			if (value == null || value.length() == 0)
+				value = content;
+			if (value.length() > 0)
+				kind = OpenDocumentStreamCell.STRING;
+			else
+				value = null;
+		}
+		
+		if (cellCount == starts.length) {
+			int n = cellCount * 2;
+			starts = Arrays.copyOf(starts, n);
+			kinds = Arrays.copyOf(kinds, n);
+			numbers = Arrays.copyOf(numbers, n);
+			texts = Arrays.copyOf(texts, n);
+		}
+		starts[cellCount] = col;
+		kinds[cellCount] = kind;
+		numbers[cellCount] = number;
+		texts[cellCount++] = value;
+		return kind != OpenDocumentStreamCell.EMPTY;
+	}
+	
+	/**
+	 * read the paragraphs of a cell up to its end, annotations and nested tables are skipped
+	 * 
+	 * @return text of the paragraphs separated by line breaks
+	 */
+	private String content() throws XMLStreamException {
+		text.setLength(0);
+		int paragraphs = 0;
+		int inParagraph = 0;
+		int depth = 0;
+		while (true) {
+			int ev = r.next();
+			switch (ev) {
+			case XMLStreamConstants.START_ELEMENT:
+				if (NS_TEXT.equals(r.getNamespaceURI())) {
+					String n = r.getLocalName();
+					if (n.equals("p") || n.equals("h")) {
+						if (paragraphs++ > 0)
+							text.append('\n');
+						inParagraph++;
+					} else if (n.equals("s")) {
+						String c = r.getAttributeValue(NS_TEXT, "c");
+						for (int i = c != null ? Integer.parseInt(c) : 1; i > 0; i--)
+							text.append(' ');
+					} else if (n.equals("tab"))
+						text.append('\t');
+					else if (n.equals("line-break"))
+						text.append('\n');
+					depth++;
+				} else if (is(NS_OFFICE, "annotation") || is(NS_TABLE, "table"))
+					skip();
+				else
+					depth++;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				if (inParagraph > 0)
+					text.append(r.getTextCharacters(), r.getTextStart(), r.getTextLength());
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				if (depth-- == 0)
+					return text.toString();
+				if (NS_TEXT.equals(r.getNamespaceURI()) && (r.getLocalName().equals("p") || r.getLocalName().equals("h")))
+					inParagraph--;
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * skip the current element including its content
+	 */
+	private void skip() throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int ev = r.next();
+			if (ev == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (ev == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+	
+	/**
+	 * @param name local name of a repeat attribute in the table namespace
+	 * @return value of the attribute, 1 if missing
+	 */
+	private int repeat(String name) {
+		String v = r.getAttributeValue(NS_TABLE, name);
+		return v != null ? Integer.parseInt(v) : 1;
+	}
+	
+	private boolean is(String ns, String name) {
+		return name.equals(r.getLocalName()) && ns.equals(r.getNamespaceURI());
+	}
+}
@@ -19,6 +19,7 @@ import org.jopendocument.dom.spreadsheet.MutableCell;
 import org.jopendocument.dom.spreadsheet.SpreadSheet;
 
 import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
 import at.jku.xlwrap.spreadsheet.Sheet;
 import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
 
@@ -30,25 +31,54 @@ public class OpenDocumentSheet implements Sheet {
 	private final org.jopendocument.dom.spreadsheet.Sheet sheet;
 	private final String file;
 	
+	/** jOpenDocument is not thread-safe, all sheets of a document share this lock (the document) */
+	private final Object lock;
+	
 	/**
 	 * @param sheet
 	 * @param fileName
 	 */
 	public OpenDocumentSheet(org.jopendocument.dom.spreadsheet.Sheet sheet, String fileName) {
+		this(sheet, fileName, sheet);
+	}
+
+	/**
+	 * @param sheet
+	 * @param fileName
+	 * @param lock shared lock for all sheets of the document
+	 */
+	public OpenDocumentSheet(org.jopendocument.dom.spreadsheet.Sheet sheet, String fileName, Object lock) {
 		this.sheet = sheet;
 		this.file = fileName;
+		this.lock = lock;
 	}
-
+	
 	@Override
 	public Cell getCell(int column, int row) throws XLWrapEOFException {
 		try {
-			MutableCell<SpreadSheet> cell = sheet.getCellAt(column, row);
+			MutableCell<SpreadSheet> cell;
+			synchronized (lock) {
+				cell = sheet.getCellAt(column, row);
+			}
 			return new OpenDocumentCell(cell, column, row, file, sheet.getName());
 		} catch (NullPointerException e) {
 			throw new XLWrapEOFException();
 		}
 	}
 
+	@Override
+	public void readCell(int column, int row, CellValueHolder holder) throws XLWrapEOFException {
+		try {
+			Object val;
+			synchronized (lock) {
+				val = OpenDocumentCell.value(sheet.getCellAt(column, row));
+			}
+			OpenDocumentCell.read(val, holder);
+		} catch (NullPointerException e) {
+			throw new XLWrapEOFException();
+		}
+	}
+
 	@Override
 	public int getColumns() {
 		return sheet.getColumnCount();
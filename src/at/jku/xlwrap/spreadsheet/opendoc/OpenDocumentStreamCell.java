@@ -0,0 +1,162 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.spreadsheet.opendoc;
+
+import java.text.ParseException;
+import java.util.Date;
+
+import jxl.biff.formula.FormulaException;
+
+import org.jopendocument.dom.OOUtils;
+
+import at.jku.xlwrap.common.Constants;
+import at.jku.xlwrap.common.Utils;
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.FormatAnnotation;
+import at.jku.xlwrap.spreadsheet.TypeAnnotation;
+
+/**
+ * Cell of an {@link OpenDocumentStreamSheet}. Types are mapped like jOpenDocument does for 
+ * {@link OpenDocumentCell}, but numbers keep double precision.
+ * 
+ * @author dorgon
+ *
+ */
+public class OpenDocumentStreamCell implements Cell {
+	/** kinds of cell values */
+	static final byte EMPTY = 0, NUMBER = 1, STRING = 2, DATE = 3, BOOLEAN = 4, TIME = 5;
+	
+	private final OpenDocumentStreamSheet sheet;
+	private final int col;
+	private final int row;
+	
+	private final byte kind;
+	private final double number;
+	
+	/** text of strings, lexical value of dates and times */
+	private final String text;
+	
+	/**
+	 * @param sheet
+	 * @param col
+	 * @param row
+	 * @param kind
+	 * @param number numeric value, 1 or 0 for booleans
+	 * @param text
+	 */
+	OpenDocumentStreamCell(OpenDocumentStreamSheet sheet, int col, int row, byte kind, double number, String text) {
+		this.sheet = sheet;
+		this.col = col;
+		this.row = row;
+		this.kind = kind;
+		this.number = number;
+		this.text = text;
+	}
+
+	@Override
+	public TypeAnnotation getType() throws XLWrapException {
+		switch (kind) {
+		case NUMBER:
+			return TypeAnnotation.NUMBER;
+		case STRING:
+			if (Constants.EMPTY_STRING_AS_NULL && text.length() == 0)
+				return TypeAnnotation.NULL;
+			else
+				return TypeAnnotation.TEXT;
+		case DATE:
+			return TypeAnnotation.DATE;
+		case BOOLEAN:
+			return TypeAnnotation.BOOLEAN;
+		default: // empty cells and times (like jOpenDocument's Calendar values)
+			return TypeAnnotation.NULL;
+		}
+	}
+
+	@Override
+	public FormatAnnotation getFormat() {
+		return new OpenDocumentFormat(null);
+	}
+
+	@Override
+	public String getFormula() throws FormulaException {
+		return null;
+	}
+
+	@Override
+	public boolean getBoolean() throws XLWrapException {
+		if (kind != BOOLEAN)
+			throw new XLWrapException("Cell " + getCellInfo() + " is not a boolean cell.");
+		return number != 0;
+	}
+
+	@Override
+	public Date getDate() throws XLWrapException {
+		if (kind != DATE)
+			throw new XLWrapException("Cell " + getCellInfo() + " is not a date cell.");
+		try {
+			synchronized (OOUtils.DATE_FORMAT) {
+				return (Date) OOUtils.DATE_FORMAT.parseObject(text);
+			}
+		} catch (ParseException e) {
+			throw new XLWrapException("Invalid date '" + text + "' in cell " + getCellInfo() + ".", e);
+		}
+	}
+
+	@Override
+	public String getText() throws XLWrapException {
+		switch (kind) {
+		case STRING:
+			return text;
+		case EMPTY:
+			return "";
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public double getNumber() throws XLWrapException {
+		if (kind != NUMBER)
+			throw new XLWrapException("Cell " + getCellInfo() + " is not a number cell.");
+		return number;
+	}
+
+	@Override
+	public int getInteger() throws XLWrapException {
+		return (int) getNumber();
+	}
+
+	@Override
+	public float getFloat() throws XLWrapException {
+		return (float) getNumber();
+	}
+
+	@Override
+	public long getLong() throws XLWrapException {
+		return (long) getNumber();
+	}
+
+	@Override
+	public double getDouble() throws XLWrapException {
+		return getNumber();
+	}
+
+	@Override
+	public String getCellInfo() {
+		return sheet.getSheetInfo() + ", " + Utils.indexToAlpha(col) + (row+1);
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.spreadsheet.opendoc;
+
+import java.util.Arrays;
+
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
+import at.jku.xlwrap.spreadsheet.Sheet;
+import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
+
+/**
+ * @author dorgon
+ *
+ * Sheet of an {@link OpenDocumentStreamWorkbook}. Rows are stored as runs of equal rows 
+ * (table:number-rows-repeated), each row as runs of equal cells (table:number-columns-repeated), 
+ * cells are located by binary search over the first index of each run. The size of the sheet 
+ * ends with the last row and column containing a value.
+ */
+public class OpenDocumentStreamSheet implements Sheet {
+	private final String name;
+	private final String file;
+	private final int rows;
+	private final int columns;
+	
+	/** first row of each run */
+	private final int[] rowStarts;
+	private final Row[] rowRuns;
+	
+	/**
+	 * @param name
+	 * @param file
+	 * @param rows number of rows up to the last row with a value
+	 * @param columns number of columns up to the last column with a value
+	 * @param rowStarts first row of each run
+	 * @param rowRuns
+	 */
+	OpenDocumentStreamSheet(String name, String file, int rows, int columns, int[] rowStarts, Row[] rowRuns) {
+		this.name = name;
+		this.file = file;
+		this.rows = rows;
+		this.columns = columns;
+		this.rowStarts = rowStarts;
+		this.rowRuns = rowRuns;
+	}
+	
+	@Override
+	public Cell getCell(int column, int row) throws XLWrapEOFException {
+		Row r = getRow(column, row);
+		int c = r.find(column);
+		if (c < 0)
+			return new OpenDocumentStreamCell(this, column, row, OpenDocumentStreamCell.EMPTY, 0, null);
+		else
+			return new OpenDocumentStreamCell(this, column, row, r.kinds[c], r.numbers[c], r.texts[c]);
+	}
+
+	@Override
+	public void readCell(int column, int row, CellValueHolder holder) throws XLWrapException, XLWrapEOFException {
+		Row r = getRow(column, row);
+		int c = r.find(column);
+		if (c < 0) {
+			holder.setNull();
+			return;
+		}
+		switch (r.kinds[c]) {
+		case OpenDocumentStreamCell.NUMBER:
+			holder.setNumber(r.numbers[c]);
+			break;
+		case OpenDocumentStreamCell.STRING:
+			holder.setText(r.texts[c]);
+			break;
+		case OpenDocumentStreamCell.BOOLEAN:
+			holder.setBoolean(r.numbers[c] != 0);
+			break;
+		case OpenDocumentStreamCell.DATE:
+			holder.setDate(new OpenDocumentStreamCell(this, column, row, r.kinds[c], r.numbers[c], r.texts[c]).getDate().getTime());
+			break;
+		default:
+			holder.setNull();
+		}
+	}
+
+	/**
+	 * @param column
+	 * @param row
+	 * @return run of the row
+	 * @throws XLWrapEOFException if the cell is out of the sheet
+	 */
+	private Row getRow(int column, int row) throws XLWrapEOFException {
+		if (row < 0 || row >= rows || column < 0 || column >= columns)
+			throw new XLWrapEOFException();
+		
+		int i = Arrays.binarySearch(rowStarts, row);
+		return rowRuns[i >= 0 ? i : -i - 2];
+	}
+
+	@Override
+	public int getColumns() {
+		return columns;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getRows() {
+		return rows;
+	}
+	
+	@Override
+	public String getSheetInfo() {
+		return file + ", sheet '" + name + "'";
+	}
+	
+	/**
+	 * a row stored as runs of equal cells
+	 */
+	static class Row {
+		/** row without any values, shared by all empty rows */
+		static final Row EMPTY = new Row(new int[0], new byte[0], new double[0], new String[0], 0);
+		
+		/** first column of each run */
+		final int[] starts;
+		final byte[] kinds;
+		final double[] numbers;
+		final String[] texts;
+		
+		/** number of columns up to the last value */
+		final int width;
+		
+		Row(int[] starts, byte[] kinds, double[] numbers, String[] texts, int width) {
+			this.starts = starts;
+			this.kinds = kinds;
+			this.numbers = numbers;
+			this.texts = texts;
+			this.width = width;
+		}
+		
+		/**
+		 * @param column
+		 * @return index of the run containing the column, -1 if beyond the row
+		 */
+		int find(int column) {
+			if (column >= width)
+				return -1;
+			int i = Arrays.binarySearch(starts, column);
+			return i >= 0 ? i : -i - 2;
+		}
+	}
+}
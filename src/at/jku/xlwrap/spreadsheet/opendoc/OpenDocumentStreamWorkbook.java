@@ -0,0 +1,133 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.spreadsheet.opendoc;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.spreadsheet.Sheet;
+import at.jku.xlwrap.spreadsheet.Workbook;
+
+/**
+ * @author dorgon
+ *
+ * OpenDocument spreadsheet read with StAX instead of jOpenDocument. content.xml is parsed once 
+ * into compact {@link OpenDocumentStreamSheet}s, repeated rows and columns are kept as runs 
+ * and never expanded. Sheets are immutable and can be read concurrently without locking.
+ */
+public class OpenDocumentStreamWorkbook implements Workbook {
+	private static final Logger log = LoggerFactory.getLogger(OpenDocumentStreamWorkbook.class);
+	
+	private static final String CONTENT = "content.xml";
+	
+	private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+	static {
+		xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+	}
+	
+	private final String fileName;
+	private final OpenDocumentStreamSheet[] sheets;
+	
+	/**
+	 * constructor
+	 * @param file
+	 * @param fileName
+	 * @throws XLWrapException
+	 */
+	public OpenDocumentStreamWorkbook(File file, String fileName) throws XLWrapException {
+		this.fileName = fileName;
+		
+		ZipFile zip = null;
+		InputStream in = null;
+		XMLStreamReader r = null;
+		try {
+			zip = new ZipFile(file);
+			ZipEntry e = zip.getEntry(CONTENT);
+			if (e == null)
+				throw new XLWrapException("Missing " + CONTENT + " in " + fileName + ".");
+			in = new BufferedInputStream(zip.getInputStream(e), 64 * 1024);
+			synchronized (xmlInputFactory) {
+				r = xmlInputFactory.createXMLStreamReader(in);
+			}
+			List<OpenDocumentStreamSheet> list = new OpenDocumentContentParser(r, fileName).parse();
+			sheets = list.toArray(new OpenDocumentStreamSheet[list.size()]);
+			log.debug("Read " + fileName + " with " + sheets.length + " sheets.");
+		} catch (IOException e) {
+			throw new XLWrapException("Failed to open OpenDocument spreadsheet " + fileName + ".", e);
+		} catch (XMLStreamException e) {
+			throw new XLWrapException("Failed to read " + CONTENT + " of " + fileName + ".", e);
+		} finally {
+			try {
+				if (r != null)
+					r.close();
+				if (in != null)
+					in.close();
+				if (zip != null)
+					zip.close();
+			} catch (Exception e) {
+				log.error("Failed to close " + fileName + ".", e);
+			}
+		}
+	}
+	
+	@Override
+	public boolean supportsMultipleSheets() {
+		return true;
+	}
+	
+	@Override
+	public Sheet getSheet(int sheetNum) {
+		return sheets[sheetNum];
+	}
+
+	@Override
+	public Sheet getSheet(String sheetName) {
+		for (OpenDocumentStreamSheet s : sheets)
+			if (s.getName().equals(sheetName))
+				return s;
+		return null;
+	}
+
+	@Override
+	public String[] getSheetNames() {
+		String[] names = new String[sheets.length];
+		for (int i = 0; i < sheets.length; i++)
+			names[i] = sheets[i].getName();
+		return names;
+	}
+
+	@Override
+	public String getWorkbookInfo() {
+		return fileName;
+	}
+
+	@Override
+	public void close() {}
+}
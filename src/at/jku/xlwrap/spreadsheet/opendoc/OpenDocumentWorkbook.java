@@ -47,12 +47,16 @@ public class OpenDocumentWorkbook implements Workbook {
 	
 	@Override
 	public Sheet getSheet(int sheetNum) {
-		return new OpenDocumentSheet(spread.getSheet(sheetNum), fileName);
+		synchronized (spread) {
+			return new OpenDocumentSheet(spread.getSheet(sheetNum), fileName, spread);
+		}
 	}
 
 	@Override
 	public Sheet getSheet(String sheetName) {
-		return new OpenDocumentSheet(spread.getSheet(sheetName), fileName);
+		synchronized (spread) {
+			return new OpenDocumentSheet(spread.getSheet(sheetName), fileName, spread);
+		}
 	}
 
 	@Override
@@ -0,0 +1,262 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.spreadsheet.xlsx;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import jxl.biff.formula.FormulaException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.jku.xlwrap.common.Constants;
+import at.jku.xlwrap.common.Utils;
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
+import at.jku.xlwrap.spreadsheet.FormatAnnotation;
+import at.jku.xlwrap.spreadsheet.TypeAnnotation;
+
+/**
+ * Cell of an Office Open XML sheet. Shared strings are stored as index into the 
+ * shared string table of the workbook and only resolved when the text is requested.
+ * 
+ * @author dorgon
+ *
+ */
+public class XLSXCell implements Cell {
+	private static final Logger log = LoggerFactory.getLogger(XLSXCell.class);
+	
+	/** kinds of cell values */
+	static final byte BLANK = 0, NUMBER = 1, SHARED_STRING = 2, STRING = 3, BOOLEAN = 4, ERROR = 5, ISO_DATE = 6;
+	
+	/** days between 1900-01-00 (1904-01-01) and 1970-01-01 */
+	private static final int UTC_OFFSET_DAYS = 25569;
+	private static final int UTC_OFFSET_DAYS_1904 = 24107;
+	
+	/** first day after the non-existing 1900-02-29, which Excel counts */
+	private static final int NON_LEAP_DAY = 61;
+	
+	private final XLSXSheet sheet;
+	private final int col;
+	private final int row;
+	
+	private final byte kind;
+	private final double number;
+	
+	/** text of strings and errors, lexical value of ISO dates */
+	private final String text;
+	private final int style;
+	private final String formula;
+	
+	/**
+	 * @param sheet
+	 * @param col
+	 * @param row
+	 * @param kind
+	 * @param number numeric value, or shared string index
+	 * @param text
+	 * @param style cell style index, -1 for the default style
+	 * @param formula
+	 */
+	XLSXCell(XLSXSheet sheet, int col, int row, byte kind, double number, String text, int style, String formula) {
+		this.sheet = sheet;
+		this.col = col;
+		this.row = row;
+		this.kind = kind;
+		this.number = number;
+		this.text = text;
+		this.style = style;
+		this.formula = formula;
+	}
+	
+	/**
+	 * empty cell
+	 */
+	XLSXCell(XLSXSheet sheet, int col, int row) {
+		this(sheet, col, row, BLANK, 0, null, -1, null);
+	}
+
+	@Override
+	public TypeAnnotation getType() throws XLWrapException {
+		switch (kind) {
+		case NUMBER:
+			return sheet.getStyles().isDate(style) ? TypeAnnotation.DATE : TypeAnnotation.NUMBER;
+		case SHARED_STRING:
+		case STRING:
+			if (Constants.EMPTY_STRING_AS_NULL && getText().length() == 0)
+				return TypeAnnotation.NULL;
+			else
+				return TypeAnnotation.TEXT;
+		case BOOLEAN:
+			return TypeAnnotation.BOOLEAN;
+		case ISO_DATE:
+			return TypeAnnotation.DATE;
+		case ERROR:
+			log.warn("Error in cell " + getCellInfo() + ".");
+			return TypeAnnotation.NULL;
+		default:
+			return TypeAnnotation.NULL;
+		}
+	}
+
+	/**
+	 * read the value into a holder, types are mapped like {@link #getType()}
+	 * 
+	 * @param holder
+	 * @throws XLWrapException
+	 */
+	void read(CellValueHolder holder) throws XLWrapException {
+		switch (kind) {
+		case NUMBER:
+			if (sheet.getStyles().isDate(style))
+				holder.setDate(dateMillis());
+			else
+				holder.setNumber(number);
+			break;
+		case SHARED_STRING:
+			StringBuilder b = holder.textBuffer();
+			sheet.getSharedStrings().append((int) number, b);
+			holder.setText(b);
+			break;
+		case STRING:
+			holder.setText(text);
+			break;
+		case BOOLEAN:
+			holder.setBoolean(number != 0);
+			break;
+		case ISO_DATE:
+			holder.setDate(parseISODate(text).getTime());
+			break;
+		case ERROR:
+			log.warn("Error in cell " + getCellInfo() + ".");
+			holder.setNull();
+			break;
+		default:
+			holder.setNull();
+		}
+	}
+
+	@Override
+	public FormatAnnotation getFormat() {
+		XLSXStyles styles = sheet.getStyles();
+		return new XLSXFormat(styles.getFormatCode(style), styles.isDate(style));
+	}
+
+	@Override
+	public String getFormula() throws FormulaException {
+		return formula;
+	}
+
+	@Override
+	public boolean getBoolean() throws XLWrapException {
+		if (kind != BOOLEAN)
+			throw new XLWrapException("Cell " + getCellInfo() + " is not a boolean cell.");
+		return number != 0;
+	}
+
+	@Override
+	public Date getDate() throws XLWrapException {
+		if (kind == ISO_DATE)
+			return parseISODate(text);
+		if (kind != NUMBER)
+			throw new XLWrapException("Cell " + getCellInfo() + " is not a date cell.");
+		return new Date(dateMillis());
+	}
+	
+	/**
+	 * @return the serial date number converted to milliseconds since 1970-01-01 UTC
+	 */
+	private long dateMillis() {
+		// same conversion as jxl for .xls files, dates are in UTC
+		double value = number;
+		boolean date1904 = sheet.isDate1904();
+		if (!date1904 && value < NON_LEAP_DAY)
+			value += 1;
+		double days = value - (date1904 ? UTC_OFFSET_DAYS_1904 : UTC_OFFSET_DAYS);
+		return Math.round(days * 24 * 60 * 60) * 1000;
+	}
+	
+	private Date parseISODate(String s) throws XLWrapException {
+		String pattern;
+		if (s.length() <= 10)
+			pattern = "yyyy-MM-dd";
+		else if (s.indexOf('.') > 0)
+			pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS";
+		else
+			pattern = "yyyy-MM-dd'T'HH:mm:ss";
+		SimpleDateFormat f = new SimpleDateFormat(pattern);
+		f.setTimeZone(TimeZone.getTimeZone("UTC"));
+		try {
+			return f.parse(s);
+		} catch (ParseException e) {
+			throw new XLWrapException("Invalid date '" + s + "' in cell " + getCellInfo() + ".", e);
+		}
+	}
+
+	@Override
+	public String getText() throws XLWrapException {
+		switch (kind) {
+		case SHARED_STRING:
+			return sheet.getSharedStrings().get((int) number);
+		case STRING:
+		case ERROR:
+		case ISO_DATE:
+			return text;
+		case NUMBER:
+			return (long) number == number ? Long.toString((long) number) : Double.toString(number);
+		case BOOLEAN:
+			return Boolean.toString(number != 0);
+		default:
+			return "";
+		}
+	}
+	
+	@Override
+	public double getNumber() throws XLWrapException {
+		if (kind != NUMBER)
+			throw new XLWrapException("Cell " + getCellInfo() + " is not a number cell.");
+		return number;
+	}
+
+	@Override
+	public int getInteger() throws XLWrapException {
+		return (int) getNumber();
+	}
+
+	@Override
+	public float getFloat() throws XLWrapException {
+		return (float) getNumber();
+	}
+
+	@Override
+	public long getLong() throws XLWrapException {
+		return (long) getNumber();
+	}
+
+	@Override
+	public double getDouble() throws XLWrapException {
+		return getNumber();
+	}
+
+	@Override
+	public String getCellInfo() {
+		return sheet.getSheetInfo() + ", " + Utils.indexToAlpha(col) + (row+1);
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.spreadsheet.xlsx;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import at.jku.xlwrap.common.XLWrapException;
+
+/**
+ * Shared string table of a workbook, all strings are stored in a single char array 
+ * with an end offset per string, Strings are only created when a cell is read.
+ * 
+ * @author dorgon
+ *
+ */
+class XLSXSharedStrings {
+	private char[] chars = new char[4096];
+	private int length = 0;
+	
+	/** end offsets of the strings in chars */
+	private int[] ends = new int[256];
+	private int count = 0;
+	
+	/**
+	 * @return empty table for workbooks without shared strings
+	 */
+	static XLSXSharedStrings empty() {
+		return new XLSXSharedStrings();
+	}
+	
+	/**
+	 * parse sharedStrings.xml
+	 * 
+	 * @param in
+	 * @param file used for error messages
+	 * @return
+	 * @throws XLWrapException
+	 */
+	static XLSXSharedStrings read(InputStream in, String file) throws XLWrapException {
+		XLSXSharedStrings sst = new XLSXSharedStrings();
+		XMLStreamReader r = XLSXWorkbook.createReader(in, file);
+		try {
+			int start = 0;
+			boolean text = false;
+			int phonetic = 0; // phonetic runs (rPh) are not part of the string
+			while (r.hasNext()) {
+				switch (r.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					String name = r.getLocalName();
+					if (name.equals("si"))
+						start = sst.length;
+					else if (name.equals("rPh"))
+						phonetic++;
+					else if (name.equals("t") && phonetic == 0)
+						text = true;
+					break;
+					
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					if (text)
+						sst.append(r.getTextCharacters(), r.getTextStart(), r.getTextLength());
+					break;
+					
+				case XMLStreamConstants.END_ELEMENT:
+					name = r.getLocalName();
+					if (name.equals("t"))
+						text = false;
+					else if (name.equals("rPh"))
+						phonetic--;
+					else if (name.equals("si")) {
+						sst.length = unescape(sst.chars, start, sst.length);
+						sst.end();
+					}
+					break;
+				}
+			}
+			return sst;
+		} catch (XMLStreamException e) {
+			throw new XLWrapException("Failed to read shared strings of " + file + ".", e);
+		} finally {
+			XLSXWorkbook.close(r, in);
+		}
+	}
+	
+	private void append(char[] buf, int start, int len) {
+		if (length + len > chars.length) {
+			char[] c = new char[Math.max(chars.length * 2, length + len)];
+			System.arraycopy(chars, 0, c, 0, length);
+			chars = c;
+		}
+		System.arraycopy(buf, start, chars, length, len);
+		length += len;
+	}
+	
+	private void end() {
+		if (count == ends.length) {
+			int[] e = new int[ends.length * 2];
+			System.arraycopy(ends, 0, e, 0, count);
+			ends = e;
+		}
+		ends[count++] = length;
+	}
+	
+	/**
+	 * @return number of strings
+	 */
+	int size() {
+		return count;
+	}
+	
+	/**
+	 * @param i
+	 * @return the string at index i
+	 * @throws XLWrapException if i is not a valid index
+	 */
+	String get(int i) throws XLWrapException {
+		if (i < 0 || i >= count)
+			throw new XLWrapException("Invalid shared string index " + i + ", only " + count + " shared strings defined.");
+		int start = i > 0 ? ends[i - 1] : 0;
+		return new String(chars, start, ends[i] - start);
+	}
+	
+	/**
+	 * @param i
+	 * @param out receives the string at index i
+	 * @throws XLWrapException if i is not a valid index
+	 */
+	void append(int i, StringBuilder out) throws XLWrapException {
+		if (i < 0 || i >= count)
+			throw new XLWrapException("Invalid shared string index " + i + ", only " + count + " shared strings defined.");
+		int start = i > 0 ? ends[i - 1] : 0;
+		out.append(chars, start, ends[i] - start);
+	}
+	
+	/**
+	 * decode characters escaped as _xHHHH_ in place
+	 * 
+	 * @param buf
+	 * @param start
+	 * @param end
+	 * @return new end
+	 */
+	static int unescape(char[] buf, int start, int end) {
+		int out = start;
+		for (int i = start; i < end; i++) {
+			if (buf[i] == '_' && i + 6 < end && buf[i + 1] == 'x' && buf[i + 6] == '_') {
+				int c = 0;
+				int k = i + 2;
+				for (; k < i + 6; k++) {
+					int d = Character.digit(buf[k], 16);
+					if (d < 0)
+						break;
+					c = c * 16 + d;
+				}
+				if (k == i + 6) {
+					buf[out++] = (char) c;
+					i += 6;
+					continue;
+				}
+			}
+			buf[out++] = buf[i];
+		}
+		return out;
+	}
+	
+	/**
+	 * @param s
+	 * @return s with characters escaped as _xHHHH_ decoded
+	 */
+	static String unescape(String s) {
+		if (s.indexOf("_x") < 0)
+			return s;
+		char[] buf = s.toCharArray();
+		return new String(buf, 0, unescape(buf, 0, buf.length));
+	}
+}
@@ -0,0 +1,404 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.spreadsheet.xlsx;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.spreadsheet.Cell;
+import at.jku.xlwrap.spreadsheet.CellValueHolder;
+import at.jku.xlwrap.spreadsheet.Sheet;
+import at.jku.xlwrap.spreadsheet.XLWrapEOFException;
+
+/**
+ * @author dorgon
+ *
+ * The sheet XML is streamed with StAX, rows are read in on-demand and kept in a window of 
+ * the last cacheSize rows, like {@link at.jku.xlwrap.spreadsheet.csv.CSVSheet}. Accessing a row which 
+ * has already left the window restarts the stream.
+ */
+public class XLSXSheet implements Sheet {
+	private static final Logger log = LoggerFactory.getLogger(XLSXSheet.class);
+	
+	/** default number of rows kept */
+	public static final int DEFAULT_CACHE_SIZE = 10000;
+	
+	private static final XLSXCell[] EMPTY_ROW = new XLSXCell[0];
+	
+	private final XLSXWorkbook workbook;
+	private final String name;
+	private final String entry;
+	
+	private InputStream in;
+	private XMLStreamReader reader;
+	
+	/** window of rows, row i is stored at i % capacity */
+	private final XLSXCell[][] cache;
+	
+	/** cells of the row currently parsed */
+	private XLSXCell[] rowBuffer = new XLSXCell[16];
+	
+	/** number of rows read so far, including empty rows which are omitted in the XML */
+	private int lastRow = 0;
+	
+	/** done */
+	private boolean finished = false;
+	
+	/** empty rows of the last gap longer than the window, which are not stored */
+	private int gapStart = 0, gapEnd = 0;
+	
+	/** number of rows from the dimension element, unknown if missing */
+	private int rows = Integer.MAX_VALUE;
+	
+	/** number of columns, from the dimension element or the maximum of the rows read so far */
+	private volatile int columns = 0;
+	
+	/**
+	 * @param workbook
+	 * @param name sheet name
+	 * @param entry zip entry of the sheet XML
+	 * @param cacheSize number of rows kept
+	 * @throws XLWrapException
+	 */
+	XLSXSheet(XLSXWorkbook workbook, String name, String entry, int cacheSize) throws XLWrapException {
+		this.workbook = workbook;
+		this.name = name;
+		this.entry = entry;
+		this.cache = new XLSXCell[cacheSize][];
+		open();
+	}
+	
+	/**
+	 * open the stream and move to the sheet data
+	 * @throws XLWrapException
+	 */
+	private void open() throws XLWrapException {
+		in = workbook.openEntry(entry);
+		reader = XLSXWorkbook.createReader(in, getSheetInfo());
+		lastRow = 0;
+		gapStart = gapEnd = 0;
+		finished = false;
+		try {
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					String n = reader.getLocalName();
+					if (n.equals("dimension"))
+						dimension(reader.getAttributeValue(null, "ref"));
+					else if (n.equals("sheetData"))
+						return;
+				}
+			}
+			finish();
+		} catch (XMLStreamException e) {
+			throw new XLWrapException("Failed to read " + getSheetInfo() + ".", e);
+		}
+	}
+	
+	/**
+	 * @param ref range of used cells, e.g. A1:D100
+	 */
+	private void dimension(String ref) {
+		int colon = ref != null ? ref.indexOf(':') : -1;
+		if (colon < 0)
+			return; // single cell, not reliable
+		String last = ref.substring(colon + 1);
+		int col = column(last);
+		int row = row(last);
+		if (col >= 0 && row > 0) {
+			columns = Math.max(columns, col + 1);
+			rows = row;
+		}
+	}
+	
+	/**
+	 * @param ref cell reference, e.g. AB12
+	 * @return zero-based column index, -1 if ref has no column
+	 */
+	static int column(String ref) {
+		int col = 0;
+		int i = 0;
+		for (; i < ref.length(); i++) {
+			char c = ref.charAt(i);
+			if (c >= 'A' && c <= 'Z')
+				col = col * 26 + (c - 'A' + 1);
+			else if (c != '$')
+				break;
+		}
+		return col - 1;
+	}
+	
+	/**
+	 * @param ref cell reference, e.g. AB12
+	 * @return one-based row number, 0 if ref has no row
+	 */
+	static int row(String ref) {
+		int row = 0;
+		for (int i = 0; i < ref.length(); i++) {
+			char c = ref.charAt(i);
+			if (c >= '0' && c <= '9')
+				row = row * 10 + (c - '0');
+		}
+		return row;
+	}
+	
+	private void finish() {
+		finished = true;
+		XLSXWorkbook.close(reader, in);
+		reader = null;
+		in = null;
+	}
+	
+	/**
+	 * close the stream
+	 */
+	synchronized void close() {
+		if (!finished)
+			finish();
+	}
+	
+	/**
+	 * get row from the window or stream more rows as needed
+	 * @param i
+	 * @return cells of the row or null at EOF
+	 * @throws XLWrapException
+	 */
+	private XLSXCell[] getRow(int i) throws XLWrapException {
+		if (i >= gapStart && i < gapEnd)
+			return EMPTY_ROW;
+		if (i < lastRow - cache.length) {
+			log.debug("Row " + i + " of " + getSheetInfo() + " has already been removed from the cache, restarting.");
+			close();
+			open();
+		}
+		while (lastRow <= i && !finished)
+			readRow();
+		
+		if (i >= lastRow) // EOF
+			return null;
+		else if (i >= gapStart && i < gapEnd)
+			return EMPTY_ROW;
+		else
+			return cache[i % cache.length];
+	}
+
+	/**
+	 * read the next row element into the window
+	 * @throws XLWrapException
+	 */
+	private void readRow() throws XLWrapException {
+		try {
+			while (reader.hasNext()) {
+				int e = reader.next();
+				if (e == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("row")) {
+					String r = reader.getAttributeValue(null, "r");
+					int row = r != null ? Integer.parseInt(r) - 1 : lastRow;
+					XLSXCell[] cells = parseRow(row);
+					
+					// rows without cells are omitted, fill the gap
+					int windowStart = row + 1 - cache.length;
+					if (windowStart > lastRow) {
+						gapStart = lastRow;
+						gapEnd = windowStart;
+					}
+					for (int i = Math.max(lastRow, windowStart); i < row; i++)
+						cache[i % cache.length] = EMPTY_ROW;
+					if (row >= lastRow) {
+						cache[row % cache.length] = cells;
+						lastRow = row + 1;
+					} else
+						log.warn("Ignoring row " + (row+1) + " of " + getSheetInfo() + ", rows are not sorted.");
+					return;
+				} else if (e == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("sheetData"))
+					break;
+			}
+			finish();
+		} catch (XMLStreamException e) {
+			throw new XLWrapException("Failed to read row " + (lastRow+1) + " of " + getSheetInfo() + ".", e);
+		} catch (NumberFormatException e) {
+			throw new XLWrapException("Invalid row or cell value after row " + lastRow + " of " + getSheetInfo() + ".", e);
+		}
+	}
+	
+	/**
+	 * parse the cells of a row element
+	 * @param row
+	 * @return
+	 * @throws XMLStreamException
+	 */
+	private XLSXCell[] parseRow(int row) throws XMLStreamException {
+		int col = -1;
+		int width = 0;
+		while (reader.hasNext()) {
+			int e = reader.next();
+			if (e == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("c")) {
+				String ref = reader.getAttributeValue(null, "r");
+				int c = ref != null ? column(ref) : -1;
+				col = c >= 0 ? c : col + 1;
+				if (col >= rowBuffer.length) {
+					XLSXCell[] b = new XLSXCell[Math.max(rowBuffer.length * 2, col + 1)];
+					System.arraycopy(rowBuffer, 0, b, 0, rowBuffer.length);
+					rowBuffer = b;
+				}
+				rowBuffer[col] = parseCell(col, row);
+				width = Math.max(width, col + 1);
+			} else if (e == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("row"))
+				break;
+		}
+		
+		if (width > columns)
+			columns = width;
+		if (width == 0)
+			return EMPTY_ROW;
+		XLSXCell[] cells = new XLSXCell[width];
+		System.arraycopy(rowBuffer, 0, cells, 0, width);
+		for (int i = 0; i < width; i++)
+			rowBuffer[i] = null;
+		return cells;
+	}
+	
+	/**
+	 * parse a cell element
+	 * @throws XMLStreamException
+	 */
+	private XLSXCell parseCell(int col, int row) throws XMLStreamException {
+		String t = reader.getAttributeValue(null, "t");
+		String s = reader.getAttributeValue(null, "s");
+		int style = s != null ? Integer.parseInt(s) : -1;
+		
+		String value = null, formula = null;
+		StringBuilder inline = null;
+		int phonetic = 0;
+		while (reader.hasNext()) {
+			int e = reader.next();
+			if (e == XMLStreamConstants.START_ELEMENT) {
+				String n = reader.getLocalName();
+				if (n.equals("v"))
+					value = reader.getElementText();
+				else if (n.equals("f"))
+					formula = reader.getElementText();
+				else if (n.equals("is"))
+					inline = new StringBuilder();
+				else if (n.equals("rPh"))
+					phonetic++;
+				else if (n.equals("t") && inline != null && phonetic == 0)
+					inline.append(reader.getElementText());
+			} else if (e == XMLStreamConstants.END_ELEMENT) {
+				String n = reader.getLocalName();
+				if (n.equals("c"))
+					break;
+				else if (n.equals("rPh"))
+					phonetic--;
+			}
+		}
+		
+		if (t == null || t.equals("n")) {
+			if (value == null || value.length() == 0)
+				return new XLSXCell(this, col, row, XLSXCell.BLANK, 0, null, style, formula);
+			return new XLSXCell(this, col, row, XLSXCell.NUMBER, Double.parseDouble(value), null, style, formula);
+		} else if (t.equals("s"))
+			return new XLSXCell(this, col, row, XLSXCell.SHARED_STRING, Integer.parseInt(value.trim()), null, style, formula);
+		else if (t.equals("inlineStr"))
+			return new XLSXCell(this, col, row, XLSXCell.STRING, 0, inline != null ? XLSXSharedStrings.unescape(inline.toString()) : "", style, formula);
+		else if (t.equals("str"))
+			return new XLSXCell(this, col, row, XLSXCell.STRING, 0, value != null ? XLSXSharedStrings.unescape(value) : "", style, formula);
+		else if (t.equals("b"))
+			return new XLSXCell(this, col, row, XLSXCell.BOOLEAN, "1".equals(value) || "true".equals(value) ? 1 : 0, null, style, formula);
+		else if (t.equals("e"))
+			return new XLSXCell(this, col, row, XLSXCell.ERROR, 0, value, style, formula);
+		else if (t.equals("d"))
+			return new XLSXCell(this, col, row, XLSXCell.ISO_DATE, 0, value, style, formula);
+		else {
+			log.warn("Unknown cell type '" + t + "' in " + getSheetInfo() + ", cell " + (col+1) + "/" + (row+1) + ", using text.");
+			return new XLSXCell(this, col, row, XLSXCell.STRING, 0, value != null ? value : "", style, formula);
+		}
+	}
+
+	/**
+	 * synchronized, because rows are streamed into the shared window on demand
+	 */
+	@Override
+	public synchronized Cell getCell(int column, int row) throws XLWrapException, XLWrapEOFException {
+		XLSXCell[] cells = getRow(row);
+		if (cells == null)
+			throw new XLWrapEOFException();
+		if (column < cells.length && cells[column] != null)
+			return cells[column];
+		else
+			return new XLSXCell(this, column, row);
+	}
+	
+	/**
+	 * synchronized, because rows are streamed into the shared window on demand
+	 */
+	@Override
+	public synchronized void readCell(int column, int row, CellValueHolder holder) throws XLWrapException, XLWrapEOFException {
+		XLSXCell[] cells = getRow(row);
+		if (cells == null)
+			throw new XLWrapEOFException();
+		if (column < cells.length && cells[column] != null)
+			cells[column].read(holder);
+		else
+			holder.setNull();
+	}
+	
+	/**
+	 * @return the shared strings of the workbook
+	 */
+	XLSXSharedStrings getSharedStrings() {
+		return workbook.getSharedStrings();
+	}
+	
+	/**
+	 * @return the cell styles of the workbook
+	 */
+	XLSXStyles getStyles() {
+		return workbook.getStyles();
+	}
+	
+	/**
+	 * @return true if dates are counted from 1904-01-01
+	 */
+	boolean isDate1904() {
+		return workbook.isDate1904();
+	}
+
+	@Override
+	public int getColumns() {
+		return columns;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getRows() {
+		return rows;
+	}
+
+	@Override
+	public String getSheetInfo() {
+		return workbook.getWorkbookInfo() + ", sheet '" + name + "'";
+	}
+}
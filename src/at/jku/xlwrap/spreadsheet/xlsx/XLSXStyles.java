@@ -0,0 +1,162 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.spreadsheet.xlsx;
+
+import java.io.InputStream;
+import java.util.Hashtable;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import at.jku.xlwrap.common.XLWrapException;
+
+/**
+ * Number formats of the cell styles (cellXfs) of a workbook, used to tell dates from numbers.
+ * 
+ * @author dorgon
+ *
+ */
+class XLSXStyles {
+	/** codes of built-in number formats by id, null if not defined or locale-dependent */
+	private static final String[] BUILTIN = {
+		"General", "0", "0.00", "#,##0", "#,##0.00", null, null, null, null, "0%", 
+		"0.00%", "0.00E+00", "# ?/?", "# ??/??", "mm-dd-yy", "d-mmm-yy", "d-mmm", "mmm-yy", "h:mm AM/PM", "h:mm:ss AM/PM", 
+		"h:mm", "h:mm:ss", "m/d/yy h:mm", null, null, null, null, null, null, null, 
+		null, null, null, null, null, null, null, "#,##0 ;(#,##0)", "#,##0 ;[Red](#,##0)", "#,##0.00;(#,##0.00)", 
+		"#,##0.00;[Red](#,##0.00)", null, null, null, null, "mm:ss", "[h]:mm:ss", "mmss.0", "##0.0E+0", "@"
+	};
+	
+	/** number format id per cell style */
+	private int[] formats = new int[0];
+	
+	/** date flag per cell style */
+	private boolean[] dates = new boolean[0];
+	
+	/** custom number formats */
+	private final Map<Integer, String> codes = new Hashtable<Integer, String>();
+	
+	/**
+	 * @return styles of workbooks without styles.xml, all cells use the general format
+	 */
+	static XLSXStyles empty() {
+		return new XLSXStyles();
+	}
+	
+	/**
+	 * parse styles.xml
+	 * 
+	 * @param in
+	 * @param file used for error messages
+	 * @return
+	 * @throws XLWrapException
+	 */
+	static XLSXStyles read(InputStream in, String file) throws XLWrapException {
+		XLSXStyles styles = new XLSXStyles();
+		XMLStreamReader r = XLSXWorkbook.createReader(in, file);
+		try {
+			boolean cellXfs = false;
+			int n = 0;
+			while (r.hasNext()) {
+				int e = r.next();
+				if (e == XMLStreamConstants.START_ELEMENT) {
+					String name = r.getLocalName();
+					if (name.equals("numFmt")) {
+						String id = r.getAttributeValue(null, "numFmtId");
+						String code = r.getAttributeValue(null, "formatCode");
+						if (id != null && code != null)
+							styles.codes.put(Integer.parseInt(id), code);
+					} else if (name.equals("cellXfs"))
+						cellXfs = true;
+					else if (name.equals("xf") && cellXfs) {
+						if (n == styles.formats.length) {
+							int[] f = new int[Math.max(16, n * 2)];
+							System.arraycopy(styles.formats, 0, f, 0, n);
+							styles.formats = f;
+						}
+						String id = r.getAttributeValue(null, "numFmtId");
+						styles.formats[n++] = id != null ? Integer.parseInt(id) : 0;
+					}
+				} else if (e == XMLStreamConstants.END_ELEMENT && r.getLocalName().equals("cellXfs"))
+					cellXfs = false;
+			}
+			
+			styles.dates = new boolean[n];
+			for (int i = 0; i < n; i++)
+				styles.dates[i] = styles.isDateFormat(styles.formats[i]);
+			return styles;
+		} catch (XMLStreamException e) {
+			throw new XLWrapException("Failed to read styles of " + file + ".", e);
+		} catch (NumberFormatException e) {
+			throw new XLWrapException("Invalid number format id in styles of " + file + ".", e);
+		} finally {
+			XLSXWorkbook.close(r, in);
+		}
+	}
+	
+	/**
+	 * @param style index of the cell style
+	 * @return true if the cell style formats numbers as dates
+	 */
+	boolean isDate(int style) {
+		return style >= 0 && style < dates.length && dates[style];
+	}
+	
+	/**
+	 * @param style index of the cell style
+	 * @return the number format code of the cell style or null if unknown
+	 */
+	String getFormatCode(int style) {
+		int id = style >= 0 && style < formats.length ? formats[style] : 0;
+		String code = codes.get(id);
+		if (code == null && id < BUILTIN.length)
+			code = BUILTIN[id];
+		return code;
+	}
+	
+	private boolean isDateFormat(int id) {
+		String code = codes.get(id);
+		if (code == null) // built-in date formats, including locale-dependent ones
+			return id >= 14 && id <= 22 || id >= 27 && id <= 36 || id >= 45 && id <= 47 || id >= 50 && id <= 58;
+		
+		// any date or time token outside of literals, escapes, and [...] sections (colors, locales)
+		boolean quoted = false, bracket = false;
+		for (int i = 0; i < code.length(); i++) {
+			char c = code.charAt(i);
+			if (quoted) {
+				if (c == '"')
+					quoted = false;
+			} else if (bracket) {
+				if (c == ']')
+					bracket = false;
+			} else if (c == '"')
+				quoted = true;
+			else if (c == '[')
+				bracket = true;
+			else if (c == '\\' || c == '_' || c == '*')
+				i++; // skip escaped or padding character
+			else if (c == ';')
+				break; // only the first section determines the type
+			else {
+				c = Character.toLowerCase(c);
+				if (c == 'd' || c == 'm' || c == 'y' || c == 'h' || c == 's')
+					return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,319 @@
+/**
+ * Copyright 2009 Andreas Langegger, andreas@langegger.at, Austria
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.jku.xlwrap.spreadsheet.xlsx;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.jku.xlwrap.common.XLWrapException;
+import at.jku.xlwrap.spreadsheet.Sheet;
+import at.jku.xlwrap.spreadsheet.Workbook;
+
+/**
+ * @author dorgon
+ *
+ * Office Open XML (.xlsx) workbook. Only the workbook part, shared strings, and styles are read when 
+ * the workbook is opened, sheets are streamed by {@link XLSXSheet} without building a DOM.
+ */
+public class XLSXWorkbook implements Workbook {
+	private static final Logger log = LoggerFactory.getLogger(XLSXWorkbook.class);
+	
+	private static final String REL_OFFICE_DOCUMENT = "/officeDocument";
+	private static final String REL_SHARED_STRINGS = "/sharedStrings";
+	private static final String REL_STYLES = "/styles";
+	
+	private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+	static {
+		xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+	}
+	
+	private final ZipFile zip;
+	private final String file;
+	private final int cacheSize;
+	
+	private final String[] sheetNames;
+	private final String[] sheetEntries;
+	
+	private final XLSXSharedStrings strings;
+	private final XLSXStyles styles;
+	private boolean date1904 = false;
+	
+	/** opened sheets, closed with the workbook */
+	private final List<XLSXSheet> sheets = new ArrayList<XLSXSheet>();
+	
+	/**
+	 * @param f
+	 * @param file
+	 * @throws XLWrapException
+	 */
+	public XLSXWorkbook(File f, String file) throws XLWrapException {
+		this(f, file, XLSXSheet.DEFAULT_CACHE_SIZE);
+	}
+	
+	/**
+	 * @param f
+	 * @param file
+	 * @param cacheSize number of rows kept per sheet
+	 * @throws XLWrapException
+	 */
+	public XLSXWorkbook(File f, String file, int cacheSize) throws XLWrapException {
+		this.file = file;
+		this.cacheSize = cacheSize;
+		try {
+			zip = new ZipFile(f);
+		} catch (IOException e) {
+			throw new XLWrapException("Failed to open Office Open XML workbook " + file + ".", e);
+		}
+		
+		try {
+			String workbook = relationships("").get(REL_OFFICE_DOCUMENT);
+			if (workbook == null)
+				workbook = "xl/workbook.xml";
+			Map<String, String> rels = relationships(workbook);
+			
+			List<String> names = new ArrayList<String>();
+			List<String> entries = new ArrayList<String>();
+			InputStream in = openEntry(workbook);
+			XMLStreamReader r = createReader(in, file);
+			try {
+				while (r.hasNext()) {
+					if (r.next() == XMLStreamConstants.START_ELEMENT) {
+						String n = r.getLocalName();
+						if (n.equals("workbookPr"))
+							date1904 = "1".equals(r.getAttributeValue(null, "date1904")) || "true".equals(r.getAttributeValue(null, "date1904"));
+						else if (n.equals("sheet")) {
+							String id = null;
+							for (int i = 0; i < r.getAttributeCount(); i++)
+								if (r.getAttributeLocalName(i).equals("id"))
+									id = r.getAttributeValue(i);
+							String entry = rels.get(id);
+							if (entry == null)
+								throw new XLWrapException("Missing relationship " + id + " for sheet '" + r.getAttributeValue(null, "name") + "' in " + file + ".");
+							names.add(r.getAttributeValue(null, "name"));
+							entries.add(entry);
+						}
+					}
+				}
+			} catch (XMLStreamException e) {
+				throw new XLWrapException("Failed to read workbook part of " + file + ".", e);
+			} finally {
+				close(r, in);
+			}
+			sheetNames = names.toArray(new String[names.size()]);
+			sheetEntries = entries.toArray(new String[entries.size()]);
+			
+			String sst = rels.get(REL_SHARED_STRINGS);
+			strings = sst != null ? XLSXSharedStrings.read(openEntry(sst), file) : XLSXSharedStrings.empty();
+			String st = rels.get(REL_STYLES);
+			styles = st != null ? XLSXStyles.read(openEntry(st), file) : XLSXStyles.empty();
+			log.debug("Opened " + file + " with " + sheetNames.length + " sheets and " + strings.size() + " shared strings.");
+		} catch (XLWrapException e) {
+			close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * read the relationships of a part
+	 * 
+	 * @param part name of the part, "" for the package
+	 * @return targets of the relationships as zip entry names by id and by the last segment of the type (e.g. /styles)
+	 * @throws XLWrapException
+	 */
+	private Map<String, String> relationships(String part) throws XLWrapException {
+		int slash = part.lastIndexOf('/');
+		String dir = part.substring(0, slash + 1);
+		String rels = dir + "_rels/" + part.substring(slash + 1) + ".rels";
+		
+		Map<String, String> map = new Hashtable<String, String>();
+		if (zip.getEntry(rels) == null)
+			return map;
+		InputStream in = openEntry(rels);
+		XMLStreamReader r = createReader(in, file);
+		try {
+			while (r.hasNext()) {
+				if (r.next() == XMLStreamConstants.START_ELEMENT && r.getLocalName().equals("Relationship")) {
+					String id = r.getAttributeValue(null, "Id");
+					String type = r.getAttributeValue(null, "Type");
+					String target = r.getAttributeValue(null, "Target");
+					if (target == null || "External".equals(r.getAttributeValue(null, "TargetMode")))
+						continue;
+					String entry = target.startsWith("/") ? target.substring(1) : normalize(dir + target);
+					if (id != null)
+						map.put(id, entry);
+					if (type != null)
+						map.put(type.substring(type.lastIndexOf('/')), entry);
+				}
+			}
+			return map;
+		} catch (XMLStreamException e) {
+			throw new XLWrapException("Failed to read relationships " + rels + " of " + file + ".", e);
+		} finally {
+			close(r, in);
+		}
+	}
+	
+	/**
+	 * resolve ./ and ../ segments
+	 */
+	private static String normalize(String path) {
+		List<String> segments = new ArrayList<String>();
+		for (String s : path.split("/")) {
+			if (s.equals("..")) {
+				if (!segments.isEmpty())
+					segments.remove(segments.size() - 1);
+			} else if (s.length() > 0 && !s.equals("."))
+				segments.add(s);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String s : segments) {
+			if (sb.length() > 0)
+				sb.append('/');
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * @param name
+	 * @return stream of a zip entry
+	 * @throws XLWrapException
+	 */
+	InputStream openEntry(String name) throws XLWrapException {
+		ZipEntry e = zip.getEntry(name);
+		if (e == null)
+			throw new XLWrapException("Missing part " + name + " in " + file + ".");
+		try {
+			return new BufferedInputStream(zip.getInputStream(e), 64 * 1024);
+		} catch (IOException ex) {
+			throw new XLWrapException("Failed to read part " + name + " of " + file + ".", ex);
+		}
+	}
+	
+	/**
+	 * @param in
+	 * @param info used for error messages
+	 * @return a StAX reader
+	 * @throws XLWrapException
+	 */
+	static XMLStreamReader createReader(InputStream in, String info) throws XLWrapException {
+		try {
+			synchronized (xmlInputFactory) {
+				return xmlInputFactory.createXMLStreamReader(in);
+			}
+		} catch (XMLStreamException e) {
+			throw new XLWrapException("Failed to read XML of " + info + ".", e);
+		}
+	}
+	
+	/**
+	 * close a reader and its stream, errors are logged
+	 */
+	static void close(XMLStreamReader r, InputStream in) {
+		try {
+			if (r != null)
+				r.close();
+			if (in != null)
+				in.close();
+		} catch (Exception e) {
+			log.error("Failed to close XML stream.", e);
+		}
+	}
+	
+	@Override
+	public boolean supportsMultipleSheets() {
+		return true;
+	}
+	
+	@Override
+	public Sheet getSheet(int sheetNum) throws XLWrapException {
+		XLSXSheet s = new XLSXSheet(this, sheetNames[sheetNum], sheetEntries[sheetNum], cacheSize);
+		synchronized (sheets) {
+			sheets.add(s);
+		}
+		return s;
+	}
+
+	@Override
+	public Sheet getSheet(String sheetName) throws XLWrapException {
+		for (int i = 0; i < sheetNames.length; i++)
+			if (sheetNames[i].equals(sheetName))
+				return getSheet(i);
+		return null;
+	}
+
+	@Override
+	public String[] getSheetNames() {
+		return sheetNames.clone();
+	}
+	
+	/**
+	 * @return the shared string table
+	 */
+	XLSXSharedStrings getSharedStrings() {
+		return strings;
+	}
+	
+	/**
+	 * @return the cell styles
+	 */
+	XLSXStyles getStyles() {
+		return styles;
+	}
+	
+	/**
+	 * @return true if dates are counted from 1904-01-01
+	 */
+	boolean isDate1904() {
+		return date1904;
+	}
+
+	@Override
+	public String getWorkbookInfo() {
+		return file;
+	}
+
+	@Override
+	public void close() {
+		synchronized (sheets) {
+			for (XLSXSheet s : sheets)
+				s.close();
+			sheets.clear();
+		}
+		try {
+			zip.close();
+		} catch (IOException e) {
+			log.error("Failed to close " + file + ".", e);
+		}
+	}
+}
@@ -20,7 +20,6 @@ import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.Iterator;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -29,6 +28,9 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.joseki.DatasetDesc;
 import org.joseki.Service;
 import org.joseki.servlets.MetadataBaseServlet;
@@ -57,7 +59,6 @@ public class StatusServlet extends MetadataBaseServlet {
 	@Override
 	protected void service(HttpServletRequest req, HttpServletResponse res, Service s, DatasetDesc ds) throws IOException, ServletException {	
 		ServletOutputStream out = res.getOutputStream();
-		out.println("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
 		
 		String root = getServletContext().getContextPath();
 		XLWrapEngine xl = ((XLWrapDataset) ds.acquireDataset()).getXLWrapEngine();
@@ -67,6 +68,13 @@ public class StatusServlet extends MetadataBaseServlet {
 		if (reload != null)
 			xl.reloadIntoCache(URLDecoder.decode(reload, "UTF-8"));
 		
+		if ("json".equals(req.getParameter("format"))) {
+			serviceJSON(res, out, xl);
+			return;
+		}
+		
+		out.println("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
+		
 		out.println("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">\n");
 		out.println("<html xmlns=\"http://www.w3.org/1999/xhtml\">\n");
 		out.println("<head>\n");
@@ -100,9 +108,7 @@ public class StatusServlet extends MetadataBaseServlet {
 		out.println("<th class=\"l\">Wrapped spreadsheets in cache:</th>\n");
 		out.println("<td class=\"l\">\n");
 		
-		Iterator<String> cached = xl.listCachedNames();
-		while (cached.hasNext()) {
-			String file = cached.next();
+		for (String file : xl.listCachedMappings()) {
 			String date = "n/a";
 			try {
 				Calendar c = xl.getTimestamp(file);
@@ -122,6 +128,7 @@ public class StatusServlet extends MetadataBaseServlet {
 		out.println("<td class=\"l\">\n");
 		out.println("<a href=\"" + root + "/snorql\">Snorql interface</a> (Snorql is part of <a href=\"http://www4.wiwiss.fu-berlin.de/bizer/d2r-server/\">D2R-Server</a>)<br />\n");
 		out.println("<a href=\"" + root + "/logs\">Server logs</a><br />\n");
+		out.println("<a href=\"?format=json\">Materialization statistics (JSON)</a><br />\n");
 		out.println("</td>\n");
 		out.println("</tr>\n");
 		out.println("</table>\n");
@@ -131,4 +138,36 @@ public class StatusServlet extends MetadataBaseServlet {
 		out.println("</body>\n");
 		out.println("</html>\n");
 	}
+	
+	/**
+	 * write cached mappings and materialization statistics as JSON
+	 * 
+	 * @param res
+	 * @param out
+	 * @param xl
+	 * @throws IOException
+	 */
+	private void serviceJSON(HttpServletResponse res, ServletOutputStream out, XLWrapEngine xl) throws IOException {
+		res.setContentType("application/json");
+		res.setCharacterEncoding("UTF-8");
+		try {
+			JSONObject json = new JSONObject();
+			JSONArray cached = new JSONArray();
+			for (String file : xl.listCachedMappings()) {
+				JSONObject c = new JSONObject();
+				c.put("mapping", file);
+				c.put("graphs", new JSONArray(xl.getTemplateGraphs(file)));
+				try {
+					c.put("cachedAt", xl.getTimestamp(file).getTimeInMillis());
+				} catch (XLWrapException e) {}
+				cached.put(c);
+			}
+			json.put("cached", cached);
+			
+			json.put("materialization", xl.getMaterializationStats().toJSON());
+			out.print(json.toString(2));
+		} catch (JSONException e) {
+			throw new IOException("Failed to create JSON status: " + e.getMessage());
+		}
+	}
 }